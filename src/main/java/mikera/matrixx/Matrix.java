@@ -7,7 +7,10 @@ import java.util.Iterator;
 import java.util.List;
 
 import mikera.arrayz.INDArray;
+import mikera.matrixx.algo.Gram;
 import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.algo.Transforms;
 import mikera.matrixx.impl.ADenseArrayMatrix;
 import mikera.matrixx.impl.AStridedMatrix;
 import mikera.matrixx.impl.DenseColumnMatrix;
@@ -195,6 +198,7 @@ public final class Matrix extends ADenseArrayMatrix {
 
 	@Override
 	public Matrix transposeInnerProduct(Matrix s) {
+		if (s == this) return Gram.transposeProduct(this);
 		Matrix r = toMatrixTranspose();
 		return Multiplications.multiply(r, s);
 	}
@@ -305,6 +309,20 @@ public final class Matrix extends ADenseArrayMatrix {
 		}
 	}
 
+	/**
+	 * Transforms each of the source vectors by this matrix, storing the results in the
+	 * corresponding destination vectors. The matrix is streamed through cache once per block
+	 * of source vectors, which is much faster than transforming each vector separately.
+	 * 
+	 * Destination vectors must not be the same as any of the source vectors.
+	 * 
+	 * @param sources
+	 * @param dests
+	 */
+	public void transform(AVector[] sources, AVector[] dests) {
+		Transforms.transform(this, sources, dests);
+	}
+
 	@Override
 	public void transform(Vector source, Vector dest) {
 		int rc = rowCount();
@@ -315,6 +333,10 @@ public final class Matrix extends ADenseArrayMatrix {
 		if (dest.length() != rc)
 			throw new IllegalArgumentException(
 					ErrorMessages.wrongDestLength(dest));
+		if ((((long) rc) * cc >= Multiplications.getParallelThreshold()) && Parallel.isParallel()) {
+			Transforms.parallelTransform(this, source, dest);
+			return;
+		}
 		int di = 0;
 		double[] sdata = source.getArray();
 		double[] ddata = dest.getArray();
@@ -0,0 +1,56 @@
+package mikera.matrixx.algo;
+
+import mikera.matrixx.impl.BandedMatrix;
+import mikera.matrixx.impl.PermutationMatrix;
+
+/**
+ * Result of reordering a sparse matrix into banded form, such that
+ *
+ *    P.A.P^T = B
+ *
+ * where B is a BandedMatrix.
+ *
+ * @author Mike
+ *
+ */
+public class BandedOrderingResult {
+	private final PermutationMatrix p;
+	private final BandedMatrix banded;
+	private final int originalBandwidth;
+	private final int bandwidth;
+
+	BandedOrderingResult(PermutationMatrix p, BandedMatrix banded, int originalBandwidth, int bandwidth) {
+		this.p=p;
+		this.banded=banded;
+		this.originalBandwidth=originalBandwidth;
+		this.bandwidth=bandwidth;
+	}
+
+	/**
+	 * Returns the permutation P applied to the rows and columns of A
+	 */
+	public PermutationMatrix getP() {
+		return p;
+	}
+
+	/**
+	 * Returns the reordered matrix P.A.P^T in banded form
+	 */
+	public BandedMatrix getBandedMatrix() {
+		return banded;
+	}
+
+	/**
+	 * Returns the bandwidth of A before reordering, as the maximum of the lower and upper bandwidths
+	 */
+	public int getOriginalBandwidth() {
+		return originalBandwidth;
+	}
+
+	/**
+	 * Returns the bandwidth of the reordered matrix, as the maximum of the lower and upper bandwidths
+	 */
+	public int getBandwidth() {
+		return bandwidth;
+	}
+}
@@ -4,7 +4,7 @@ import mikera.matrixx.AMatrix;
 import mikera.matrixx.Matrix;
 import mikera.matrixx.Matrix33;
 import mikera.matrixx.decompose.ILUPResult;
-import mikera.matrixx.decompose.impl.lu.SimpleLUP;
+import mikera.matrixx.decompose.impl.lu.AltLU;
 import mikera.vectorz.util.IntArrays;
 
 /**
@@ -47,7 +47,7 @@ public class Determinant {
 	 * @return
 	 */
 	static double calculateLUPDeterminant(AMatrix m) {
-		ILUPResult lup=SimpleLUP.decompose(m);
+		ILUPResult lup=AltLU.decompose(m);
 		double det=lup.getL().diagonalProduct()*lup.getU().diagonalProduct()*lup.getP().determinant();
 		return det;
 	}
@@ -0,0 +1,181 @@
+package mikera.matrixx.algo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.AStridedMatrix;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Symmetric rank-k update (SYRK) algorithms for computing Gram matrices A^T.A and A.A^T
+ *
+ * Only the upper triangle of the result is computed, one block at a time using the packed
+ * multiplication kernel on strided views of A, so no transposed copy of A is created and
+ * roughly half the work of a general multiply is needed. The lower triangle is then filled
+ * by mirroring, so the result is exactly symmetric.
+ *
+ * @author Mike
+ */
+public final class Gram {
+	// size of the square result blocks computed by a single kernel call
+	private static final int BLOCK_SIZE=128;
+
+	/**
+	 * Computes the Gram matrix A^T.A, i.e. the matrix of inner products of the columns of A
+	 * @param a
+	 * @return
+	 */
+	public static Matrix transposeProduct(AMatrix a) {
+		return transposeProduct(a,false);
+	}
+
+	/**
+	 * Computes the Gram matrix A^T.A, optionally computing result blocks in parallel
+	 * @param a
+	 * @param parallel
+	 * @return
+	 */
+	public static Matrix transposeProduct(AMatrix a, boolean parallel) {
+		int n=a.columnCount();
+		Matrix result=Matrix.create(n, n);
+		syrk(1.0,a,true,0.0,result,parallel);
+		return result;
+	}
+
+	/**
+	 * Computes the matrix A.A^T, i.e. the matrix of inner products of the rows of A
+	 * @param a
+	 * @return
+	 */
+	public static Matrix productTranspose(AMatrix a) {
+		return productTranspose(a,false);
+	}
+
+	/**
+	 * Computes the matrix A.A^T, optionally computing result blocks in parallel
+	 * @param a
+	 * @param parallel
+	 * @return
+	 */
+	public static Matrix productTranspose(AMatrix a, boolean parallel) {
+		int n=a.rowCount();
+		Matrix result=Matrix.create(n, n);
+		syrk(1.0,a,false,0.0,result,parallel);
+		return result;
+	}
+
+	/**
+	 * BLAS-3 style symmetric rank-k update, computing C = alpha*op(A).op(A)^T + beta*C in place,
+	 * where op(A) is A^T if trans is true, otherwise A.
+	 *
+	 * Only the upper triangle of C is read. The lower triangle is overwritten with the mirror
+	 * of the upper triangle, so the result is exactly symmetric.
+	 *
+	 * @param alpha
+	 * @param a
+	 * @param trans
+	 * @param beta
+	 * @param c Square destination matrix
+	 * @param parallel If true, blocks of the result are computed in parallel
+	 */
+	public static void syrk(double alpha, AMatrix a, boolean trans, double beta, AStridedMatrix c, boolean parallel) {
+		int n=trans?a.columnCount():a.rowCount();
+		int k=trans?a.rowCount():a.columnCount();
+		if ((c.rowCount()!=n)||(c.columnCount()!=n)) throw new IllegalArgumentException(ErrorMessages.wrongDestShape(c, n, n));
+
+		AStridedMatrix sa=(a instanceof AStridedMatrix)&&(((AStridedMatrix)a).getArray()!=c.getArray())?(AStridedMatrix)a:Matrix.create(a);
+		// X = op(A) as strided (n*k) view
+		int xRowStride=trans?sa.columnStride():sa.rowStride();
+		int xColStride=trans?sa.rowStride():sa.columnStride();
+
+		double[] cData=c.getArray();
+		int cOffset=c.getArrayOffset();
+		int crs=c.rowStride();
+		int ccs=c.columnStride();
+
+		// scale upper triangle by beta
+		if (beta!=1.0) {
+			for (int i=0; i<n; i++) {
+				for (int j=i; j<n; j++) {
+					int ci=cOffset+i*crs+j*ccs;
+					cData[ci]=(beta==0.0)?0.0:cData[ci]*beta;
+				}
+			}
+		}
+
+		if ((alpha!=0.0)&&(k>0)&&(n>0)) {
+			if (parallel&&(n>BLOCK_SIZE)&&Parallel.isParallel()) {
+				final List<BlockTask> tasks=new ArrayList<BlockTask>();
+				for (int bi=0; bi<n; bi+=BLOCK_SIZE) {
+					for (int bj=bi; bj<n; bj+=BLOCK_SIZE) {
+						tasks.add(new BlockTask(alpha,sa,xRowStride,xColStride,k,n,bi,bj,c));
+					}
+				}
+				Parallel.getForkJoinPool().invoke(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected void compute() {
+						invokeAll(tasks);
+					}
+				});
+			} else {
+				for (int bi=0; bi<n; bi+=BLOCK_SIZE) {
+					for (int bj=bi; bj<n; bj+=BLOCK_SIZE) {
+						computeBlock(alpha,sa,xRowStride,xColStride,k,n,bi,bj,c);
+					}
+				}
+			}
+		}
+
+		// mirror upper triangle into lower triangle
+		for (int i=1; i<n; i++) {
+			for (int j=0; j<i; j++) {
+				cData[cOffset+i*crs+j*ccs]=cData[cOffset+j*crs+i*ccs];
+			}
+		}
+	}
+
+	/**
+	 * Computes the result block starting at (bi,bj) of C += alpha*X.X^T, where bj>=bi
+	 */
+	private static void computeBlock(double alpha, AStridedMatrix sa, int xRowStride, int xColStride, int k, int n, int bi, int bj, AStridedMatrix c) {
+		int bm=Math.min(BLOCK_SIZE, n-bi);
+		int bn=Math.min(BLOCK_SIZE, n-bj);
+		double[] data=sa.getArray();
+		int offset=sa.getArrayOffset();
+		// rows bi.. of X times the transpose of rows bj.. of X
+		PackedMultiply.multiplyAdd(bm, bn, k, alpha,
+				data, offset+bi*xRowStride, xRowStride, xColStride,
+				data, offset+bj*xRowStride, xColStride, xRowStride,
+				c.getArray(), c.getArrayOffset()+bi*c.rowStride()+bj*c.columnStride(), c.rowStride(), c.columnStride());
+	}
+
+	@SuppressWarnings("serial")
+	private static final class BlockTask extends RecursiveAction {
+		private final double alpha;
+		private final AStridedMatrix sa;
+		private final int xRowStride,xColStride,k,n,bi,bj;
+		private final AStridedMatrix c;
+
+		BlockTask(double alpha, AStridedMatrix sa, int xRowStride, int xColStride, int k, int n, int bi, int bj, AStridedMatrix c) {
+			this.alpha=alpha;
+			this.sa=sa;
+			this.xRowStride=xRowStride;
+			this.xColStride=xColStride;
+			this.k=k;
+			this.n=n;
+			this.bi=bi;
+			this.bj=bj;
+			this.c=c;
+		}
+
+		@Override
+		protected void compute() {
+			computeBlock(alpha,sa,xRowStride,xColStride,k,n,bi,bj,c);
+		}
+	}
+}
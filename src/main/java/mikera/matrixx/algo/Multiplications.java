@@ -1,8 +1,12 @@
 package mikera.matrixx.algo;
 
+import java.util.concurrent.RecursiveAction;
+
 import mikera.matrixx.AMatrix;
 import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.AStridedMatrix;
 import mikera.matrixx.impl.ImmutableMatrix;
+import mikera.matrixx.impl.TransposedMatrix;
 import mikera.vectorz.util.DoubleArrays;
 import mikera.vectorz.util.ErrorMessages;
 
@@ -11,10 +15,58 @@ public class Multiplications {
 	// aim for around 200kb => fits comfortably in L2 cache in modern machines
 	protected static final int WORKING_SET_TARGET=8192;
 	
+	// current working set target, may be changed by tuning
+	private static volatile int workingSetTarget=WORKING_SET_TARGET;
+	
+	// number of multiply-adds below which multiplication always stays single threaded
+	// default is roughly a 100x100 by 100x100 multiply
+	private static volatile long parallelThreshold=1000000L;
+	
+	/**
+	 * Gets the number of multiply-add operations above which matrix multiplication
+	 * will be performed in parallel
+	 * @return
+	 */
+	public static long getParallelThreshold() {
+		return parallelThreshold;
+	}
+	
+	/**
+	 * Sets the number of multiply-add operations above which matrix multiplication
+	 * will be performed in parallel. Use Long.MAX_VALUE to disable parallel multiplication.
+	 * @param threshold
+	 */
+	public static void setParallelThreshold(long threshold) {
+		if (threshold<0) throw new IllegalArgumentException("Negative parallel threshold: "+threshold);
+		parallelThreshold=threshold;
+	}
+	
+	/**
+	 * Gets the target number of elements in the working set of the blocked multiplication algorithms
+	 * @return
+	 */
+	public static int getWorkingSetTarget() {
+		return workingSetTarget;
+	}
+	
+	/**
+	 * Sets the target number of elements in the working set of the blocked multiplication algorithms.
+	 * This is normally set by installing a MultiplyTable, see MultiplyTuner.
+	 * @param target
+	 */
+	public static void setWorkingSetTarget(int target) {
+		if (target<1) throw new IllegalArgumentException("Working set target must be positive, got: "+target);
+		workingSetTarget=target;
+	}
+	
 	/** 
 	 * General purpose matrix multiplication, with smart selection of algorithm based
 	 * on matrix size and type.
 	 * 
+	 * If a MultiplyTable has been installed or tuned with MultiplyTuner, the algorithm is selected
+	 * from the table. Otherwise blocked multiplication is used, switching to parallel multiplication
+	 * above the parallel threshold.
+	 * 
 	 * @param a
 	 * @param b
 	 * @return
@@ -25,11 +77,19 @@ public class Multiplications {
 		} else if (a instanceof ImmutableMatrix) {
 			return multiply(Matrix.wrap(a.rowCount(),a.columnCount(),((ImmutableMatrix)a).getInternalData()),b);
 		} else {
-			return blockedMultiply(a.toMatrix(),b);
+			return multiply(a.toMatrix(),b);
 		}
 	}
 	
 	public static Matrix multiply(Matrix a, AMatrix b) {
+		long ops=((long)a.rowCount())*a.columnCount()*b.columnCount();
+		MultiplyTable table=MultiplyTuner.getTable();
+		if (table!=null) {
+			return table.getAlgorithm(ops).multiply(a, b);
+		}
+		if ((ops>=parallelThreshold)&&Parallel.isParallel()) {
+			return parallelMultiply(a,b);
+		}
 		return blockedMultiply(a,b);
 	}
 	
@@ -51,20 +111,30 @@ public class Multiplications {
 		Matrix result=Matrix.create(rc, cc);
 		if (ic==0) return result;
 		
-		int block=(WORKING_SET_TARGET/ic)+1;
+		blockedMultiply(a,b,result,0,rc,0,cc);
+		return result;
+	}
+	
+	/**
+	 * Computes the block of the result matrix with rows [rowStart,rowEnd) and columns [colStart,colEnd),
+	 * using temporary working storage for columns of the second matrix
+	 */
+	private static void blockedMultiply(Matrix a, AMatrix b, Matrix result, int rowStart, int rowEnd, int colStart, int colEnd) {
+		int ic=a.columnCount();
+		int block=(workingSetTarget/ic)+1;
 		// working set stores up to <block> number of columns from second matrix
-		Matrix wsb=Matrix.create(Math.min(block,cc), ic);
+		Matrix wsb=Matrix.create(Math.min(block,colEnd-colStart), ic);
 		
-		for (int bj=0; bj<cc; bj+=block) {
-			int bjsize=Math.min(block, cc-bj);
+		for (int bj=colStart; bj<colEnd; bj+=block) {
+			int bjsize=Math.min(block, colEnd-bj);
 			
 			// copy columns into working set
 			for (int t=0; t<bjsize; t++) {
 				b.copyColumnTo(bj+t,wsb.data,t*ic);
 			}
 			
-			for (int bi=0; bi<rc; bi+=block) {
-				int bisize=Math.min(block, rc-bi);
+			for (int bi=rowStart; bi<rowEnd; bi+=block) {
+				int bisize=Math.min(block, rowEnd-bi);
 				
 				// compute inner block
 				for (int i=bi; i<(bi+bisize); i++) {
@@ -76,9 +146,77 @@ public class Multiplications {
 				}
 			}
 		}
+	}
+	
+	/**
+	 * Performs fast matrix multiplication in parallel, splitting the result into blocks that are
+	 * computed by separate tasks on the shared ForkJoinPool.
+	 * 
+	 * Produces exactly the same result as blockedMultiply
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static Matrix parallelMultiply(Matrix a, AMatrix b) {
+		int rc=a.rowCount();
+		int cc=b.columnCount();
+		int ic=a.columnCount();
+		
+		if ((ic!=b.rowCount())) {
+			throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(a,b));
+		}		
+
+		Matrix result=Matrix.create(rc, cc);
+		if ((ic==0)||(rc==0)||(cc==0)) return result;
+		
+		long ops=((long)rc)*cc*ic;
+		long leafOps=Parallel.leafSize(ops,WORKING_SET_TARGET);
+		Parallel.getForkJoinPool().invoke(new MultiplyTask(a,b,result,0,rc,0,cc,leafOps));
 		return result;
 	}
 	
+	@SuppressWarnings("serial")
+	private static final class MultiplyTask extends RecursiveAction {
+		private final Matrix a;
+		private final AMatrix b;
+		private final Matrix result;
+		private final int rowStart,rowEnd,colStart,colEnd;
+		private final long leafOps;
+		
+		MultiplyTask(Matrix a, AMatrix b, Matrix result, int rowStart, int rowEnd, int colStart, int colEnd, long leafOps) {
+			this.a=a;
+			this.b=b;
+			this.result=result;
+			this.rowStart=rowStart;
+			this.rowEnd=rowEnd;
+			this.colStart=colStart;
+			this.colEnd=colEnd;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			int rows=rowEnd-rowStart;
+			int cols=colEnd-colStart;
+			long ops=((long)rows)*cols*a.columnCount();
+			if ((ops<=leafOps)||((rows==1)&&(cols==1))) {
+				blockedMultiply(a,b,result,rowStart,rowEnd,colStart,colEnd);
+				return;
+			}
+			// split along the larger dimension
+			if (cols>=rows) {
+				int split=colStart+(cols/2);
+				invokeAll(new MultiplyTask(a,b,result,rowStart,rowEnd,colStart,split,leafOps),
+						  new MultiplyTask(a,b,result,rowStart,rowEnd,split,colEnd,leafOps));
+			} else {
+				int split=rowStart+(rows/2);
+				invokeAll(new MultiplyTask(a,b,result,rowStart,split,colStart,colEnd,leafOps),
+						  new MultiplyTask(a,b,result,split,rowEnd,colStart,colEnd,leafOps));
+			}
+		}
+	}
+	
 	/**
 	 * Performs fast matrix multiplication using temporary working storage for both matrices
 	 * @param a
@@ -97,7 +235,7 @@ public class Multiplications {
 		Matrix result=Matrix.create(rc, cc);
 		if (ic==0) return result;
 		
-		int block=(WORKING_SET_TARGET/ic)+1;
+		int block=(workingSetTarget/ic)+1;
 		// working sets stores up to <block> number of columns from each matrix
 		Matrix wsa=Matrix.create(Math.min(block,rc), ic);
 		Matrix wsb=Matrix.create(Math.min(block,cc), ic);
@@ -113,9 +251,9 @@ public class Multiplications {
 			for (int bi=0; bi<rc; bi+=block) {
 				int bisize=Math.min(block, rc-bi);
 				
-				// copy columns into working set
+				// copy rows into working set
 				for (int t=0; t<bisize; t++) {
-					b.copyRowTo(bi+t,wsa.data,t*ic);
+					a.copyRowTo(bi+t,wsa.data,t*ic);
 				}
 				
 				// compute inner block
@@ -130,6 +268,125 @@ public class Multiplications {
 		return result;
 	}
 	
+	/**
+	 * Performs fast matrix multiplication using packed panels and a register-tiled kernel.
+	 * See PackedMultiply for details.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static Matrix packedMultiply(AMatrix a, AMatrix b) {
+		return PackedMultiply.multiply(a, b);
+	}
+	
+	/**
+	 * Performs matrix multiplication using the Strassen-Winograd algorithm, recursing down
+	 * to the crossover size set in StrassenMultiply. Suitable for large square matrices, at
+	 * the cost of somewhat weaker error bounds than conventional multiplication.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static Matrix strassenMultiply(AMatrix a, AMatrix b) {
+		return StrassenMultiply.multiply(a, b);
+	}
+	
+	/**
+	 * General BLAS-3 style matrix multiply, computing C = alpha*op(A)*op(B) + beta*C in place,
+	 * where op(X) is either X or its transpose according to the transA / transB flags.
+	 * 
+	 * The destination may be any strided matrix, including submatrix views. Strided operands
+	 * (including DenseColumnMatrix and transposed views of strided matrices) and TransposedMatrix
+	 * wrappers are read in place without creating temporary copies. Other operand types are
+	 * converted to a dense Matrix first.
+	 * 
+	 * As with BLAS, if beta is zero then C need not be initialised.
+	 * 
+	 * @param alpha
+	 * @param a
+	 * @param transA
+	 * @param b
+	 * @param transB
+	 * @param beta
+	 * @param c Destination matrix
+	 */
+	public static void gemm(double alpha, AMatrix a, boolean transA, AMatrix b, boolean transB, double beta, AStridedMatrix c) {
+		// unwrap transposed views, so that the underlying matrix can be accessed directly
+		if (a instanceof TransposedMatrix) {
+			a=TransposedMatrix.wrap(a);
+			transA=!transA;
+		}
+		if (b instanceof TransposedMatrix) {
+			b=TransposedMatrix.wrap(b);
+			transB=!transB;
+		}
+		
+		int m=transA?a.columnCount():a.rowCount();
+		int k=transA?a.rowCount():a.columnCount();
+		int n=transB?b.rowCount():b.columnCount();
+		int kb=transB?b.columnCount():b.rowCount();
+		if (k!=kb) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(a,b));
+		if ((c.rowCount()!=m)||(c.columnCount()!=n)) throw new IllegalArgumentException(ErrorMessages.wrongDestShape(c, m, n));
+		
+		double[] cData=c.getArray();
+		int cOffset=c.getArrayOffset();
+		int cRowStride=c.rowStride();
+		int cColStride=c.columnStride();
+		if ((alpha==0.0)||(k==0)) {
+			scale(beta,m,n,cData,cOffset,cRowStride,cColStride);
+			return;
+		}
+		
+		// operands must be strided, and must not share storage with the destination
+		AStridedMatrix sa=stridedOperand(a,cData);
+		AStridedMatrix sb=stridedOperand(b,cData);
+		scale(beta,m,n,cData,cOffset,cRowStride,cColStride);
+		
+		PackedMultiply.multiplyAdd(m, n, k, alpha, 
+				sa.getArray(), sa.getArrayOffset(), transA?sa.columnStride():sa.rowStride(), transA?sa.rowStride():sa.columnStride(),
+				sb.getArray(), sb.getArrayOffset(), transB?sb.columnStride():sb.rowStride(), transB?sb.rowStride():sb.columnStride(),
+				cData, cOffset, cRowStride, cColStride);
+	}
+	
+	/**
+	 * Computes C = A*B + C in place. Equivalent to gemm(1.0, a, false, b, false, 1.0, c)
+	 */
+	public static void multiplyAdd(AMatrix a, AMatrix b, AStridedMatrix c) {
+		gemm(1.0,a,false,b,false,1.0,c);
+	}
+	
+	/**
+	 * Computes C = A*B in place. Equivalent to gemm(1.0, a, false, b, false, 0.0, c)
+	 */
+	public static void multiplyInto(AMatrix a, AMatrix b, AStridedMatrix c) {
+		gemm(1.0,a,false,b,false,0.0,c);
+	}
+	
+	private static AStridedMatrix stridedOperand(AMatrix a, double[] destData) {
+		if (a instanceof AStridedMatrix) {
+			AStridedMatrix sa=(AStridedMatrix)a;
+			if (sa.getArray()!=destData) return sa;
+			return Matrix.create(a);
+		}
+		return a.toMatrix();
+	}
+	
+	private static void scale(double beta, int m, int n, double[] data, int offset, int rowStride, int colStride) {
+		if (beta==1.0) return;
+		for (int i=0; i<m; i++) {
+			int ri=offset+i*rowStride;
+			if (beta==0.0) {
+				for (int j=0; j<n; j++) {
+					data[ri+j*colStride]=0.0;
+				}
+			} else {
+				for (int j=0; j<n; j++) {
+					data[ri+j*colStride]*=beta;
+				}
+			}
+		}
+	}
+	
 	public static Matrix directMultiply(Matrix a, AMatrix b) {
 		int rc=a.rowCount();
 		int cc=b.columnCount();
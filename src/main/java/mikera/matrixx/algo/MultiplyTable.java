@@ -0,0 +1,217 @@
+package mikera.matrixx.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+
+/**
+ * Immutable crossover table used by Multiplications.multiply to select a multiplication algorithm.
+ *
+ * The table is a list of algorithms with increasing upper bounds on the number of multiply-add
+ * operations (rows * columns * inner dimension). A multiplication uses the first algorithm whose
+ * bound exceeds its operation count. The last algorithm has no bound. The table also records
+ * the working set target used by the blocked algorithms.
+ *
+ * Tables have a simple string form, e.g. "DIRECT:4096,PACKED:1000000,PARALLEL", which is used
+ * by MultiplyTuner to persist tables and can be edited by hand.
+ *
+ * @author Mike
+ */
+public final class MultiplyTable {
+
+	/**
+	 * Dense matrix multiplication algorithms available for selection by a MultiplyTable
+	 */
+	public static enum Algorithm {
+		DIRECT {
+			@Override
+			public Matrix multiply(Matrix a, AMatrix b) {
+				return Multiplications.directMultiply(a, b);
+			}
+		},
+		BLOCKED {
+			@Override
+			public Matrix multiply(Matrix a, AMatrix b) {
+				return Multiplications.blockedMultiply(a, b);
+			}
+		},
+		DOUBLE_BLOCKED {
+			@Override
+			public Matrix multiply(Matrix a, AMatrix b) {
+				return Multiplications.doubleBlockedMultiply(a, b);
+			}
+		},
+		PACKED {
+			@Override
+			public Matrix multiply(Matrix a, AMatrix b) {
+				return Multiplications.packedMultiply(a, b);
+			}
+		},
+		PARALLEL {
+			@Override
+			public Matrix multiply(Matrix a, AMatrix b) {
+				if (!Parallel.isParallel()) return Multiplications.blockedMultiply(a, b);
+				return Multiplications.parallelMultiply(a, b);
+			}
+		},
+		/**
+		 * Strassen-Winograd multiplication. Note that this does not give results identical to the
+		 * other algorithms, and has weaker error bounds.
+		 */
+		STRASSEN {
+			@Override
+			public Matrix multiply(Matrix a, AMatrix b) {
+				return Multiplications.strassenMultiply(a, b);
+			}
+		};
+
+		/**
+		 * Multiplies two matrices using this algorithm
+		 * @param a
+		 * @param b
+		 * @return
+		 */
+		public abstract Matrix multiply(Matrix a, AMatrix b);
+	}
+
+	private final Algorithm[] algorithms;
+	private final long[] bounds;
+	private final int workingSetTarget;
+
+	/**
+	 * Creates a crossover table.
+	 *
+	 * @param algorithms Algorithms in order of increasing operation count
+	 * @param bounds Exclusive upper bounds on operation count for each algorithm except the last, in increasing order
+	 * @param workingSetTarget Target number of elements in the working set of the blocked algorithms
+	 */
+	public MultiplyTable(Algorithm[] algorithms, long[] bounds, int workingSetTarget) {
+		int n=algorithms.length;
+		if (n==0) throw new IllegalArgumentException("Multiply table must contain at least one algorithm");
+		if (bounds.length!=n-1) throw new IllegalArgumentException("Multiply table needs "+(n-1)+" bounds for "+n+" algorithms, got: "+bounds.length);
+		for (int i=0; i<n; i++) {
+			if (algorithms[i]==null) throw new IllegalArgumentException("Null algorithm in multiply table");
+		}
+		for (int i=1; i<bounds.length; i++) {
+			if (bounds[i]<=bounds[i-1]) throw new IllegalArgumentException("Multiply table bounds must be increasing: "+Arrays.toString(bounds));
+		}
+		if (workingSetTarget<1) throw new IllegalArgumentException("Working set target must be positive, got: "+workingSetTarget);
+		this.algorithms=algorithms.clone();
+		this.bounds=bounds.clone();
+		this.workingSetTarget=workingSetTarget;
+	}
+
+	/**
+	 * Parses a table from its string form, e.g. "BLOCKED:1000000,PARALLEL"
+	 * @param table
+	 * @param workingSetTarget
+	 * @return
+	 */
+	public static MultiplyTable parse(String table, int workingSetTarget) {
+		String[] entries=table.trim().split("\\s*,\\s*");
+		Algorithm[] algorithms=new Algorithm[entries.length];
+		long[] bounds=new long[entries.length-1];
+		for (int i=0; i<entries.length; i++) {
+			String[] parts=entries[i].split("\\s*:\\s*");
+			boolean last=(i==entries.length-1);
+			if (parts.length!=(last?1:2)) throw new IllegalArgumentException("Invalid multiply table entry: "+entries[i]);
+			try {
+				algorithms[i]=Algorithm.valueOf(parts[0].trim());
+				if (!last) bounds[i]=Long.parseLong(parts[1].trim());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid multiply table entry: "+entries[i]);
+			}
+		}
+		return new MultiplyTable(algorithms,bounds,workingSetTarget);
+	}
+
+	/**
+	 * Creates a table that uses a single algorithm for all sizes
+	 * @param algorithm
+	 * @param workingSetTarget
+	 * @return
+	 */
+	public static MultiplyTable create(Algorithm algorithm, int workingSetTarget) {
+		return new MultiplyTable(new Algorithm[] {algorithm},new long[0],workingSetTarget);
+	}
+
+	/**
+	 * Gets the algorithm to use for a multiplication with the given number of multiply-add operations
+	 * @param ops
+	 * @return
+	 */
+	public Algorithm getAlgorithm(long ops) {
+		for (int i=0; i<bounds.length; i++) {
+			if (ops<bounds[i]) return algorithms[i];
+		}
+		return algorithms[algorithms.length-1];
+	}
+
+	/**
+	 * Gets the algorithm to use for multiplying a (rows*inner) matrix by an (inner*cols) matrix
+	 */
+	public Algorithm getAlgorithm(int rows, int cols, int inner) {
+		return getAlgorithm(((long)rows)*cols*inner);
+	}
+
+	/**
+	 * Returns the algorithms in this table, in order of increasing operation count
+	 * @return
+	 */
+	public List<Algorithm> getAlgorithms() {
+		return new ArrayList<Algorithm>(Arrays.asList(algorithms));
+	}
+
+	/**
+	 * Returns the crossover bounds of this table, i.e. the operation counts at which each algorithm
+	 * except the first takes over from the previous one
+	 * @return
+	 */
+	public long[] getBounds() {
+		return bounds.clone();
+	}
+
+	/**
+	 * Gets the target number of elements in the working set of the blocked algorithms
+	 * @return
+	 */
+	public int getWorkingSetTarget() {
+		return workingSetTarget;
+	}
+
+	/**
+	 * Returns the table in the string form accepted by parse(...)
+	 */
+	public String getTableString() {
+		StringBuilder sb=new StringBuilder();
+		for (int i=0; i<algorithms.length; i++) {
+			if (i>0) sb.append(',');
+			sb.append(algorithms[i].name());
+			if (i<bounds.length) {
+				sb.append(':');
+				sb.append(bounds[i]);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "MultiplyTable["+getTableString()+", workingSetTarget="+workingSetTarget+"]";
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof MultiplyTable)) return false;
+		MultiplyTable t=(MultiplyTable)o;
+		return (workingSetTarget==t.workingSetTarget)&&Arrays.equals(algorithms, t.algorithms)&&Arrays.equals(bounds, t.bounds);
+	}
+
+	@Override
+	public int hashCode() {
+		return (Arrays.hashCode(algorithms)*31+Arrays.hashCode(bounds))*31+workingSetTarget;
+	}
+}
@@ -0,0 +1,327 @@
+package mikera.matrixx.algo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.MultiplyTable.Algorithm;
+
+/**
+ * Runtime autotuner for dense matrix multiplication.
+ *
+ * The tuner micro-benchmarks the available multiplication algorithms and working set sizes on
+ * the current machine, and builds a MultiplyTable of crossover points that Multiplications.multiply
+ * then uses to select an algorithm.
+ *
+ * The current table is loaded lazily on first use from a properties file, by default
+ * ~/.vectorz/multiply.properties (overridable with the system property "vectorz.tuning.file").
+ * If no file exists, the untuned default selection in Multiplications is used, unless the
+ * system property "vectorz.autotune" is "true", in which case tuning is run on first use.
+ * Tuning can also be run at any time with tune(), and the table can be inspected or replaced
+ * with getTable() / setTable(...).
+ *
+ * Strassen multiplication is only considered if explicitly requested, since it does not give
+ * results identical to the conventional algorithms.
+ *
+ * @author Mike
+ */
+public final class MultiplyTuner {
+	/**
+	 * System property giving the location of the tuning file
+	 */
+	public static final String FILE_PROPERTY="vectorz.tuning.file";
+
+	/**
+	 * System property which, if "true", causes tuning to be run on first use if no tuning file exists
+	 */
+	public static final String AUTOTUNE_PROPERTY="vectorz.autotune";
+
+	/**
+	 * Largest matrix size benchmarked by tune()
+	 */
+	public static final int DEFAULT_MAX_SIZE=512;
+
+	// matrix sizes benchmarked by the tuner, up to the maximum size
+	private static final int[] SIZES={4,8,16,32,64,128,256,512,1024,2048};
+
+	// candidate working set targets for the blocked algorithms
+	private static final int[] WORKING_SET_TARGETS={2048,4096,8192,16384,32768,65536};
+
+	// minimum time for a single measurement, in nanoseconds
+	private static final long MIN_MEASURE_TIME=20000000L;
+
+	// number of measurements, of which the fastest is used
+	private static final int MEASUREMENTS=3;
+
+	private static volatile MultiplyTable table=null;
+	private static volatile boolean initialised=false;
+	private static volatile File file=null;
+
+	/**
+	 * Gets the current multiply table, loading it from the tuning file on first use.
+	 *
+	 * Returns null if no table is installed, in which case Multiplications uses its default
+	 * algorithm selection.
+	 * @return
+	 */
+	public static MultiplyTable getTable() {
+		if (!initialised) initialise();
+		return table;
+	}
+
+	/**
+	 * Installs a multiply table to be used for algorithm selection. Setting to null restores
+	 * the default algorithm selection.
+	 *
+	 * The table is not persisted: use save() to write it to the tuning file.
+	 * @param newTable
+	 */
+	public static synchronized void setTable(MultiplyTable newTable) {
+		table=newTable;
+		Multiplications.setWorkingSetTarget((newTable==null)?Multiplications.WORKING_SET_TARGET:newTable.getWorkingSetTarget());
+		initialised=true;
+	}
+
+	private static synchronized void initialise() {
+		if (initialised) return;
+		try {
+			File f=getFile();
+			if (f.exists()) {
+				setTable(load(f));
+			} else if (Boolean.parseBoolean(System.getProperty(AUTOTUNE_PROPERTY))) {
+				tune();
+			}
+		} catch (Exception e) {
+			// an unreadable or invalid tuning file should never prevent multiplication,
+			// so fall back to the default algorithm selection
+		} finally {
+			initialised=true;
+		}
+	}
+
+	/**
+	 * Gets the file used to persist the multiply table
+	 * @return
+	 */
+	public static File getFile() {
+		File f=file;
+		if (f!=null) return f;
+		String path=System.getProperty(FILE_PROPERTY);
+		if (path!=null) return new File(path);
+		return new File(new File(System.getProperty("user.home"),".vectorz"),"multiply.properties");
+	}
+
+	/**
+	 * Sets the file used to persist the multiply table. Setting to null restores the default location.
+	 *
+	 * This does not reload the table: use reload() to load from the new file.
+	 * @param newFile
+	 */
+	public static void setFile(File newFile) {
+		file=newFile;
+	}
+
+	/**
+	 * Reloads the multiply table from the tuning file, restoring the default algorithm selection
+	 * if the file does not exist.
+	 * @throws IOException
+	 */
+	public static synchronized void reload() throws IOException {
+		File f=getFile();
+		setTable(f.exists()?load(f):null);
+	}
+
+	/**
+	 * Saves the current multiply table to the tuning file
+	 * @throws IOException
+	 */
+	public static void save() throws IOException {
+		MultiplyTable t=getTable();
+		if (t==null) throw new IllegalStateException("No multiply table installed");
+		save(t,getFile());
+	}
+
+	/**
+	 * Saves a multiply table to a file, creating parent directories if needed
+	 * @param t
+	 * @param f
+	 * @throws IOException
+	 */
+	public static void save(MultiplyTable t, File f) throws IOException {
+		Properties props=new Properties();
+		props.setProperty("table", t.getTableString());
+		props.setProperty("workingSetTarget", Integer.toString(t.getWorkingSetTarget()));
+		props.setProperty("processors", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		File parent=f.getAbsoluteFile().getParentFile();
+		if ((parent!=null)&&!parent.exists()&&!parent.mkdirs()) {
+			throw new IOException("Unable to create directory: "+parent);
+		}
+		OutputStream os=new FileOutputStream(f);
+		try {
+			props.store(os, "Vectorz matrix multiply tuning");
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Loads a multiply table from a file
+	 * @param f
+	 * @return
+	 * @throws IOException
+	 */
+	public static MultiplyTable load(File f) throws IOException {
+		Properties props=new Properties();
+		InputStream is=new FileInputStream(f);
+		try {
+			props.load(is);
+		} finally {
+			is.close();
+		}
+		String t=props.getProperty("table");
+		if (t==null) throw new IOException("No multiply table in file: "+f);
+		String ws=props.getProperty("workingSetTarget", Integer.toString(Multiplications.WORKING_SET_TARGET));
+		try {
+			return MultiplyTable.parse(t, Integer.parseInt(ws.trim()));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid multiply table in file "+f+": "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Runs tuning with the default maximum size, installs the resulting table and attempts to
+	 * persist it to the tuning file. Failure to write the file does not prevent the table from
+	 * being installed.
+	 *
+	 * Tuning typically takes a few seconds.
+	 * @return The new multiply table
+	 */
+	public static MultiplyTable tune() {
+		return tune(DEFAULT_MAX_SIZE,false);
+	}
+
+	/**
+	 * Runs tuning up to the given matrix size, installs the resulting table and attempts to
+	 * persist it to the tuning file.
+	 *
+	 * @param maxSize Largest square matrix size to benchmark
+	 * @param includeStrassen If true, Strassen multiplication is a candidate for large sizes
+	 * @return The new multiply table
+	 */
+	public static synchronized MultiplyTable tune(int maxSize, boolean includeStrassen) {
+		MultiplyTable t=benchmark(maxSize,includeStrassen);
+		setTable(t);
+		try {
+			save(t,getFile());
+		} catch (IOException e) {
+			// table is still used for this session
+		}
+		return t;
+	}
+
+	/**
+	 * Benchmarks the available algorithms up to the given matrix size and returns the resulting
+	 * table, without installing or saving it.
+	 *
+	 * @param maxSize Largest square matrix size to benchmark
+	 * @param includeStrassen If true, Strassen multiplication is a candidate for large sizes
+	 * @return
+	 */
+	public static MultiplyTable benchmark(int maxSize, boolean includeStrassen) {
+		if (maxSize<SIZES[0]) throw new IllegalArgumentException("Maximum tuning size must be at least "+SIZES[0]+", got: "+maxSize);
+		int oldTarget=Multiplications.getWorkingSetTarget();
+		try {
+			int target=tuneWorkingSetTarget(maxSize);
+			Multiplications.setWorkingSetTarget(target);
+
+			List<Algorithm> algorithms=new ArrayList<Algorithm>();
+			List<Long> bounds=new ArrayList<Long>();
+			int lastSize=0;
+			for (int size: SIZES) {
+				if (size>maxSize) break;
+				Algorithm best=fastestAlgorithm(size,includeStrassen);
+				int n=algorithms.size();
+				if ((n==0)||(algorithms.get(n-1)!=best)) {
+					if (n>0) {
+						// crossover at the geometric mean of the adjacent sizes
+						long mid=(long)Math.sqrt(((double)lastSize)*size);
+						long bound=mid*mid*mid;
+						if (bound<=((n>1)?bounds.get(n-2):0L)) bound=((long)size)*size*size;
+						bounds.add(bound);
+					}
+					algorithms.add(best);
+				}
+				lastSize=size;
+			}
+			long[] b=new long[bounds.size()];
+			for (int i=0; i<b.length; i++) {
+				b[i]=bounds.get(i);
+			}
+			return new MultiplyTable(algorithms.toArray(new Algorithm[algorithms.size()]),b,target);
+		} finally {
+			Multiplications.setWorkingSetTarget(oldTarget);
+		}
+	}
+
+	private static int tuneWorkingSetTarget(int maxSize) {
+		int size=Math.min(maxSize, 256);
+		Matrix a=Matrix.createRandom(size, size);
+		Matrix b=Matrix.createRandom(size, size);
+		int best=Multiplications.WORKING_SET_TARGET;
+		double bestTime=Double.MAX_VALUE;
+		for (int target: WORKING_SET_TARGETS) {
+			Multiplications.setWorkingSetTarget(target);
+			double time=measure(Algorithm.BLOCKED,a,b);
+			if (time<bestTime) {
+				bestTime=time;
+				best=target;
+			}
+		}
+		return best;
+	}
+
+	private static Algorithm fastestAlgorithm(int size, boolean includeStrassen) {
+		Matrix a=Matrix.createRandom(size, size);
+		Matrix b=Matrix.createRandom(size, size);
+		Algorithm best=null;
+		double bestTime=Double.MAX_VALUE;
+		for (Algorithm alg: Algorithm.values()) {
+			if ((alg==Algorithm.PARALLEL)&&!Parallel.isParallel()) continue;
+			if ((alg==Algorithm.STRASSEN)&&(!includeStrassen||(size<=StrassenMultiply.getCrossover()))) continue;
+			double time=measure(alg,a,b);
+			if (time<bestTime) {
+				bestTime=time;
+				best=alg;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Measures the time for a single multiplication, in nanoseconds
+	 */
+	private static double measure(Algorithm alg, Matrix a, Matrix b) {
+		// warm up, and estimate the number of repetitions needed
+		long start=System.nanoTime();
+		alg.multiply(a, b);
+		long single=Math.max(1L, System.nanoTime()-start);
+		int reps=(int)Math.max(1L, Math.min(1000000L, MIN_MEASURE_TIME/single));
+
+		double best=Double.MAX_VALUE;
+		for (int m=0; m<MEASUREMENTS; m++) {
+			start=System.nanoTime();
+			for (int i=0; i<reps; i++) {
+				alg.multiply(a, b);
+			}
+			best=Math.min(best, ((double)(System.nanoTime()-start))/reps);
+		}
+		return best;
+	}
+}
@@ -0,0 +1,210 @@
+package mikera.matrixx.algo;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.AStridedMatrix;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Dense matrix multiplication engine using packed panels and a register-tiled micro-kernel,
+ * in the style of GotoBLAS.
+ *
+ * The operands are split into cache-sized blocks. Each block of the first matrix is packed into
+ * contiguous panels of MR rows, each block of the second matrix into panels of NR columns.
+ * A small unrolled kernel then computes MR*NR tiles of the result entirely in local variables,
+ * so each loaded element of the first matrix is reused NR times and vice versa.
+ *
+ * Every result element is still accumulated in order of the inner index, so results are
+ * identical to the other dense multiplication algorithms in Multiplications.
+ *
+ * @author Mike
+ */
+public final class PackedMultiply {
+	// register tile size
+	static final int MR=4;
+	static final int NR=4;
+
+	// cache block sizes: a packed A block (MC*KC) should fit in L2, a packed B block (KC*NC) in L3
+	static final int MC=96;
+	static final int KC=256;
+	static final int NC=2048;
+
+	// per-thread packing buffers, reused between calls to avoid allocation
+	private static final ThreadLocal<double[][]> workspace=new ThreadLocal<double[][]>();
+
+	/**
+	 * Multiplies two matrices using the packed panel algorithm, returning a new Matrix
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static Matrix multiply(AMatrix a, AMatrix b) {
+		int rc=a.rowCount();
+		int cc=b.columnCount();
+		int ic=a.columnCount();
+		if ((ic!=b.rowCount())) {
+			throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(a,b));
+		}
+
+		Matrix result=Matrix.create(rc, cc);
+		if ((ic==0)||(rc==0)||(cc==0)) return result;
+
+		AStridedMatrix sa=(a instanceof AStridedMatrix)?(AStridedMatrix)a:a.toMatrix();
+		AStridedMatrix sb=(b instanceof AStridedMatrix)?(AStridedMatrix)b:b.toMatrix();
+		multiplyAdd(rc,cc,ic,1.0,
+				sa.getArray(),sa.getArrayOffset(),sa.rowStride(),sa.columnStride(),
+				sb.getArray(),sb.getArrayOffset(),sb.rowStride(),sb.columnStride(),
+				result.data,0,cc,1);
+		return result;
+	}
+
+	/**
+	 * Computes C += alpha*A*B for strided operands, where A is m*k, B is k*n and C is m*n.
+	 *
+	 * The destination C must not overlap with either A or B.
+	 */
+	static void multiplyAdd(int m, int n, int k, double alpha,
+			double[] a, int aOffset, int aRowStride, int aColStride,
+			double[] b, int bOffset, int bRowStride, int bColStride,
+			double[] c, int cOffset, int cRowStride, int cColStride) {
+		if ((m==0)||(n==0)||(k==0)) return;
+
+		double[][] ws=getWorkspace(roundUp(Math.min(m, MC),MR)*Math.min(k, KC),roundUp(Math.min(n, NC),NR)*Math.min(k, KC));
+		double[] packA=ws[0];
+		double[] packB=ws[1];
+		double[] tile=ws[2];
+
+		for (int jc=0; jc<n; jc+=NC) {
+			int nc=Math.min(NC, n-jc);
+			for (int pc=0; pc<k; pc+=KC) {
+				int kc=Math.min(KC, k-pc);
+				packB(kc,nc,b,bOffset+pc*bRowStride+jc*bColStride,bRowStride,bColStride,packB);
+
+				for (int ic=0; ic<m; ic+=MC) {
+					int mc=Math.min(MC, m-ic);
+					packA(mc,kc,alpha,a,aOffset+ic*aRowStride+pc*aColStride,aRowStride,aColStride,packA);
+
+					int cBlock=cOffset+ic*cRowStride+jc*cColStride;
+					for (int jr=0; jr<nc; jr+=NR) {
+						int nr=Math.min(NR, nc-jr);
+						int pbi=jr*kc;
+						for (int ir=0; ir<mc; ir+=MR) {
+							int mr=Math.min(MR, mc-ir);
+							int pai=ir*kc;
+							int ci=cBlock+ir*cRowStride+jr*cColStride;
+							if ((mr==MR)&&(nr==NR)) {
+								kernel(kc,packA,pai,packB,pbi,c,ci,cRowStride,cColStride);
+							} else {
+								// partial tile: compute via a temporary full tile
+								for (int i=0; i<MR; i++) {
+									for (int j=0; j<NR; j++) {
+										tile[i*NR+j]=((i<mr)&&(j<nr))?c[ci+i*cRowStride+j*cColStride]:0.0;
+									}
+								}
+								kernel(kc,packA,pai,packB,pbi,tile,0,NR,1);
+								for (int i=0; i<mr; i++) {
+									for (int j=0; j<nr; j++) {
+										c[ci+i*cRowStride+j*cColStride]=tile[i*NR+j];
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static double[][] getWorkspace(int packASize, int packBSize) {
+		double[][] ws=workspace.get();
+		if (ws==null) {
+			ws=new double[][] {new double[packASize],new double[packBSize],new double[MR*NR]};
+			workspace.set(ws);
+		} else {
+			if (ws[0].length<packASize) ws[0]=new double[packASize];
+			if (ws[1].length<packBSize) ws[1]=new double[packBSize];
+		}
+		return ws;
+	}
+
+	private static int roundUp(int x, int multiple) {
+		return ((x+multiple-1)/multiple)*multiple;
+	}
+
+	/**
+	 * Packs an mc*kc block of alpha*A into row panels of height MR, zero-padding the last panel.
+	 * Within each panel, the MR elements for each inner index are contiguous.
+	 */
+	private static void packA(int mc, int kc, double alpha, double[] a, int offset, int rowStride, int colStride, double[] dest) {
+		int di=0;
+		for (int ir=0; ir<mc; ir+=MR) {
+			int mr=Math.min(MR, mc-ir);
+			int panelOffset=offset+ir*rowStride;
+			for (int p=0; p<kc; p++) {
+				int ai=panelOffset+p*colStride;
+				if (alpha==1.0) {
+					for (int i=0; i<mr; i++) {
+						dest[di+i]=a[ai+i*rowStride];
+					}
+				} else {
+					for (int i=0; i<mr; i++) {
+						dest[di+i]=alpha*a[ai+i*rowStride];
+					}
+				}
+				for (int i=mr; i<MR; i++) {
+					dest[di+i]=0.0;
+				}
+				di+=MR;
+			}
+		}
+	}
+
+	/**
+	 * Packs a kc*nc block of B into column panels of width NR, zero-padding the last panel.
+	 * Within each panel, the NR elements for each inner index are contiguous.
+	 */
+	private static void packB(int kc, int nc, double[] b, int offset, int rowStride, int colStride, double[] dest) {
+		int di=0;
+		for (int jr=0; jr<nc; jr+=NR) {
+			int nr=Math.min(NR, nc-jr);
+			int panelOffset=offset+jr*colStride;
+			for (int p=0; p<kc; p++) {
+				int bi=panelOffset+p*rowStride;
+				for (int j=0; j<nr; j++) {
+					dest[di+j]=b[bi+j*colStride];
+				}
+				for (int j=nr; j<NR; j++) {
+					dest[di+j]=0.0;
+				}
+				di+=NR;
+			}
+		}
+	}
+
+	/**
+	 * Micro-kernel: accumulates a 4*4 tile of C from a packed A panel and a packed B panel
+	 */
+	private static void kernel(int kc, double[] pa, int ai, double[] pb, int bi, double[] c, int ci, int rs, int cs) {
+		int ci0=ci, ci1=ci+rs, ci2=ci+2*rs, ci3=ci+3*rs;
+		double c00=c[ci0], c01=c[ci0+cs], c02=c[ci0+2*cs], c03=c[ci0+3*cs];
+		double c10=c[ci1], c11=c[ci1+cs], c12=c[ci1+2*cs], c13=c[ci1+3*cs];
+		double c20=c[ci2], c21=c[ci2+cs], c22=c[ci2+2*cs], c23=c[ci2+3*cs];
+		double c30=c[ci3], c31=c[ci3+cs], c32=c[ci3+2*cs], c33=c[ci3+3*cs];
+
+		for (int p=0; p<kc; p++) {
+			double a0=pa[ai], a1=pa[ai+1], a2=pa[ai+2], a3=pa[ai+3];
+			double b0=pb[bi], b1=pb[bi+1], b2=pb[bi+2], b3=pb[bi+3];
+			c00+=a0*b0; c01+=a0*b1; c02+=a0*b2; c03+=a0*b3;
+			c10+=a1*b0; c11+=a1*b1; c12+=a1*b2; c13+=a1*b3;
+			c20+=a2*b0; c21+=a2*b1; c22+=a2*b2; c23+=a2*b3;
+			c30+=a3*b0; c31+=a3*b1; c32+=a3*b2; c33+=a3*b3;
+			ai+=MR;
+			bi+=NR;
+		}
+
+		c[ci0]=c00; c[ci0+cs]=c01; c[ci0+2*cs]=c02; c[ci0+3*cs]=c03;
+		c[ci1]=c10; c[ci1+cs]=c11; c[ci1+2*cs]=c12; c[ci1+3*cs]=c13;
+		c[ci2]=c20; c[ci2+cs]=c21; c[ci2+2*cs]=c22; c[ci2+3*cs]=c23;
+		c[ci3]=c30; c[ci3+cs]=c31; c[ci3+2*cs]=c32; c[ci3+3*cs]=c33;
+	}
+}
@@ -0,0 +1,134 @@
+package mikera.matrixx.algo;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shared configuration for parallel (fork-join) matrix algorithms.
+ *
+ * All parallel algorithms in Vectorz submit their work to the pool returned by getForkJoinPool().
+ * By default this is a lazily created pool with one worker per available processor, but a user
+ * supplied pool can be installed with setForkJoinPool(...)
+ *
+ * @author Mike
+ */
+public final class Parallel {
+
+	/**
+	 * Default minimum number of operations processed by a single parallel task
+	 */
+	public static final long MIN_TASK_OPS=1L<<18;
+
+	// number of parallel tasks to aim for per worker thread, allows for load balancing
+	private static final int TASKS_PER_THREAD=4;
+
+	private static volatile ForkJoinPool pool=null;
+
+	/**
+	 * Gets the ForkJoinPool used for parallel matrix operations
+	 * @return
+	 */
+	public static ForkJoinPool getForkJoinPool() {
+		ForkJoinPool p=pool;
+		if (p==null) {
+			synchronized (Parallel.class) {
+				p=pool;
+				if (p==null) {
+					p=new ForkJoinPool();
+					pool=p;
+				}
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Sets the ForkJoinPool used for parallel matrix operations.
+	 *
+	 * Setting to null restores the default pool.
+	 * @param newPool
+	 */
+	public static void setForkJoinPool(ForkJoinPool newPool) {
+		pool=newPool;
+	}
+
+	/**
+	 * Returns the number of worker threads available for parallel matrix operations
+	 * @return
+	 */
+	public static int getParallelism() {
+		return getForkJoinPool().getParallelism();
+	}
+
+	/**
+	 * Returns true if parallel execution is worthwhile, i.e. more than one worker thread
+	 * is available in the current pool
+	 * @return
+	 */
+	public static boolean isParallel() {
+		return getParallelism()>1;
+	}
+
+	/**
+	 * Returns the number of tasks that parallel work should be divided into, allowing several
+	 * tasks per worker thread for load balancing
+	 * @return
+	 */
+	public static int getTaskCount() {
+		return getParallelism()*TASKS_PER_THREAD;
+	}
+
+	/**
+	 * Returns true if a job of the given number of operations should be split into parallel tasks,
+	 * i.e. it is above the parallel threshold in Multiplications, there is enough work for at least
+	 * two tasks of MIN_TASK_OPS, and more than one worker thread is available
+	 * @param ops
+	 * @return
+	 */
+	public static boolean shouldSplit(long ops) {
+		return shouldSplit(ops,MIN_TASK_OPS);
+	}
+
+	/**
+	 * Returns true if a job of the given number of operations should be split into parallel tasks
+	 * of at least minTaskOps operations each
+	 * @param ops
+	 * @param minTaskOps
+	 * @return
+	 */
+	public static boolean shouldSplit(long ops, long minTaskOps) {
+		return (ops>=Multiplications.getParallelThreshold())&&canSplit(ops,minTaskOps);
+	}
+
+	/**
+	 * Returns true if a job of the given number of operations can be split into parallel tasks of
+	 * at least minTaskOps operations each. Unlike shouldSplit, ignores the parallel threshold, so
+	 * is intended for operations where the caller has explicitly requested parallel execution.
+	 * @param ops
+	 * @param minTaskOps
+	 * @return
+	 */
+	public static boolean canSplit(long ops, long minTaskOps) {
+		return (ops>=2*minTaskOps)&&isParallel();
+	}
+
+	/**
+	 * Returns the number of operations below which a parallel task should compute directly
+	 * rather than splitting further
+	 * @param ops Total number of operations in the job
+	 * @return
+	 */
+	public static long leafSize(long ops) {
+		return leafSize(ops,MIN_TASK_OPS);
+	}
+
+	/**
+	 * Returns the number of operations below which a parallel task should compute directly
+	 * rather than splitting further, which is never less than minTaskOps
+	 * @param ops Total number of operations in the job
+	 * @param minTaskOps
+	 * @return
+	 */
+	public static long leafSize(long ops, long minTaskOps) {
+		return Math.max(minTaskOps, ops/getTaskCount());
+	}
+}
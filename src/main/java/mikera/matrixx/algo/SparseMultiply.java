@@ -0,0 +1,361 @@
+package mikera.matrixx.algo;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Sparse-sparse matrix multiplication (SpGEMM) using Gustavson's row-wise algorithm.
+ *
+ * Each row of the result is the sum of the rows of B selected by the non-zero elements of the
+ * corresponding row of A. The rows are accumulated in either a dense accumulator (an array the
+ * width of the result) or, for rows with few multiply-adds relative to the result width, a small
+ * open-addressed hash table.
+ *
+ * A symbolic pass first counts the entries of each result row, so that the output CSR arrays can
+ * be allocated exactly. A numeric pass then computes the values. Both passes can be split between
+ * parallel tasks over blocks of rows balanced by the number of multiply-adds.
+ *
+ * Operands are converted to CSRMatrix if necessary. No dense temporaries of the full result are
+ * created.
+ *
+ * @author Mike
+ */
+public final class SparseMultiply {
+	// rows where (multiply-adds * HASH_RATIO) is below the result width use a hashed accumulator
+	private static final int HASH_RATIO=16;
+
+	// minimum number of multiply-adds processed by a single parallel task
+	private static final long MIN_TASK_OPS=65536;
+
+	/**
+	 * Multiplies two sparse matrices, returning a new CSRMatrix. Work is done in parallel if the
+	 * number of multiply-adds is above the parallel threshold in Multiplications.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static CSRMatrix multiply(AMatrix a, AMatrix b) {
+		CSRMatrix ca=toCSR(a);
+		CSRMatrix cb=toCSR(b);
+		return multiply(ca,cb,rowOps(ca,cb));
+	}
+
+	/**
+	 * Multiplies two sparse matrices, returning a new CSRMatrix, optionally splitting work between
+	 * parallel tasks.
+	 * @param a
+	 * @param b
+	 * @param parallel
+	 * @return
+	 */
+	public static CSRMatrix multiply(AMatrix a, AMatrix b, boolean parallel) {
+		CSRMatrix ca=toCSR(a);
+		CSRMatrix cb=toCSR(b);
+		return multiply(ca,cb,rowOps(ca,cb),parallel);
+	}
+
+	private static CSRMatrix multiply(CSRMatrix a, CSRMatrix b, long[] opsPrefix) {
+		boolean parallel=(opsPrefix[a.rowCount()]>=Multiplications.getParallelThreshold());
+		return multiply(a,b,opsPrefix,parallel);
+	}
+
+	private static CSRMatrix multiply(CSRMatrix a, CSRMatrix b, long[] opsPrefix, boolean parallel) {
+		int m=a.rowCount();
+		int n=b.columnCount();
+		int[] cPtr=new int[m+1];
+		Product p=new Product(a,b,opsPrefix,cPtr);
+
+		parallel=parallel&&(m>1)&&Parallel.canSplit(opsPrefix[m],MIN_TASK_OPS);
+		long leafOps=Parallel.leafSize(opsPrefix[m],MIN_TASK_OPS);
+
+		// symbolic pass: count entries in each result row
+		if (parallel) {
+			Parallel.getForkJoinPool().invoke(new ProductTask(p,false,0,m,leafOps));
+		} else {
+			p.compute(false,0,m);
+		}
+		for (int i=0; i<m; i++) {
+			cPtr[i+1]+=cPtr[i];
+		}
+		int nnz=cPtr[m];
+		p.cIdx=new int[nnz];
+		p.cValues=new double[nnz];
+
+		// numeric pass
+		if (parallel) {
+			Parallel.getForkJoinPool().invoke(new ProductTask(p,true,0,m,leafOps));
+		} else {
+			p.compute(true,0,m);
+		}
+		return CSRMatrix.wrap(m, n, cPtr, p.cIdx, p.cValues);
+	}
+
+	private static CSRMatrix toCSR(AMatrix m) {
+		if (m instanceof CSRMatrix) return (CSRMatrix)m;
+		return CSRMatrix.create(m);
+	}
+
+	/**
+	 * Computes the prefix sum of the number of multiply-adds needed for each row of the result
+	 */
+	private static long[] rowOps(CSRMatrix a, CSRMatrix b) {
+		if (a.columnCount()!=b.rowCount()) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(a,b));
+		int m=a.rowCount();
+		int[] aPtr=a.getRowPointers();
+		int[] aIdx=a.getColumnIndices();
+		int[] bPtr=b.getRowPointers();
+		long[] prefix=new long[m+1];
+		for (int i=0; i<m; i++) {
+			long ops=0;
+			for (int p=aPtr[i]; p<aPtr[i+1]; p++) {
+				int k=aIdx[p];
+				ops+=bPtr[k+1]-bPtr[k];
+			}
+			prefix[i+1]=prefix[i]+ops;
+		}
+		return prefix;
+	}
+
+	/**
+	 * State shared by all tasks computing a single product
+	 */
+	private static final class Product {
+		final int[] aPtr,aIdx,bPtr,bIdx;
+		final double[] aValues,bValues;
+		final int n;
+		final long[] opsPrefix;
+		final int[] cPtr;
+		int[] cIdx;
+		double[] cValues;
+
+		Product(CSRMatrix a, CSRMatrix b, long[] opsPrefix, int[] cPtr) {
+			this.aPtr=a.getRowPointers();
+			this.aIdx=a.getColumnIndices();
+			this.aValues=a.getValues();
+			this.bPtr=b.getRowPointers();
+			this.bIdx=b.getColumnIndices();
+			this.bValues=b.getValues();
+			this.n=b.columnCount();
+			this.opsPrefix=opsPrefix;
+			this.cPtr=cPtr;
+		}
+
+		/**
+		 * Runs the symbolic or numeric pass for rows [rowStart,rowEnd) with a private accumulator
+		 */
+		void compute(boolean numeric, int rowStart, int rowEnd) {
+			Accumulator acc=new Accumulator(n);
+			for (int i=rowStart; i<rowEnd; i++) {
+				long ops=opsPrefix[i+1]-opsPrefix[i];
+				if (ops==0) continue;
+				boolean hashed=(ops*HASH_RATIO<n);
+				if (numeric) {
+					if (hashed) {
+						numericHashed(acc,i,(int)ops);
+					} else {
+						numericDense(acc,i);
+					}
+				} else {
+					cPtr[i+1]=hashed?symbolicHashed(acc,i,(int)ops):symbolicDense(acc,i);
+				}
+			}
+		}
+
+		private int symbolicDense(Accumulator acc, int i) {
+			int[] marker=acc.marker();
+			int stamp=acc.nextStamp();
+			int count=0;
+			for (int p=aPtr[i]; p<aPtr[i+1]; p++) {
+				int k=aIdx[p];
+				for (int q=bPtr[k]; q<bPtr[k+1]; q++) {
+					int j=bIdx[q];
+					if (marker[j]!=stamp) {
+						marker[j]=stamp;
+						count++;
+					}
+				}
+			}
+			return count;
+		}
+
+		private void numericDense(Accumulator acc, int i) {
+			int[] marker=acc.marker();
+			double[] values=acc.values();
+			int stamp=acc.nextStamp();
+			int start=cPtr[i];
+			int pos=start;
+			for (int p=aPtr[i]; p<aPtr[i+1]; p++) {
+				int k=aIdx[p];
+				double av=aValues[p];
+				for (int q=bPtr[k]; q<bPtr[k+1]; q++) {
+					int j=bIdx[q];
+					if (marker[j]!=stamp) {
+						marker[j]=stamp;
+						values[j]=av*bValues[q];
+						cIdx[pos++]=j;
+					} else {
+						values[j]+=av*bValues[q];
+					}
+				}
+			}
+			Arrays.sort(cIdx, start, pos);
+			for (int p=start; p<pos; p++) {
+				cValues[p]=values[cIdx[p]];
+			}
+		}
+
+		private int symbolicHashed(Accumulator acc, int i, int ops) {
+			int mask=acc.clearHash(ops);
+			int shift=Integer.numberOfLeadingZeros(mask);
+			int[] keys=acc.hashKeys;
+			int count=0;
+			for (int p=aPtr[i]; p<aPtr[i+1]; p++) {
+				int k=aIdx[p];
+				for (int q=bPtr[k]; q<bPtr[k+1]; q++) {
+					int j=bIdx[q];
+					int h=hash(j,shift);
+					while ((keys[h]!=j)&&(keys[h]!=-1)) {
+						h=(h+1)&mask;
+					}
+					if (keys[h]==-1) {
+						keys[h]=j;
+						count++;
+					}
+				}
+			}
+			return count;
+		}
+
+		private void numericHashed(Accumulator acc, int i, int ops) {
+			int mask=acc.clearHash(ops);
+			int shift=Integer.numberOfLeadingZeros(mask);
+			int[] keys=acc.hashKeys;
+			double[] hvalues=acc.hashValues;
+			int start=cPtr[i];
+			int pos=start;
+			for (int p=aPtr[i]; p<aPtr[i+1]; p++) {
+				int k=aIdx[p];
+				double av=aValues[p];
+				for (int q=bPtr[k]; q<bPtr[k+1]; q++) {
+					int j=bIdx[q];
+					int h=hash(j,shift);
+					while ((keys[h]!=j)&&(keys[h]!=-1)) {
+						h=(h+1)&mask;
+					}
+					if (keys[h]==-1) {
+						keys[h]=j;
+						hvalues[h]=av*bValues[q];
+						cIdx[pos++]=j;
+					} else {
+						hvalues[h]+=av*bValues[q];
+					}
+				}
+			}
+			Arrays.sort(cIdx, start, pos);
+			for (int p=start; p<pos; p++) {
+				int j=cIdx[p];
+				int h=hash(j,shift);
+				while (keys[h]!=j) {
+					h=(h+1)&mask;
+				}
+				cValues[p]=hvalues[h];
+			}
+		}
+
+		/**
+		 * Gets the ideal slot for a column index in a table of size 2^(32-shift), using the high
+		 * bits of a multiplicative hash. The low bits are no good, since they are all zero for
+		 * column indices that are multiples of a power of two.
+		 */
+		private static int hash(int j, int shift) {
+			return (j*0x9E3779B9)>>>shift;
+		}
+	}
+
+	/**
+	 * Per-task accumulator storage, allocated lazily
+	 */
+	private static final class Accumulator {
+		private final int n;
+		private int[] marker;
+		private double[] values;
+		private int stamp=0;
+		int[] hashKeys;
+		double[] hashValues;
+
+		Accumulator(int n) {
+			this.n=n;
+		}
+
+		int[] marker() {
+			if (marker==null) {
+				marker=new int[n];
+				Arrays.fill(marker, -1);
+			}
+			return marker;
+		}
+
+		double[] values() {
+			if (values==null) values=new double[n];
+			return values;
+		}
+
+		int nextStamp() {
+			if (stamp==Integer.MAX_VALUE) {
+				Arrays.fill(marker, -1);
+				stamp=0;
+			}
+			return stamp++;
+		}
+
+		/**
+		 * Clears a hash table with capacity for the given number of insertions, returning the index mask
+		 */
+		int clearHash(int ops) {
+			int size=Integer.highestOneBit(Math.max(ops, 4)*2-1)<<1;
+			if ((hashKeys==null)||(hashKeys.length<size)) {
+				hashKeys=new int[size];
+				hashValues=new double[size];
+			}
+			Arrays.fill(hashKeys, 0, size, -1);
+			return size-1;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class ProductTask extends RecursiveAction {
+		private final Product p;
+		private final boolean numeric;
+		private final int rowStart,rowEnd;
+		private final long leafOps;
+
+		ProductTask(Product p, boolean numeric, int rowStart, int rowEnd, long leafOps) {
+			this.p=p;
+			this.numeric=numeric;
+			this.rowStart=rowStart;
+			this.rowEnd=rowEnd;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			long[] prefix=p.opsPrefix;
+			long ops=prefix[rowEnd]-prefix[rowStart];
+			if ((ops<=leafOps)||(rowEnd-rowStart<=1)) {
+				p.compute(numeric,rowStart,rowEnd);
+				return;
+			}
+			// split so that each half has roughly the same number of multiply-adds
+			long half=prefix[rowStart]+ops/2;
+			int split=Arrays.binarySearch(prefix, rowStart, rowEnd+1, half);
+			if (split<0) split=-split-1;
+			split=Math.max(rowStart+1, Math.min(rowEnd-1, split));
+			invokeAll(new ProductTask(p,numeric,rowStart,split,leafOps),
+					  new ProductTask(p,numeric,split,rowEnd,leafOps));
+		}
+	}
+}
@@ -0,0 +1,438 @@
+package mikera.matrixx.algo;
+
+import java.util.Arrays;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.impl.BandedMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.PermutationMatrix;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Fill-reducing and bandwidth-reducing orderings for sparse symmetric matrices.
+ *
+ * Orderings are returned as permutation arrays perm, where perm[k] is the original index placed at
+ * position k. The permuted matrix has elements B(k,l) = A(perm[k],perm[l]), i.e. B = P.A.P^T where
+ * P is PermutationMatrix.wrap(perm).
+ *
+ * Only the sparsity pattern is used, and it is symmetrised, so either a full symmetric matrix or
+ * just one of its triangles can be given.
+ *
+ * @author Mike
+ *
+ */
+public class SparseOrdering {
+
+	/**
+	 * Computes an approximate minimum degree (AMD) ordering, which reduces the fill-in of a
+	 * subsequent Cholesky or LU factorisation.
+	 *
+	 * Eliminates variables in order of approximate external degree, using a quotient graph so that
+	 * memory use stays proportional to the number of non-zeros. Degrees are upper bounds computed
+	 * as in Amestoy, Davis and Duff's AMD, with aggressive element absorption. Supervariable
+	 * detection is not performed.
+	 */
+	public static int[] approximateMinimumDegree(AMatrix a) {
+		return approximateMinimumDegree(toCSR(a));
+	}
+
+	/**
+	 * Computes an approximate minimum degree (AMD) ordering of a sparse matrix in CSR form.
+	 */
+	public static int[] approximateMinimumDegree(CSRMatrix a) {
+		int n=a.checkSquare();
+		int[][] adj=symmetricAdjacency(a);
+		int[] adjLen=new int[n];
+		for (int i=0; i<n; i++) {
+			adjLen[i]=adj[i].length;
+		}
+
+		// quotient graph: elements are identified by their pivot variable
+		int[][] elems=new int[n][];
+		int[] elemsLen=new int[n];
+		int[][] elemVars=new int[n][];
+		int[] elemVarsLen=new int[n];
+		boolean[] eliminated=new boolean[n];
+		boolean[] absorbed=new boolean[n];
+		for (int i=0; i<n; i++) {
+			elems[i]=new int[4];
+		}
+
+		// degree buckets as doubly linked lists
+		int[] degree=new int[n];
+		int[] head=new int[n];
+		int[] next=new int[n];
+		int[] prev=new int[n];
+		Arrays.fill(head, -1);
+		for (int i=0; i<n; i++) {
+			degree[i]=adjLen[i];
+			insert(i,degree,head,next,prev);
+		}
+
+		int[] mark=new int[n];
+		int[] wMark=new int[n];
+		int[] w=new int[n];
+		Arrays.fill(mark, -1);
+		Arrays.fill(wMark, -1);
+		int[] lp=new int[n];
+		int[] perm=new int[n];
+		int minDegree=0;
+
+		for (int k=0; k<n; k++) {
+			while (head[minDegree]==-1) minDegree++;
+			int p=head[minDegree];
+			remove(p,degree,head,next,prev);
+			perm[k]=p;
+			eliminated[p]=true;
+
+			// form the new element Lp from the variables and elements adjacent to p
+			mark[p]=k;
+			int lpLen=0;
+			int[] ap=adj[p];
+			for (int t=0; t<adjLen[p]; t++) {
+				int j=ap[t];
+				if (eliminated[j]||(mark[j]==k)) continue;
+				mark[j]=k;
+				lp[lpLen++]=j;
+			}
+			int[] ep=elems[p];
+			for (int t=0; t<elemsLen[p]; t++) {
+				int e=ep[t];
+				if (absorbed[e]) continue;
+				int[] le=elemVars[e];
+				for (int s=0; s<elemVarsLen[e]; s++) {
+					int j=le[s];
+					if (eliminated[j]||(mark[j]==k)) continue;
+					mark[j]=k;
+					lp[lpLen++]=j;
+				}
+				absorbed[e]=true;
+				elemVars[e]=null;
+			}
+			elemVars[p]=Arrays.copyOf(lp, lpLen);
+			elemVarsLen[p]=lpLen;
+			adj[p]=null;
+			elems[p]=null;
+
+			// compute |Le \ Lp| for all other elements adjacent to Lp
+			for (int t=0; t<lpLen; t++) {
+				int i=lp[t];
+				int[] ei=elems[i];
+				for (int s=0; s<elemsLen[i]; s++) {
+					int e=ei[s];
+					if (absorbed[e]) continue;
+					if (wMark[e]!=k) {
+						wMark[e]=k;
+						w[e]=elemVarsLen[e];
+					}
+					w[e]--;
+				}
+			}
+
+			// update the variables in Lp
+			int maxDegree=n-k-2;
+			for (int t=0; t<lpLen; t++) {
+				int i=lp[t];
+				remove(i,degree,head,next,prev);
+				int d=lpLen-1;
+
+				// prune absorbed elements, and absorb elements that are subsets of Lp
+				int[] ei=elems[i];
+				int len=0;
+				for (int s=0; s<elemsLen[i]; s++) {
+					int e=ei[s];
+					if (absorbed[e]) continue;
+					if (w[e]==0) {
+						absorbed[e]=true;
+						elemVars[e]=null;
+						continue;
+					}
+					d+=w[e];
+					ei[len++]=e;
+				}
+				if (len==ei.length) ei=elems[i]=Arrays.copyOf(ei, len*2);
+				ei[len++]=p;
+				elemsLen[i]=len;
+
+				// prune variables now covered by the new element
+				int[] ai=adj[i];
+				len=0;
+				for (int s=0; s<adjLen[i]; s++) {
+					int j=ai[s];
+					if (eliminated[j]||(mark[j]==k)) continue;
+					ai[len++]=j;
+				}
+				adjLen[i]=len;
+				d+=len;
+
+				d=Math.max(0, Math.min(d, maxDegree));
+				degree[i]=d;
+				insert(i,degree,head,next,prev);
+				if (d<minDegree) minDegree=d;
+			}
+		}
+		return perm;
+	}
+
+	/**
+	 * Computes a reverse Cuthill-McKee (RCM) ordering, which reduces the bandwidth and profile of a
+	 * sparse matrix.
+	 *
+	 * Each connected component is numbered by a breadth first search from a pseudo-peripheral node
+	 * (found with the George-Liu algorithm), visiting neighbours in order of increasing degree. The
+	 * final ordering is reversed, which gives the same bandwidth but usually a smaller profile.
+	 */
+	public static int[] reverseCuthillMcKee(AMatrix a) {
+		return reverseCuthillMcKee(toCSR(a));
+	}
+
+	/**
+	 * Computes a reverse Cuthill-McKee (RCM) ordering of a sparse matrix in CSR form.
+	 */
+	public static int[] reverseCuthillMcKee(CSRMatrix a) {
+		int n=a.checkSquare();
+		int[][] adj=symmetricAdjacency(a);
+		boolean[] done=new boolean[n];
+		int[] mark=new int[n];
+		Arrays.fill(mark, -1);
+		int[] queue=new int[n];
+		int[] levelStart=new int[n+1];
+		long[] keys=new long[n];
+		int[] perm=new int[n];
+		int k=0;
+		int stamp=0;
+
+		for (int seed=0; seed<n; seed++) {
+			if (done[seed]) continue;
+
+			// George-Liu search for a pseudo-peripheral node in this component
+			int root=seed;
+			int levels=rootedLevels(root,adj,done,mark,stamp++,queue,levelStart);
+			while (true) {
+				int best=-1;
+				for (int q=levelStart[levels-1]; q<levelStart[levels]; q++) {
+					int v=queue[q];
+					if ((best<0)||(adj[v].length<adj[best].length)) best=v;
+				}
+				int bestLevels=rootedLevels(best,adj,done,mark,stamp++,queue,levelStart);
+				if (bestLevels<=levels) break;
+				root=best;
+				levels=bestLevels;
+			}
+
+			// Cuthill-McKee numbering of the component
+			int head=k;
+			perm[k++]=root;
+			done[root]=true;
+			while (head<k) {
+				int v=perm[head++];
+				int[] av=adj[v];
+				int count=0;
+				for (int t=0; t<av.length; t++) {
+					int u=av[t];
+					if (done[u]) continue;
+					done[u]=true;
+					keys[count++]=(((long)adj[u].length)<<32)|u;
+				}
+				Arrays.sort(keys, 0, count);
+				for (int t=0; t<count; t++) {
+					perm[k++]=(int)keys[t];
+				}
+			}
+		}
+
+		// reverse the ordering
+		for (int i=0, j=n-1; i<j; i++, j--) {
+			int t=perm[i];
+			perm[i]=perm[j];
+			perm[j]=t;
+		}
+		return perm;
+	}
+
+	/**
+	 * Builds the rooted level structure of the component containing root, ignoring nodes that are
+	 * already done. Nodes are placed in queue in level order, with level l at positions
+	 * levelStart[l] to levelStart[l+1]-1.
+	 *
+	 * @return The number of levels
+	 */
+	private static int rootedLevels(int root, int[][] adj, boolean[] done, int[] mark, int stamp, int[] queue, int[] levelStart) {
+		int tail=0;
+		queue[tail++]=root;
+		mark[root]=stamp;
+		int levels=0;
+		int head=0;
+		while (head<tail) {
+			levelStart[levels++]=head;
+			int end=tail;
+			for (; head<end; head++) {
+				int[] av=adj[queue[head]];
+				for (int t=0; t<av.length; t++) {
+					int u=av[t];
+					if (done[u]||(mark[u]==stamp)) continue;
+					mark[u]=stamp;
+					queue[tail++]=u;
+				}
+			}
+		}
+		levelStart[levels]=tail;
+		return levels;
+	}
+
+	/**
+	 * Computes the lower bandwidth of the matrix P.A.P^T, where the permutation is given as an
+	 * array such that perm[k] is the original index placed at position k. Takes time proportional
+	 * to the number of non-zeros. Use a null permutation for A itself.
+	 */
+	public static int lowerBandwidth(CSRMatrix a, int[] perm) {
+		return bandwidth(a,perm,true);
+	}
+
+	/**
+	 * Computes the upper bandwidth of the matrix P.A.P^T. Use a null permutation for A itself.
+	 */
+	public static int upperBandwidth(CSRMatrix a, int[] perm) {
+		return bandwidth(a,perm,false);
+	}
+
+	private static int bandwidth(CSRMatrix a, int[] perm, boolean lower) {
+		int n=a.rowCount();
+		int[] pinv=(perm==null)?null:invert(perm);
+		int[] rowPtr=a.getRowPointers();
+		int[] colIdx=a.getColumnIndices();
+		double[] values=a.getValues();
+		int result=0;
+		for (int i=0; i<n; i++) {
+			int pi=(pinv==null)?i:pinv[i];
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				if (values[p]==0.0) continue;
+				int j=colIdx[p];
+				int pj=(pinv==null)?j:pinv[j];
+				int w=lower?(pi-pj):(pj-pi);
+				if (w>result) result=w;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reorders a sparse matrix with reverse Cuthill-McKee, and stores the result as a BandedMatrix.
+	 *
+	 * Operations on the returned banded matrix take time proportional to n times the bandwidth,
+	 * rather than working over general sparse structures.
+	 */
+	public static BandedOrderingResult toBanded(AMatrix a) {
+		CSRMatrix c=toCSR(a);
+		int[] perm=reverseCuthillMcKee(c);
+		return toBanded(c,perm);
+	}
+
+	/**
+	 * Applies a symmetric permutation to a sparse matrix, and stores the result as a BandedMatrix.
+	 */
+	public static BandedOrderingResult toBanded(CSRMatrix a, int[] perm) {
+		int n=a.checkSquare();
+		if (perm.length!=n) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(n, perm.length));
+		int lower=lowerBandwidth(a,perm);
+		int upper=upperBandwidth(a,perm);
+		BandedMatrix banded=BandedMatrix.create(n, n, -lower, upper);
+		int[] pinv=invert(perm);
+		int[] rowPtr=a.getRowPointers();
+		int[] colIdx=a.getColumnIndices();
+		double[] values=a.getValues();
+		for (int i=0; i<n; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				double v=values[p];
+				if (v==0.0) continue;
+				banded.unsafeSet(pinv[i], pinv[colIdx[p]], v);
+			}
+		}
+		int before=Math.max(lowerBandwidth(a,null), upperBandwidth(a,null));
+		return new BandedOrderingResult(PermutationMatrix.create(perm),banded,before,Math.max(lower, upper));
+	}
+
+	private static void insert(int i, int[] degree, int[] head, int[] next, int[] prev) {
+		int d=degree[i];
+		int h=head[d];
+		next[i]=h;
+		prev[i]=-1;
+		if (h!=-1) prev[h]=i;
+		head[d]=i;
+	}
+
+	private static void remove(int i, int[] degree, int[] head, int[] next, int[] prev) {
+		int nx=next[i];
+		int pv=prev[i];
+		if (nx!=-1) prev[nx]=pv;
+		if (pv!=-1) {
+			next[pv]=nx;
+		} else {
+			head[degree[i]]=nx;
+		}
+	}
+
+	/**
+	 * Builds the adjacency lists of the symmetrised pattern of A, excluding the diagonal
+	 */
+	static int[][] symmetricAdjacency(CSRMatrix a) {
+		int n=a.rowCount();
+		int[] rowPtr=a.getRowPointers();
+		int[] colIdx=a.getColumnIndices();
+		int[] count=new int[n];
+		for (int i=0; i<n; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				int j=colIdx[p];
+				if (i==j) continue;
+				count[i]++;
+				count[j]++;
+			}
+		}
+		int[][] adj=new int[n][];
+		for (int i=0; i<n; i++) {
+			adj[i]=new int[count[i]];
+		}
+		Arrays.fill(count, 0);
+		for (int i=0; i<n; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				int j=colIdx[p];
+				if (i==j) continue;
+				adj[i][count[i]++]=j;
+				adj[j][count[j]++]=i;
+			}
+		}
+
+		// remove duplicates from entries present in both triangles
+		int[] mark=new int[n];
+		Arrays.fill(mark, -1);
+		for (int i=0; i<n; i++) {
+			int[] ai=adj[i];
+			int len=0;
+			for (int t=0; t<ai.length; t++) {
+				int j=ai[t];
+				if (mark[j]==i) continue;
+				mark[j]=i;
+				ai[len++]=j;
+			}
+			if (len<ai.length) adj[i]=Arrays.copyOf(ai, len);
+		}
+		return adj;
+	}
+
+	/**
+	 * Computes the inverse of a permutation, such that pinv[perm[k]]=k
+	 */
+	public static int[] invert(int[] perm) {
+		int n=perm.length;
+		int[] pinv=new int[n];
+		for (int k=0; k<n; k++) {
+			pinv[perm[k]]=k;
+		}
+		return pinv;
+	}
+
+	static CSRMatrix toCSR(AMatrix a) {
+		if (a instanceof CSRMatrix) return (CSRMatrix)a;
+		return CSRMatrix.create(a);
+	}
+}
@@ -0,0 +1,211 @@
+package mikera.matrixx.algo;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.impl.ASparseRCMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseColumnMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.impl.ADenseArrayVector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Sparse matrix-vector products (SpMV) that write into a destination vector, optionally in parallel.
+ *
+ * Each result element is the dot product of one stored line (a row of a SparseRowMatrix or
+ * CSRMatrix, or a column of a SparseColumnMatrix for the transposed product) with the source.
+ * For parallel execution, lines are split into contiguous blocks with roughly equal numbers of
+ * non-zero elements rather than equal numbers of lines, so that a few very long lines (as in
+ * power-law graphs) do not leave worker threads idle. Tasks find their split points by binary
+ * search on prefix sums of line weights, which are the row pointers for a CSRMatrix and are cached
+ * by the matrix otherwise, so no serial pass over the lines is needed for repeated products.
+ *
+ * Results are identical whether computed serially or in parallel.
+ *
+ * @author Mike
+ */
+public final class SparseTransforms {
+	// minimum number of non-zero elements processed by a single parallel task
+	private static final long MIN_TASK_ELEMENTS=32768;
+
+	/**
+	 * Computes dest = m.source, in parallel if the number of non-zero elements is above the
+	 * parallel threshold in Multiplications.
+	 */
+	public static void transform(SparseRowMatrix m, AVector source, AVector dest) {
+		transform(m,source,dest,Parallel.isParallel());
+	}
+
+	/**
+	 * Computes dest = m.source, optionally splitting rows between parallel tasks
+	 */
+	public static void transform(SparseRowMatrix m, AVector source, AVector dest, boolean parallel) {
+		if (source.length()!=m.columnCount()) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(source));
+		if (dest.length()!=m.rowCount()) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dest));
+		lineProducts(m,m.rowCount(),source,dest,parallel);
+	}
+
+	/**
+	 * Computes the transposed product dest = m^T.source, in parallel if the number of non-zero
+	 * elements is above the parallel threshold in Multiplications.
+	 */
+	public static void transposeTransform(SparseColumnMatrix m, AVector source, AVector dest) {
+		transposeTransform(m,source,dest,Parallel.isParallel());
+	}
+
+	/**
+	 * Computes the transposed product dest = m^T.source, optionally splitting columns between parallel tasks
+	 */
+	public static void transposeTransform(SparseColumnMatrix m, AVector source, AVector dest, boolean parallel) {
+		if (source.length()!=m.rowCount()) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(source));
+		if (dest.length()!=m.columnCount()) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dest));
+		lineProducts(m,m.columnCount(),source,dest,parallel);
+	}
+
+	/**
+	 * Computes dest = m.source for a CSRMatrix, in parallel if the number of non-zero elements is
+	 * above the parallel threshold in Multiplications.
+	 */
+	public static void transform(CSRMatrix m, AVector source, AVector dest) {
+		transform(m,source,dest,Parallel.isParallel());
+	}
+
+	/**
+	 * Computes dest = m.source for a CSRMatrix, optionally splitting rows between parallel tasks
+	 */
+	public static void transform(CSRMatrix m, AVector source, AVector dest, boolean parallel) {
+		int rc=m.rowCount();
+		if (source.length()!=m.columnCount()) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(source));
+		if (dest.length()!=rc) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dest));
+		Operands ops=new Operands(source,dest);
+
+		// row pointers are already a prefix sum of non-zero counts, so rowPtr[i]+i weights each
+		// row by its non-zero count plus one for the row itself
+		int[] rowPtr=m.getRowPointers();
+		long elements=((long)rowPtr[rc])+rc;
+		if (parallel&&(rc>1)&&Parallel.shouldSplit(elements,MIN_TASK_ELEMENTS)) {
+			Parallel.getForkJoinPool().invoke(new LineTask(null,null,m,ops,0,rc,Parallel.leafSize(elements,MIN_TASK_ELEMENTS)));
+		} else {
+			m.transform(ops.src,ops.srcOffset,ops.dst,ops.dstOffset,0,rc);
+		}
+		ops.finish(dest);
+	}
+
+	private static void lineProducts(ASparseRCMatrix m, int n, AVector source, AVector dest, boolean parallel) {
+		Operands ops=new Operands(source,dest);
+		if (parallel&&(n>1)&&Parallel.isParallel()) {
+			// cached by the matrix, so only computed once for repeated products
+			long[] prefix=m.getLineWeightPrefix();
+			long elements=prefix[n];
+			if (Parallel.shouldSplit(elements,MIN_TASK_ELEMENTS)) {
+				Parallel.getForkJoinPool().invoke(new LineTask(m,prefix,null,ops,0,n,Parallel.leafSize(elements,MIN_TASK_ELEMENTS)));
+				ops.finish(dest);
+				return;
+			}
+		}
+		computeLines(m,ops,0,n);
+		ops.finish(dest);
+	}
+
+	private static void computeLines(ASparseRCMatrix m, Operands ops, int start, int end) {
+		double[] src=ops.src;
+		int srcOffset=ops.srcOffset;
+		double[] dst=ops.dst;
+		int dstOffset=ops.dstOffset;
+		for (int i=start; i<end; i++) {
+			AVector line=m.unsafeGetVector(i);
+			dst[dstOffset+i]=(line==null)?0.0:line.dotProduct(src, srcOffset);
+		}
+	}
+
+	/**
+	 * Source and destination arrays for a product. A temporary destination array is used if
+	 * the destination is not a dense array vector, and the source is copied if it is not a
+	 * dense array vector or is the same as the destination.
+	 */
+	private static final class Operands {
+		final double[] src;
+		final int srcOffset;
+		final double[] dst;
+		final int dstOffset;
+		final boolean tempDest;
+
+		Operands(AVector source, AVector dest) {
+			if ((source instanceof ADenseArrayVector)&&(source!=dest)) {
+				ADenseArrayVector s=(ADenseArrayVector)source;
+				src=s.getArray();
+				srcOffset=s.getArrayOffset();
+			} else {
+				src=source.toDoubleArray();
+				srcOffset=0;
+			}
+			if (dest instanceof ADenseArrayVector) {
+				ADenseArrayVector d=(ADenseArrayVector)dest;
+				dst=d.getArray();
+				dstOffset=d.getArrayOffset();
+				tempDest=false;
+			} else {
+				dst=new double[dest.length()];
+				dstOffset=0;
+				tempDest=true;
+			}
+		}
+
+		void finish(AVector dest) {
+			if (tempDest) dest.setElements(dst, 0);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class LineTask extends RecursiveAction {
+		private final ASparseRCMatrix lines;
+		private final long[] prefix;
+		private final CSRMatrix csr;
+		private final Operands ops;
+		private final int start,end;
+		private final long leafElements;
+
+		LineTask(ASparseRCMatrix lines, long[] prefix, CSRMatrix csr, Operands ops, int start, int end, long leafElements) {
+			this.lines=lines;
+			this.prefix=prefix;
+			this.csr=csr;
+			this.ops=ops;
+			this.start=start;
+			this.end=end;
+			this.leafElements=leafElements;
+		}
+
+		/**
+		 * Total weight of the lines before line i
+		 */
+		private long boundary(int i) {
+			return (csr!=null)?((long)csr.getRowPointers()[i])+i:prefix[i];
+		}
+
+		@Override
+		protected void compute() {
+			long base=boundary(start);
+			long elements=boundary(end)-base;
+			if ((elements<=leafElements)||(end-start<=1)) {
+				if (csr!=null) {
+					csr.transform(ops.src,ops.srcOffset,ops.dst,ops.dstOffset,start,end);
+				} else {
+					computeLines(lines,ops,start,end);
+				}
+				return;
+			}
+			// binary search for the first line boundary at or beyond half of the elements, so that
+			// each half has roughly the same number of non-zero elements
+			long target=base+elements/2;
+			int lo=start, hi=end;
+			while (lo<hi) {
+				int mid=(lo+hi)>>>1;
+				if (boundary(mid)<target) lo=mid+1; else hi=mid;
+			}
+			int split=Math.max(start+1, Math.min(end-1, lo));
+			invokeAll(new LineTask(lines,prefix,csr,ops,start,split,leafElements),
+					  new LineTask(lines,prefix,csr,ops,split,end,leafElements));
+		}
+	}
+}
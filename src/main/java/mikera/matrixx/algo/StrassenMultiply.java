@@ -0,0 +1,226 @@
+package mikera.matrixx.algo;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.AStridedMatrix;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Matrix multiplication using the Strassen-Winograd algorithm, which needs 7 rather than 8
+ * quadrant multiplications at each level of recursion, for O(n^2.81) work overall.
+ *
+ * Each level splits the operands into quadrants in the same way as QuadtreeMatrix, using strided
+ * submatrix views so that no quadrant is copied. Recursion stops at a crossover size, below which
+ * the packed dense kernel is used. Odd dimensions are handled by peeling off the last row / column
+ * and fixing up with thin dense multiplies.
+ *
+ * Strassen-Winograd is not as numerically stable as conventional multiplication: the error bound
+ * is normwise rather than elementwise, and grows by a constant factor with each level of recursion.
+ *
+ * @author Mike
+ */
+public final class StrassenMultiply {
+	/**
+	 * Default crossover size, below which the dense kernel is used
+	 */
+	public static final int DEFAULT_CROSSOVER=512;
+
+	private static volatile int crossover=DEFAULT_CROSSOVER;
+
+	/**
+	 * Gets the current crossover size. Any recursion where the smallest dimension is at or
+	 * below this size uses the dense kernel.
+	 * @return
+	 */
+	public static int getCrossover() {
+		return crossover;
+	}
+
+	/**
+	 * Sets the crossover size, below which the dense kernel is used.
+	 * @param size
+	 */
+	public static void setCrossover(int size) {
+		if (size<1) throw new IllegalArgumentException("Crossover must be at least 1, got: "+size);
+		crossover=size;
+	}
+
+	/**
+	 * Multiplies two matrices using the Strassen-Winograd algorithm, returning a new Matrix
+	 */
+	public static Matrix multiply(AMatrix a, AMatrix b) {
+		return multiply(a,b,crossover,false);
+	}
+
+	/**
+	 * Multiplies two matrices using the Strassen-Winograd algorithm, computing the seven
+	 * sub-products of each level of recursion in parallel.
+	 */
+	public static Matrix parallelMultiply(AMatrix a, AMatrix b) {
+		return multiply(a,b,crossover,true);
+	}
+
+	/**
+	 * Multiplies two matrices using the Strassen-Winograd algorithm with a specified crossover size
+	 */
+	public static Matrix multiply(AMatrix a, AMatrix b, int crossover, boolean parallel) {
+		int rc=a.rowCount();
+		int cc=b.columnCount();
+		int ic=a.columnCount();
+		if ((ic!=b.rowCount())) {
+			throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(a,b));
+		}
+		if (crossover<1) throw new IllegalArgumentException("Crossover must be at least 1, got: "+crossover);
+
+		Matrix result=Matrix.create(rc, cc);
+		if ((ic==0)||(rc==0)||(cc==0)) return result;
+
+		AStridedMatrix sa=(a instanceof AStridedMatrix)?(AStridedMatrix)a:a.toMatrix();
+		AStridedMatrix sb=(b instanceof AStridedMatrix)?(AStridedMatrix)b:b.toMatrix();
+		if (parallel&&Parallel.isParallel()) {
+			Parallel.getForkJoinPool().invoke(new ProductTask(sa,sb,result,crossover));
+		} else {
+			multiply(sa,sb,result,crossover,false);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes C = A*B recursively. C must not share storage with A or B.
+	 */
+	private static void multiply(AStridedMatrix a, AStridedMatrix b, AStridedMatrix c, int crossover, boolean parallel) {
+		int m=a.rowCount();
+		int k=a.columnCount();
+		int n=b.columnCount();
+		if (Math.min(m, Math.min(k, n))<=crossover) {
+			Multiplications.gemm(1.0, a, false, b, false, 0.0, c);
+			return;
+		}
+
+		// quadrant sizes for the even part of each dimension
+		int mh=m/2;
+		int kh=k/2;
+		int nh=n/2;
+
+		AStridedMatrix a11=a.subMatrix(0, mh, 0, kh);
+		AStridedMatrix a12=a.subMatrix(0, mh, kh, kh);
+		AStridedMatrix a21=a.subMatrix(mh, mh, 0, kh);
+		AStridedMatrix a22=a.subMatrix(mh, mh, kh, kh);
+		AStridedMatrix b11=b.subMatrix(0, kh, 0, nh);
+		AStridedMatrix b12=b.subMatrix(0, kh, nh, nh);
+		AStridedMatrix b21=b.subMatrix(kh, kh, 0, nh);
+		AStridedMatrix b22=b.subMatrix(kh, kh, nh, nh);
+
+		Matrix s1=combine(a21,a22,1.0);
+		Matrix s2=combine(s1,a11,-1.0);
+		Matrix s3=combine(a11,a21,-1.0);
+		Matrix s4=combine(a12,s2,-1.0);
+		Matrix t1=combine(b12,b11,-1.0);
+		Matrix t2=combine(b22,t1,-1.0);
+		Matrix t3=combine(b22,b12,-1.0);
+		Matrix t4=combine(t2,b21,-1.0);
+
+		Matrix p1=Matrix.create(mh, nh);
+		Matrix p2=Matrix.create(mh, nh);
+		Matrix p3=Matrix.create(mh, nh);
+		Matrix p4=Matrix.create(mh, nh);
+		Matrix p5=Matrix.create(mh, nh);
+		Matrix p6=Matrix.create(mh, nh);
+		Matrix p7=Matrix.create(mh, nh);
+
+		if (parallel) {
+			RecursiveAction.invokeAll(
+					new ProductTask(a11,b11,p1,crossover),
+					new ProductTask(a12,b21,p2,crossover),
+					new ProductTask(s4,b22,p3,crossover),
+					new ProductTask(a22,t4,p4,crossover),
+					new ProductTask(s1,t1,p5,crossover),
+					new ProductTask(s2,t2,p6,crossover),
+					new ProductTask(s3,t3,p7,crossover));
+		} else {
+			multiply(a11,b11,p1,crossover,false);
+			multiply(a12,b21,p2,crossover,false);
+			multiply(s4,b22,p3,crossover,false);
+			multiply(a22,t4,p4,crossover,false);
+			multiply(s1,t1,p5,crossover,false);
+			multiply(s2,t2,p6,crossover,false);
+			multiply(s3,t3,p7,crossover,false);
+		}
+
+		// combine products into result quadrants. u2, u3 are accumulated in place in p6, p7
+		combine(p1,p2,1.0,c.subMatrix(0, mh, 0, nh));
+		p6.add(p1); // U2 = P1 + P6
+		p7.add(p6); // U3 = U2 + P7
+		p6.add(p5); // U4 = U2 + P5
+		combine(p6,p3,1.0,c.subMatrix(0, mh, nh, nh));
+		combine(p7,p4,-1.0,c.subMatrix(mh, mh, 0, nh));
+		combine(p7,p5,1.0,c.subMatrix(mh, mh, nh, nh));
+
+		// fix up odd dimensions by peeling off the last row / column
+		int me=2*mh;
+		int ke=2*kh;
+		int ne=2*nh;
+		if (k>ke) {
+			Multiplications.gemm(1.0, a.subMatrix(0, me, ke, 1), false, b.subMatrix(ke, 1, 0, ne), false, 1.0, c.subMatrix(0, me, 0, ne));
+		}
+		if (n>ne) {
+			Multiplications.gemm(1.0, a.subMatrix(0, me, 0, k), false, b.subMatrix(0, k, ne, 1), false, 0.0, c.subMatrix(0, me, ne, 1));
+		}
+		if (m>me) {
+			Multiplications.gemm(1.0, a.subMatrix(me, 1, 0, k), false, b, false, 0.0, c.subMatrix(me, 1, 0, n));
+		}
+	}
+
+	/**
+	 * Returns a new Matrix equal to x + factor*y
+	 */
+	private static Matrix combine(AStridedMatrix x, AStridedMatrix y, double factor) {
+		Matrix r=Matrix.create(x.rowCount(), x.columnCount());
+		combine(x,y,factor,r);
+		return r;
+	}
+
+	/**
+	 * Sets dest to x + factor*y
+	 */
+	private static void combine(AStridedMatrix x, AStridedMatrix y, double factor, AStridedMatrix dest) {
+		int rc=x.rowCount();
+		int cc=x.columnCount();
+		double[] xd=x.getArray();
+		double[] yd=y.getArray();
+		double[] dd=dest.getArray();
+		int xrs=x.rowStride(), xcs=x.columnStride();
+		int yrs=y.rowStride(), ycs=y.columnStride();
+		int drs=dest.rowStride(), dcs=dest.columnStride();
+		for (int i=0; i<rc; i++) {
+			int xi=x.getArrayOffset()+i*xrs;
+			int yi=y.getArrayOffset()+i*yrs;
+			int di=dest.getArrayOffset()+i*drs;
+			for (int j=0; j<cc; j++) {
+				dd[di+j*dcs]=xd[xi+j*xcs]+factor*yd[yi+j*ycs];
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class ProductTask extends RecursiveAction {
+		private final AStridedMatrix a;
+		private final AStridedMatrix b;
+		private final AStridedMatrix c;
+		private final int crossover;
+
+		ProductTask(AStridedMatrix a, AStridedMatrix b, AStridedMatrix c, int crossover) {
+			this.a=a;
+			this.b=b;
+			this.c=c;
+			this.crossover=crossover;
+		}
+
+		@Override
+		protected void compute() {
+			multiply(a,b,c,crossover,true);
+		}
+	}
+}
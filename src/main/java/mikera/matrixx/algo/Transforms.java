@@ -0,0 +1,264 @@
+package mikera.matrixx.algo;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.Matrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Matrix-vector transform algorithms for dense matrices.
+ *
+ * A single matrix-vector product reads every element of the matrix once for only one multiply-add,
+ * so for large matrices it is limited by memory bandwidth. Two strategies are provided:
+ * <ul>
+ * <li>Batched transforms of many vectors, where a block of source vectors is packed into a working
+ * set and each row of the matrix is applied to the whole block while it is in cache, so the matrix
+ * is streamed from memory once per block rather than once per vector</li>
+ * <li>Parallel transforms of a single vector, where contiguous ranges of rows are computed by
+ * separate tasks on the shared ForkJoinPool</li>
+ * </ul>
+ *
+ * Every result element is accumulated in column order, so results are identical to Matrix.transform
+ *
+ * @author Mike
+ */
+public final class Transforms {
+	// target number of source vector elements in the packed working set
+	private static final int WORKING_SET_TARGET=32768;
+
+	// number of source vectors handled together in the inner kernel
+	private static final int VR=4;
+
+	// minimum number of matrix elements processed by a single parallel task
+	private static final int MIN_TASK_ELEMENTS=65536;
+
+	/**
+	 * Transforms each of the source vectors by a matrix, returning an array of new Vectors
+	 * @param m
+	 * @param sources
+	 * @return
+	 */
+	public static Vector[] transform(Matrix m, AVector[] sources) {
+		int n=sources.length;
+		Vector[] dests=new Vector[n];
+		for (int i=0; i<n; i++) {
+			dests[i]=Vector.createLength(m.rowCount());
+		}
+		transform(m,sources,dests,false);
+		return dests;
+	}
+
+	/**
+	 * Transforms each of the source vectors by a matrix, storing the results in the corresponding
+	 * destination vectors.
+	 *
+	 * Destination vectors must not be the same as any of the source vectors.
+	 *
+	 * @param m
+	 * @param sources
+	 * @param dests
+	 */
+	public static void transform(Matrix m, AVector[] sources, AVector[] dests) {
+		transform(m,sources,dests,false);
+	}
+
+	/**
+	 * Transforms each of the source vectors by a matrix, storing the results in the corresponding
+	 * destination vectors, optionally splitting the rows of the matrix between parallel tasks.
+	 *
+	 * Destination vectors must not be the same as any of the source vectors.
+	 *
+	 * @param m
+	 * @param sources
+	 * @param dests
+	 * @param parallel
+	 */
+	public static void transform(Matrix m, AVector[] sources, AVector[] dests, boolean parallel) {
+		int rc=m.rowCount();
+		int cc=m.columnCount();
+		int n=sources.length;
+		if (dests.length!=n) throw new IllegalArgumentException("Mismatched number of source and destination vectors: "+n+" and "+dests.length);
+		for (int v=0; v<n; v++) {
+			if (sources[v].length()!=cc) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(sources[v]));
+			if (dests[v].length()!=rc) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dests[v]));
+		}
+		if ((n==0)||(rc==0)) return;
+
+		// number of source vectors in each packed block, a multiple of VR
+		int block=Math.max(VR, ((WORKING_SET_TARGET/Math.max(cc, 1))/VR)*VR);
+		double[] ws=new double[Math.min(block, n)*cc];
+		double[] results=new double[Math.min(block, n)*rc];
+		boolean par=parallel&&Parallel.canSplit(((long)rc)*cc*Math.min(block, n),MIN_TASK_ELEMENTS);
+
+		for (int v0=0; v0<n; v0+=block) {
+			int bsize=Math.min(block, n-v0);
+			for (int t=0; t<bsize; t++) {
+				sources[v0+t].getElements(ws, t*cc);
+			}
+			if (par) {
+				int leafRows=leafRows(rc,((long)cc)*bsize);
+				Parallel.getForkJoinPool().invoke(new BatchTask(m,ws,bsize,results,0,rc,leafRows));
+			} else {
+				transformBlock(m,ws,bsize,results,0,rc);
+			}
+			for (int t=0; t<bsize; t++) {
+				dests[v0+t].setElements(results, t*rc);
+			}
+		}
+	}
+
+	/**
+	 * Computes rows [rowStart,rowEnd) of the transforms of a packed block of source vectors.
+	 * Result t for row i is stored in results[t*rowCount+i].
+	 */
+	private static void transformBlock(Matrix m, double[] ws, int bsize, double[] results, int rowStart, int rowEnd) {
+		int rc=m.rowCount();
+		int cc=m.columnCount();
+		double[] data=m.data;
+		for (int i=rowStart; i<rowEnd; i++) {
+			int di=i*cc;
+			int t=0;
+			for (; t+VR<=bsize; t+=VR) {
+				int s0=t*cc, s1=s0+cc, s2=s1+cc, s3=s2+cc;
+				double r0=0.0, r1=0.0, r2=0.0, r3=0.0;
+				for (int j=0; j<cc; j++) {
+					double x=data[di+j];
+					r0+=x*ws[s0+j];
+					r1+=x*ws[s1+j];
+					r2+=x*ws[s2+j];
+					r3+=x*ws[s3+j];
+				}
+				results[t*rc+i]=r0;
+				results[(t+1)*rc+i]=r1;
+				results[(t+2)*rc+i]=r2;
+				results[(t+3)*rc+i]=r3;
+			}
+			for (; t<bsize; t++) {
+				int s=t*cc;
+				double r=0.0;
+				for (int j=0; j<cc; j++) {
+					r+=data[di+j]*ws[s+j];
+				}
+				results[t*rc+i]=r;
+			}
+		}
+	}
+
+	/**
+	 * Transforms a vector by a matrix, splitting the rows of the matrix between parallel tasks.
+	 *
+	 * Falls back to a serial transform if the matrix is too small to benefit, or only one worker
+	 * thread is available.
+	 *
+	 * @param m
+	 * @param source
+	 * @param dest
+	 */
+	public static void parallelTransform(Matrix m, Vector source, Vector dest) {
+		int rc=m.rowCount();
+		int cc=m.columnCount();
+		if (source.length()!=cc) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(source));
+		if (dest.length()!=rc) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dest));
+		if (source==dest) {
+			// rows must all see the original source values
+			source=source.clone();
+		}
+
+		double[] src=source.getArray();
+		double[] dst=dest.getArray();
+		if (!Parallel.canSplit(((long)rc)*cc,MIN_TASK_ELEMENTS)) {
+			transformRows(m,src,dst,0,rc);
+		} else {
+			Parallel.getForkJoinPool().invoke(new RowTask(m,src,dst,0,rc,leafRows(rc,cc)));
+		}
+	}
+
+	/**
+	 * Computes rows [rowStart,rowEnd) of a single matrix-vector product
+	 */
+	private static void transformRows(Matrix m, double[] src, double[] dst, int rowStart, int rowEnd) {
+		int cc=m.columnCount();
+		double[] data=m.data;
+		int di=rowStart*cc;
+		for (int row=rowStart; row<rowEnd; row++) {
+			double total=0.0;
+			for (int column=0; column<cc; column++) {
+				total+=data[di+column]*src[column];
+			}
+			di+=cc;
+			dst[row]=total;
+		}
+	}
+
+	/**
+	 * Gets the number of rows below which a parallel task computes directly rather than splitting,
+	 * given the work per row
+	 */
+	private static int leafRows(int rc, long rowWork) {
+		int tasks=Parallel.getTaskCount();
+		int rowsForMinWork=(int)Math.min(rc, (MIN_TASK_ELEMENTS+rowWork-1)/Math.max(rowWork, 1));
+		return Math.max(1, Math.max(rowsForMinWork, rc/tasks));
+	}
+
+	@SuppressWarnings("serial")
+	private static final class RowTask extends RecursiveAction {
+		private final Matrix m;
+		private final double[] src;
+		private final double[] dst;
+		private final int rowStart,rowEnd,leafRows;
+
+		RowTask(Matrix m, double[] src, double[] dst, int rowStart, int rowEnd, int leafRows) {
+			this.m=m;
+			this.src=src;
+			this.dst=dst;
+			this.rowStart=rowStart;
+			this.rowEnd=rowEnd;
+			this.leafRows=leafRows;
+		}
+
+		@Override
+		protected void compute() {
+			int rows=rowEnd-rowStart;
+			if (rows<=leafRows) {
+				transformRows(m,src,dst,rowStart,rowEnd);
+				return;
+			}
+			int split=rowStart+(rows/2);
+			invokeAll(new RowTask(m,src,dst,rowStart,split,leafRows),
+					  new RowTask(m,src,dst,split,rowEnd,leafRows));
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class BatchTask extends RecursiveAction {
+		private final Matrix m;
+		private final double[] ws;
+		private final int bsize;
+		private final double[] results;
+		private final int rowStart,rowEnd,leafRows;
+
+		BatchTask(Matrix m, double[] ws, int bsize, double[] results, int rowStart, int rowEnd, int leafRows) {
+			this.m=m;
+			this.ws=ws;
+			this.bsize=bsize;
+			this.results=results;
+			this.rowStart=rowStart;
+			this.rowEnd=rowEnd;
+			this.leafRows=leafRows;
+		}
+
+		@Override
+		protected void compute() {
+			int rows=rowEnd-rowStart;
+			if (rows<=leafRows) {
+				transformBlock(m,ws,bsize,results,rowStart,rowEnd);
+				return;
+			}
+			int split=rowStart+(rows/2);
+			invokeAll(new BatchTask(m,ws,bsize,results,rowStart,split,leafRows),
+					  new BatchTask(m,ws,bsize,results,split,rowEnd,leafRows));
+		}
+	}
+}
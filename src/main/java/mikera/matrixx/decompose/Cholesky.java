@@ -1,6 +1,7 @@
 package mikera.matrixx.decompose;
 
 import mikera.matrixx.AMatrix;
+import mikera.matrixx.decompose.impl.chol.BlockedCholesky;
 
 /**
  * Class implementing Cholesky decomposition
@@ -17,15 +18,19 @@ import mikera.matrixx.AMatrix;
  *
  */
 public class Cholesky {
-	// TODO: refactor to use best available Cholesky decomposition algorithm for different matrix types and sizes
 	
 	/**
 	 * Decompose a Matrix according the the Cholesky decomposition A = L.L*
 	 * 
+	 * Large matrices use a blocked algorithm, which is computed in parallel where worthwhile.
+	 * 
 	 * @param a Any symmetric, positive definite matrix
 	 * @return The decomposition result, or null if not possible
 	 */
 	public static final ICholeskyResult decompose(AMatrix a) {
+		if (a.rowCount()>=BlockedCholesky.BLOCK_THRESHOLD) {
+			return BlockedCholesky.decompose(a);
+		}
 		return mikera.matrixx.decompose.impl.chol.Cholesky.decompose(a);
 	}
 }
@@ -2,6 +2,8 @@ package mikera.matrixx.decompose;
 
 import mikera.matrixx.AMatrix;
 import mikera.matrixx.decompose.impl.eigen.SymmetricQRAlgorithmDecomposition;
+import mikera.matrixx.decompose.impl.eigen.ThickRestartLanczos;
+import mikera.vectorz.AVector;
 
 public class Eigen {
     
@@ -57,4 +59,37 @@ public class Eigen {
     public static IEigenResult decomposeSymmetric(AMatrix A) {
         return decomposeSymmetric(A, true);
     }
+
+    /**
+     * <p>
+     * Computes k of the smallest or largest eigenvalues and their eigenvectors of a real symmetric matrix,
+     * using the thick-restart Lanczos method. The matrix is only accessed through transform, so this
+     * is suitable for large sparse matrices. Eigenvalues are returned with the most extreme first.
+     * Returns null if the decomposition fails to converge.
+     * </p>
+     * @param A The input matrix. It must be a square symmetric matrix.
+     * @param k The number of eigenpairs to compute.
+     * @param largest If true computes the largest eigenvalues, otherwise the smallest.
+     * @return an IEigenResult object containing the k requested eigenpairs.
+     */
+    public static IEigenResult decomposeSymmetric(AMatrix A, int k, boolean largest) {
+        return new ThickRestartLanczos(k, largest).decompose(A);
+    }
+    /**
+     * <p>
+     * Computes k of the smallest or largest eigenvalues and their eigenvectors of a real symmetric matrix,
+     * warm started from the given vectors, e.g. the eigenvectors of a previous similar matrix.
+     * Returns null if the decomposition fails to converge.
+     * </p>
+     * @param A The input matrix. It must be a square symmetric matrix.
+     * @param k The number of eigenpairs to compute.
+     * @param largest If true computes the largest eigenvalues, otherwise the smallest.
+     * @param initialVectors Approximate eigenvectors used to start the iteration.
+     * @return an IEigenResult object containing the k requested eigenpairs.
+     */
+    public static IEigenResult decomposeSymmetric(AMatrix A, int k, boolean largest, AVector... initialVectors) {
+        ThickRestartLanczos alg = new ThickRestartLanczos(k, largest);
+        alg.setInitialVectors(initialVectors);
+        return alg.decompose(A);
+    }
 }
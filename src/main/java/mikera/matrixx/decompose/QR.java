@@ -22,7 +22,9 @@
 package mikera.matrixx.decompose;
 
 import mikera.matrixx.AMatrix;
+import mikera.matrixx.decompose.impl.qr.BlockedHouseholderQR;
 import mikera.matrixx.decompose.impl.qr.HouseholderQR;
+import mikera.matrixx.decompose.impl.qr.QRDecomposition;
 
 /**
  * Public API class for QR decomposition
@@ -56,8 +58,7 @@ public class QR {
      * @return
      */
     public static IQRResult decompose(AMatrix matrix) {
-        HouseholderQR alg = new HouseholderQR(false);
-        return alg.decompose(matrix);	
+        return decompose(matrix, false);
     }
     /**
      * Computes the QR factorisation of a matrix A such that:
@@ -75,8 +76,7 @@ public class QR {
      * @return
      */
     public static IQRResult decompose(AMatrix matrix, boolean compact) {
-        HouseholderQR alg = new HouseholderQR(compact);
-        return alg.decompose(matrix);	
+        return createDecomposition(matrix, compact).decompose(matrix);
     }
     
 	/**
@@ -95,8 +95,19 @@ public class QR {
 	 * @return
 	 */
 	public static IQRResult decomposeCompact(AMatrix matrix) {
-		HouseholderQR alg = new HouseholderQR(true);
-		return alg.decompose(matrix);	
+		return decompose(matrix, true);
+	}
+
+	/**
+	 * Chooses a QR algorithm for the given matrix. Large matrices use the blocked
+	 * compact WY algorithm, which applies reflectors as matrix-matrix products.
+	 */
+	private static QRDecomposition createDecomposition(AMatrix matrix, boolean compact) {
+		int minLength=Math.min(matrix.rowCount(), matrix.columnCount());
+		if (minLength>=BlockedHouseholderQR.BLOCK_THRESHOLD) {
+			return new BlockedHouseholderQR(compact);
+		}
+		return new HouseholderQR(compact);
 	}
 	
 }
@@ -4,6 +4,7 @@ import mikera.matrixx.AMatrix;
 import mikera.matrixx.decompose.ISVDResult;
 
 
+import mikera.matrixx.decompose.impl.svd.RandomizedSVD;
 import mikera.matrixx.decompose.impl.svd.SvdImplicitQr;
 
 /**
@@ -69,4 +70,21 @@ public class SVD {
 		return SvdImplicitQr.decompose(A, true);
 	}
 
+	/**
+	 * Computes a truncated Singular Value Decomposition containing only the k largest singular
+	 * values, using a randomized range finder:
+	 * A ~= U*S*V,
+	 * where U is m by k, S is k by k, and V is n by k, with singular values in descending order.
+	 * 
+	 * This is much faster than a full decomposition when k is small relative to the size of A,
+	 * and works with sparse matrices without densifying them.
+	 * 
+	 * @param A
+	 * @param k The number of singular values to compute
+	 * @return
+	 */
+	public static ISVDResult decomposeTruncated(AMatrix A, int k) {
+		return RandomizedSVD.decompose(A, k);
+	}
+
 }
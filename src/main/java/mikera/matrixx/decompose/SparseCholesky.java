@@ -0,0 +1,62 @@
+package mikera.matrixx.decompose;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.decompose.impl.chol.SparseCholeskyResult;
+import mikera.matrixx.impl.CSRMatrix;
+
+/**
+ * Class implementing sparse Cholesky decomposition
+ *
+ *    P.A.P^T = L.L*
+ *
+ * Where: A  is a sparse symmetric, positive-definite matrix
+ * and:   P  is a fill-reducing permutation (approximate minimum degree)
+ * and:   L  is a sparse lower triangular matrix
+ *
+ * Unlike Cholesky.decompose, the matrix is never densified, so this is suitable for very large
+ * sparse systems. To factorise several matrices with the same sparsity pattern, call analyse once
+ * and then factor on the returned object for each matrix.
+ *
+ * The result's getFactorL and getFactorU return the factors of P.A.P^T. getL and getU satisfy
+ * L.L* = A as for any ICholeskyResult, which requires a natural order factorisation if P is not
+ * the identity. That costs a second factorisation with far more fill-in: on a 450x450 2D Poisson
+ * grid (202500 unknowns) the natural order L has 91M non-zeros, against 7.6M with the ordering.
+ * Prefer getFactorL / getFactorU and solve, and use decompose(a,false) to avoid retaining A in
+ * the result when getL and getU are not needed.
+ *
+ * @author Mike
+ *
+ */
+public class SparseCholesky {
+
+	/**
+	 * Decompose a sparse matrix according to the Cholesky decomposition P.A.P^T = L.L*
+	 *
+	 * @param a Any symmetric, positive definite matrix. Only the lower triangle is read.
+	 * @return The decomposition result, or null if not possible
+	 */
+	public static final SparseCholeskyResult decompose(AMatrix a) {
+		return decompose(a,true);
+	}
+
+	/**
+	 * Decompose a sparse matrix according to the Cholesky decomposition P.A.P^T = L.L*
+	 *
+	 * @param a Any symmetric, positive definite matrix. Only the lower triangle is read.
+	 * @param keepSource Whether the result retains A, which getL and getU need if P is not the identity
+	 * @return The decomposition result, or null if not possible
+	 */
+	public static final SparseCholeskyResult decompose(AMatrix a, boolean keepSource) {
+		// convert once, rather than in both analysis and factorisation
+		CSRMatrix c=(a instanceof CSRMatrix)?(CSRMatrix)a:CSRMatrix.create(a);
+		return analyse(c).factor(c,keepSource);
+	}
+
+	/**
+	 * Performs the symbolic analysis of a sparse symmetric matrix, which can be reused for
+	 * numeric factorisations of any matrix with the same sparsity pattern.
+	 */
+	public static final mikera.matrixx.decompose.impl.chol.SparseCholesky analyse(AMatrix a) {
+		return mikera.matrixx.decompose.impl.chol.SparseCholesky.analyse(a);
+	}
+}
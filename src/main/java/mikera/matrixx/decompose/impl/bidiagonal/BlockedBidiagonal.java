@@ -0,0 +1,515 @@
+package mikera.matrixx.decompose.impl.bidiagonal;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.decompose.IBidiagonalResult;
+import mikera.matrixx.decompose.impl.qr.BlockedHouseholderQR;
+import mikera.matrixx.impl.AStridedMatrix;
+
+/**
+ * Blocked reduction to upper bidiagonal form A = U.B.V^T, in the style of LAPACK dgebrd / dlabrd.
+ *
+ * Rows and columns are eliminated in panels of BLOCK_SIZE. Within a panel, each pair of left and
+ * right Householder reflectors is computed from a lazily updated row and column, and the effect
+ * of the panel's reflectors on the rest of the matrix is accumulated in two thin matrices X and Y
+ * (Dongarra, Sorensen and Hammarling, 1989). The trailing matrix is then updated once per panel
+ *
+ *    A22 = A22 - U.Y^T - X.V
+ *
+ * with two matrix multiplies, where the columns of U and the rows of V are the panel's left and
+ * right reflectors. Half of the work is still the matrix-vector products needed to
+ * compute X and Y. U and V are formed with compact WY block reflectors.
+ *
+ * Above the parallel threshold in Multiplications, the matrix-vector products and the trailing
+ * update are split between tasks on the shared ForkJoinPool.
+ *
+ * On a single thread this is slower than BidiagonalRow for small matrices, and only slightly
+ * faster above BLOCK_THRESHOLD, since the JIT compiled rank-1 updates of the unblocked algorithm
+ * are nearly as fast as the gemm kernel. It is therefore not used by the Bidiagonal API, and is
+ * only used by SvdImplicitQr if requested. See SVDBenchmark.
+ *
+ * Reflectors use the same convention as BidiagonalRow, so the results agree to rounding error.
+ *
+ * @author Mike
+ *
+ */
+public class BlockedBidiagonal {
+	/**
+	 * Number of rows and columns eliminated in each panel
+	 */
+	public static final int BLOCK_SIZE=32;
+
+	/**
+	 * Minimum size of the smaller dimension for which the blocked algorithm is worthwhile. Measured
+	 * crossover with BidiagonalRow on a single thread is between 256 and 384.
+	 */
+	public static final int BLOCK_THRESHOLD=12*BLOCK_SIZE;
+
+	/**
+	 * Computes the decomposition of the provided matrix.
+	 *
+	 * @param A The matrix that is being decomposed. Not modified.
+	 * @return an IBidiagonalResult object
+	 */
+	public static IBidiagonalResult decompose(AMatrix A) {
+		return decompose(A,false);
+	}
+
+	/**
+	 * Computes the decomposition of the provided matrix.
+	 *
+	 * @param A The matrix that is being decomposed. Not modified.
+	 * @param compact if true, result matrices have zero-filled regions trimmed off.
+	 * @return an IBidiagonalResult object
+	 */
+	public static IBidiagonalResult decompose(AMatrix A, boolean compact) {
+		return decompose(A,compact,BLOCK_SIZE,true);
+	}
+
+	/**
+	 * Computes the decomposition of the provided matrix.
+	 *
+	 * @param A The matrix that is being decomposed. Not modified.
+	 * @param compact if true, result matrices have zero-filled regions trimmed off.
+	 * @param blockSize Number of rows and columns eliminated in each panel
+	 * @param parallel If true, work is done in parallel above the parallel threshold
+	 * @return an IBidiagonalResult object
+	 */
+	public static IBidiagonalResult decompose(AMatrix A, boolean compact, int blockSize, boolean parallel) {
+		if (blockSize<1) throw new IllegalArgumentException("Invalid block size: "+blockSize);
+		Matrix ubv=Matrix.create(A);
+		int m=ubv.rowCount();
+		int n=ubv.columnCount();
+		int min=Math.min(m, n);
+		double[] gammasU=new double[min];
+		double[] gammasV=new double[min];
+		double[] diag=new double[min];
+		double[] off=new double[min];
+
+		for (int p0=0; p0<min; p0+=blockSize) {
+			int p1=Math.min(p0+blockSize, min);
+			reducePanel(ubv,p0,p1,gammasU,gammasV,diag,off,parallel);
+		}
+
+		int w=(n>m)?min+1:min;
+		Matrix B=compact?Matrix.create(min, w):Matrix.create(m, n);
+		for (int i=0; i<min; i++) {
+			B.unsafeSet(i, i, diag[i]);
+			if (i+1<n) B.unsafeSet(i, i+1, off[i]);
+		}
+
+		Matrix U=BlockedHouseholderQR.formQ(ubv, gammasU, min, compact?min:m, blockSize);
+		Matrix V=formV(ubv,gammasV,compact?w:n,blockSize);
+		return new BidiagonalRowResult(U,B,V);
+	}
+
+	/**
+	 * Reduces rows and columns p0..p1-1, then applies the accumulated update to the trailing
+	 * matrix. During the panel the unit leading elements of the reflectors are stored explicitly
+	 * on the diagonal and superdiagonal, the bidiagonal values are held in diag and off.
+	 */
+	private static void reducePanel(Matrix ubv, int p0, int p1, double[] gammasU, double[] gammasV,
+			double[] diag, double[] off, boolean parallel) {
+		int m=ubv.rowCount();
+		int n=ubv.columnCount();
+		int nb=p1-p0;
+		double[] a=ubv.data;
+		// X is (m-p0)*nb indexed by row, Y is (n-p0)*nb indexed by column
+		double[] x=new double[(m-p0)*nb];
+		double[] y=new double[(n-p0)*nb];
+		double[] t1=new double[nb];
+		double[] t2=new double[nb];
+		double[] vec=new double[Math.max(m, n)];
+
+		for (int i=p0; i<p1; i++) {
+			int l=i-p0;
+
+			// update column i: A(i:m,i) -= U.Y(i,:)^T + X.V(:,i)
+			int yi=(i-p0)*nb;
+			for (int j=0; j<l; j++) {
+				t1[j]=a[(p0+j)*n+i];
+			}
+			for (int r=i; r<m; r++) {
+				int ar=r*n;
+				int xr=(r-p0)*nb;
+				double s=0.0;
+				for (int j=0; j<l; j++) {
+					s+=a[ar+p0+j]*y[yi+j]+x[xr+j]*t1[j];
+				}
+				a[ar+i]-=s;
+			}
+
+			// left reflector to annihilate A(i+1:m,i)
+			gammasU[i]=householder(a,i*n+i,n,m-i);
+			diag[i]=a[i*n+i];
+			a[i*n+i]=1.0;
+			if (i+1>=n) {
+				gammasV[i]=0.0;
+				continue;
+			}
+
+			// Y(i+1:n,l) = gamma.(A^T.u - Y.(U^T.u) - V^T.(X^T.u))
+			for (int r=i; r<m; r++) {
+				vec[r]=a[r*n+i];
+			}
+			multiplyTranspose(a,n,i,m,i+1,n,vec,y,(i+1-p0)*nb+l,nb,parallel);
+			for (int j=0; j<l; j++) {
+				t1[j]=0.0;
+				t2[j]=0.0;
+			}
+			for (int r=i; r<m; r++) {
+				double ur=vec[r];
+				int ar=r*n+p0;
+				int xr=(r-p0)*nb;
+				for (int j=0; j<l; j++) {
+					t1[j]+=a[ar+j]*ur;
+					t2[j]+=x[xr+j]*ur;
+				}
+			}
+			for (int c=i+1; c<n; c++) {
+				int yc=(c-p0)*nb;
+				double s=0.0;
+				for (int j=0; j<l; j++) {
+					s+=y[yc+j]*t1[j];
+				}
+				y[yc+l]-=s;
+			}
+			for (int j=0; j<l; j++) {
+				double tj=t2[j];
+				int vj=(p0+j)*n;
+				for (int c=i+1; c<n; c++) {
+					y[(c-p0)*nb+l]-=a[vj+c]*tj;
+				}
+			}
+			double gu=gammasU[i];
+			for (int c=i+1; c<n; c++) {
+				y[(c-p0)*nb+l]*=gu;
+			}
+
+			// update row i: A(i,i+1:n) -= Y.U(i,:)^T + V^T.X(i,:)^T
+			int ai=i*n;
+			int xi=(i-p0)*nb;
+			for (int c=i+1; c<n; c++) {
+				int yc=(c-p0)*nb;
+				double s=0.0;
+				for (int j=0; j<=l; j++) {
+					s+=y[yc+j]*a[ai+p0+j];
+				}
+				a[ai+c]-=s;
+			}
+			for (int j=0; j<l; j++) {
+				double xj=x[xi+j];
+				int vj=(p0+j)*n;
+				for (int c=i+1; c<n; c++) {
+					a[ai+c]-=a[vj+c]*xj;
+				}
+			}
+
+			// right reflector to annihilate A(i,i+2:n)
+			gammasV[i]=householder(a,ai+i+1,1,n-i-1);
+			off[i]=a[ai+i+1];
+			a[ai+i+1]=1.0;
+			if (i+1>=m) continue;
+
+			// X(i+1:m,l) = gamma.(A.v - U.(Y^T.v) - X.(V.v))
+			multiply(a,n,i+1,m,i+1,n,a,ai,x,(i+1-p0)*nb+l,nb,parallel);
+			for (int j=0; j<=l; j++) {
+				t1[j]=0.0;
+			}
+			for (int c=i+1; c<n; c++) {
+				double vc=a[ai+c];
+				int yc=(c-p0)*nb;
+				for (int j=0; j<=l; j++) {
+					t1[j]+=y[yc+j]*vc;
+				}
+			}
+			for (int j=0; j<l; j++) {
+				int vj=(p0+j)*n;
+				double s=0.0;
+				for (int c=i+1; c<n; c++) {
+					s+=a[vj+c]*a[ai+c];
+				}
+				t2[j]=s;
+			}
+			double gv=gammasV[i];
+			for (int r=i+1; r<m; r++) {
+				int ar=r*n;
+				int xr=(r-p0)*nb;
+				double s=x[xr+l];
+				for (int j=0; j<=l; j++) {
+					s-=a[ar+p0+j]*t1[j];
+				}
+				for (int j=0; j<l; j++) {
+					s-=x[xr+j]*t2[j];
+				}
+				x[xr+l]=gv*s;
+			}
+		}
+
+		// A22 = A22 - U.Y^T - X.V
+		if ((p1<m)&&(p1<n)) {
+			Matrix xm=Matrix.wrap(m-p0, nb, x);
+			Matrix ym=Matrix.wrap(n-p0, nb, y);
+			AStridedMatrix u=ubv.subMatrix(p1, m-p1, p0, nb).copy().toMatrix();
+			AStridedMatrix v=ubv.subMatrix(p0, nb, p1, n-p1).copy().toMatrix();
+			AStridedMatrix ys=ym.subMatrix(p1-p0, n-p1, 0, nb);
+			AStridedMatrix xs=xm.subMatrix(p1-p0, m-p1, 0, nb);
+			AStridedMatrix c=ubv.subMatrix(p1, m-p1, p1, n-p1);
+			long ops=2L*(m-p1)*(n-p1)*nb;
+			if (parallel&&Parallel.shouldSplit(ops)) {
+				long leafOps=Parallel.leafSize(ops);
+				Parallel.getForkJoinPool().invoke(new UpdateTask(u,ys,xs,v,c,0,m-p1,leafOps));
+			} else {
+				update(u,ys,xs,v,c);
+			}
+		}
+
+		// restore the bidiagonal elements
+		for (int i=p0; i<p1; i++) {
+			a[i*n+i]=diag[i];
+			if (i+1<n) a[i*n+i+1]=off[i];
+		}
+	}
+
+	/**
+	 * Computes the reflector for the vector of the given length starting at offset, storing beta in
+	 * the first element and the reflector vector in the remaining elements. Uses the same scaling
+	 * and sign convention as BidiagonalRow.
+	 *
+	 * @return The reflector scale factor gamma, or zero if the vector is zero
+	 */
+	private static double householder(double[] a, int offset, int stride, int length) {
+		double max=0.0;
+		for (int k=0; k<length; k++) {
+			max=Math.max(max, Math.abs(a[offset+k*stride]));
+		}
+		if (max==0.0) return 0.0;
+		// normalise by the max value to avoid overflow problems
+		double tau=0.0;
+		for (int k=0; k<length; k++) {
+			double v=a[offset+k*stride]/=max;
+			tau+=v*v;
+		}
+		tau=Math.sqrt(tau);
+		if (a[offset]<0) tau=-tau;
+		double nu=a[offset]+tau;
+		for (int k=1; k<length; k++) {
+			a[offset+k*stride]/=nu;
+		}
+		a[offset]=-tau*max;
+		return nu/tau;
+	}
+
+	/**
+	 * Forms V from the right reflectors stored above the superdiagonal. The reflectors are copied
+	 * into a column-packed matrix offset by one row, so that V = diag(1,Q') where Q' is formed in
+	 * the same way as the Q of a QR decomposition.
+	 */
+	private static Matrix formV(Matrix ubv, double[] gammasV, int cols, int blockSize) {
+		int m=ubv.rowCount();
+		int n=ubv.columnCount();
+		int count=Math.min(Math.min(m, n), n-1);
+		Matrix V=Matrix.create(n, cols);
+		V.unsafeSet(0, 0, 1.0);
+		if (n==1) return V;
+		Matrix packed=Matrix.create(n-1, Math.max(count, 1));
+		for (int j=0; j<count; j++) {
+			for (int c=j+2; c<n; c++) {
+				packed.unsafeSet(c-1, j, ubv.unsafeGet(j, c));
+			}
+		}
+		Matrix q=BlockedHouseholderQR.formQ(packed, gammasV, count, cols-1, blockSize);
+		V.subMatrix(1, n-1, 1, cols-1).set(q);
+		return V;
+	}
+
+	/**
+	 * Computes dest(c) = sum over rows r of A(r,c).vec(r), for rows r0..r1-1 and columns c0..c1-1.
+	 * Results are written with the given stride.
+	 */
+	private static void multiplyTranspose(double[] a, int n, int r0, int r1, int c0, int c1,
+			double[] vec, double[] dest, int destOffset, int destStride, boolean parallel) {
+		long ops=((long)(r1-r0))*(c1-c0);
+		if (parallel&&Parallel.shouldSplit(ops)) {
+			long leafOps=Parallel.leafSize(ops);
+			Parallel.getForkJoinPool().invoke(new MatVecTask(true,a,n,r0,r1,c0,c1,vec,0,dest,destOffset,destStride,leafOps));
+		} else {
+			multiplyTranspose(a,n,r0,r1,c0,c1,vec,dest,destOffset,destStride);
+		}
+	}
+
+	private static void multiplyTranspose(double[] a, int n, int r0, int r1, int c0, int c1,
+			double[] vec, double[] dest, int destOffset, int destStride) {
+		int len=c1-c0;
+		double[] acc=new double[len];
+		int r=r0;
+		// four rows at a time, to reduce loads and stores of the accumulator
+		for (; r+3<r1; r+=4) {
+			double v0=vec[r], v1=vec[r+1], v2=vec[r+2], v3=vec[r+3];
+			int a0=r*n+c0, a1=a0+n, a2=a1+n, a3=a2+n;
+			for (int k=0; k<len; k++) {
+				acc[k]+=a[a0+k]*v0+a[a1+k]*v1+a[a2+k]*v2+a[a3+k]*v3;
+			}
+		}
+		for (; r<r1; r++) {
+			double vr=vec[r];
+			int ar=r*n+c0;
+			for (int k=0; k<len; k++) {
+				acc[k]+=a[ar+k]*vr;
+			}
+		}
+		for (int k=0; k<len; k++) {
+			dest[destOffset+k*destStride]=acc[k];
+		}
+	}
+
+	/**
+	 * Computes dest(r) = sum over columns c of A(r,c).vec(c), for rows r0..r1-1 and columns
+	 * c0..c1-1. vec is indexed by column starting at vecOffset. Results are written with the
+	 * given stride.
+	 */
+	private static void multiply(double[] a, int n, int r0, int r1, int c0, int c1,
+			double[] vec, int vecOffset, double[] dest, int destOffset, int destStride, boolean parallel) {
+		long ops=((long)(r1-r0))*(c1-c0);
+		if (parallel&&Parallel.shouldSplit(ops)) {
+			long leafOps=Parallel.leafSize(ops);
+			Parallel.getForkJoinPool().invoke(new MatVecTask(false,a,n,r0,r1,c0,c1,vec,vecOffset,dest,destOffset,destStride,leafOps));
+		} else {
+			multiply(a,n,r0,r1,c0,c1,vec,vecOffset,dest,destOffset,destStride);
+		}
+	}
+
+	private static void multiply(double[] a, int n, int r0, int r1, int c0, int c1,
+			double[] vec, int vecOffset, double[] dest, int destOffset, int destStride) {
+		int len=c1-c0;
+		int vo=vecOffset+c0;
+		int r=r0;
+		// four rows at a time, giving independent accumulators
+		for (; r+3<r1; r+=4) {
+			int a0=r*n+c0, a1=a0+n, a2=a1+n, a3=a2+n;
+			double s0=0.0, s1=0.0, s2=0.0, s3=0.0;
+			for (int k=0; k<len; k++) {
+				double vk=vec[vo+k];
+				s0+=a[a0+k]*vk;
+				s1+=a[a1+k]*vk;
+				s2+=a[a2+k]*vk;
+				s3+=a[a3+k]*vk;
+			}
+			int d=destOffset+(r-r0)*destStride;
+			dest[d]=s0;
+			dest[d+destStride]=s1;
+			dest[d+2*destStride]=s2;
+			dest[d+3*destStride]=s3;
+		}
+		for (; r<r1; r++) {
+			int ar=r*n+c0;
+			double s=0.0;
+			for (int k=0; k<len; k++) {
+				s+=a[ar+k]*vec[vo+k];
+			}
+			dest[destOffset+(r-r0)*destStride]=s;
+		}
+	}
+
+	/**
+	 * Computes C = C - U.Y^T - X.V
+	 */
+	private static void update(AStridedMatrix u, AStridedMatrix y, AStridedMatrix x, AStridedMatrix v, AStridedMatrix c) {
+		Multiplications.gemm(-1.0, u, false, y, true, 1.0, c);
+		Multiplications.gemm(-1.0, x, false, v, false, 1.0, c);
+	}
+
+	@SuppressWarnings("serial")
+	private static final class UpdateTask extends RecursiveAction {
+		private final AStridedMatrix u,y,x,v,c;
+		private final int start,end;
+		private final long leafOps;
+
+		UpdateTask(AStridedMatrix u, AStridedMatrix y, AStridedMatrix x, AStridedMatrix v, AStridedMatrix c, int start, int end, long leafOps) {
+			this.u=u;
+			this.y=y;
+			this.x=x;
+			this.v=v;
+			this.c=c;
+			this.start=start;
+			this.end=end;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			int rows=end-start;
+			long ops=2L*rows*c.columnCount()*u.columnCount();
+			if ((ops<=leafOps)||(rows<=1)) {
+				int nb=u.columnCount();
+				update(u.subMatrix(start, rows, 0, nb),y,x.subMatrix(start, rows, 0, nb),v,
+						c.subMatrix(start, rows, 0, c.columnCount()));
+				return;
+			}
+			int split=start+(rows/2);
+			invokeAll(new UpdateTask(u,y,x,v,c,start,split,leafOps),
+					  new UpdateTask(u,y,x,v,c,split,end,leafOps));
+		}
+	}
+
+	/**
+	 * Splits a matrix-vector product over columns (transpose) or rows, so that each task writes a
+	 * disjoint part of the result
+	 */
+	@SuppressWarnings("serial")
+	private static final class MatVecTask extends RecursiveAction {
+		private final boolean transpose;
+		private final double[] a;
+		private final int n,r0,r1,c0,c1;
+		private final double[] vec;
+		private final int vecOffset;
+		private final double[] dest;
+		private final int destOffset,destStride;
+		private final long leafOps;
+
+		MatVecTask(boolean transpose, double[] a, int n, int r0, int r1, int c0, int c1, double[] vec, int vecOffset,
+				double[] dest, int destOffset, int destStride, long leafOps) {
+			this.transpose=transpose;
+			this.a=a;
+			this.n=n;
+			this.r0=r0;
+			this.r1=r1;
+			this.c0=c0;
+			this.c1=c1;
+			this.vec=vec;
+			this.vecOffset=vecOffset;
+			this.dest=dest;
+			this.destOffset=destOffset;
+			this.destStride=destStride;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			long ops=((long)(r1-r0))*(c1-c0);
+			if (transpose) {
+				int cols=c1-c0;
+				if ((ops<=leafOps)||(cols<=1)) {
+					multiplyTranspose(a,n,r0,r1,c0,c1,vec,dest,destOffset,destStride);
+					return;
+				}
+				int split=c0+(cols/2);
+				invokeAll(new MatVecTask(true,a,n,r0,r1,c0,split,vec,vecOffset,dest,destOffset,destStride,leafOps),
+						  new MatVecTask(true,a,n,r0,r1,split,c1,vec,vecOffset,dest,destOffset+(split-c0)*destStride,destStride,leafOps));
+			} else {
+				int rows=r1-r0;
+				if ((ops<=leafOps)||(rows<=1)) {
+					multiply(a,n,r0,r1,c0,c1,vec,vecOffset,dest,destOffset,destStride);
+					return;
+				}
+				int split=r0+(rows/2);
+				invokeAll(new MatVecTask(false,a,n,r0,split,c0,c1,vec,vecOffset,dest,destOffset,destStride,leafOps),
+						  new MatVecTask(false,a,n,split,r1,c0,c1,vec,vecOffset,dest,destOffset+(split-r0)*destStride,destStride,leafOps));
+			}
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package mikera.matrixx.decompose.impl.chol;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Gram;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.decompose.ICholeskyResult;
+
+/**
+ * Blocked right-looking Cholesky decomposition A = L.L^T, in the style of LAPACK dpotrf.
+ *
+ * The matrix is processed in blocks of BLOCK_SIZE columns. For each block:
+ * <ol>
+ * <li>the diagonal block is factorised with the unblocked inner-product algorithm</li>
+ * <li>the panel below it is solved against the transposed diagonal factor, L21 = A21.L11^-T</li>
+ * <li>the trailing matrix receives a symmetric rank-k update, A22 = A22 - L21.L21^T</li>
+ * </ol>
+ *
+ * The rank-k update is done by Gram.syrk, so almost all of the work runs in the packed gemm
+ * kernel. Above the parallel threshold in Multiplications both the panel solve and the update
+ * are split between tasks on the shared ForkJoinPool.
+ *
+ * The matrix must be symmetric. Factorisation stops as soon as a diagonal block is found to be
+ * not positive definite, so this is also an efficient positive definiteness test.
+ *
+ * @author Mike
+ *
+ */
+public class BlockedCholesky {
+	/**
+	 * Number of columns in each block
+	 */
+	public static final int BLOCK_SIZE=64;
+
+	/**
+	 * Minimum matrix size for which the blocked algorithm is worthwhile
+	 */
+	public static final int BLOCK_THRESHOLD=2*BLOCK_SIZE;
+
+	/**
+	 * Computes the Cholesky decomposition of a symmetric positive definite matrix
+	 *
+	 * @return The decomposition result, or null if the matrix is not positive definite
+	 */
+	public static ICholeskyResult decompose(AMatrix a) {
+		return decompose(a,BLOCK_SIZE,true);
+	}
+
+	/**
+	 * Computes the Cholesky decomposition of a symmetric positive definite matrix
+	 *
+	 * @param blockSize Number of columns in each block
+	 * @param parallel If true, work is done in parallel above the parallel threshold
+	 * @return The decomposition result, or null if the matrix is not positive definite
+	 */
+	public static ICholeskyResult decompose(AMatrix a, int blockSize, boolean parallel) {
+		if (blockSize<1) throw new IllegalArgumentException("Invalid block size: "+blockSize);
+		int n=a.rowCount();
+		if (a.columnCount()!=n) throw new IllegalArgumentException("Must be a square matrix.");
+		Matrix l=Matrix.create(a);
+		if (!factor(l,blockSize,parallel)) return null;
+		return new CholeskyResult(l);
+	}
+
+	/**
+	 * Factorises a symmetric matrix in place, leaving L in the lower triangle and zeros above
+	 *
+	 * @return true if successful, false if the matrix is not positive definite
+	 */
+	static boolean factor(Matrix l, int blockSize, boolean parallel) {
+		int n=l.rowCount();
+		double[] d=l.data;
+		for (int j0=0; j0<n; j0+=blockSize) {
+			int j1=Math.min(j0+blockSize, n);
+			if (!factorDiagonal(d,n,j0,j1)) return false;
+			if (j1>=n) break;
+
+			int rows=n-j1;
+			int jb=j1-j0;
+			long ops=((long)rows)*rows*jb/2;
+			boolean par=parallel&&Parallel.shouldSplit(ops);
+
+			// L21 = A21.L11^-T
+			if (par) {
+				long leafOps=Parallel.leafSize(((long)rows)*jb*jb/2);
+				Parallel.getForkJoinPool().invoke(new PanelTask(d,n,j0,j1,j1,n,leafOps));
+			} else {
+				solvePanel(d,n,j0,j1,j1,n);
+			}
+
+			// A22 = A22 - L21.L21^T
+			Gram.syrk(-1.0, l.subMatrix(j1, rows, j0, jb), false, 1.0, l.subMatrix(j1, rows, j1, rows), par);
+		}
+
+		// zero the upper triangle
+		for (int i=0; i<n; i++) {
+			for (int j=i+1; j<n; j++) {
+				d[i*n+j]=0.0;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Factorises the diagonal block j0..j1-1 in place with the inner-product algorithm, reading
+	 * the lower triangle of the block
+	 */
+	private static boolean factorDiagonal(double[] d, int n, int j0, int j1) {
+		for (int i=j0; i<j1; i++) {
+			int ri=i*n;
+			for (int j=j0; j<=i; j++) {
+				int rj=j*n;
+				double sum=d[ri+j];
+				for (int k=j0; k<j; k++) {
+					sum-=d[ri+k]*d[rj+k];
+				}
+				if (i==j) {
+					// is it positive-definite?
+					if (!(sum>0.0)) return false;
+					d[ri+i]=Math.sqrt(sum);
+				} else {
+					d[ri+j]=sum/d[rj+j];
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves rows start..end-1 of the panel below the diagonal block j0..j1-1, by forward
+	 * substitution with each row of the block factor
+	 */
+	private static void solvePanel(double[] d, int n, int j0, int j1, int start, int end) {
+		for (int i=start; i<end; i++) {
+			int ri=i*n;
+			for (int c=j0; c<j1; c++) {
+				int rc=c*n;
+				double sum=d[ri+c];
+				for (int k=j0; k<c; k++) {
+					sum-=d[ri+k]*d[rc+k];
+				}
+				d[ri+c]=sum/d[rc+c];
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class PanelTask extends RecursiveAction {
+		private final double[] d;
+		private final int n,j0,j1,start,end;
+		private final long leafOps;
+
+		PanelTask(double[] d, int n, int j0, int j1, int start, int end, long leafOps) {
+			this.d=d;
+			this.n=n;
+			this.j0=j0;
+			this.j1=j1;
+			this.start=start;
+			this.end=end;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			int rows=end-start;
+			int jb=j1-j0;
+			long ops=((long)rows)*jb*jb/2;
+			if ((ops<=leafOps)||(rows<=1)) {
+				solvePanel(d,n,j0,j1,start,end);
+				return;
+			}
+			int split=start+(rows/2);
+			invokeAll(new PanelTask(d,n,j0,j1,start,split,leafOps),
+					  new PanelTask(d,n,j0,j1,split,end,leafOps));
+		}
+	}
+}
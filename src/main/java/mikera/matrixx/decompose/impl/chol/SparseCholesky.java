@@ -0,0 +1,310 @@
+package mikera.matrixx.decompose.impl.chol;
+
+import java.util.Arrays;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.algo.SparseOrdering;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.PermutationMatrix;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Sparse Cholesky decomposition P.A.P^T = L.L^T of a symmetric positive definite matrix, where P is
+ * a fill-reducing permutation.
+ *
+ * An instance holds the symbolic analysis of a sparsity pattern: the ordering, the elimination tree
+ * and the number of non-zeros in each column of L. It is created once by analyse, and can then be
+ * used by factor for any number of numeric factorisations of matrices with the same pattern (or a
+ * subset of it).
+ *
+ * The numeric factorisation is an up-looking algorithm that computes L one row at a time, using the
+ * elimination tree to find the pattern of each row. Only the lower triangle of A is read. The factor
+ * is stored sparse, so memory use is proportional to the number of non-zeros in L.
+ *
+ * @author Mike
+ *
+ */
+public class SparseCholesky {
+	private final int n;
+	private final int[] perm;
+	private final int[] pinv;
+	private final int[] parent;
+	private final int[] colPtr;
+
+	private SparseCholesky(int n, int[] perm, int[] parent, int[] colPtr) {
+		this.n=n;
+		this.perm=perm;
+		this.pinv=SparseOrdering.invert(perm);
+		this.parent=parent;
+		this.colPtr=colPtr;
+	}
+
+	/**
+	 * Performs the symbolic analysis of a sparse symmetric matrix, using an approximate minimum
+	 * degree ordering.
+	 */
+	public static SparseCholesky analyse(AMatrix a) {
+		return analyse(a,true);
+	}
+
+	/**
+	 * Performs the symbolic analysis of a sparse symmetric matrix.
+	 *
+	 * @param a A symmetric matrix. Only the pattern of the lower triangle is used.
+	 * @param reorder If true, uses an approximate minimum degree ordering, otherwise the natural ordering
+	 */
+	public static SparseCholesky analyse(AMatrix a, boolean reorder) {
+		CSRMatrix csr=toCSR(a);
+		int n=csr.checkSquare();
+		int[] perm;
+		if (reorder) {
+			perm=SparseOrdering.approximateMinimumDegree(csr);
+		} else {
+			perm=new int[n];
+			for (int i=0; i<n; i++) {
+				perm[i]=i;
+			}
+		}
+		CSRMatrix c=permuteLower(csr,SparseOrdering.invert(perm));
+		int[] cp=c.getRowPointers();
+		int[] ci=c.getColumnIndices();
+		int[] parent=eliminationTree(cp,ci,n);
+
+		// count the non-zeros in each column of L from the row patterns
+		int[] colPtr=new int[n+1];
+		int[] s=new int[n];
+		int[] w=new int[n];
+		Arrays.fill(w, -1);
+		for (int k=0; k<n; k++) {
+			int top=ereach(cp,ci,k,parent,s,w);
+			for (; top<n; top++) {
+				colPtr[s[top]+1]++;
+			}
+			colPtr[k+1]++;
+		}
+		for (int k=0; k<n; k++) {
+			colPtr[k+1]+=colPtr[k];
+		}
+		return new SparseCholesky(n,perm,parent,colPtr);
+	}
+
+	/**
+	 * Computes the numeric factorisation of a matrix with the analysed sparsity pattern.
+	 *
+	 * @param a A symmetric positive definite matrix. Only the lower triangle is read.
+	 * @return The decomposition result, or null if the matrix is not positive definite
+	 */
+	public SparseCholeskyResult factor(AMatrix a) {
+		return factor(a,true);
+	}
+
+	/**
+	 * Computes the numeric factorisation of a matrix with the analysed sparsity pattern.
+	 *
+	 * If keepSource is false, the result does not hold a reference to the matrix, which can then be
+	 * garbage collected, but getL and getU are unavailable on a reordered result.
+	 *
+	 * @param a A symmetric positive definite matrix. Only the lower triangle is read.
+	 * @param keepSource Whether to retain the matrix for a natural order factorisation in getL and getU
+	 * @return The decomposition result, or null if the matrix is not positive definite
+	 */
+	public SparseCholeskyResult factor(AMatrix a, boolean keepSource) {
+		CSRMatrix csr=toCSR(a);
+		if (csr.checkSquare()!=n) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(n, csr.rowCount()));
+		CSRMatrix c=permuteLower(csr,pinv);
+		int[] cp=c.getRowPointers();
+		int[] ci=c.getColumnIndices();
+		double[] cx=c.getValues();
+
+		int lnz=colPtr[n];
+		int[] li=new int[lnz];
+		double[] lx=new double[lnz];
+		int[] next=Arrays.copyOf(colPtr, n);
+		double[] x=new double[n];
+		int[] s=new int[n];
+		int[] w=new int[n];
+		Arrays.fill(w, -1);
+
+		for (int k=0; k<n; k++) {
+			int top=ereach(cp,ci,k,parent,s,w);
+			for (int p=cp[k]; p<cp[k+1]; p++) {
+				x[ci[p]]=cx[p];
+			}
+			double d=x[k];
+			x[k]=0.0;
+			// compute row k of L by a sparse triangular solve with the rows above
+			for (; top<n; top++) {
+				int i=s[top];
+				double lki=x[i]/lx[colPtr[i]];
+				x[i]=0.0;
+				for (int q=colPtr[i]+1; q<next[i]; q++) {
+					x[li[q]]-=lx[q]*lki;
+				}
+				d-=lki*lki;
+				int q=next[i]++;
+				if (q>=colPtr[i+1]) throw new IllegalArgumentException("Sparsity pattern differs from the symbolic analysis");
+				li[q]=k;
+				lx[q]=lki;
+			}
+			if (!(d>0.0)) return null;
+			int q=next[k]++;
+			li[q]=k;
+			lx[q]=Math.sqrt(d);
+		}
+
+		// a subset of the analysed pattern leaves unused storage, which is compacted away
+		int[] lp=colPtr;
+		for (int j=0; j<n; j++) {
+			if (next[j]!=colPtr[j+1]) {
+				lp=new int[n+1];
+				int dst=0;
+				for (int jj=0; jj<n; jj++) {
+					int start=colPtr[jj];
+					int len=next[jj]-start;
+					System.arraycopy(li, start, li, dst, len);
+					System.arraycopy(lx, start, lx, dst, len);
+					dst+=len;
+					lp[jj+1]=dst;
+				}
+				li=Arrays.copyOf(li, dst);
+				lx=Arrays.copyOf(lx, dst);
+				break;
+			}
+		}
+		return new SparseCholeskyResult(n,perm,lp,li,lx,keepSource?csr:null);
+	}
+
+	/**
+	 * Returns the fill-reducing permutation P
+	 */
+	public PermutationMatrix getP() {
+		return PermutationMatrix.create(perm);
+	}
+
+	/**
+	 * Returns the elimination tree of the permuted matrix, as an array of parent indices with -1 for roots
+	 */
+	public int[] getEliminationTree() {
+		return parent.clone();
+	}
+
+	/**
+	 * Returns the number of non-zeros in the factor L, including the diagonal
+	 */
+	public long factorNonZeroCount() {
+		return colPtr[n];
+	}
+
+	public int size() {
+		return n;
+	}
+
+	private static CSRMatrix toCSR(AMatrix a) {
+		if (a instanceof CSRMatrix) return (CSRMatrix)a;
+		return CSRMatrix.create(a);
+	}
+
+	/**
+	 * Computes the lower triangle of P.A.P^T from the lower triangle of A, with sorted column indices
+	 */
+	static CSRMatrix permuteLower(CSRMatrix a, int[] pinv) {
+		int n=pinv.length;
+		int[] rowPtr=a.getRowPointers();
+		int[] colIdx=a.getColumnIndices();
+		double[] values=a.getValues();
+
+		// bucket by permuted column first, so that a second pass by row leaves columns sorted
+		int[] colCount=new int[n+1];
+		int[] rowCount=new int[n+1];
+		for (int i=0; i<n; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				int j=colIdx[p];
+				if (j>i) break;
+				int pi=pinv[i];
+				int pj=pinv[j];
+				colCount[Math.min(pi, pj)+1]++;
+				rowCount[Math.max(pi, pj)+1]++;
+			}
+		}
+		for (int k=0; k<n; k++) {
+			colCount[k+1]+=colCount[k];
+			rowCount[k+1]+=rowCount[k];
+		}
+		int nnz=colCount[n];
+		int[] tRow=new int[nnz];
+		double[] tValues=new double[nnz];
+		for (int i=0; i<n; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				int j=colIdx[p];
+				if (j>i) break;
+				int pi=pinv[i];
+				int pj=pinv[j];
+				int q=colCount[Math.min(pi, pj)]++;
+				tRow[q]=Math.max(pi, pj);
+				tValues[q]=values[p];
+			}
+		}
+		int[] cIdx=new int[nnz];
+		double[] cValues=new double[nnz];
+		int[] next=Arrays.copyOf(rowCount, n);
+		int q=0;
+		for (int col=0; col<n; col++) {
+			int end=colCount[col];
+			for (; q<end; q++) {
+				int dst=next[tRow[q]]++;
+				cIdx[dst]=col;
+				cValues[dst]=tValues[q];
+			}
+		}
+		return CSRMatrix.wrap(n, n, rowCount, cIdx, cValues);
+	}
+
+	/**
+	 * Computes the elimination tree of a symmetric matrix given by its lower triangle, using
+	 * Liu's algorithm with path compression
+	 */
+	static int[] eliminationTree(int[] rowPtr, int[] colIdx, int n) {
+		int[] parent=new int[n];
+		int[] ancestor=new int[n];
+		for (int k=0; k<n; k++) {
+			parent[k]=-1;
+			ancestor[k]=-1;
+			for (int p=rowPtr[k]; p<rowPtr[k+1]; p++) {
+				int i=colIdx[p];
+				while ((i!=-1)&&(i<k)) {
+					int inext=ancestor[i];
+					ancestor[i]=k;
+					if (inext==-1) parent[i]=k;
+					i=inext;
+				}
+			}
+		}
+		return parent;
+	}
+
+	/**
+	 * Finds the pattern of row k of L, by walking up the elimination tree from each non-zero in
+	 * row k of the lower triangle. The pattern is returned in s[top..n-1] in topological order.
+	 *
+	 * @param w Marker workspace, which must not contain the value k on entry
+	 * @return top
+	 */
+	static int ereach(int[] rowPtr, int[] colIdx, int k, int[] parent, int[] s, int[] w) {
+		int top=s.length;
+		w[k]=k;
+		for (int p=rowPtr[k]; p<rowPtr[k+1]; p++) {
+			int i=colIdx[p];
+			if (i>=k) continue;
+			int len=0;
+			while (w[i]!=k) {
+				s[len++]=i;
+				w[i]=k;
+				i=parent[i];
+				// k must be an ancestor, which can fail if the pattern was not analysed
+				if ((i<0)||(i>k)) throw new IllegalArgumentException("Sparsity pattern differs from the symbolic analysis");
+			}
+			while (len>0) s[--top]=s[--len];
+		}
+		return top;
+	}
+}
@@ -0,0 +1,149 @@
+package mikera.matrixx.decompose.impl.chol;
+
+import mikera.matrixx.decompose.ICholeskyResult;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.PermutationMatrix;
+import mikera.matrixx.solve.impl.SparseTriangularSolver;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+import mikera.vectorz.util.VectorzException;
+
+/**
+ * Result of a sparse Cholesky decomposition P.A.P^T = L.L^T
+ *
+ * getFactorL and getFactorU return the sparse factors of the permuted matrix P.A.P^T, which is
+ * what solve uses. getL and getU follow the ICholeskyResult contract L.L^T = A: if the
+ * decomposition was computed without reordering they are the same as the permuted factors,
+ * otherwise a natural order factorisation of A is computed on first use, which generally has
+ * much more fill-in. This needs the source matrix, so is unavailable if the decomposition was
+ * computed with keepSource=false.
+ *
+ * The factor is held as the rows of U = L^T in CSR form, which is L in compressed column form.
+ *
+ * @author Mike
+ *
+ */
+public class SparseCholeskyResult implements ICholeskyResult {
+	private final int n;
+	private final int[] perm;
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+	private final int[] diag;
+
+	private final boolean reordered;
+	// source matrix, retained only if reordered so that the natural order factor can be computed
+	private final CSRMatrix source;
+	private SparseCholeskyResult natural=null;
+
+	SparseCholeskyResult(int n, int[] perm, int[] rowPtr, int[] colIdx, double[] values, CSRMatrix source) {
+		this.n=n;
+		this.perm=perm;
+		this.rowPtr=rowPtr;
+		this.colIdx=colIdx;
+		this.values=values;
+		// the diagonal is the first entry in each row of U
+		int[] diag=new int[n];
+		System.arraycopy(rowPtr, 0, diag, 0, n);
+		this.diag=diag;
+		this.reordered=!isIdentity(perm);
+		this.source=reordered?source:null;
+	}
+
+	private static boolean isIdentity(int[] perm) {
+		for (int i=0; i<perm.length; i++) {
+			if (perm[i]!=i) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the lower triangular factor L with L.L^T = A, as a new CSRMatrix.
+	 *
+	 * If a fill-reducing ordering was used, this requires a second factorisation in the natural
+	 * order. Use getFactorL to get the factor of P.A.P^T without this cost.
+	 *
+	 * @throws UnsupportedOperationException if reordered and the source matrix was not kept
+	 * @throws VectorzException if the natural order factorisation breaks down
+	 */
+	@Override
+	public CSRMatrix getL() {
+		return getNatural().getFactorL();
+	}
+
+	/**
+	 * Returns the upper triangular factor U = L^T with U^T.U = A.
+	 *
+	 * If a fill-reducing ordering was used, this requires a second factorisation in the natural
+	 * order. Use getFactorU to get the factor of P.A.P^T without this cost.
+	 *
+	 * @throws UnsupportedOperationException if reordered and the source matrix was not kept
+	 * @throws VectorzException if the natural order factorisation breaks down
+	 */
+	@Override
+	public CSRMatrix getU() {
+		return getNatural().getFactorU();
+	}
+
+	private SparseCholeskyResult getNatural() {
+		if (!reordered) return this;
+		if (natural==null) {
+			if (source==null) throw new UnsupportedOperationException("Natural order factor not available: source matrix was not kept");
+			SparseCholeskyResult r=SparseCholesky.analyse(source,false).factor(source,false);
+			// possible if rounding in the natural order produces a non-positive pivot
+			if (r==null) throw new VectorzException("Natural order Cholesky factorisation failed: matrix is not numerically positive definite");
+			natural=r;
+		}
+		return natural;
+	}
+
+	/**
+	 * Returns the lower triangular factor L of P.A.P^T, as a new CSRMatrix
+	 */
+	public CSRMatrix getFactorL() {
+		return getFactorU().getTranspose();
+	}
+
+	/**
+	 * Returns the upper triangular factor U = L^T of P.A.P^T.
+	 *
+	 * WARNING: wraps the internal arrays, so should not be modified
+	 */
+	public CSRMatrix getFactorU() {
+		return CSRMatrix.wrap(n, n, rowPtr, colIdx, values);
+	}
+
+	/**
+	 * Returns the permutation P applied to the rows and columns of A
+	 */
+	public PermutationMatrix getP() {
+		return PermutationMatrix.create(perm);
+	}
+
+	/**
+	 * Returns the number of non-zeros in the factor L, including the diagonal
+	 */
+	public long factorNonZeroCount() {
+		return rowPtr[n];
+	}
+
+	/**
+	 * Solves A.x = b using the factorisation
+	 */
+	public Vector solve(AVector b) {
+		if (b.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(b));
+		double[] y=new double[n];
+		for (int k=0; k<n; k++) {
+			y[k]=b.unsafeGet(perm[k]);
+		}
+		// L = U^T, so solve U^T.z = P.b then U.y = z
+		SparseTriangularSolver.solveUpperTranspose(rowPtr, colIdx, values, diag, y);
+		SparseTriangularSolver.solveUpper(rowPtr, colIdx, values, diag, y);
+		double[] x=new double[n];
+		for (int k=0; k<n; k++) {
+			x[perm[k]]=y[k];
+		}
+		return Vector.wrap(x);
+	}
+}
@@ -0,0 +1,401 @@
+package mikera.matrixx.decompose.impl.eigen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vector2;
+import mikera.vectorz.util.DoubleArrays;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Thick-restart Lanczos method for computing a few of the smallest or largest eigenpairs of a large
+ * symmetric matrix.
+ *
+ * The matrix is only accessed through transform, so any symmetric AMatrix can be used, including
+ * sparse matrices and composed operators. A Krylov basis of m vectors is built with full
+ * reorthogonalisation, and the Ritz pairs of the projected matrix are computed with the dense
+ * symmetric QR algorithm. The basis is then restarted with the best Ritz vectors kept, which is
+ * mathematically equivalent to implicitly restarted Lanczos. Memory use is (m+1) vectors of length
+ * n, where m defaults to max(2k+10, 20).
+ *
+ * Initial vectors can be given to warm start the iteration, e.g. from the eigenvectors of a previous
+ * similar problem.
+ *
+ * A pair is converged when the residual norm ||A.x - lambda.x|| falls below the tolerance relative
+ * to the estimated norm of A. Converged pairs are locked, and the basis is kept orthogonal to the
+ * locked eigenvectors from then on. A single Krylov space only contains one eigenvector for each
+ * distinct eigenvalue, so once k pairs are locked the iteration is restarted from a random vector
+ * orthogonal to them. The result is only returned when a converged pair of this deflated problem
+ * is no better than the k pairs found, otherwise it is locked and the check is repeated. This finds
+ * all copies of repeated eigenvalues, e.g. the zero eigenvalues of the Laplacian of a graph with
+ * several components.
+ *
+ * @author Mike
+ *
+ */
+public class ThickRestartLanczos {
+	public static final double DEFAULT_TOLERANCE=1e-10;
+	public static final int DEFAULT_MAX_RESTARTS=1000;
+
+	private static final double BREAKDOWN=1e-12;
+	private static final int CHUNK=256;
+
+	private final int k;
+	private final boolean largest;
+
+	private double tolerance=DEFAULT_TOLERANCE;
+	private int maxRestarts=DEFAULT_MAX_RESTARTS;
+	private int subspaceSize=0;
+	private AVector[] initialVectors=null;
+	private long seed=1234L;
+
+	private int restarts=0;
+	private int matrixVectorProducts=0;
+
+	/**
+	 * Creates a solver for the k smallest or largest eigenpairs
+	 */
+	public ThickRestartLanczos(int k, boolean largest) {
+		if (k<1) throw new IllegalArgumentException("Invalid number of eigenpairs: "+k);
+		this.k=k;
+		this.largest=largest;
+	}
+
+	public void setTolerance(double tolerance) {
+		if (!(tolerance>=0)) throw new IllegalArgumentException("Invalid tolerance: "+tolerance);
+		this.tolerance=tolerance;
+	}
+
+	public void setMaxRestarts(int maxRestarts) {
+		if (maxRestarts<0) throw new IllegalArgumentException("Invalid maximum restarts: "+maxRestarts);
+		this.maxRestarts=maxRestarts;
+	}
+
+	/**
+	 * Sets the size m of the Krylov basis, or 0 for the default. Must be at least k+2.
+	 */
+	public void setSubspaceSize(int m) {
+		if ((m!=0)&&(m<k+2)) throw new IllegalArgumentException("Subspace size must be at least k+2, was: "+m);
+		this.subspaceSize=m;
+	}
+
+	/**
+	 * Sets initial vectors for a warm start, or null for a random start
+	 */
+	public void setInitialVectors(AVector... vectors) {
+		this.initialVectors=vectors;
+	}
+
+	/**
+	 * Sets the seed used for random starting vectors
+	 */
+	public void setSeed(long seed) {
+		this.seed=seed;
+	}
+
+	/**
+	 * Returns the number of restarts performed by the last decomposition
+	 */
+	public int getRestarts() {
+		return restarts;
+	}
+
+	/**
+	 * Returns the number of matrix-vector products performed by the last decomposition
+	 */
+	public int getMatrixVectorProducts() {
+		return matrixVectorProducts;
+	}
+
+	/**
+	 * Computes the requested eigenpairs of a symmetric matrix.
+	 *
+	 * Eigenvalues are sorted with the most extreme first, i.e. ascending for the smallest and
+	 * descending for the largest.
+	 *
+	 * @return The result containing k eigenpairs, or null if not converged within the maximum restarts
+	 */
+	public EigenResult decompose(AMatrix a) {
+		int n=a.checkSquare();
+		if (k>n) throw new IllegalArgumentException("Cannot compute "+k+" eigenpairs of a matrix of size "+n);
+		restarts=0;
+		matrixVectorProducts=0;
+		int m=(subspaceSize>0)?subspaceSize:Math.max(2*k+10, 20);
+		// room is needed for at least k locked vectors as well as the basis
+		if (m+k>=n) return decomposeDense(a);
+
+		Random rand=new Random(seed);
+		Vector[] v=new Vector[m+1];
+		for (int i=0; i<=m; i++) {
+			v[i]=Vector.createLength(n);
+		}
+		double[][] t=new double[m][m];
+
+		// locked eigenpairs, sorted with the wanted end first
+		Vector[] locked=new Vector[n-m-1];
+		double[] lockedValues=new double[n-m-1];
+		int lockedCount=0;
+		// true if the basis was started from a random vector orthogonal to all locked vectors
+		boolean confirming=false;
+
+		// starting vector
+		if (initialVectors!=null) {
+			for (AVector x: initialVectors) {
+				if (x.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(x));
+				v[0].add(x);
+			}
+		}
+		double norm0=norm(v[0]);
+		if (norm0==0.0) {
+			randomOrthogonal(v[0],v,0,locked,0,rand);
+		} else {
+			v[0].multiply(1.0/norm0);
+		}
+
+		int j=0;
+		double normEst=0.0;
+		double beta=0.0;
+		while (true) {
+			// extend the Lanczos basis to m vectors
+			for (; j<m; j++) {
+				Vector w=v[j+1];
+				a.transform(v[j],w);
+				matrixVectorProducts++;
+				// classical Gram-Schmidt, twice, against the locked vectors and the whole basis
+				for (int pass=0; pass<2; pass++) {
+					for (int i=0; i<lockedCount; i++) {
+						addMultiple(w,locked[i],-dot(locked[i],w));
+					}
+					for (int i=0; i<=j; i++) {
+						double h=dot(v[i],w);
+						if (pass==0) {
+							t[i][j]=h;
+						} else {
+							t[i][j]+=h;
+						}
+						t[j][i]=t[i][j];
+						addMultiple(w,v[i],-h);
+					}
+				}
+				beta=norm(w);
+				normEst=Math.max(normEst, Math.max(Math.abs(t[j][j]), beta));
+				if (beta<=BREAKDOWN*normEst) {
+					// invariant subspace found, so continue with a new random direction
+					beta=0.0;
+					randomOrthogonal(w,v,j+1,locked,lockedCount,rand);
+				} else {
+					w.multiply(1.0/beta);
+				}
+			}
+
+			// Rayleigh-Ritz on the projected matrix
+			Matrix tm=Matrix.create(t);
+			EigenResult er=new SymmetricQRAlgorithmDecomposition(true).decompose(tm);
+			if (er==null) return null;
+			Vector2[] values=er.getEigenvalues();
+			AVector[] vectors=er.getEigenVectors();
+			int[] order=order(values);
+			for (int i=0; i<m; i++) {
+				normEst=Math.max(normEst, Math.abs(values[i].x));
+			}
+
+			// lock converged pairs from the wanted end
+			int newlyLocked=0;
+			boolean done=false;
+			for (int c=0; c<m; c++) {
+				AVector s=vectors[order[c]];
+				double residual=Math.abs(beta*s.unsafeGet(m-1));
+				if (residual>tolerance*normEst) break;
+				double value=values[order[c]].x;
+				if ((lockedCount>=k)&&!isBetter(value,lockedValues[k-1],normEst)) {
+					// confirmed only if the deflated problem had a chance to find missed pairs
+					done=confirming;
+					break;
+				}
+				if (lockedCount==locked.length) {
+					// no room for further locked vectors
+					done=true;
+					break;
+				}
+				Vector x=Vector.createLength(n);
+				for (int i=0; i<m; i++) {
+					addMultiple(x,v[i],s.unsafeGet(i));
+				}
+				int pos=lockedCount;
+				while ((pos>0)&&isBetter(value,lockedValues[pos-1],0.0)) {
+					locked[pos]=locked[pos-1];
+					lockedValues[pos]=lockedValues[pos-1];
+					pos--;
+				}
+				locked[pos]=x;
+				lockedValues[pos]=value;
+				lockedCount++;
+				newlyLocked++;
+			}
+			if (newlyLocked>0) confirming=false;
+			if (done) {
+				Vector2[] resultValues=new Vector2[k];
+				AVector[] resultVectors=new AVector[k];
+				for (int c=0; c<k; c++) {
+					resultValues[c]=new Vector2(lockedValues[c],0);
+					resultVectors[c]=locked[c];
+				}
+				return new EigenResult(resultValues,resultVectors);
+			}
+			if (restarts>=maxRestarts) return null;
+			restarts++;
+
+			for (int i=0; i<m; i++) {
+				Arrays.fill(t[i], 0.0);
+			}
+			if ((lockedCount>=k)&&!confirming) {
+				// restart from the best remaining Ritz vector plus a random vector orthogonal to the
+				// locked vectors, which has components along any missed copies of an eigenvalue
+				if (newlyLocked<m) restartBasis(v,vectors,order,newlyLocked,m,1,n);
+				randomOrthogonal(v[1],v,0,locked,lockedCount,rand);
+				if (newlyLocked<m) {
+					addMultiple(v[1],v[0],1.0);
+				}
+				Vector temp=v[0];
+				v[0]=v[1];
+				v[1]=temp;
+				for (int i=0; i<lockedCount; i++) {
+					addMultiple(v[0],locked[i],-dot(locked[i],v[0]));
+				}
+				v[0].multiply(1.0/norm(v[0]));
+				confirming=true;
+				j=0;
+			} else {
+				// thick restart, keeping the best unlocked Ritz vectors and the residual direction
+				int want=Math.max(k-lockedCount, 1);
+				int kept=Math.min(Math.min(m-2, want+(m-want)/2), m-newlyLocked);
+				restartBasis(v,vectors,order,newlyLocked,m,kept,n);
+				Vector temp=v[kept];
+				v[kept]=v[m];
+				v[m]=temp;
+				for (int i=0; i<kept; i++) {
+					t[i][i]=values[order[newlyLocked+i]].x;
+				}
+				j=kept;
+			}
+		}
+	}
+
+	/**
+	 * Returns true if value is further towards the wanted end of the spectrum than ref, by more than
+	 * the given margin
+	 */
+	private boolean isBetter(double value, double ref, double normEst) {
+		double margin=Math.max(2*tolerance, BREAKDOWN)*normEst;
+		return largest?(value>ref+margin):(value<ref-margin);
+	}
+
+	/**
+	 * Replaces the first kept basis vectors with the Ritz vectors order[offset..offset+kept), working
+	 * on chunks of rows so that only a small temporary array is needed
+	 */
+	private static void restartBasis(Vector[] v, AVector[] vectors, int[] order, int offset, int m, int kept, int n) {
+		double[][] s=new double[kept][m];
+		for (int c=0; c<kept; c++) {
+			vectors[order[offset+c]].getElements(s[c], 0);
+		}
+		double[][] temp=new double[kept][CHUNK];
+		for (int r0=0; r0<n; r0+=CHUNK) {
+			int len=Math.min(CHUNK, n-r0);
+			for (int c=0; c<kept; c++) {
+				double[] tc=temp[c];
+				Arrays.fill(tc, 0, len, 0.0);
+				for (int i=0; i<m; i++) {
+					double f=s[c][i];
+					if (f==0.0) continue;
+					double[] vi=v[i].getArray();
+					for (int r=0; r<len; r++) {
+						tc[r]+=f*vi[r0+r];
+					}
+				}
+			}
+			for (int c=0; c<kept; c++) {
+				System.arraycopy(temp[c], 0, v[c].getArray(), r0, len);
+			}
+		}
+	}
+
+	/**
+	 * Computes the wanted pairs directly with the dense symmetric QR algorithm, for small matrices
+	 */
+	private EigenResult decomposeDense(AMatrix a) {
+		EigenResult er=new SymmetricQRAlgorithmDecomposition(true).decompose(a.toMatrix());
+		if (er==null) return null;
+		Vector2[] values=er.getEigenvalues();
+		AVector[] vectors=er.getEigenVectors();
+		int[] order=order(values);
+		Vector2[] resultValues=new Vector2[k];
+		AVector[] resultVectors=new AVector[k];
+		for (int c=0; c<k; c++) {
+			resultValues[c]=values[order[c]];
+			resultVectors[c]=vectors[order[c]].dense();
+		}
+		return new EigenResult(resultValues,resultVectors);
+	}
+
+	/**
+	 * Returns the indices of eigenvalues sorted with the wanted end of the spectrum first
+	 */
+	private int[] order(Vector2[] values) {
+		int m=values.length;
+		double[] keys=new double[m];
+		Integer[] idx=new Integer[m];
+		for (int i=0; i<m; i++) {
+			keys[i]=largest?-values[i].x:values[i].x;
+			idx[i]=i;
+		}
+		final double[] fk=keys;
+		Arrays.sort(idx, new java.util.Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(fk[a], fk[b]);
+			}
+		});
+		int[] order=new int[m];
+		for (int i=0; i<m; i++) {
+			order[i]=idx[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Fills w with a random unit vector orthogonal to the first count basis vectors and the locked
+	 * vectors
+	 */
+	private static void randomOrthogonal(Vector w, Vector[] v, int count, Vector[] locked, int lockedCount, Random rand) {
+		double[] wd=w.getArray();
+		for (int i=0; i<wd.length; i++) {
+			wd[i]=rand.nextGaussian();
+		}
+		for (int pass=0; pass<2; pass++) {
+			for (int i=0; i<lockedCount; i++) {
+				addMultiple(w,locked[i],-dot(locked[i],w));
+			}
+			for (int i=0; i<count; i++) {
+				addMultiple(w,v[i],-dot(v[i],w));
+			}
+		}
+		w.multiply(1.0/norm(w));
+	}
+
+	private static double dot(Vector a, Vector b) {
+		return DoubleArrays.dotProduct(a.getArray(), 0, b.getArray(), 0, a.length());
+	}
+
+	private static double norm(Vector a) {
+		return Math.sqrt(DoubleArrays.elementSquaredSum(a.getArray()));
+	}
+
+	private static void addMultiple(Vector dest, Vector src, double factor) {
+		DoubleArrays.addMultiple(dest.getArray(), src.getArray(), factor);
+	}
+}
@@ -164,6 +164,12 @@ public class AltLU {
     {
         decomposeCommonInit(a);
 
+        // large matrices use the blocked algorithm, which gives the same packed result
+        if (Math.min(m,n) >= BlockedLU.BLOCK_THRESHOLD) {
+            BlockedLU.factor(LU, pivot, indx);
+            return new LUPResult(computeL(), computeU(), getPivotMatrix());
+        }
+
         double LUcolj[] = vv;
 
         for( int j = 0; j < n; j++ ) {
@@ -0,0 +1,171 @@
+package mikera.matrixx.decompose.impl.lu;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.impl.AStridedMatrix;
+import mikera.vectorz.util.DoubleArrays;
+
+/**
+ * Blocked right-looking LU decomposition with partial pivoting, in the style of LAPACK dgetrf.
+ *
+ * The matrix is processed in panels of BLOCK_SIZE columns. Each panel is factorised with the
+ * unblocked algorithm, the block row to its right is solved against the unit lower triangle of
+ * the panel, and the remaining trailing matrix is updated with a single matrix multiply:
+ *
+ *    A22 = A22 - L21.U12
+ *
+ * so that almost all the work is done by the packed gemm kernel. The trailing update is split
+ * into blocks of rows computed in parallel above the parallel threshold in Multiplications.
+ *
+ * The result is stored in place in the same packed form as AltLU: L below the diagonal with an
+ * implicit unit diagonal, and U on and above the diagonal. Row swaps are recorded in indx (row j
+ * was swapped with row indx[j] at step j) and the resulting row order in pivot.
+ *
+ * @author Mike
+ *
+ */
+public final class BlockedLU {
+	/**
+	 * Number of columns in each panel
+	 */
+	public static final int BLOCK_SIZE=64;
+
+	/**
+	 * Minimum size of the smaller dimension for which the blocked algorithm is worthwhile
+	 */
+	public static final int BLOCK_THRESHOLD=2*BLOCK_SIZE;
+
+	/**
+	 * Factorises a matrix in place, computing the trailing updates in parallel where worthwhile
+	 *
+	 * @param lu The matrix to factorise, replaced by the packed L and U factors
+	 * @param pivot Array of at least rowCount elements, set to the row order after pivoting
+	 * @param indx Array of at least min(rowCount, columnCount) elements, set to the row swaps
+	 */
+	public static void factor(Matrix lu, int[] pivot, int[] indx) {
+		factor(lu,pivot,indx,BLOCK_SIZE,true);
+	}
+
+	/**
+	 * Factorises a matrix in place with the given panel width
+	 *
+	 * @param parallel If true, trailing updates are computed in parallel above the parallel threshold
+	 */
+	public static void factor(Matrix lu, int[] pivot, int[] indx, int blockSize, boolean parallel) {
+		if (blockSize<1) throw new IllegalArgumentException("Invalid block size: "+blockSize);
+		int m=lu.rowCount();
+		int n=lu.columnCount();
+		double[] d=lu.data;
+		for (int i=0; i<m; i++) {
+			pivot[i]=i;
+		}
+		for (int i=0; i<indx.length; i++) {
+			indx[i]=i;
+		}
+
+		int kmax=Math.min(m, n);
+		for (int j0=0; j0<kmax; j0+=blockSize) {
+			int j1=Math.min(j0+blockSize, kmax);
+			factorPanel(d,m,n,j0,j1,pivot,indx);
+			if (j1>=n) continue;
+
+			// U12 = L11^-1 . A12
+			for (int r=j0+1; r<j1; r++) {
+				int rr=r*n;
+				for (int c=j0; c<r; c++) {
+					double f=d[rr+c];
+					if (f!=0.0) DoubleArrays.addMultiple(d, rr+j1, d, c*n+j1, n-j1, -f);
+				}
+			}
+			if (j1>=m) continue;
+
+			// A22 = A22 - L21.U12, with L21 and U12 copied since they share storage with A22
+			Matrix l21=Matrix.create(lu.subMatrix(j1, m-j1, j0, j1-j0));
+			Matrix u12=Matrix.create(lu.subMatrix(j0, j1-j0, j1, n-j1));
+			AStridedMatrix a22=lu.subMatrix(j1, m-j1, j1, n-j1);
+			long ops=((long)(m-j1))*(n-j1)*(j1-j0);
+			if (parallel&&(m-j1>1)&&Parallel.shouldSplit(ops)) {
+				long leafOps=Parallel.leafSize(ops);
+				Parallel.getForkJoinPool().invoke(new UpdateTask(l21,u12,a22,0,m-j1,leafOps));
+			} else {
+				Multiplications.gemm(-1.0, l21, false, u12, false, 1.0, a22);
+			}
+		}
+	}
+
+	/**
+	 * Factorises columns j0..j1-1 below the diagonal with the unblocked right-looking algorithm.
+	 * Row swaps are applied across the full width of the matrix.
+	 */
+	private static void factorPanel(double[] d, int m, int n, int j0, int j1, int[] pivot, int[] indx) {
+		for (int j=j0; j<j1; j++) {
+			// find pivot
+			int p=j;
+			double max=Math.abs(d[j*n+j]);
+			for (int i=j+1; i<m; i++) {
+				double v=Math.abs(d[i*n+j]);
+				if (v>max) {
+					p=i;
+					max=v;
+				}
+			}
+			if (p!=j) {
+				int rowP=p*n;
+				int rowJ=j*n;
+				for (int k=0; k<n; k++) {
+					double t=d[rowP+k];
+					d[rowP+k]=d[rowJ+k];
+					d[rowJ+k]=t;
+				}
+				int t=pivot[p]; pivot[p]=pivot[j]; pivot[j]=t;
+			}
+			indx[j]=p;
+
+			// compute multipliers and update the rest of the panel
+			int rowJ=j*n;
+			double ljj=d[rowJ+j];
+			for (int i=j+1; i<m; i++) {
+				int ri=i*n;
+				if (ljj!=0.0) d[ri+j]/=ljj;
+				double lij=d[ri+j];
+				if (lij!=0.0) DoubleArrays.addMultiple(d, ri+j+1, d, rowJ+j+1, j1-j-1, -lij);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class UpdateTask extends RecursiveAction {
+		private final Matrix l21;
+		private final Matrix u12;
+		private final AStridedMatrix a22;
+		private final int rowStart,rowEnd;
+		private final long leafOps;
+
+		UpdateTask(Matrix l21, Matrix u12, AStridedMatrix a22, int rowStart, int rowEnd, long leafOps) {
+			this.l21=l21;
+			this.u12=u12;
+			this.a22=a22;
+			this.rowStart=rowStart;
+			this.rowEnd=rowEnd;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			int rows=rowEnd-rowStart;
+			long ops=((long)rows)*u12.rowCount()*u12.columnCount();
+			if ((ops<=leafOps)||(rows<=1)) {
+				int cc=a22.columnCount();
+				int ic=l21.columnCount();
+				Multiplications.gemm(-1.0, l21.subMatrix(rowStart, rows, 0, ic), false, u12, false, 1.0, a22.subMatrix(rowStart, rows, 0, cc));
+				return;
+			}
+			int split=rowStart+(rows/2);
+			invokeAll(new UpdateTask(l21,u12,a22,rowStart,split,leafOps),
+					  new UpdateTask(l21,u12,a22,split,rowEnd,leafOps));
+		}
+	}
+}
@@ -0,0 +1,309 @@
+package mikera.matrixx.decompose.impl.qr;
+
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.impl.AStridedMatrix;
+
+/**
+ * Blocked Householder QR decomposition using the compact WY representation, in the style of
+ * LAPACK dgeqrf.
+ *
+ * Columns are processed in panels of BLOCK_SIZE. Within a panel, reflectors are computed and
+ * applied one at a time as in HouseholderQR. The panel's reflectors H_1...H_k are then
+ * accumulated into the compact WY form
+ *
+ *    H_1.H_2...H_k = I - V.T.V^T
+ *
+ * where V holds the reflector vectors and T is a small upper triangular matrix, and applied to
+ * the trailing columns with three matrix multiplies. For tall matrices this reads the trailing
+ * matrix once per panel rather than once per reflector. The products are split into blocks of
+ * columns which are computed in parallel above the parallel threshold in Multiplications.
+ *
+ * The result forms Q lazily, and can apply Q or Q^T to other matrices directly, so users who only
+ * need R or Q^T.b never pay to form Q.
+ *
+ * Reflectors use the same convention as HouseholderQR, so the results agree to rounding error.
+ *
+ * @author Mike
+ *
+ */
+public class BlockedHouseholderQR implements QRDecomposition {
+	/**
+	 * Number of columns in each panel
+	 */
+	public static final int BLOCK_SIZE=32;
+
+	/**
+	 * Minimum size of the smaller dimension for which the blocked algorithm is worthwhile
+	 */
+	public static final int BLOCK_THRESHOLD=2*BLOCK_SIZE;
+
+	private final boolean compact;
+	private final int blockSize;
+
+	public BlockedHouseholderQR(boolean compact) {
+		this(compact,BLOCK_SIZE);
+	}
+
+	public BlockedHouseholderQR(boolean compact, int blockSize) {
+		if (blockSize<1) throw new IllegalArgumentException("Invalid block size: "+blockSize);
+		this.compact=compact;
+		this.blockSize=blockSize;
+	}
+
+	/**
+	 * Computes the QR decomposition of a matrix. The input is not modified.
+	 */
+	@Override
+	public BlockedQRResult decompose(AMatrix a) {
+		int m=a.rowCount();
+		int n=a.columnCount();
+		int minLength=Math.min(m, n);
+		Matrix qr=Matrix.create(a);
+		double[] d=qr.data;
+		double[] gammas=new double[minLength];
+		int numBlocks=(minLength+blockSize-1)/blockSize;
+		Matrix[] ts=new Matrix[numBlocks];
+		double[] u=new double[m];
+		double[] w=new double[blockSize];
+
+		for (int b=0; b<numBlocks; b++) {
+			int j0=b*blockSize;
+			int j1=Math.min(j0+blockSize, minLength);
+			// factorise the panel with unblocked reflectors
+			for (int j=j0; j<j1; j++) {
+				householder(d,m,n,j,u,gammas);
+				updatePanel(d,m,n,j,j1,u,gammas[j],w);
+			}
+			ts[b]=computeT(qr,j0,j1,gammas);
+			if (j1<n) {
+				applyBlock(qr,j0,j1,ts[b],true,qr.subMatrix(j0, m-j0, j1, n-j1));
+			}
+		}
+		return new BlockedQRResult(qr,ts,blockSize,compact);
+	}
+
+	/**
+	 * Forms the first cols columns of the orthogonal matrix H_0.H_1...H_count-1, where the
+	 * Householder vectors are stored below the diagonal of the packed matrix with implicit unit
+	 * leading elements, in the same layout as HouseholderQR.getQR(). Entries on or above the
+	 * diagonal of the packed matrix are ignored.
+	 *
+	 * @param packed Matrix containing the Householder vectors in its first count columns
+	 * @param gammas Scale factors of the reflectors, H_j = I - gamma_j.u_j.u_j^T
+	 * @param count Number of reflectors
+	 * @param cols Number of columns of Q to form, must be at least count
+	 */
+	public static Matrix formQ(Matrix packed, double[] gammas, int count, int cols, int blockSize) {
+		if (blockSize<1) throw new IllegalArgumentException("Invalid block size: "+blockSize);
+		int numBlocks=(count+blockSize-1)/blockSize;
+		Matrix[] ts=new Matrix[numBlocks];
+		for (int b=0; b<numBlocks; b++) {
+			int j0=b*blockSize;
+			ts[b]=computeT(packed,j0,Math.min(j0+blockSize, count),gammas);
+		}
+		return formQ(packed,ts,blockSize,cols);
+	}
+
+	/**
+	 * Forms the first cols columns of Q by applying the block reflectors in reverse order to the
+	 * identity. Columns before j0 are untouched by blocks at or after j0, so only the trailing
+	 * part needs to be updated.
+	 */
+	static Matrix formQ(Matrix packed, Matrix[] ts, int blockSize, int cols) {
+		int m=packed.rowCount();
+		Matrix q=Matrix.createIdentity(m, cols);
+		for (int b=ts.length-1; b>=0; b--) {
+			int j0=b*blockSize;
+			applyBlock(packed,j0,j0+ts[b].rowCount(),ts[b],false,q.subMatrix(j0, m-j0, j0, cols-j0));
+		}
+		return q;
+	}
+
+	/**
+	 * Computes the reflector for column j, storing R(j,j) and the reflector vector below the
+	 * diagonal. u is set to the reflector vector with u[j]=1.
+	 */
+	private static void householder(double[] d, int m, int n, int j, double[] u, double[] gammas) {
+		double max=0.0;
+		for (int i=j; i<m; i++) {
+			double v=u[i]=d[i*n+j];
+			max=Math.max(max, Math.abs(v));
+		}
+		if (max==0.0) {
+			gammas[j]=0.0;
+			u[j]=1.0;
+			for (int i=j+1; i<m; i++) {
+				u[i]=0.0;
+			}
+			d[j*n+j]=0.0;
+			return;
+		}
+		// normalise by the max value to avoid overflow problems
+		double tau=0.0;
+		for (int i=j; i<m; i++) {
+			u[i]/=max;
+			tau+=u[i]*u[i];
+		}
+		tau=Math.sqrt(tau);
+		if (u[j]<0) tau=-tau;
+		double u0=u[j]+tau;
+		gammas[j]=u0/tau;
+		for (int i=j+1; i<m; i++) {
+			u[i]/=u0;
+			d[i*n+j]=u[i];
+		}
+		u[j]=1.0;
+		d[j*n+j]=-tau*max;
+	}
+
+	/**
+	 * Applies reflector j to columns j+1..j1-1 of the panel
+	 */
+	private static void updatePanel(double[] d, int m, int n, int j, int j1, double[] u, double gamma, double[] w) {
+		int cols=j1-j-1;
+		if ((cols<=0)||(gamma==0.0)) return;
+		for (int c=0; c<cols; c++) {
+			w[c]=0.0;
+		}
+		for (int k=j; k<m; k++) {
+			double uk=u[k];
+			int rk=k*n+j+1;
+			for (int c=0; c<cols; c++) {
+				w[c]+=uk*d[rk+c];
+			}
+		}
+		for (int k=j; k<m; k++) {
+			double f=gamma*u[k];
+			int rk=k*n+j+1;
+			for (int c=0; c<cols; c++) {
+				d[rk+c]-=f*w[c];
+			}
+		}
+	}
+
+	/**
+	 * Computes the upper triangular T such that H_j0...H_j1-1 = I - V.T.V^T
+	 */
+	private static Matrix computeT(Matrix qr, int j0, int j1, double[] gammas) {
+		int jb=j1-j0;
+		int m=qr.rowCount();
+		int n=qr.columnCount();
+		double[] d=qr.data;
+		Matrix t=Matrix.create(jb, jb);
+		double[] z=new double[jb];
+		for (int i=0; i<jb; i++) {
+			double gi=gammas[j0+i];
+			t.unsafeSet(i, i, gi);
+			if (i==0) continue;
+			// z = V(:,0:i)^T.v_i, where v_i is zero above row j0+i and one at row j0+i
+			int ci=j0+i;
+			for (int p=0; p<i; p++) {
+				z[p]=d[ci*n+j0+p];
+			}
+			for (int k=ci+1; k<m; k++) {
+				int rk=k*n;
+				double vk=d[rk+ci];
+				if (vk==0.0) continue;
+				for (int p=0; p<i; p++) {
+					z[p]+=d[rk+j0+p]*vk;
+				}
+			}
+			// T(0:i,i) = -gamma_i.T(0:i,0:i).z
+			for (int p=0; p<i; p++) {
+				double s=0.0;
+				for (int q=p; q<i; q++) {
+					s+=t.unsafeGet(p, q)*z[q];
+				}
+				t.unsafeSet(p, i, -gi*s);
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Returns the reflector vectors of the panel j0..j1-1 as an explicit (m-j0)*(j1-j0) unit lower
+	 * trapezoidal matrix
+	 */
+	static Matrix extractV(Matrix qr, int j0, int j1) {
+		int m=qr.rowCount();
+		int n=qr.columnCount();
+		int jb=j1-j0;
+		double[] d=qr.data;
+		Matrix v=Matrix.create(m-j0, jb);
+		double[] vd=v.data;
+		for (int i=0; i<m-j0; i++) {
+			int row=j0+i;
+			int cmax=Math.min(i, jb);
+			System.arraycopy(d, row*n+j0, vd, i*jb, cmax);
+			if (i<jb) vd[i*jb+i]=1.0;
+		}
+		return v;
+	}
+
+	/**
+	 * Applies the block reflector (I - V.T.V^T), or its transpose, to the matrix c from the left.
+	 * The rows of c correspond to rows j0..m-1 of the decomposed matrix.
+	 */
+	static void applyBlock(Matrix qr, int j0, int j1, Matrix t, boolean transpose, AStridedMatrix c) {
+		Matrix v=extractV(qr,j0,j1);
+		int cols=c.columnCount();
+		long ops=2L*v.rowCount()*v.columnCount()*cols;
+		if ((cols>1)&&Parallel.shouldSplit(ops)) {
+			long leafOps=Parallel.leafSize(ops);
+			Parallel.getForkJoinPool().invoke(new ApplyTask(v,t,transpose,c,0,cols,leafOps));
+		} else {
+			applyBlock(v,t,transpose,c);
+		}
+	}
+
+	/**
+	 * Computes C = C - V.op(T).(V^T.C)
+	 */
+	private static void applyBlock(Matrix v, Matrix t, boolean transpose, AStridedMatrix c) {
+		int jb=v.columnCount();
+		int cols=c.columnCount();
+		Matrix w=Matrix.create(jb, cols);
+		Multiplications.gemm(1.0, v, true, c, false, 0.0, w);
+		Matrix w2=Matrix.create(jb, cols);
+		Multiplications.gemm(1.0, t, transpose, w, false, 0.0, w2);
+		Multiplications.gemm(-1.0, v, false, w2, false, 1.0, c);
+	}
+
+	@SuppressWarnings("serial")
+	private static final class ApplyTask extends RecursiveAction {
+		private final Matrix v;
+		private final Matrix t;
+		private final boolean transpose;
+		private final AStridedMatrix c;
+		private final int colStart,colEnd;
+		private final long leafOps;
+
+		ApplyTask(Matrix v, Matrix t, boolean transpose, AStridedMatrix c, int colStart, int colEnd, long leafOps) {
+			this.v=v;
+			this.t=t;
+			this.transpose=transpose;
+			this.c=c;
+			this.colStart=colStart;
+			this.colEnd=colEnd;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			int cols=colEnd-colStart;
+			long ops=2L*v.rowCount()*v.columnCount()*cols;
+			if ((ops<=leafOps)||(cols<=1)) {
+				applyBlock(v,t,transpose,c.subMatrix(0, c.rowCount(), colStart, cols));
+				return;
+			}
+			int split=colStart+(cols/2);
+			invokeAll(new ApplyTask(v,t,transpose,c,colStart,split,leafOps),
+					  new ApplyTask(v,t,transpose,c,split,colEnd,leafOps));
+		}
+	}
+}
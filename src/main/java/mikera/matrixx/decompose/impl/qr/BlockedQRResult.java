@@ -0,0 +1,139 @@
+package mikera.matrixx.decompose.impl.qr;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.decompose.IQRResult;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Result of a blocked Householder QR decomposition.
+ *
+ * Q is held implicitly as a sequence of block reflectors (I - V.T.V^T), and is only formed when
+ * getQ() is first called. applyQ and applyQTranspose multiply by Q or Q^T using the block
+ * reflectors directly, which is much cheaper than forming Q when only a few columns are needed,
+ * e.g. for least squares problems.
+ *
+ * Q is m*m. R is min(m,n)*n if the decomposition is compact, m*n otherwise.
+ *
+ * @author Mike
+ *
+ */
+public class BlockedQRResult implements IQRResult {
+	private final Matrix qr;
+	private final Matrix[] ts;
+	private final int blockSize;
+	private final boolean compact;
+
+	private Matrix Q;
+	private Matrix R;
+
+	BlockedQRResult(Matrix qr, Matrix[] ts, int blockSize, boolean compact) {
+		this.qr=qr;
+		this.ts=ts;
+		this.blockSize=blockSize;
+		this.compact=compact;
+	}
+
+	/**
+	 * Returns the Q matrix, forming it on first use
+	 */
+	@Override
+	public AMatrix getQ() {
+		if (Q==null) {
+			Q=BlockedHouseholderQR.formQ(qr,ts,blockSize,qr.rowCount());
+		}
+		return Q;
+	}
+
+	/**
+	 * Returns the upper triangular R matrix
+	 */
+	@Override
+	public AMatrix getR() {
+		if (R==null) {
+			int m=qr.rowCount();
+			int n=qr.columnCount();
+			int minLength=Math.min(m, n);
+			Matrix r=Matrix.create(compact?minLength:m, n);
+			for (int i=0; i<minLength; i++) {
+				System.arraycopy(qr.data, i*n+i, r.data, i*n+i, n-i);
+			}
+			R=r;
+		}
+		return R;
+	}
+
+	/**
+	 * Returns the combined matrix containing R in the upper triangle and the Householder
+	 * vectors below the diagonal, in the same layout as HouseholderQR.getQR()
+	 */
+	public AMatrix getQR() {
+		return qr;
+	}
+
+	/**
+	 * Computes Q^T.B without forming Q
+	 *
+	 * @param b A matrix with the same number of rows as the decomposed matrix
+	 * @return A new matrix containing Q^T.B
+	 */
+	public Matrix applyQTranspose(AMatrix b) {
+		Matrix c=copyOperand(b);
+		int m=c.rowCount();
+		int cols=c.columnCount();
+		for (int i=0; i<ts.length; i++) {
+			int j0=i*blockSize;
+			BlockedHouseholderQR.applyBlock(qr,j0,j0+ts[i].rowCount(),ts[i],true,c.subMatrix(j0, m-j0, 0, cols));
+		}
+		return c;
+	}
+
+	/**
+	 * Computes Q^T.b without forming Q
+	 *
+	 * @param b A vector with the same length as the number of rows of the decomposed matrix
+	 * @return A new vector containing Q^T.b
+	 */
+	public Vector applyQTranspose(AVector b) {
+		return Vector.wrap(applyQTranspose(columnMatrix(b)).data);
+	}
+
+	/**
+	 * Computes Q.B without forming Q
+	 *
+	 * @param b A matrix with the same number of rows as the decomposed matrix
+	 * @return A new matrix containing Q.B
+	 */
+	public Matrix applyQ(AMatrix b) {
+		Matrix c=copyOperand(b);
+		int m=c.rowCount();
+		int cols=c.columnCount();
+		for (int i=ts.length-1; i>=0; i--) {
+			int j0=i*blockSize;
+			BlockedHouseholderQR.applyBlock(qr,j0,j0+ts[i].rowCount(),ts[i],false,c.subMatrix(j0, m-j0, 0, cols));
+		}
+		return c;
+	}
+
+	/**
+	 * Computes Q.b without forming Q
+	 *
+	 * @param b A vector with the same length as the number of rows of the decomposed matrix
+	 * @return A new vector containing Q.b
+	 */
+	public Vector applyQ(AVector b) {
+		return Vector.wrap(applyQ(columnMatrix(b)).data);
+	}
+
+	private Matrix copyOperand(AMatrix b) {
+		if (b.rowCount()!=qr.rowCount()) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(qr, b));
+		return Matrix.create(b);
+	}
+
+	private Matrix columnMatrix(AVector b) {
+		if (b.length()!=qr.rowCount()) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(qr.rowCount(), b.length()));
+		return Matrix.wrap(b.length(), 1, b.toDoubleArray());
+	}
+}
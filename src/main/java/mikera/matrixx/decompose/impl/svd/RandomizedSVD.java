@@ -0,0 +1,318 @@
+package mikera.matrixx.decompose.impl.svd;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.impl.AStridedMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.DiagonalMatrix;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.DoubleArrays;
+
+/**
+ * Randomized truncated SVD, computing the k largest singular values and vectors of a matrix
+ * A ~= U.S.V^T using the range finder of Halko, Martinsson and Tropp.
+ *
+ * A random n*l test matrix (l = k + oversampling) is multiplied by A to sample its range, and the
+ * sample is refined by power iterations with A.A^T, which sharpen the separation of the wanted
+ * singular values when the spectrum decays slowly. The small l*n matrix Q^T.A is then decomposed
+ * with SvdImplicitQr. The cost is O(mnl) for a dense m*n matrix, and only tall-skinny dense
+ * matrices of l columns are allocated in addition to the input.
+ *
+ * A is only read by products with tall-skinny dense matrices. Strided dense matrices are used in
+ * place, sparse matrices are converted to CSR form once. The products are split into blocks of
+ * rows which are computed in parallel above the parallel threshold in Multiplications.
+ *
+ * @author Mike
+ *
+ */
+public class RandomizedSVD {
+	public static final int DEFAULT_OVERSAMPLING=10;
+	public static final int DEFAULT_POWER_ITERATIONS=2;
+
+	private final int k;
+	private int oversampling=DEFAULT_OVERSAMPLING;
+	private int powerIterations=DEFAULT_POWER_ITERATIONS;
+	private long seed=1234L;
+
+	/**
+	 * Creates a randomized SVD for the k largest singular values
+	 */
+	public RandomizedSVD(int k) {
+		if (k<1) throw new IllegalArgumentException("Invalid rank: "+k);
+		this.k=k;
+	}
+
+	public static SVDResult decompose(AMatrix a, int k) {
+		return new RandomizedSVD(k).decompose(a);
+	}
+
+	/**
+	 * Sets the number of extra random samples taken beyond the requested rank
+	 */
+	public void setOversampling(int oversampling) {
+		if (oversampling<0) throw new IllegalArgumentException("Invalid oversampling: "+oversampling);
+		this.oversampling=oversampling;
+	}
+
+	/**
+	 * Sets the number of power iterations used to refine the range
+	 */
+	public void setPowerIterations(int powerIterations) {
+		if (powerIterations<0) throw new IllegalArgumentException("Invalid power iterations: "+powerIterations);
+		this.powerIterations=powerIterations;
+	}
+
+	/**
+	 * Sets the seed used for the random test matrix
+	 */
+	public void setSeed(long seed) {
+		this.seed=seed;
+	}
+
+	/**
+	 * Computes the truncated SVD of a matrix. U is m*k, S is k*k and V is n*k, with singular values
+	 * in descending order.
+	 *
+	 * @return The decomposition result, or null if the small SVD failed
+	 */
+	public SVDResult decompose(AMatrix a) {
+		int m=a.rowCount();
+		int n=a.columnCount();
+		if (k>Math.min(m, n)) throw new IllegalArgumentException("Rank "+k+" too large for matrix of shape "+m+"*"+n);
+		int l=Math.min(k+oversampling, Math.min(m, n));
+		Operator op=new Operator(a);
+		Random rand=new Random(seed);
+
+		Matrix omega=Matrix.create(n, l);
+		double[] od=omega.data;
+		for (int i=0; i<od.length; i++) {
+			od[i]=rand.nextGaussian();
+		}
+		Matrix q=op.multiply(false, omega);
+		orthonormalise(q,rand);
+		for (int it=0; it<powerIterations; it++) {
+			Matrix z=op.multiply(true, q);
+			orthonormalise(z,rand);
+			q=op.multiply(false, z);
+			orthonormalise(q,rand);
+		}
+
+		// B^T = A^T.Q, decomposed as Ub.S.Vb^T so that A ~= Q.B = (Q.Vb).S.Ub^T
+		Matrix bt=op.multiply(true, q);
+		SVDResult small=SvdImplicitQr.decompose(bt, true);
+		if (small==null) return null;
+		double[] sv=small.getSingularValues().toDoubleArray();
+		AMatrix ub=small.getU();
+		AMatrix vb=small.getV();
+
+		int[] order=descendingOrder(sv);
+		double[] values=new double[k];
+		Matrix vbk=Matrix.create(l, k);
+		Matrix v=Matrix.create(n, k);
+		for (int c=0; c<k; c++) {
+			int s=order[c];
+			values[c]=sv[s];
+			for (int i=0; i<l; i++) {
+				vbk.unsafeSet(i, c, vb.unsafeGet(i, s));
+			}
+			for (int i=0; i<n; i++) {
+				v.unsafeSet(i, c, ub.unsafeGet(i, s));
+			}
+		}
+		Matrix u=Multiplications.multiply(q, vbk);
+		return new SVDResult(u, DiagonalMatrix.create(values), v, Vector.wrap(values.clone()));
+	}
+
+	private static int[] descendingOrder(final double[] values) {
+		Integer[] idx=new Integer[values.length];
+		for (int i=0; i<idx.length; i++) {
+			idx[i]=i;
+		}
+		Arrays.sort(idx, new java.util.Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(values[b], values[a]);
+			}
+		});
+		int[] order=new int[idx.length];
+		for (int i=0; i<order.length; i++) {
+			order[i]=idx[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Orthonormalises the columns of a tall-skinny matrix in place, using classical Gram-Schmidt
+	 * applied twice. Columns that are dependent on earlier columns are replaced by random
+	 * orthogonal directions.
+	 */
+	static void orthonormalise(Matrix y, Random rand) {
+		int m=y.rowCount();
+		int l=y.columnCount();
+		// work on columns as contiguous arrays
+		double[][] cols=new double[l][m];
+		double[] yd=y.data;
+		for (int i=0; i<m; i++) {
+			int ri=i*l;
+			for (int j=0; j<l; j++) {
+				cols[j][i]=yd[ri+j];
+			}
+		}
+		for (int j=0; j<l; j++) {
+			double[] c=cols[j];
+			double norm0=Math.sqrt(DoubleArrays.elementSquaredSum(c));
+			orthogonalise(cols,j);
+			double norm=Math.sqrt(DoubleArrays.elementSquaredSum(c));
+			if ((norm<=1e-10*norm0)||(norm==0.0)) {
+				for (int i=0; i<m; i++) {
+					c[i]=rand.nextGaussian();
+				}
+				orthogonalise(cols,j);
+				norm=Math.sqrt(DoubleArrays.elementSquaredSum(c));
+			}
+			DoubleArrays.multiply(c, 1.0/norm);
+		}
+		for (int i=0; i<m; i++) {
+			int ri=i*l;
+			for (int j=0; j<l; j++) {
+				yd[ri+j]=cols[j][i];
+			}
+		}
+	}
+
+	private static void orthogonalise(double[][] cols, int j) {
+		double[] c=cols[j];
+		int m=c.length;
+		for (int pass=0; pass<2; pass++) {
+			for (int i=0; i<j; i++) {
+				double h=DoubleArrays.dotProduct(cols[i], 0, c, 0, m);
+				DoubleArrays.addMultiple(c, cols[i], -h);
+			}
+		}
+	}
+
+	/**
+	 * Products of the input matrix or its transpose with dense tall-skinny matrices
+	 */
+	private static final class Operator {
+		final int rows,cols;
+		final AStridedMatrix dense;
+		final CSRMatrix csr;
+		CSRMatrix csrT=null;
+
+		Operator(AMatrix a) {
+			rows=a.rowCount();
+			cols=a.columnCount();
+			if (a instanceof AStridedMatrix) {
+				dense=(AStridedMatrix)a;
+				csr=null;
+			} else if (a.isSparse()) {
+				dense=null;
+				csr=(a instanceof CSRMatrix)?(CSRMatrix)a:CSRMatrix.create(a);
+			} else {
+				dense=a.toMatrix();
+				csr=null;
+			}
+		}
+
+		/**
+		 * Computes op(A).x, where op(A) is A or A^T
+		 */
+		Matrix multiply(boolean trans, Matrix x) {
+			if ((csr!=null)&&trans&&(csrT==null)) csrT=csr.getTranspose();
+			int rc=trans?cols:rows;
+			int inner=trans?rows:cols;
+			int l=x.columnCount();
+			Matrix result=Matrix.create(rc, l);
+			long ops=(csr==null)?((long)rc)*inner*l:((long)csr.storedEntryCount()+rc)*l;
+			ProductTask task=new ProductTask(this,trans,x,result,0,rc,
+					Parallel.leafSize(ops));
+			if ((rc>1)&&Parallel.shouldSplit(ops)) {
+				Parallel.getForkJoinPool().invoke(task);
+			} else {
+				computeRows(trans,x,result,0,rc);
+			}
+			return result;
+		}
+
+		/**
+		 * Number of multiply-adds needed for result rows start..end-1
+		 */
+		long ops(boolean trans, int l, int start, int end) {
+			if (csr==null) return ((long)(end-start))*(trans?rows:cols)*l;
+			int[] rowPtr=(trans?csrT:csr).getRowPointers();
+			return ((long)(rowPtr[end]-rowPtr[start])+(end-start))*l;
+		}
+
+		void computeRows(boolean trans, Matrix x, Matrix result, int start, int end) {
+			int count=end-start;
+			if (count==0) return;
+			int l=x.columnCount();
+			if (csr==null) {
+				AMatrix block=trans?dense.subMatrix(0, rows, start, count):dense.subMatrix(start, count, 0, cols);
+				Multiplications.gemm(1.0, block, trans, x, false, 0.0, result.subMatrix(start, count, 0, l));
+				return;
+			}
+			CSRMatrix c=trans?csrT:csr;
+			int[] rowPtr=c.getRowPointers();
+			int[] colIdx=c.getColumnIndices();
+			double[] values=c.getValues();
+			double[] xd=x.data;
+			double[] rd=result.data;
+			for (int i=start; i<end; i++) {
+				for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+					DoubleArrays.addMultiple(rd, i*l, xd, colIdx[p]*l, l, values[p]);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class ProductTask extends RecursiveAction {
+		private final Operator op;
+		private final boolean trans;
+		private final Matrix x;
+		private final Matrix result;
+		private final int start,end;
+		private final long leafOps;
+
+		ProductTask(Operator op, boolean trans, Matrix x, Matrix result, int start, int end, long leafOps) {
+			this.op=op;
+			this.trans=trans;
+			this.x=x;
+			this.result=result;
+			this.start=start;
+			this.end=end;
+			this.leafOps=leafOps;
+		}
+
+		@Override
+		protected void compute() {
+			int l=x.columnCount();
+			long ops=op.ops(trans,l,start,end);
+			if ((ops<=leafOps)||(end-start<=1)) {
+				op.computeRows(trans,x,result,start,end);
+				return;
+			}
+			// split so that each half has roughly the same number of multiply-adds
+			int lo=start+1;
+			int hi=end-1;
+			while (lo<hi) {
+				int mid=(lo+hi)>>>1;
+				if (op.ops(trans,l,start,mid)*2<ops) {
+					lo=mid+1;
+				} else {
+					hi=mid;
+				}
+			}
+			invokeAll(new ProductTask(op,trans,x,result,start,lo,leafOps),
+					  new ProductTask(op,trans,x,result,lo,end,leafOps));
+		}
+	}
+}
@@ -22,6 +22,7 @@ import mikera.matrixx.AMatrix;
 import mikera.matrixx.Matrix;
 import mikera.matrixx.decompose.Bidiagonal;
 import mikera.matrixx.decompose.IBidiagonalResult;
+import mikera.matrixx.decompose.impl.bidiagonal.BlockedBidiagonal;
 import mikera.vectorz.AVector;
 import mikera.vectorz.Vector;
 
@@ -81,6 +82,9 @@ public class SvdImplicitQr {
     // Should it compute the transpose instead
     private boolean transposed;
 
+    // if false then the unblocked bidiagonal decomposition is always used
+    private boolean blocked;
+
     // Either a copy of the input matrix or a copy of it transposed
     private Matrix A_mod = Matrix.create(1,1);
     
@@ -103,7 +107,20 @@ public class SvdImplicitQr {
 //    public SvdImplicitQr(boolean compact, boolean computeU, boolean computeV,
 //    		boolean canUseTallBidiagonal )    
     public SvdImplicitQr(boolean compact) {
+        this(compact, false);
+    }
+
+    /**
+     * Configures the class
+     *
+     * @param compact Compute a compact SVD
+     * @param blocked If true, BlockedBidiagonal is used when the smaller dimension is at least
+     * BlockedBidiagonal.BLOCK_THRESHOLD. If false, BidiagonalRow is always used. Not the default,
+     * since there are no multi-core measurements showing a benefit yet, see SVDBenchmark.
+     */
+    public SvdImplicitQr(boolean compact, boolean blocked) {
         this.compact = compact;
+        this.blocked = blocked;
 //        this.prefComputeU = computeU;
 //        this.prefComputeV = computeV;
 //        this.canUseTallBidiagonal = canUseTallBidiagonal;
@@ -174,7 +191,11 @@ public class SvdImplicitQr {
         } else {
             A_mod = orig.copy().toMatrix();
         }
-        bidiagResult = Bidiagonal.decompose(A_mod, compact);
+        if( blocked && Math.min(A_mod.rowCount(), A_mod.columnCount()) >= BlockedBidiagonal.BLOCK_THRESHOLD ) {
+            bidiagResult = BlockedBidiagonal.decompose(A_mod, compact);
+        } else {
+            bidiagResult = Bidiagonal.decompose(A_mod, compact);
+        }
         return bidiagResult == null;
     }
 
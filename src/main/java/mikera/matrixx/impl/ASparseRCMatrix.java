@@ -8,6 +8,7 @@ import mikera.matrixx.Matrix;
 import mikera.vectorz.AVector;
 import mikera.vectorz.Op;
 import mikera.vectorz.Vector;
+import mikera.vectorz.impl.ASparseVector;
 import mikera.vectorz.impl.RepeatedElementVector;
 import mikera.vectorz.util.VectorzException;
 
@@ -22,6 +23,9 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 
 	protected final AVector[] data;
 
+	// cached line weight prefix sums, see getLineWeightPrefix()
+	private transient volatile long[] lineWeightPrefix=null;
+
 	protected ASparseRCMatrix(int rows, int cols, AVector[] data) {
 		super(rows, cols);
 		this.data=data;
@@ -29,6 +33,40 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 	
     protected void unsafeSetVec(int i, AVector vec) {
         data[i] = vec;
+        invalidateLineWeights();
+    }
+
+    /**
+     * Discards the cached line weights. Must be called after any change that may alter the number
+     * of stored elements in a line.
+     */
+    protected void invalidateLineWeights() {
+        if (lineWeightPrefix!=null) lineWeightPrefix=null;
+    }
+
+    /**
+     * Returns the prefix sums of line weights, where the weight of a line is its number of stored
+     * elements plus one, so entry i is the total weight of lines 0..i-1. Used to divide work on
+     * lines between parallel tasks.
+     *
+     * The result is cached until the structure is changed through the matrix. Changes made directly
+     * to a line vector are not detected, but stale weights only affect how work is divided.
+     *
+     * WARNING: the returned array is shared, so should not be modified
+     */
+    public long[] getLineWeightPrefix() {
+        long[] prefix=lineWeightPrefix;
+        if (prefix==null) {
+            int n=componentCount();
+            prefix=new long[n+1];
+            for (int i=0; i<n; i++) {
+                AVector line=data[i];
+                int count=(line==null)?0:((line instanceof ASparseVector)?((ASparseVector)line).nonSparseElementCount():line.length());
+                prefix[i+1]=prefix[i]+count+1;
+            }
+            lineWeightPrefix=prefix;
+        }
+        return prefix;
     }
 
     /**
@@ -57,16 +95,18 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 	
 	@Override
 	public void reciprocal() {
+		// may change which elements are stored
+		invalidateLineWeights();
 		AVector rr=RepeatedElementVector.create(lineLength(), 1.0/0.0);
 		long n=componentCount();
 		for (int i=0; i<n; i++) {
 			AVector line=data[i];
 			if (line==null) {
-				data[i] = rr;
+				unsafeSetVec(i, rr);
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.sparseClone();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				}
 				line.reciprocal();
 			}
@@ -83,7 +123,7 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.absCopy();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				} else {
 					line.abs();
 				}
@@ -93,6 +133,8 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 	
 	@Override
 	public void pow(double exponent) {
+		// may change which elements are stored
+		invalidateLineWeights();
 		long n=componentCount();
 		for (int i=0; i<n; i++) {
 			AVector line=data[i];
@@ -101,7 +143,7 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.sparseClone();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				}
 				line.pow(exponent);
 			}
@@ -118,7 +160,7 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.sparseClone();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				}
 				line.square();
 			}
@@ -135,7 +177,7 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.sparseClone();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				}
 				line.sqrt();
 			}
@@ -144,16 +186,18 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 	
 	@Override
 	public void exp() {
+		// may change which elements are stored
+		invalidateLineWeights();
 		AVector rr = RepeatedElementVector.create(lineLength(), 1.0);
 		long n=componentCount();
 		for (int i = 0; i < n; i++) {
 			AVector line = data[i];
 			if (line == null) {
-				data[i] = rr;
+				unsafeSetVec(i, rr);
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.sparseClone();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				}
 				line.exp();
 			}
@@ -162,16 +206,18 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 	
 	@Override
 	public void log() {
+		// may change which elements are stored
+		invalidateLineWeights();
 		AVector rr=RepeatedElementVector.create(lineLength(), Math.log(0.0));
 		long n=componentCount();
 		for (int i=0; i<n; i++) {
 			AVector line=data[i];
 			if (line==null) {
-				data[i] = rr;
+				unsafeSetVec(i, rr);
 			} else {
 				if (!line.isFullyMutable()) {
 					line = line.sparseClone();
-					data[i] = line;
+					unsafeSetVec(i, line);
 				}
 				line.log();
 			}
@@ -289,6 +335,7 @@ public abstract class ASparseRCMatrix extends ARectangularMatrix {
 			}
 			v.applyOp(op);
 		}
+		invalidateLineWeights();
 	}
 	
 	@Override
@@ -0,0 +1,714 @@
+package mikera.matrixx.impl;
+
+import java.util.Arrays;
+
+import mikera.arrayz.ISparse;
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.SparseMultiply;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.impl.ADenseArrayVector;
+import mikera.vectorz.util.DoubleArrays;
+import mikera.vectorz.util.ErrorMessages;
+import mikera.vectorz.util.VectorzException;
+
+/**
+ * Block sparse matrix stored in Block Compressed Sparse Row (BSR) format.
+ *
+ * The matrix is divided into a regular grid of blocks of a fixed size (e.g. 3x3). Only
+ * non-zero blocks are stored, each as a contiguous dense row-major array:
+ * - blockRowPtr (length rowBlockCount+1): blocks of block row i are at positions blockRowPtr[i] to blockRowPtr[i+1]-1
+ * - blockColIdx: the column block index of each stored block, strictly increasing within each block row
+ * - values: the elements of each stored block, with block p starting at p*blockRows*blockColumns
+ *
+ * Compared to CSRMatrix, only one column index is stored per block rather than per element, and
+ * matrix-vector products run dense kernels over each block.
+ *
+ * The sparsity structure is fixed: elements of stored blocks may be modified, but setting any other
+ * element to a non-zero value is not supported.
+ *
+ * @author Mike
+ *
+ */
+public class BSRMatrix extends ABlockMatrix implements ISparse {
+	private static final long serialVersionUID = 2712938574419873624L;
+
+	private static final long SPARSE_ELEMENT_THRESHOLD = 1000L;
+
+	private final int rows;
+	private final int cols;
+	private final int blockRows;
+	private final int blockCols;
+	private final int rowBlocks;
+	private final int colBlocks;
+
+	private final int[] blockRowPtr;
+	private final int[] blockColIdx;
+	private final double[] values;
+
+	protected BSRMatrix(int rows, int cols, int blockRows, int blockCols, int[] blockRowPtr, int[] blockColIdx, double[] values) {
+		checkBlockSize(rows,cols,blockRows,blockCols);
+		this.rows=rows;
+		this.cols=cols;
+		this.blockRows=blockRows;
+		this.blockCols=blockCols;
+		this.rowBlocks=rows/blockRows;
+		this.colBlocks=cols/blockCols;
+		if (blockRowPtr.length!=rowBlocks+1) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(rowBlocks+1, blockRowPtr.length));
+		if (values.length!=blockColIdx.length*blockRows*blockCols) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(blockColIdx.length*blockRows*blockCols, values.length));
+		this.blockRowPtr=blockRowPtr;
+		this.blockColIdx=blockColIdx;
+		this.values=values;
+	}
+
+	private static void checkBlockSize(int rows, int cols, int blockRows, int blockCols) {
+		if ((blockRows<=0)||(blockCols<=0)) throw new IllegalArgumentException(ErrorMessages.illegalSize(blockRows,blockCols));
+		if ((rows%blockRows!=0)||(cols%blockCols!=0)) {
+			throw new IllegalArgumentException("Matrix shape ["+rows+","+cols+"] not divisible by block shape ["+blockRows+","+blockCols+"]");
+		}
+	}
+
+	/**
+	 * Wraps BSR arrays as a BSRMatrix.
+	 *
+	 * WARNING: Performs no checking of block indexes. Call validate() to check the arrays if needed.
+	 */
+	public static BSRMatrix wrap(int rows, int cols, int blockRows, int blockCols, int[] blockRowPtr, int[] blockColIdx, double[] values) {
+		return new BSRMatrix(rows,cols,blockRows,blockCols,blockRowPtr,blockColIdx,values);
+	}
+
+	/**
+	 * Creates an empty BSRMatrix with no stored blocks
+	 */
+	public static BSRMatrix create(int rows, int cols, int blockRows, int blockCols) {
+		checkBlockSize(rows,cols,blockRows,blockCols);
+		return new BSRMatrix(rows,cols,blockRows,blockCols,new int[rows/blockRows+1],new int[0],new double[0]);
+	}
+
+	/**
+	 * Creates a BSRMatrix containing the non-zero blocks of any matrix
+	 */
+	public static BSRMatrix create(AMatrix source, int blockRows, int blockCols) {
+		if (source instanceof SparseRowMatrix) return create((SparseRowMatrix)source,blockRows,blockCols);
+		if (source.isSparse()&&!(source instanceof CSRMatrix)) source=CSRMatrix.create(source);
+		if (source instanceof CSRMatrix) return create(((CSRMatrix)source).toSparseRowMatrix(),blockRows,blockCols);
+		int rc=source.rowCount();
+		int cc=source.columnCount();
+		checkBlockSize(rc,cc,blockRows,blockCols);
+		int rbc=rc/blockRows;
+		int cbc=cc/blockCols;
+		int[] blockRowPtr=new int[rbc+1];
+		int[] blockColIdx=new int[rbc*cbc];
+		for (int bi=0; bi<rbc; bi++) {
+			int p=blockRowPtr[bi];
+			for (int bj=0; bj<cbc; bj++) {
+				if (!isZeroBlock(source,bi*blockRows,bj*blockCols,blockRows,blockCols)) {
+					blockColIdx[p++]=bj;
+				}
+			}
+			blockRowPtr[bi+1]=p;
+		}
+		int nb=blockRowPtr[rbc];
+		double[] values=new double[nb*blockRows*blockCols];
+		int v=0;
+		for (int bi=0; bi<rbc; bi++) {
+			for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+				int i0=bi*blockRows;
+				int j0=blockColIdx[p]*blockCols;
+				for (int r=0; r<blockRows; r++) {
+					for (int c=0; c<blockCols; c++) {
+						values[v++]=source.unsafeGet(i0+r, j0+c);
+					}
+				}
+			}
+		}
+		return new BSRMatrix(rc,cc,blockRows,blockCols,blockRowPtr,Arrays.copyOf(blockColIdx, nb),values);
+	}
+
+	private static boolean isZeroBlock(AMatrix source, int i0, int j0, int blockRows, int blockCols) {
+		for (int r=0; r<blockRows; r++) {
+			for (int c=0; c<blockCols; c++) {
+				if (source.unsafeGet(i0+r, j0+c)!=0.0) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a BSRMatrix from a SparseRowMatrix, storing every block that contains a non-zero element
+	 */
+	public static BSRMatrix create(SparseRowMatrix source, int blockRows, int blockCols) {
+		int rc=source.rowCount();
+		int cc=source.columnCount();
+		checkBlockSize(rc,cc,blockRows,blockCols);
+		int rbc=rc/blockRows;
+		int cbc=cc/blockCols;
+		int[][] rowNonZeros=new int[rc][];
+		int[][] rowBlockCols=new int[rbc][];
+		int[] marker=new int[cbc];
+		Arrays.fill(marker, -1);
+		int[] found=new int[cbc];
+		int[] blockRowPtr=new int[rbc+1];
+
+		// find the non-zero column blocks in each block row
+		for (int bi=0; bi<rbc; bi++) {
+			int count=0;
+			for (int r=0; r<blockRows; r++) {
+				int i=bi*blockRows+r;
+				AVector row=source.unsafeGetVector(i);
+				if (row==null) continue;
+				int[] nz=row.nonZeroIndices();
+				rowNonZeros[i]=nz;
+				for (int k=0; k<nz.length; k++) {
+					int bj=nz[k]/blockCols;
+					if (marker[bj]!=bi) {
+						marker[bj]=bi;
+						found[count++]=bj;
+					}
+				}
+			}
+			int[] bcs=Arrays.copyOf(found, count);
+			Arrays.sort(bcs);
+			rowBlockCols[bi]=bcs;
+			blockRowPtr[bi+1]=blockRowPtr[bi]+count;
+		}
+
+		// copy elements into blocks
+		int nb=blockRowPtr[rbc];
+		int blockSize=blockRows*blockCols;
+		int[] blockColIdx=new int[nb];
+		double[] values=new double[nb*blockSize];
+		for (int bi=0; bi<rbc; bi++) {
+			int[] bcs=rowBlockCols[bi];
+			int p0=blockRowPtr[bi];
+			System.arraycopy(bcs, 0, blockColIdx, p0, bcs.length);
+			for (int r=0; r<blockRows; r++) {
+				int i=bi*blockRows+r;
+				int[] nz=rowNonZeros[i];
+				if (nz==null) continue;
+				AVector row=source.unsafeGetVector(i);
+				int p=p0;
+				for (int k=0; k<nz.length; k++) {
+					int j=nz[k];
+					int bj=j/blockCols;
+					while (blockColIdx[p]!=bj) p++;
+					values[p*blockSize+r*blockCols+(j-bj*blockCols)]=row.unsafeGet(j);
+				}
+			}
+		}
+		return new BSRMatrix(rc,cc,blockRows,blockCols,blockRowPtr,blockColIdx,values);
+	}
+
+	/**
+	 * Creates a BSRMatrix from a BlockDiagonalMatrix. The block size is the greatest common divisor
+	 * of the diagonal block sizes, so each diagonal block is split into one or more square BSR blocks.
+	 */
+	public static BSRMatrix create(BlockDiagonalMatrix source) {
+		int n=source.rowCount();
+		int nblocks=source.rowBlockCount();
+		int g=0;
+		for (int k=0; k<nblocks; k++) {
+			g=gcd(g,source.getBlockRowCount(k));
+		}
+		if (g==0) g=1;
+		int rbc=n/g;
+		int blockSize=g*g;
+		int[] blockRowPtr=new int[rbc+1];
+		int count=0;
+		for (int k=0; k<nblocks; k++) {
+			int s=source.getBlockRowCount(k)/g;
+			int b0=source.getBlockRowStart(k)/g;
+			for (int i=0; i<s; i++) {
+				count+=s;
+				blockRowPtr[b0+i+1]=count;
+			}
+		}
+		int[] blockColIdx=new int[count];
+		double[] values=new double[count*blockSize];
+		for (int k=0; k<nblocks; k++) {
+			AMatrix m=source.getBlock(k, k);
+			int s=source.getBlockRowCount(k)/g;
+			int b0=source.getBlockRowStart(k)/g;
+			for (int i=0; i<s; i++) {
+				int p=blockRowPtr[b0+i];
+				for (int j=0; j<s; j++) {
+					blockColIdx[p]=b0+j;
+					int v=p*blockSize;
+					for (int r=0; r<g; r++) {
+						for (int c=0; c<g; c++) {
+							values[v++]=m.unsafeGet(i*g+r, j*g+c);
+						}
+					}
+					p++;
+				}
+			}
+		}
+		return new BSRMatrix(n,n,g,g,blockRowPtr,blockColIdx,values);
+	}
+
+	private static int gcd(int a, int b) {
+		while (b!=0) {
+			int t=a%b;
+			a=b;
+			b=t;
+		}
+		return a;
+	}
+
+	/**
+	 * Gets the block row pointer array. Blocks of block row i are at positions blockRowPtr[i] to blockRowPtr[i+1]-1
+	 *
+	 * WARNING: returns the internal array, which should not be modified
+	 */
+	public int[] getBlockRowPointers() {
+		return blockRowPtr;
+	}
+
+	/**
+	 * Gets the column block index array.
+	 *
+	 * WARNING: returns the internal array, which should not be modified
+	 */
+	public int[] getBlockColumnIndices() {
+		return blockColIdx;
+	}
+
+	/**
+	 * Gets the array of stored block values. Modifying this array modifies the matrix.
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Gets the number of stored blocks
+	 */
+	public int storedBlockCount() {
+		return blockRowPtr[rowBlocks];
+	}
+
+	/**
+	 * Gets the number of rows in each block
+	 */
+	public int getBlockRows() {
+		return blockRows;
+	}
+
+	/**
+	 * Gets the number of columns in each block
+	 */
+	public int getBlockColumns() {
+		return blockCols;
+	}
+
+	/**
+	 * Gets the position of block (bi,bj) in the block index array, or a negative number if not stored
+	 */
+	private int blockPosition(int bi, int bj) {
+		int p=Arrays.binarySearch(blockColIdx, blockRowPtr[bi], blockRowPtr[bi+1], bj);
+		return (p>=0)?p:-1;
+	}
+
+	@Override
+	public int rowCount() {
+		return rows;
+	}
+
+	@Override
+	public int columnCount() {
+		return cols;
+	}
+
+	@Override
+	public AMatrix getBlock(int rowBlock, int colBlock) {
+		if ((rowBlock<0)||(rowBlock>=rowBlocks)||(colBlock<0)||(colBlock>=colBlocks)) {
+			throw new IndexOutOfBoundsException(ErrorMessages.position(rowBlock,colBlock));
+		}
+		int p=blockPosition(rowBlock,colBlock);
+		if (p<0) return ZeroMatrix.create(blockRows, blockCols);
+		return StridedMatrix.wrap(values, blockRows, blockCols, p*blockRows*blockCols, blockCols, 1);
+	}
+
+	@Override
+	public int getBlockColumnCount(int colBlock) {
+		return blockCols;
+	}
+
+	@Override
+	public int getBlockRowCount(int rowBlock) {
+		return blockRows;
+	}
+
+	@Override
+	public int getBlockColumnStart(int colBlock) {
+		return colBlock*blockCols;
+	}
+
+	@Override
+	public int getBlockRowStart(int rowBlock) {
+		return rowBlock*blockRows;
+	}
+
+	@Override
+	public int getColumnBlockIndex(int col) {
+		if ((col<0)||(col>=cols)) throw new IndexOutOfBoundsException("Column: "+ col);
+		return col/blockCols;
+	}
+
+	@Override
+	public int getRowBlockIndex(int row) {
+		if ((row<0)||(row>=rows)) throw new IndexOutOfBoundsException("Row: "+ row);
+		return row/blockRows;
+	}
+
+	@Override
+	public int columnBlockCount() {
+		return colBlocks;
+	}
+
+	@Override
+	public int rowBlockCount() {
+		return rowBlocks;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		checkIndex(i,j);
+		return unsafeGet(i,j);
+	}
+
+	@Override
+	public double unsafeGet(int i, int j) {
+		int bi=i/blockRows;
+		int bj=j/blockCols;
+		int p=blockPosition(bi,bj);
+		if (p<0) return 0.0;
+		return values[p*blockRows*blockCols+(i-bi*blockRows)*blockCols+(j-bj*blockCols)];
+	}
+
+	@Override
+	public void set(int i, int j, double value) {
+		checkIndex(i,j);
+		unsafeSet(i,j,value);
+	}
+
+	@Override
+	public void unsafeSet(int i, int j, double value) {
+		int bi=i/blockRows;
+		int bj=j/blockCols;
+		int p=blockPosition(bi,bj);
+		if (p<0) {
+			if (value!=0.0) throw new UnsupportedOperationException(ErrorMessages.notFullyMutable(this, i, j));
+			return;
+		}
+		values[p*blockRows*blockCols+(i-bi*blockRows)*blockCols+(j-bj*blockCols)]=value;
+	}
+
+	@Override
+	public boolean isMutable() {
+		return values.length>0;
+	}
+
+	@Override
+	public boolean isFullyMutable() {
+		return (blockRowPtr[rowBlocks]==((long)rowBlocks)*colBlocks);
+	}
+
+	@Override
+	public boolean isSparse() {
+		return true;
+	}
+
+	@Override
+	public boolean isZero() {
+		return DoubleArrays.isZero(values, 0, values.length);
+	}
+
+	@Override
+	public long nonZeroCount() {
+		return DoubleArrays.nonZeroCount(values, 0, values.length);
+	}
+
+	@Override
+	public double density() {
+		return nonZeroCount()/((double)elementCount());
+	}
+
+	@Override
+	public double elementSum() {
+		return DoubleArrays.elementSum(values, 0, values.length);
+	}
+
+	@Override
+	public double elementSquaredSum() {
+		return DoubleArrays.elementSquaredSum(values, 0, values.length);
+	}
+
+	@Override
+	public void multiply(double factor) {
+		DoubleArrays.multiply(values, 0, values.length, factor);
+	}
+
+	@Override
+	public BSRMatrix multiplyCopy(double factor) {
+		BSRMatrix r=exactClone();
+		r.multiply(factor);
+		return r;
+	}
+
+	@Override
+	public void copyRowTo(int i, double[] dest, int destOffset) {
+		Arrays.fill(dest, destOffset, destOffset+cols, 0.0);
+		int bi=i/blockRows;
+		int r=i-bi*blockRows;
+		int blockSize=blockRows*blockCols;
+		for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+			System.arraycopy(values, p*blockSize+r*blockCols, dest, destOffset+blockColIdx[p]*blockCols, blockCols);
+		}
+	}
+
+	@Override
+	public void copyColumnTo(int j, double[] dest, int destOffset) {
+		for (int i=0; i<rows; i++) {
+			dest[destOffset+i]=unsafeGet(i,j);
+		}
+	}
+
+	@Override
+	public void addToArray(double[] data, int offset) {
+		int blockSize=blockRows*blockCols;
+		for (int bi=0; bi<rowBlocks; bi++) {
+			for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+				int v=p*blockSize;
+				int d=offset+bi*blockRows*cols+blockColIdx[p]*blockCols;
+				for (int r=0; r<blockRows; r++) {
+					DoubleArrays.add(values, v, data, d, blockCols);
+					v+=blockCols;
+					d+=cols;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void getElements(double[] dest, int offset) {
+		Arrays.fill(dest, offset, offset+rows*cols, 0.0);
+		addToArray(dest,offset);
+	}
+
+	@Override
+	public double[] toDoubleArray() {
+		double[] result=Matrix.createStorage(rows,cols);
+		addToArray(result,0);
+		return result;
+	}
+
+	@Override
+	public AVector transform(AVector source) {
+		Vector v=Vector.createLength(rows);
+		transform(source,v);
+		return v;
+	}
+
+	@Override
+	public Vector transform(Vector source) {
+		Vector v=Vector.createLength(rows);
+		transform(source,v);
+		return v;
+	}
+
+	@Override
+	public void transform(Vector source, Vector dest) {
+		transform((AVector)source,(AVector)dest);
+	}
+
+	@Override
+	public void transform(AVector source, AVector dest) {
+		if (source.length()!=cols) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(source));
+		if (dest.length()!=rows) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dest));
+		double[] src;
+		int srcOffset;
+		if ((source instanceof ADenseArrayVector)&&(source!=dest)) {
+			ADenseArrayVector s=(ADenseArrayVector)source;
+			src=s.getArray();
+			srcOffset=s.getArrayOffset();
+		} else {
+			src=source.toDoubleArray();
+			srcOffset=0;
+		}
+		if (dest instanceof ADenseArrayVector) {
+			ADenseArrayVector d=(ADenseArrayVector)dest;
+			transform(src,srcOffset,d.getArray(),d.getArrayOffset(),0,rowBlocks);
+		} else {
+			double[] dst=new double[rows];
+			transform(src,srcOffset,dst,0,0,rowBlocks);
+			dest.setElements(dst, 0);
+		}
+	}
+
+	/**
+	 * Computes block rows [blockStart,blockEnd) of the matrix-vector product on raw arrays.
+	 * The destination must not overlap the source.
+	 */
+	public void transform(double[] src, int srcOffset, double[] dest, int destOffset, int blockStart, int blockEnd) {
+		int blockSize=blockRows*blockCols;
+		for (int bi=blockStart; bi<blockEnd; bi++) {
+			int d=destOffset+bi*blockRows;
+			Arrays.fill(dest, d, d+blockRows, 0.0);
+			for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+				int s=srcOffset+blockColIdx[p]*blockCols;
+				int v=p*blockSize;
+				for (int r=0; r<blockRows; r++) {
+					double total=0.0;
+					for (int c=0; c<blockCols; c++) {
+						total+=values[v++]*src[s+c];
+					}
+					dest[d+r]+=total;
+				}
+			}
+		}
+	}
+
+	@Override
+	public AVector innerProduct(AVector v) {
+		return transform(v);
+	}
+
+	@Override
+	public AMatrix innerProduct(Matrix a) {
+		return innerProduct((AMatrix)a);
+	}
+
+	@Override
+	public AMatrix innerProduct(AMatrix a) {
+		if (a.rowCount()!=cols) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(this, a));
+		if (a.isSparse()) {
+			return SparseMultiply.multiply(toCSRMatrix(), a);
+		}
+		int n=a.columnCount();
+		Matrix b=a.toMatrix();
+		Matrix result=Matrix.create(rows, n);
+		double[] bData=b.data;
+		double[] rData=result.data;
+		int blockSize=blockRows*blockCols;
+		for (int bi=0; bi<rowBlocks; bi++) {
+			for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+				int v=p*blockSize;
+				int bRow=blockColIdx[p]*blockCols;
+				for (int r=0; r<blockRows; r++) {
+					int rOffset=(bi*blockRows+r)*n;
+					for (int c=0; c<blockCols; c++) {
+						double x=values[v++];
+						if (x!=0.0) DoubleArrays.addMultiple(rData, rOffset, bData, (bRow+c)*n, n, x);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the transpose of this matrix as a new BSRMatrix, with transposed blocks.
+	 */
+	@Override
+	public BSRMatrix getTranspose() {
+		int nb=blockRowPtr[rowBlocks];
+		int blockSize=blockRows*blockCols;
+		int[] tPtr=new int[colBlocks+1];
+		for (int p=0; p<nb; p++) {
+			tPtr[blockColIdx[p]+1]++;
+		}
+		for (int j=0; j<colBlocks; j++) {
+			tPtr[j+1]+=tPtr[j];
+		}
+		int[] tIdx=new int[nb];
+		double[] tValues=new double[nb*blockSize];
+		int[] next=Arrays.copyOf(tPtr, colBlocks);
+		for (int bi=0; bi<rowBlocks; bi++) {
+			for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+				int q=next[blockColIdx[p]]++;
+				tIdx[q]=bi;
+				int v=p*blockSize;
+				int t=q*blockSize;
+				for (int r=0; r<blockRows; r++) {
+					for (int c=0; c<blockCols; c++) {
+						tValues[t+c*blockRows+r]=values[v++];
+					}
+				}
+			}
+		}
+		return new BSRMatrix(cols,rows,blockCols,blockRows,tPtr,tIdx,tValues);
+	}
+
+	@Override
+	public BSRMatrix getTransposeCopy() {
+		return getTranspose();
+	}
+
+	/**
+	 * Converts this matrix to a CSRMatrix, storing every element of the stored blocks
+	 */
+	public CSRMatrix toCSRMatrix() {
+		int nb=blockRowPtr[rowBlocks];
+		int blockSize=blockRows*blockCols;
+		int[] rowPtr=new int[rows+1];
+		int[] colIdx=new int[nb*blockSize];
+		double[] csrValues=new double[nb*blockSize];
+		int q=0;
+		for (int bi=0; bi<rowBlocks; bi++) {
+			for (int r=0; r<blockRows; r++) {
+				for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+					int j0=blockColIdx[p]*blockCols;
+					int v=p*blockSize+r*blockCols;
+					for (int c=0; c<blockCols; c++) {
+						colIdx[q]=j0+c;
+						csrValues[q]=values[v+c];
+						q++;
+					}
+				}
+				rowPtr[bi*blockRows+r+1]=q;
+			}
+		}
+		return CSRMatrix.wrap(rows, cols, rowPtr, colIdx, csrValues);
+	}
+
+	@Override
+	public BSRMatrix exactClone() {
+		int nb=blockRowPtr[rowBlocks];
+		return new BSRMatrix(rows,cols,blockRows,blockCols,blockRowPtr.clone(),Arrays.copyOf(blockColIdx, nb),values.clone());
+	}
+
+	@Override
+	public AMatrix clone() {
+		if (elementCount()<SPARSE_ELEMENT_THRESHOLD) return super.clone();
+		// the block structure is fixed, so a fully mutable clone needs a different sparse type
+		return toCSRMatrix().toSparseRowMatrix().exactClone();
+	}
+
+	@Override
+	public AMatrix sparse() {
+		return this;
+	}
+
+	@Override
+	public Matrix dense() {
+		return toMatrix();
+	}
+
+	@Override
+	public void validate() {
+		super.validate();
+		if (blockRowPtr.length!=rowBlocks+1) throw new VectorzException("Wrong block row pointer array length: "+blockRowPtr.length);
+		if (blockRowPtr[0]!=0) throw new VectorzException("First block row pointer must be zero");
+		if (blockRowPtr[rowBlocks]>blockColIdx.length) throw new VectorzException("Insufficient block index storage");
+		for (int bi=0; bi<rowBlocks; bi++) {
+			if (blockRowPtr[bi+1]<blockRowPtr[bi]) throw new VectorzException("Decreasing block row pointer at block row: "+bi);
+			for (int p=blockRowPtr[bi]; p<blockRowPtr[bi+1]; p++) {
+				int bj=blockColIdx[p];
+				if ((bj<0)||(bj>=colBlocks)) throw new VectorzException("Block column index out of range at block row: "+bi);
+				if ((p>blockRowPtr[bi])&&(bj<=blockColIdx[p-1])) throw new VectorzException("Block column indices not strictly increasing at block row: "+bi);
+			}
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package mikera.matrixx.impl;
+
+import java.util.Arrays;
+
+import mikera.arrayz.ISparse;
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.SparseMultiply;
+import mikera.matrixx.algo.SparseTransforms;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.impl.SparseIndexedVector;
+import mikera.vectorz.util.DoubleArrays;
+import mikera.vectorz.util.ErrorMessages;
+import mikera.vectorz.util.IntArrays;
+import mikera.vectorz.util.VectorzException;
+
+/**
+ * Sparse matrix stored in Compressed Sparse Row (CSR) format.
+ *
+ * All non-zero elements are stored contiguously in row order, in three arrays:
+ * - rowPtr (length rows+1): entries of row i are at positions rowPtr[i] to rowPtr[i+1]-1
+ * - colIdx: the column index of each entry, strictly increasing within each row
+ * - values: the value of each entry
+ *
+ * Compared to SparseRowMatrix, this avoids a vector object per row, and matrix-vector
+ * products stream through memory sequentially.
+ *
+ * The sparsity structure is fixed: stored entries may be modified, but setting any other
+ * element to a non-zero value is not supported. Convert to SparseRowMatrix if structural
+ * changes are needed.
+ *
+ * @author Mike
+ *
+ */
+public class CSRMatrix extends ARectangularMatrix implements ISparse {
+	private static final long serialVersionUID = -3462937281647163870L;
+
+	private static final long SPARSE_ELEMENT_THRESHOLD = 1000L;
+
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+
+	protected CSRMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+		super(rows,cols);
+		if (rowPtr.length!=rows+1) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(rows+1, rowPtr.length));
+		if (colIdx.length!=values.length) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(colIdx.length, values.length));
+		this.rowPtr=rowPtr;
+		this.colIdx=colIdx;
+		this.values=values;
+	}
+
+	/**
+	 * Wraps CSR arrays as a CSRMatrix.
+	 *
+	 * WARNING: Performs no checking. Call validate() to check the arrays if needed.
+	 */
+	public static CSRMatrix wrap(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+		return new CSRMatrix(rows,cols,rowPtr,colIdx,values);
+	}
+
+	/**
+	 * Creates an empty CSRMatrix with no stored entries
+	 */
+	public static CSRMatrix create(int rows, int cols) {
+		return new CSRMatrix(rows,cols,new int[rows+1],new int[0],new double[0]);
+	}
+
+	/**
+	 * Creates a CSRMatrix containing the non-zero elements of any matrix
+	 */
+	public static CSRMatrix create(AMatrix source) {
+		if (source instanceof CSRMatrix) return ((CSRMatrix)source).exactClone();
+		if (source instanceof SparseColumnMatrix) return create((SparseColumnMatrix)source);
+		int rc=source.rowCount();
+		int cc=source.columnCount();
+		int[][] rowIndices=new int[rc][];
+		int[] rowPtr=new int[rc+1];
+		for (int i=0; i<rc; i++) {
+			int[] nz=source.getRow(i).nonZeroIndices();
+			rowIndices[i]=nz;
+			rowPtr[i+1]=rowPtr[i]+nz.length;
+		}
+		int[] colIdx=new int[rowPtr[rc]];
+		double[] values=new double[rowPtr[rc]];
+		for (int i=0; i<rc; i++) {
+			int[] nz=rowIndices[i];
+			int p=rowPtr[i];
+			System.arraycopy(nz, 0, colIdx, p, nz.length);
+			for (int k=0; k<nz.length; k++) {
+				values[p+k]=source.unsafeGet(i, nz[k]);
+			}
+		}
+		return new CSRMatrix(rc,cc,rowPtr,colIdx,values);
+	}
+
+	/**
+	 * Creates a CSRMatrix from a SparseColumnMatrix
+	 */
+	public static CSRMatrix create(SparseColumnMatrix source) {
+		int rc=source.rowCount();
+		int cc=source.columnCount();
+		int[][] colIndices=new int[cc][];
+		int[] rowPtr=new int[rc+1];
+		// count entries in each row
+		for (int j=0; j<cc; j++) {
+			AVector col=source.unsafeGetVector(j);
+			int[] nz=(col==null)?IntArrays.EMPTY_INT_ARRAY:col.nonZeroIndices();
+			colIndices[j]=nz;
+			for (int k=0; k<nz.length; k++) {
+				rowPtr[nz[k]+1]++;
+			}
+		}
+		for (int i=0; i<rc; i++) {
+			rowPtr[i+1]+=rowPtr[i];
+		}
+		// scatter entries column by column, so column indices end up sorted within each row
+		int nnz=rowPtr[rc];
+		int[] colIdx=new int[nnz];
+		double[] values=new double[nnz];
+		int[] next=Arrays.copyOf(rowPtr, rc);
+		for (int j=0; j<cc; j++) {
+			int[] nz=colIndices[j];
+			if (nz.length==0) continue;
+			AVector col=source.unsafeGetVector(j);
+			for (int k=0; k<nz.length; k++) {
+				int i=nz[k];
+				int p=next[i]++;
+				colIdx[p]=j;
+				values[p]=col.unsafeGet(i);
+			}
+		}
+		return new CSRMatrix(rc,cc,rowPtr,colIdx,values);
+	}
+
+	/**
+	 * Gets the row pointer array. Entries of row i are at positions rowPtr[i] to rowPtr[i+1]-1
+	 *
+	 * WARNING: returns the internal array, which should not be modified
+	 */
+	public int[] getRowPointers() {
+		return rowPtr;
+	}
+
+	/**
+	 * Gets the column index array.
+	 *
+	 * WARNING: returns the internal array, which should not be modified
+	 */
+	public int[] getColumnIndices() {
+		return colIdx;
+	}
+
+	/**
+	 * Gets the array of stored values. Modifying this array modifies the matrix.
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * Gets the number of stored entries
+	 */
+	public int storedEntryCount() {
+		return rowPtr[rows];
+	}
+
+	/**
+	 * Gets the position of element (i,j) in the values array, or a negative number if not stored
+	 */
+	private int position(int i, int j) {
+		int p=Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i+1], j);
+		return (p>=0)?p:-1;
+	}
+
+	@Override
+	public double get(int i, int j) {
+		checkIndex(i,j);
+		return unsafeGet(i,j);
+	}
+
+	@Override
+	public double unsafeGet(int i, int j) {
+		int p=position(i,j);
+		return (p<0)?0.0:values[p];
+	}
+
+	@Override
+	public void set(int i, int j, double value) {
+		checkIndex(i,j);
+		unsafeSet(i,j,value);
+	}
+
+	@Override
+	public void unsafeSet(int i, int j, double value) {
+		int p=position(i,j);
+		if (p<0) {
+			if (value!=0.0) throw new UnsupportedOperationException(ErrorMessages.notFullyMutable(this, i, j));
+			return;
+		}
+		values[p]=value;
+	}
+
+	@Override
+	public boolean isMutable() {
+		return values.length>0;
+	}
+
+	@Override
+	public boolean isFullyMutable() {
+		return (rowPtr[rows]==((long)rows)*cols);
+	}
+
+	@Override
+	public boolean isSparse() {
+		return true;
+	}
+
+	@Override
+	public boolean isZero() {
+		return DoubleArrays.isZero(values, 0, rowPtr[rows]);
+	}
+
+	@Override
+	public long nonZeroCount() {
+		return DoubleArrays.nonZeroCount(values, 0, rowPtr[rows]);
+	}
+
+	@Override
+	public double elementSum() {
+		return DoubleArrays.elementSum(values, 0, rowPtr[rows]);
+	}
+
+	@Override
+	public double elementSquaredSum() {
+		return DoubleArrays.elementSquaredSum(values, 0, rowPtr[rows]);
+	}
+
+	@Override
+	public void multiply(double factor) {
+		DoubleArrays.multiply(values, 0, rowPtr[rows], factor);
+	}
+
+	@Override
+	public CSRMatrix multiplyCopy(double factor) {
+		CSRMatrix r=exactClone();
+		r.multiply(factor);
+		return r;
+	}
+
+	/**
+	 * Returns a row of this matrix as a new sparse vector. Use getRowView for a mutable view.
+	 */
+	@Override
+	public AVector getRow(int i) {
+		checkRow(i);
+		int start=rowPtr[i];
+		int end=rowPtr[i+1];
+		return SparseIndexedVector.wrap(cols, Arrays.copyOfRange(colIdx, start, end), Arrays.copyOfRange(values, start, end));
+	}
+
+	/**
+	 * Returns a sparse view of a row. Stored elements of the row can be modified through the view,
+	 * but setting a structural zero to a non-zero value throws.
+	 */
+	@Override
+	public CSRRowView getRowView(int i) {
+		checkRow(i);
+		return new CSRRowView(this,i);
+	}
+
+	@Override
+	public AVector getRowClone(int i) {
+		return getRow(i);
+	}
+
+	@Override
+	public void copyRowTo(int i, double[] dest, int destOffset) {
+		Arrays.fill(dest, destOffset, destOffset+cols, 0.0);
+		for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+			dest[destOffset+colIdx[p]]=values[p];
+		}
+	}
+
+	@Override
+	public void copyColumnTo(int j, double[] dest, int destOffset) {
+		for (int i=0; i<rows; i++) {
+			dest[destOffset+i]=unsafeGet(i,j);
+		}
+	}
+
+	@Override
+	public void addToArray(double[] data, int offset) {
+		for (int i=0; i<rows; i++) {
+			int ri=offset+i*cols;
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				data[ri+colIdx[p]]+=values[p];
+			}
+		}
+	}
+
+	@Override
+	public void getElements(double[] dest, int offset) {
+		Arrays.fill(dest, offset, offset+rows*cols, 0.0);
+		addToArray(dest,offset);
+	}
+
+	@Override
+	public double[] toDoubleArray() {
+		double[] result=Matrix.createStorage(rows,cols);
+		addToArray(result,0);
+		return result;
+	}
+
+	@Override
+	public AVector transform(AVector source) {
+		Vector v=Vector.createLength(rows);
+		transform(source,v);
+		return v;
+	}
+
+	@Override
+	public Vector transform(Vector source) {
+		Vector v=Vector.createLength(rows);
+		transform(source,v);
+		return v;
+	}
+
+	@Override
+	public void transform(Vector source, Vector dest) {
+		transform((AVector)source,(AVector)dest);
+	}
+
+	/**
+	 * Computes dest = this.source. Large products are computed in parallel, see SparseTransforms.
+	 */
+	@Override
+	public void transform(AVector source, AVector dest) {
+		SparseTransforms.transform(this, source, dest);
+	}
+
+	/**
+	 * Computes rows [rowStart,rowEnd) of the matrix-vector product on raw arrays.
+	 * The destination must not overlap the source.
+	 */
+	public void transform(double[] src, int srcOffset, double[] dest, int destOffset, int rowStart, int rowEnd) {
+		int p=rowPtr[rowStart];
+		for (int i=rowStart; i<rowEnd; i++) {
+			int end=rowPtr[i+1];
+			double total=0.0;
+			for (; p<end; p++) {
+				total+=values[p]*src[srcOffset+colIdx[p]];
+			}
+			dest[destOffset+i]=total;
+		}
+	}
+
+	@Override
+	public AVector innerProduct(AVector v) {
+		return transform(v);
+	}
+
+	@Override
+	public AMatrix innerProduct(Matrix a) {
+		return innerProduct((AMatrix)a);
+	}
+
+	@Override
+	public AMatrix innerProduct(AMatrix a) {
+		if (a.rowCount()!=cols) throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(this, a));
+		if (a.isSparse()) {
+			return SparseMultiply.multiply(this, a);
+		}
+		int n=a.columnCount();
+		Matrix b=a.toMatrix();
+		Matrix result=Matrix.create(rows, n);
+		double[] bData=b.data;
+		double[] rData=result.data;
+		for (int i=0; i<rows; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				DoubleArrays.addMultiple(rData, i*n, bData, colIdx[p]*n, n, values[p]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the transpose of this matrix as a new CSRMatrix.
+	 */
+	@Override
+	public CSRMatrix getTranspose() {
+		int nnz=rowPtr[rows];
+		int[] tPtr=new int[cols+1];
+		for (int p=0; p<nnz; p++) {
+			tPtr[colIdx[p]+1]++;
+		}
+		for (int j=0; j<cols; j++) {
+			tPtr[j+1]+=tPtr[j];
+		}
+		int[] tIdx=new int[nnz];
+		double[] tValues=new double[nnz];
+		int[] next=Arrays.copyOf(tPtr, cols);
+		for (int i=0; i<rows; i++) {
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				int q=next[colIdx[p]]++;
+				tIdx[q]=i;
+				tValues[q]=values[p];
+			}
+		}
+		return new CSRMatrix(cols,rows,tPtr,tIdx,tValues);
+	}
+
+	@Override
+	public CSRMatrix getTransposeCopy() {
+		return getTranspose();
+	}
+
+	/**
+	 * Converts this matrix to a SparseRowMatrix
+	 */
+	public SparseRowMatrix toSparseRowMatrix() {
+		AVector[] rowVecs=new AVector[rows];
+		for (int i=0; i<rows; i++) {
+			if (rowPtr[i+1]>rowPtr[i]) rowVecs[i]=getRow(i);
+		}
+		return SparseRowMatrix.wrap(rowVecs, rows, cols);
+	}
+
+	/**
+	 * Converts this matrix to a SparseColumnMatrix
+	 */
+	public SparseColumnMatrix toSparseColumnMatrix() {
+		CSRMatrix t=getTranspose();
+		AVector[] colVecs=new AVector[cols];
+		for (int j=0; j<cols; j++) {
+			if (t.rowPtr[j+1]>t.rowPtr[j]) colVecs[j]=t.getRow(j);
+		}
+		return SparseColumnMatrix.wrap(colVecs, rows, cols);
+	}
+
+	@Override
+	public CSRMatrix exactClone() {
+		int nnz=rowPtr[rows];
+		return new CSRMatrix(rows,cols,rowPtr.clone(),Arrays.copyOf(colIdx, nnz),Arrays.copyOf(values, nnz));
+	}
+
+	@Override
+	public AMatrix clone() {
+		if (elementCount()<SPARSE_ELEMENT_THRESHOLD) return super.clone();
+		return toSparseRowMatrix().exactClone();
+	}
+
+	@Override
+	public AMatrix sparse() {
+		return this;
+	}
+
+	@Override
+	public Matrix dense() {
+		return toMatrix();
+	}
+
+	@Override
+	public void validate() {
+		super.validate();
+		if (rowPtr.length!=rows+1) throw new VectorzException("Wrong row pointer array length: "+rowPtr.length);
+		if (rowPtr[0]!=0) throw new VectorzException("First row pointer must be zero");
+		if (rowPtr[rows]>colIdx.length) throw new VectorzException("Insufficient column index storage");
+		for (int i=0; i<rows; i++) {
+			if (rowPtr[i+1]<rowPtr[i]) throw new VectorzException("Decreasing row pointer at row: "+i);
+			for (int p=rowPtr[i]; p<rowPtr[i+1]; p++) {
+				int j=colIdx[p];
+				if ((j<0)||(j>=cols)) throw new VectorzException("Column index out of range at row: "+i);
+				if ((p>rowPtr[i])&&(j<=colIdx[p-1])) throw new VectorzException("Column indices not strictly increasing at row: "+i);
+			}
+		}
+	}
+}
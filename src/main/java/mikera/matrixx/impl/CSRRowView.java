@@ -0,0 +1,253 @@
+package mikera.matrixx.impl;
+
+import java.util.Arrays;
+
+import mikera.indexz.Index;
+import mikera.vectorz.AVector;
+import mikera.vectorz.impl.ADenseArrayVector;
+import mikera.vectorz.impl.ASparseVector;
+import mikera.vectorz.impl.ArraySubVector;
+import mikera.vectorz.impl.SparseIndexedVector;
+import mikera.vectorz.util.DoubleArrays;
+import mikera.vectorz.util.ErrorMessages;
+import mikera.vectorz.util.VectorzException;
+
+/**
+ * A sparse view of a single row of a CSRMatrix.
+ *
+ * Reads and writes go directly to the matrix's colIdx / values arrays in the range
+ * rowPtr[i]..rowPtr[i+1], so products and accumulations cost O(nnz) in the row rather than
+ * O(columns). The sparsity structure is fixed: stored elements can be set, but setting a
+ * structural zero to a non-zero value throws UnsupportedOperationException.
+ *
+ * @author Mike
+ */
+@SuppressWarnings("serial")
+public final class CSRRowView extends ASparseVector {
+	private final CSRMatrix source;
+	private final int row;
+	private final int[] colIdx;
+	private final double[] values;
+	private final int start;
+	private final int count;
+
+	CSRRowView(CSRMatrix source, int row) {
+		super(source.columnCount());
+		int[] rowPtr=source.getRowPointers();
+		this.source=source;
+		this.row=row;
+		this.colIdx=source.getColumnIndices();
+		this.values=source.getValues();
+		this.start=rowPtr[row];
+		this.count=rowPtr[row+1]-start;
+	}
+
+	/**
+	 * Gets the position of element i in the values array, or a negative number if not stored
+	 */
+	private int position(int i) {
+		return Arrays.binarySearch(colIdx, start, start+count, i);
+	}
+
+	@Override
+	public double get(int i) {
+		checkIndex(i);
+		return unsafeGet(i);
+	}
+
+	@Override
+	public double unsafeGet(int i) {
+		int p=position(i);
+		return (p<0)?0.0:values[p];
+	}
+
+	@Override
+	public void set(int i, double value) {
+		checkIndex(i);
+		unsafeSet(i,value);
+	}
+
+	@Override
+	public void unsafeSet(int i, double value) {
+		int p=position(i);
+		if (p<0) {
+			if (value!=0.0) throw new UnsupportedOperationException(ErrorMessages.notFullyMutable(source, row, i));
+			return;
+		}
+		values[p]=value;
+	}
+
+	@Override
+	public void addAt(int i, double value) {
+		if (value==0.0) return;
+		int p=position(i);
+		if (p<0) throw new UnsupportedOperationException(ErrorMessages.notFullyMutable(source, row, i));
+		values[p]+=value;
+	}
+
+	@Override
+	public boolean isMutable() {
+		return count>0;
+	}
+
+	@Override
+	public boolean isFullyMutable() {
+		return count==length;
+	}
+
+	@Override
+	public boolean isView() {
+		return true;
+	}
+
+	@Override
+	public int nonSparseElementCount() {
+		return count;
+	}
+
+	@Override
+	public AVector nonSparseValues() {
+		return ArraySubVector.wrap(values, start, count);
+	}
+
+	@Override
+	public Index nonSparseIndex() {
+		return Index.wrap(Arrays.copyOfRange(colIdx, start, start+count));
+	}
+
+	@Override
+	public int[] nonZeroIndices() {
+		int n=DoubleArrays.nonZeroCount(values, start, count);
+		int[] result=new int[n];
+		int di=0;
+		for (int p=start; p<start+count; p++) {
+			if (values[p]!=0.0) result[di++]=colIdx[p];
+		}
+		return result;
+	}
+
+	@Override
+	public boolean includesIndex(int i) {
+		return position(i)>=0;
+	}
+
+	@Override
+	public boolean isZero() {
+		return DoubleArrays.isZero(values, start, count);
+	}
+
+	@Override
+	public long nonZeroCount() {
+		return DoubleArrays.nonZeroCount(values, start, count);
+	}
+
+	@Override
+	public double elementSum() {
+		return DoubleArrays.elementSum(values, start, count);
+	}
+
+	@Override
+	public double magnitudeSquared() {
+		return DoubleArrays.elementSquaredSum(values, start, count);
+	}
+
+	@Override
+	public void multiply(double factor) {
+		DoubleArrays.multiply(values, start, count, factor);
+	}
+
+	@Override
+	public double dotProduct(double[] data, int offset) {
+		double result=0.0;
+		for (int p=start; p<start+count; p++) {
+			result+=values[p]*data[offset+colIdx[p]];
+		}
+		return result;
+	}
+
+	@Override
+	public double dotProduct(AVector v) {
+		checkSameLength(v);
+		if (v instanceof ADenseArrayVector) {
+			ADenseArrayVector dv=(ADenseArrayVector)v;
+			return dotProduct(dv.getArray(),dv.getArrayOffset());
+		}
+		double result=0.0;
+		for (int p=start; p<start+count; p++) {
+			result+=values[p]*v.unsafeGet(colIdx[p]);
+		}
+		return result;
+	}
+
+	@Override
+	public void add(ASparseVector v) {
+		checkSameLength(v);
+		Index ni=v.nonSparseIndex();
+		for (int k=0; k<ni.length(); k++) {
+			int i=ni.get(k);
+			addAt(i,v.unsafeGet(i));
+		}
+	}
+
+	@Override
+	public void addToArray(double[] dest, int offset) {
+		for (int p=start; p<start+count; p++) {
+			dest[offset+colIdx[p]]+=values[p];
+		}
+	}
+
+	@Override
+	public void addToArray(int offset, double[] array, int arrayOffset, int length) {
+		addMultipleToArray(1.0,offset,array,arrayOffset,length);
+	}
+
+	@Override
+	public void addMultipleToArray(double factor, int offset, double[] array, int arrayOffset, int length) {
+		int end=start+count;
+		int p=(offset==0)?start:seek(offset);
+		for (; p<end; p++) {
+			int i=colIdx[p]-offset;
+			if (i>=length) break;
+			array[arrayOffset+i]+=factor*values[p];
+		}
+	}
+
+	/**
+	 * Returns the first position with a column index at or beyond i
+	 */
+	private int seek(int i) {
+		int p=position(i);
+		return (p>=0)?p:-(p+1);
+	}
+
+	@Override
+	public void getElements(double[] dest, int offset) {
+		Arrays.fill(dest, offset, offset+length, 0.0);
+		addToArray(dest,offset);
+	}
+
+	@Override
+	public SparseIndexedVector sparseClone() {
+		return SparseIndexedVector.wrap(length, Arrays.copyOfRange(colIdx, start, start+count), Arrays.copyOfRange(values, start, start+count));
+	}
+
+	@Override
+	public AVector clone() {
+		return sparseClone();
+	}
+
+	@Override
+	public CSRRowView exactClone() {
+		return new CSRRowView(source.exactClone(),row);
+	}
+
+	@Override
+	public void validate() {
+		if ((start<0)||(start+count>values.length)) throw new VectorzException("Row range out of bounds");
+		for (int p=start; p<start+count; p++) {
+			if ((colIdx[p]<0)||(colIdx[p]>=length)) throw new VectorzException("Column index out of range: "+colIdx[p]);
+			if ((p>start)&&(colIdx[p]<=colIdx[p-1])) throw new VectorzException("Column indices not strictly increasing in row "+row);
+		}
+		super.validate();
+	}
+}
@@ -0,0 +1,516 @@
+package mikera.matrixx.impl;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.Matrix22;
+import mikera.matrixx.Matrix33;
+import mikera.transformz.Affine34;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * A batch of many small matrices of identical shape, stored contiguously in a single double[] array
+ * in structure-of-arrays (SoA) layout: element (i,j) of every matrix in the batch is stored in one
+ * contiguous "plane" of the array, i.e. element (i,j) of matrix n is at data[(i*cols+j)*count+n].
+ *
+ * Batch kernels process a block of matrices per pass over each plane, so the inner loops run over
+ * contiguous memory and many matrices are handled per loop iteration, without any per-matrix objects
+ * or virtual calls.
+ *
+ * A batch of vectors is represented as a batch of single-column matrices.
+ *
+ * Affine transforms such as Affine34 are represented as R*(R+1) matrices with an implicit final row
+ * [0 ... 0 1].
+ *
+ * @author Mike
+ */
+public final class MatrixBatch {
+	// number of matrices processed per block in batch kernels, chosen so that the
+	// working planes for a 4x4 multiply fit comfortably in L1/L2 cache
+	private static final int BLOCK=256;
+
+	private final int count;
+	private final int rows;
+	private final int cols;
+	public final double[] data;
+
+	private MatrixBatch(int count, int rows, int cols, double[] data) {
+		this.count=count;
+		this.rows=rows;
+		this.cols=cols;
+		this.data=data;
+	}
+
+	/**
+	 * Creates a zero-filled batch of count matrices, each of shape rows*cols
+	 */
+	public static MatrixBatch create(int count, int rows, int cols) {
+		if ((count<0)||(rows<0)||(cols<0)) throw new IllegalArgumentException(ErrorMessages.illegalSize(count,rows,cols));
+		long n=((long)count)*rows*cols;
+		if (n>Integer.MAX_VALUE) throw new IllegalArgumentException(ErrorMessages.illegalSize(count,rows,cols));
+		return new MatrixBatch(count,rows,cols,new double[(int)n]);
+	}
+
+	/**
+	 * Creates a zero-filled batch of count vectors, each of the given length
+	 */
+	public static MatrixBatch createVectors(int count, int length) {
+		return create(count,length,1);
+	}
+
+	/**
+	 * Creates a batch containing copies of the given matrices, which must all have the same shape
+	 */
+	public static MatrixBatch create(AMatrix... matrices) {
+		int n=matrices.length;
+		if (n==0) throw new IllegalArgumentException("Cannot create a MatrixBatch from zero matrices");
+		MatrixBatch b=create(n,matrices[0].rowCount(),matrices[0].columnCount());
+		for (int i=0; i<n; i++) {
+			b.setMatrix(i, matrices[i]);
+		}
+		return b;
+	}
+
+	/**
+	 * Creates a batch of 3x4 matrices from the given affine transforms
+	 */
+	public static MatrixBatch create(Affine34... transforms) {
+		int n=transforms.length;
+		MatrixBatch b=create(n,3,4);
+		for (int i=0; i<n; i++) {
+			b.setAffine(i, transforms[i]);
+		}
+		return b;
+	}
+
+	/**
+	 * Creates a batch of vectors from the given vectors, which must all have the same length
+	 */
+	public static MatrixBatch createVectors(AVector... vectors) {
+		int n=vectors.length;
+		if (n==0) throw new IllegalArgumentException("Cannot create a MatrixBatch from zero vectors");
+		MatrixBatch b=createVectors(n,vectors[0].length());
+		for (int i=0; i<n; i++) {
+			b.setVector(i, vectors[i]);
+		}
+		return b;
+	}
+
+	/**
+	 * Returns the number of matrices in this batch
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * Returns the number of rows in each matrix of this batch
+	 */
+	public int rowCount() {
+		return rows;
+	}
+
+	/**
+	 * Returns the number of columns in each matrix of this batch
+	 */
+	public int columnCount() {
+		return cols;
+	}
+
+	public double get(int index, int row, int col) {
+		checkIndex(index,row,col);
+		return data[(row*cols+col)*count+index];
+	}
+
+	public void set(int index, int row, int col, double value) {
+		checkIndex(index,row,col);
+		data[(row*cols+col)*count+index]=value;
+	}
+
+	private void checkIndex(int index, int row, int col) {
+		if ((index<0)||(index>=count)||(row<0)||(row>=rows)||(col<0)||(col>=cols)) {
+			throw new IndexOutOfBoundsException(ErrorMessages.position(index,row,col));
+		}
+	}
+
+	private void checkIndex(int index) {
+		if ((index<0)||(index>=count)) throw new IndexOutOfBoundsException(ErrorMessages.position(index));
+	}
+
+	/**
+	 * Sets the matrix at the given index in this batch to the values of the given matrix
+	 */
+	public void setMatrix(int index, AMatrix m) {
+		checkIndex(index);
+		if ((m.rowCount()!=rows)||(m.columnCount()!=cols)) throw new IllegalArgumentException(ErrorMessages.incompatibleShape(m));
+		for (int i=0; i<rows; i++) {
+			for (int j=0; j<cols; j++) {
+				data[(i*cols+j)*count+index]=m.unsafeGet(i, j);
+			}
+		}
+	}
+
+	/**
+	 * Sets the matrix at the given index in this 3x4 batch to the values of the given affine transform
+	 */
+	public void setAffine(int index, Affine34 t) {
+		checkIndex(index);
+		checkShape(3,4);
+		int n=count;
+		int i=index;
+		data[i]=t.m00; data[i+n]=t.m01; data[i+2*n]=t.m02; data[i+3*n]=t.tr0;
+		data[i+4*n]=t.m10; data[i+5*n]=t.m11; data[i+6*n]=t.m12; data[i+7*n]=t.tr1;
+		data[i+8*n]=t.m20; data[i+9*n]=t.m21; data[i+10*n]=t.m22; data[i+11*n]=t.tr2;
+	}
+
+	/**
+	 * Sets the vector at the given index in this batch of vectors
+	 */
+	public void setVector(int index, AVector v) {
+		checkIndex(index);
+		if ((cols!=1)||(v.length()!=rows)) throw new IllegalArgumentException(ErrorMessages.incompatibleShape(v));
+		for (int i=0; i<rows; i++) {
+			data[i*count+index]=v.unsafeGet(i);
+		}
+	}
+
+	/**
+	 * Returns a copy of the matrix at the given index. Matrix22 and Matrix33 are returned for
+	 * 2x2 and 3x3 batches respectively, otherwise a dense Matrix.
+	 */
+	public AMatrix getMatrix(int index) {
+		if ((rows==2)&&(cols==2)) return getMatrix22(index);
+		if ((rows==3)&&(cols==3)) return getMatrix33(index);
+		checkIndex(index);
+		Matrix m=Matrix.create(rows, cols);
+		for (int e=0; e<rows*cols; e++) {
+			m.data[e]=data[e*count+index];
+		}
+		return m;
+	}
+
+	public Matrix22 getMatrix22(int index) {
+		checkIndex(index);
+		checkShape(2,2);
+		int n=count;
+		int i=index;
+		return new Matrix22(data[i],data[i+n],data[i+2*n],data[i+3*n]);
+	}
+
+	public Matrix33 getMatrix33(int index) {
+		checkIndex(index);
+		checkShape(3,3);
+		int n=count;
+		int i=index;
+		return new Matrix33(data[i],data[i+n],data[i+2*n],
+				data[i+3*n],data[i+4*n],data[i+5*n],
+				data[i+6*n],data[i+7*n],data[i+8*n]);
+	}
+
+	public Affine34 getAffine34(int index) {
+		checkIndex(index);
+		checkShape(3,4);
+		int n=count;
+		int i=index;
+		return new Affine34(data[i],data[i+n],data[i+2*n],data[i+3*n],
+				data[i+4*n],data[i+5*n],data[i+6*n],data[i+7*n],
+				data[i+8*n],data[i+9*n],data[i+10*n],data[i+11*n]);
+	}
+
+	/**
+	 * Returns a copy of the vector at the given index in this batch of vectors
+	 */
+	public Vector getVector(int index) {
+		checkIndex(index);
+		if (cols!=1) throw new UnsupportedOperationException("Not a batch of vectors, shape is "+rows+"x"+cols);
+		Vector v=Vector.createLength(rows);
+		for (int i=0; i<rows; i++) {
+			v.unsafeSet(i,data[i*count+index]);
+		}
+		return v;
+	}
+
+	private void checkShape(int r, int c) {
+		if ((rows!=r)||(cols!=c)) throw new UnsupportedOperationException("Expected batch of "+r+"x"+c+" matrices but shape is "+rows+"x"+cols);
+	}
+
+	private static void checkCount(MatrixBatch a, MatrixBatch b) {
+		if (a.count!=b.count) throw new IllegalArgumentException("Mismatched batch sizes: "+a.count+" vs. "+b.count);
+	}
+
+	// =============================================================
+	// Batch kernels
+
+	/**
+	 * Multiplies each pair of matrices in two batches, storing the products in dest.
+	 *
+	 * dest may be the same batch as either a or b.
+	 */
+	public static void multiply(MatrixBatch a, MatrixBatch b, MatrixBatch dest) {
+		checkCount(a,b);
+		checkCount(a,dest);
+		int r=a.rows;
+		int ic=a.cols;
+		int c=b.cols;
+		if ((b.rows!=ic)||(dest.rows!=r)||(dest.cols!=c)) {
+			throw new IllegalArgumentException("Incompatible batch shapes: "+r+"x"+ic+" * "+b.rows+"x"+c+" -> "+dest.rows+"x"+dest.cols);
+		}
+		int n=a.count;
+		double[] ad=a.data;
+		double[] bd=b.data;
+		double[] tmp=new double[r*c*BLOCK];
+		for (int n0=0; n0<n; n0+=BLOCK) {
+			int bs=Math.min(BLOCK, n-n0);
+			for (int i=0; i<r; i++) {
+				for (int j=0; j<c; j++) {
+					int ti=(i*c+j)*BLOCK;
+					for (int t=0; t<bs; t++) {
+						tmp[ti+t]=0.0;
+					}
+					for (int k=0; k<ic; k++) {
+						int ai=(i*ic+k)*n+n0;
+						int bi=(k*c+j)*n+n0;
+						for (int t=0; t<bs; t++) {
+							tmp[ti+t]+=ad[ai+t]*bd[bi+t];
+						}
+					}
+				}
+			}
+			copyBlock(tmp,dest,n0,bs);
+		}
+	}
+
+	/**
+	 * Composes each pair of affine transforms in two batches of R*(R+1) affine matrices, so that
+	 * dest[n] applies b[n] followed by a[n]
+	 *
+	 * dest may be the same batch as either a or b.
+	 */
+	public static void composeAffine(MatrixBatch a, MatrixBatch b, MatrixBatch dest) {
+		checkCount(a,b);
+		checkCount(a,dest);
+		int r=a.rows;
+		int c=r+1;
+		if ((a.cols!=c)||(b.rows!=r)||(b.cols!=c)||(dest.rows!=r)||(dest.cols!=c)) {
+			throw new IllegalArgumentException("Batches must all contain affine "+r+"x"+c+" matrices");
+		}
+		int n=a.count;
+		double[] ad=a.data;
+		double[] bd=b.data;
+		double[] tmp=new double[r*c*BLOCK];
+		for (int n0=0; n0<n; n0+=BLOCK) {
+			int bs=Math.min(BLOCK, n-n0);
+			for (int i=0; i<r; i++) {
+				for (int j=0; j<c; j++) {
+					int ti=(i*c+j)*BLOCK;
+					if (j==r) {
+						// translation column starts from the translation of a
+						int ai=(i*c+r)*n+n0;
+						for (int t=0; t<bs; t++) {
+							tmp[ti+t]=ad[ai+t];
+						}
+					} else {
+						for (int t=0; t<bs; t++) {
+							tmp[ti+t]=0.0;
+						}
+					}
+					for (int k=0; k<r; k++) {
+						int ai=(i*c+k)*n+n0;
+						int bi=(k*c+j)*n+n0;
+						for (int t=0; t<bs; t++) {
+							tmp[ti+t]+=ad[ai+t]*bd[bi+t];
+						}
+					}
+				}
+			}
+			copyBlock(tmp,dest,n0,bs);
+		}
+	}
+
+	/**
+	 * Transforms each vector in a batch by the corresponding matrix, storing the results in dest.
+	 *
+	 * If each matrix is R*C, then the vectors must be of length C and dest must be a batch of
+	 * vectors of length R. dest may be the same batch as v.
+	 */
+	public static void transform(MatrixBatch m, MatrixBatch v, MatrixBatch dest) {
+		checkCount(m,v);
+		checkCount(m,dest);
+		int r=m.rows;
+		int c=m.cols;
+		if ((v.rows!=c)||(v.cols!=1)||(dest.rows!=r)||(dest.cols!=1)) {
+			throw new IllegalArgumentException("Incompatible batch shapes: "+r+"x"+c+" * "+v.rows+"x"+v.cols+" -> "+dest.rows+"x"+dest.cols);
+		}
+		transform(m,v,dest,c,false);
+	}
+
+	/**
+	 * Transforms each vector in a batch by the corresponding R*(R+1) affine matrix, storing the results in dest.
+	 *
+	 * The vectors and dest must both be batches of vectors of length R. dest may be the same batch as v.
+	 */
+	public static void transformAffine(MatrixBatch m, MatrixBatch v, MatrixBatch dest) {
+		checkCount(m,v);
+		checkCount(m,dest);
+		int r=m.rows;
+		if ((m.cols!=r+1)||(v.rows!=r)||(v.cols!=1)||(dest.rows!=r)||(dest.cols!=1)) {
+			throw new IllegalArgumentException("Incompatible batch shapes: "+r+"x"+m.cols+" affine * "+v.rows+"x"+v.cols+" -> "+dest.rows+"x"+dest.cols);
+		}
+		transform(m,v,dest,r,true);
+	}
+
+	private static void transform(MatrixBatch m, MatrixBatch v, MatrixBatch dest, int ic, boolean affine) {
+		int r=m.rows;
+		int c=m.cols;
+		int n=m.count;
+		double[] md=m.data;
+		double[] vd=v.data;
+		double[] tmp=new double[r*BLOCK];
+		for (int n0=0; n0<n; n0+=BLOCK) {
+			int bs=Math.min(BLOCK, n-n0);
+			for (int i=0; i<r; i++) {
+				int ti=i*BLOCK;
+				if (affine) {
+					int mi=(i*c+ic)*n+n0;
+					for (int t=0; t<bs; t++) {
+						tmp[ti+t]=md[mi+t];
+					}
+				} else {
+					for (int t=0; t<bs; t++) {
+						tmp[ti+t]=0.0;
+					}
+				}
+				for (int k=0; k<ic; k++) {
+					int mi=(i*c+k)*n+n0;
+					int vi=k*n+n0;
+					for (int t=0; t<bs; t++) {
+						tmp[ti+t]+=md[mi+t]*vd[vi+t];
+					}
+				}
+			}
+			copyBlock(tmp,dest,n0,bs);
+		}
+	}
+
+	/**
+	 * Inverts each matrix in a batch, storing the results in dest. Supported for square
+	 * matrices up to 4x4, and for R*(R+1) affine matrices with R up to 4.
+	 *
+	 * Singular matrices produce non-finite results in the corresponding entries of dest, rather than
+	 * an exception, so that a single bad matrix does not abort the whole batch.
+	 *
+	 * dest may be the same batch as src.
+	 */
+	public static void invert(MatrixBatch src, MatrixBatch dest) {
+		checkCount(src,dest);
+		int r=src.rows;
+		int c=src.cols;
+		if ((dest.rows!=r)||(dest.cols!=c)) throw new IllegalArgumentException("Mismatched batch shapes: "+r+"x"+c+" vs. "+dest.rows+"x"+dest.cols);
+		boolean affine=(c==r+1);
+		if (((c!=r)&&(!affine))||(r<1)||(r>4)) {
+			throw new UnsupportedOperationException("Batch inverse not supported for "+r+"x"+c+" matrices");
+		}
+		int n=src.count;
+		double[] s=src.data;
+		double[] d=dest.data;
+		// stride between successive elements of one row, and between rows
+		int e=n;
+		int row=c*n;
+		switch (r) {
+		case 1: {
+			for (int i=0; i<n; i++) {
+				double inv=1.0/s[i];
+				if (affine) d[i+e]=-inv*s[i+e];
+				d[i]=inv;
+			}
+			break;
+		}
+		case 2: {
+			for (int i=0; i<n; i++) {
+				double m00=s[i], m01=s[i+e];
+				double m10=s[i+row], m11=s[i+row+e];
+				double invDet=1.0/(m00*m11-m01*m10);
+				double i00=invDet*m11, i01=-invDet*m01;
+				double i10=-invDet*m10, i11=invDet*m00;
+				if (affine) {
+					double t0=s[i+2*e], t1=s[i+row+2*e];
+					d[i+2*e]=-(i00*t0+i01*t1);
+					d[i+row+2*e]=-(i10*t0+i11*t1);
+				}
+				d[i]=i00; d[i+e]=i01;
+				d[i+row]=i10; d[i+row+e]=i11;
+			}
+			break;
+		}
+		case 3: {
+			int row2=2*row;
+			for (int i=0; i<n; i++) {
+				double m00=s[i], m01=s[i+e], m02=s[i+2*e];
+				double m10=s[i+row], m11=s[i+row+e], m12=s[i+row+2*e];
+				double m20=s[i+row2], m21=s[i+row2+e], m22=s[i+row2+2*e];
+				double c00=m11*m22-m12*m21, c01=m02*m21-m01*m22, c02=m01*m12-m02*m11;
+				double invDet=1.0/(m00*c00+m10*c01+m20*c02);
+				double i00=invDet*c00, i01=invDet*c01, i02=invDet*c02;
+				double i10=invDet*(m12*m20-m10*m22), i11=invDet*(m00*m22-m02*m20), i12=invDet*(m02*m10-m00*m12);
+				double i20=invDet*(m10*m21-m11*m20), i21=invDet*(m01*m20-m00*m21), i22=invDet*(m00*m11-m01*m10);
+				if (affine) {
+					double t0=s[i+3*e], t1=s[i+row+3*e], t2=s[i+row2+3*e];
+					d[i+3*e]=-(i00*t0+i01*t1+i02*t2);
+					d[i+row+3*e]=-(i10*t0+i11*t1+i12*t2);
+					d[i+row2+3*e]=-(i20*t0+i21*t1+i22*t2);
+				}
+				d[i]=i00; d[i+e]=i01; d[i+2*e]=i02;
+				d[i+row]=i10; d[i+row+e]=i11; d[i+row+2*e]=i12;
+				d[i+row2]=i20; d[i+row2+e]=i21; d[i+row2+2*e]=i22;
+			}
+			break;
+		}
+		case 4: {
+			int row2=2*row, row3=3*row;
+			for (int i=0; i<n; i++) {
+				double m00=s[i], m01=s[i+e], m02=s[i+2*e], m03=s[i+3*e];
+				double m10=s[i+row], m11=s[i+row+e], m12=s[i+row+2*e], m13=s[i+row+3*e];
+				double m20=s[i+row2], m21=s[i+row2+e], m22=s[i+row2+2*e], m23=s[i+row2+3*e];
+				double m30=s[i+row3], m31=s[i+row3+e], m32=s[i+row3+2*e], m33=s[i+row3+3*e];
+				// 2x2 minors of the top two rows (s*) and bottom two rows (c*), shared by all cofactors
+				double s0=m00*m11-m10*m01, s1=m00*m12-m10*m02, s2=m00*m13-m10*m03;
+				double s3=m01*m12-m11*m02, s4=m01*m13-m11*m03, s5=m02*m13-m12*m03;
+				double c0=m20*m31-m30*m21, c1=m20*m32-m30*m22, c2=m20*m33-m30*m23;
+				double c3=m21*m32-m31*m22, c4=m21*m33-m31*m23, c5=m22*m33-m32*m23;
+				double invDet=1.0/(s0*c5-s1*c4+s2*c3+s3*c2-s4*c1+s5*c0);
+				double i00=invDet*(m11*c5-m12*c4+m13*c3), i01=invDet*(m02*c4-m01*c5-m03*c3);
+				double i02=invDet*(m31*s5-m32*s4+m33*s3), i03=invDet*(m22*s4-m21*s5-m23*s3);
+				double i10=invDet*(m12*c2-m10*c5-m13*c1), i11=invDet*(m00*c5-m02*c2+m03*c1);
+				double i12=invDet*(m32*s2-m30*s5-m33*s1), i13=invDet*(m20*s5-m22*s2+m23*s1);
+				double i20=invDet*(m10*c4-m11*c2+m13*c0), i21=invDet*(m01*c2-m00*c4-m03*c0);
+				double i22=invDet*(m30*s4-m31*s2+m33*s0), i23=invDet*(m21*s2-m20*s4-m23*s0);
+				double i30=invDet*(m11*c1-m10*c3-m12*c0), i31=invDet*(m00*c3-m01*c1+m02*c0);
+				double i32=invDet*(m31*s1-m30*s3-m32*s0), i33=invDet*(m20*s3-m21*s1+m22*s0);
+				if (affine) {
+					double t0=s[i+4*e], t1=s[i+row+4*e], t2=s[i+row2+4*e], t3=s[i+row3+4*e];
+					d[i+4*e]=-(i00*t0+i01*t1+i02*t2+i03*t3);
+					d[i+row+4*e]=-(i10*t0+i11*t1+i12*t2+i13*t3);
+					d[i+row2+4*e]=-(i20*t0+i21*t1+i22*t2+i23*t3);
+					d[i+row3+4*e]=-(i30*t0+i31*t1+i32*t2+i33*t3);
+				}
+				d[i]=i00; d[i+e]=i01; d[i+2*e]=i02; d[i+3*e]=i03;
+				d[i+row]=i10; d[i+row+e]=i11; d[i+row+2*e]=i12; d[i+row+3*e]=i13;
+				d[i+row2]=i20; d[i+row2+e]=i21; d[i+row2+2*e]=i22; d[i+row2+3*e]=i23;
+				d[i+row3]=i30; d[i+row3+e]=i31; d[i+row3+2*e]=i32; d[i+row3+3*e]=i33;
+			}
+			break;
+		}
+		}
+	}
+
+	/**
+	 * Copies a block of planes computed in temporary storage into the destination batch
+	 */
+	private static void copyBlock(double[] tmp, MatrixBatch dest, int n0, int bs) {
+		int planes=dest.rows*dest.cols;
+		for (int p=0; p<planes; p++) {
+			System.arraycopy(tmp, p*BLOCK, dest.data, p*dest.count+n0, bs);
+		}
+	}
+}
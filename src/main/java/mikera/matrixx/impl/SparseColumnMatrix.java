@@ -1,13 +1,16 @@
 package mikera.matrixx.impl;
 
+import java.util.Arrays;
 import java.util.List;
 import mikera.arrayz.ISparse;
 import mikera.indexz.Index;
 import mikera.matrixx.AMatrix;
 import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.SparseTransforms;
 import mikera.vectorz.AVector;
 import mikera.vectorz.Vector;
 import mikera.vectorz.Vectorz;
+import mikera.vectorz.impl.ADenseArrayVector;
 import mikera.vectorz.impl.SingleElementVector;
 import mikera.vectorz.impl.SparseIndexedVector;
 import mikera.vectorz.util.ErrorMessages;
@@ -147,6 +150,7 @@ public class SparseColumnMatrix extends ASparseRCMatrix implements ISparse, IFas
 			v = SingleElementVector.create(value, i, rows);
 		} else if (v.isFullyMutable()) {
 			v.unsafeSet(i,value);
+			invalidateLineWeights();
 			return;
 		} else {
 			v = v.sparseClone();
@@ -169,6 +173,7 @@ public class SparseColumnMatrix extends ASparseRCMatrix implements ISparse, IFas
 		AVector v=getColumn(j);
 		if (v.isFullyMutable()) {
 			v.addAt(i, d);
+			invalidateLineWeights();
 		} else {
 			v=v.mutable();
 			v.addAt(i, d);
@@ -189,6 +194,13 @@ public class SparseColumnMatrix extends ASparseRCMatrix implements ISparse, IFas
         return toSparseRowMatrix().getRows();
     }
     
+    /**
+     * Converts this matrix to compressed sparse row (CSR) format
+     */
+    public CSRMatrix toCSRMatrix() {
+        return CSRMatrix.create(this);
+    }
+    
     public SparseRowMatrix toSparseRowMatrix() {
         SparseRowMatrix rm=SparseRowMatrix.create(rows, cols);
 
@@ -231,6 +243,8 @@ public class SparseColumnMatrix extends ASparseRCMatrix implements ISparse, IFas
 	
 	@Override
 	public AVector getColumnView(int j) {
+		// the view may be used to change the column structure
+		invalidateLineWeights();
 		return ensureMutableColumn(j);
 	}
 	
@@ -318,10 +332,43 @@ public class SparseColumnMatrix extends ASparseRCMatrix implements ISparse, IFas
 	@Override
 	public AVector transform(AVector a) {
 		Vector r=Vector.createLength(rows);
+		transform(a,r);
+		return r;
+	}
+	
+	@Override
+	public void transform(AVector source, AVector dest) {
+		if (source.length()!=cols) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(source));
+		if (dest.length()!=rows) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(dest));
+		if ((!(dest instanceof ADenseArrayVector))||(source==dest)) {
+			dest.set(transform(source.toVector()));
+			return;
+		}
+		ADenseArrayVector d=(ADenseArrayVector)dest;
+		double[] ddata=d.getArray();
+		int offset=d.getArrayOffset();
+		Arrays.fill(ddata, offset, offset+rows, 0.0);
 		for (int i=0; i<cols; i++) {
-			getColumn(i).addMultipleToArray(a.get(i), 0, r.getArray(), 0, rows);
+			AVector col=unsafeGetVector(i);
+			if (col!=null) col.addMultipleToArray(source.unsafeGet(i), 0, ddata, offset, rows);
 		}
-		return r;
+	}
+	
+	@Override
+	public void transform(Vector source, Vector dest) {
+		transform((AVector)source,(AVector)dest);
+	}
+	
+	/**
+	 * Computes the transposed product dest = this^T.source, i.e. the dot product of each
+	 * column with the source vector. Large products are computed in parallel, with columns
+	 * partitioned by non-zero count, see SparseTransforms.
+	 * 
+	 * @param source
+	 * @param dest
+	 */
+	public void transposeTransform(AVector source, AVector dest) {
+		SparseTransforms.transposeTransform(this, source, dest);
 	}
 	
 	@Override
@@ -16,6 +16,8 @@ import mikera.arrayz.ISparse;
 import mikera.indexz.Index;
 import mikera.matrixx.AMatrix;
 import mikera.matrixx.Matrixx;
+import mikera.matrixx.algo.SparseMultiply;
+import mikera.matrixx.algo.SparseTransforms;
 import mikera.vectorz.AVector;
 import mikera.vectorz.Vector;
 import mikera.vectorz.Vectorz;
@@ -171,6 +173,7 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 			v = SingleElementVector.create(value, j, cols);
 		} else if (v.isFullyMutable()) {
 			v.set(j, value);
+			invalidateLineWeights();
 			return;
 		} else {
 			v = v.sparseClone();
@@ -190,7 +193,7 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 	
 	@Override
 	public void setRow(int i, AVector v) {
-		data[i]=v.copy();
+		unsafeSetVec(i,v.copy());
 	}
 	
 	@Override
@@ -199,6 +202,7 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 		AVector v=unsafeGetVector(i);
 		if (v.isFullyMutable()) {
 			v.addAt(j, d);
+			invalidateLineWeights();
 		} else {
 			v=v.mutable();
 			v.addAt(j, d);
@@ -232,6 +236,13 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
         return toSparseColumnMatrix().getColumns();
     }
     
+    /**
+     * Converts this matrix to compressed sparse row (CSR) format
+     */
+    public CSRMatrix toCSRMatrix() {
+        return CSRMatrix.create(this);
+    }
+    
     public SparseColumnMatrix toSparseColumnMatrix() {
         SparseColumnMatrix cm=SparseColumnMatrix.create(rows,cols);
         for (int i = 0; i < rows; i++) {
@@ -271,6 +282,8 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 	
 	@Override
 	public AVector getRowView(int i) {
+		// the view may be used to change the row structure
+		invalidateLineWeights();
 		return ensureMutableRow(i);
 	}
 	
@@ -373,12 +386,31 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 	
 	@Override
 	public AVector transform(AVector a) {
-		AVector r=Vector.createLength(rows);
-		for (int i=0; i<rows; i++) {
-			r.set(i,getRow(i).dotProduct(a));
-		}
+		Vector r=Vector.createLength(rows);
+		SparseTransforms.transform(this, a, r);
+		return r;
+	}
+	
+	@Override
+	public Vector transform(Vector a) {
+		Vector r=Vector.createLength(rows);
+		SparseTransforms.transform(this, a, r);
 		return r;
 	}
+	
+	/**
+	 * Computes dest = this.source. Large products are computed in parallel, with rows
+	 * partitioned by non-zero count, see SparseTransforms.
+	 */
+	@Override
+	public void transform(AVector source, AVector dest) {
+		SparseTransforms.transform(this, source, dest);
+	}
+	
+	@Override
+	public void transform(Vector source, Vector dest) {
+		SparseTransforms.transform(this, source, dest);
+	}
 
 	@Override
 	public double[] toDoubleArray() {
@@ -397,6 +429,9 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 		if (a instanceof SparseColumnMatrix) {
 			return innerProduct((SparseColumnMatrix) a);
 		}
+		if ((a instanceof SparseRowMatrix)||(a instanceof CSRMatrix)) {
+			return SparseMultiply.multiply(this, a).toSparseRowMatrix();
+		}
 		SparseRowMatrix r = Matrixx.createSparse(rows, a.columnCount());
 
         for (int i = 0; i < rows; ++i) {
@@ -415,18 +450,20 @@ public class SparseRowMatrix extends ASparseRCMatrix implements ISparse, IFastRo
 	 * @return
 	 */
 	public SparseRowMatrix innerProduct(SparseColumnMatrix a) {
-		return innerProduct(SparseRowMatrix.create(a));
+		return SparseMultiply.multiply(this, a).toSparseRowMatrix();
 	}
 	
+	/**
+	 * Specialised inner product for sparse row matrix multiplied by sparse row matrix. 
+	 * 
+	 * Uses the Gustavson algorithm in SparseMultiply, so the result is computed without
+	 * any intermediate row vectors.
+	 *  
+	 * @param a
+	 * @return
+	 */
 	public SparseRowMatrix innerProduct(SparseRowMatrix a) {
-		SparseRowMatrix r = Matrixx.createSparse(rows, a.columnCount());
-		for (int i = 0; i < rows; ++i) {
-			AVector row = unsafeGetVector(i);
-            if (row != null) {
-			    r.replaceRow(i,row.innerProduct(a));
-            }
-		}
-		return r;
+		return SparseMultiply.multiply(this, a).toSparseRowMatrix();
 	}
 
 
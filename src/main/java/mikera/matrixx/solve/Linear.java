@@ -1,7 +1,10 @@
 package mikera.matrixx.solve;
 
 import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Gram;
 import mikera.matrixx.impl.ColumnMatrix;
+import mikera.matrixx.solve.impl.CholeskySolver;
 import mikera.matrixx.solve.impl.lu.LUSolver;
 import mikera.matrixx.solve.impl.qr.QRHouseColSolver;
 import mikera.vectorz.AVector;
@@ -52,6 +55,45 @@ public class Linear {
         return x;
     }
     
+    /**
+     * Returns the least squares solution to the equation A.x = b by solving the normal equations
+     * 
+     *    A^T.A.x = A^T.b
+     * 
+     * using a Cholesky decomposition of the Gram matrix A^T.A.
+     * 
+     * This is faster than solveLeastSquares for tall matrices, but squares the condition number
+     * of A, so should only be used where A is well conditioned. Returns null if A does not have
+     * full column rank.
+     * 
+     * @param A
+     * @param b
+     * @return AVector x
+     */
+    public static AVector solveLeastSquaresNormal(AMatrix A, AVector b) {
+        AMatrix X=solveLeastSquaresNormal(A, ColumnMatrix.wrap(b));
+        if (X==null) return null;
+        return X.asVector();
+    }
+    
+    /**
+     * Returns the least squares solution to the equation A.X = B by solving the normal equations
+     * 
+     *    A^T.A.X = A^T.B
+     * 
+     * See solveLeastSquaresNormal(AMatrix, AVector) for details.
+     * 
+     * @param A
+     * @param B
+     * @return AMatrix X
+     */
+    public static AMatrix solveLeastSquaresNormal(AMatrix A, AMatrix B) {
+        Matrix gram=Gram.transposeProduct(A);
+        CholeskySolver solver = new CholeskySolver();
+        if (!solver.setA(gram)) return null;
+        return solver.solve(A.getTranspose().innerProduct(B));
+    }
+    
     /**
      * A general linear system solver,
      * Returns the solution to the equation A.x = b, returns null if A is square and
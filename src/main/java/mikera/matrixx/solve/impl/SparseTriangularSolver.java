@@ -0,0 +1,102 @@
+package mikera.matrixx.solve.impl;
+
+/**
+ * Sparse triangular solves on matrices stored in compressed sparse row (CSR) form, as given by
+ * CSRMatrix.getRowPointers(), getColumnIndices() and getValues().
+ *
+ * Column indices must be sorted within each row. The position of the diagonal entry of each row is
+ * given by a separate diag array, so the same arrays can hold a lower factor, an upper factor, or
+ * both (as produced by incomplete LU). The lower part of row i is at positions rowPtr[i] to
+ * diag[i]-1, and the upper part at diag[i]+1 to rowPtr[i+1]-1.
+ *
+ * All solves work in place on x, which holds the right hand side on entry and the solution on exit.
+ * They do not allocate, and perform no sanity checks.
+ *
+ * @author Mike
+ *
+ */
+public class SparseTriangularSolver {
+
+	/**
+	 * Solves L.x = b in place, where L is the lower triangle including the diagonal
+	 */
+	public static void solveLower(int[] rowPtr, int[] colIdx, double[] values, int[] diag, double[] x) {
+		int n=diag.length;
+		for (int i=0; i<n; i++) {
+			double acc=x[i];
+			int d=diag[i];
+			for (int p=rowPtr[i]; p<d; p++) {
+				acc-=values[p]*x[colIdx[p]];
+			}
+			x[i]=acc/values[d];
+		}
+	}
+
+	/**
+	 * Solves L.x = b in place, where L is the strict lower triangle with an implicit unit diagonal
+	 */
+	public static void solveUnitLower(int[] rowPtr, int[] colIdx, double[] values, int[] diag, double[] x) {
+		int n=diag.length;
+		for (int i=0; i<n; i++) {
+			double acc=x[i];
+			int d=diag[i];
+			for (int p=rowPtr[i]; p<d; p++) {
+				acc-=values[p]*x[colIdx[p]];
+			}
+			x[i]=acc;
+		}
+	}
+
+	/**
+	 * Solves U.x = b in place, where U is the upper triangle including the diagonal
+	 */
+	public static void solveUpper(int[] rowPtr, int[] colIdx, double[] values, int[] diag, double[] x) {
+		int n=diag.length;
+		for (int i=n-1; i>=0; i--) {
+			double acc=x[i];
+			int d=diag[i];
+			int end=rowPtr[i+1];
+			for (int p=d+1; p<end; p++) {
+				acc-=values[p]*x[colIdx[p]];
+			}
+			x[i]=acc/values[d];
+		}
+	}
+
+	/**
+	 * Solves U^T.x = b in place, where U is the upper triangle including the diagonal.
+	 *
+	 * Works column by column on the rows of U, so no transposed copy is needed.
+	 */
+	public static void solveUpperTranspose(int[] rowPtr, int[] colIdx, double[] values, int[] diag, double[] x) {
+		int n=diag.length;
+		for (int i=0; i<n; i++) {
+			int d=diag[i];
+			double xi=x[i]/values[d];
+			x[i]=xi;
+			if (xi==0.0) continue;
+			int end=rowPtr[i+1];
+			for (int p=d+1; p<end; p++) {
+				x[colIdx[p]]-=values[p]*xi;
+			}
+		}
+	}
+
+	/**
+	 * Solves L^T.x = b in place, where L is the lower triangle including the diagonal.
+	 *
+	 * Works column by column on the rows of L, so no transposed copy is needed.
+	 */
+	public static void solveLowerTranspose(int[] rowPtr, int[] colIdx, double[] values, int[] diag, double[] x) {
+		int n=diag.length;
+		for (int i=n-1; i>=0; i--) {
+			int d=diag[i];
+			double xi=x[i]/values[d];
+			x[i]=xi;
+			if (xi==0.0) continue;
+			for (int p=rowPtr[i]; p<d; p++) {
+				x[colIdx[p]]-=values[p]*xi;
+			}
+		}
+	}
+}
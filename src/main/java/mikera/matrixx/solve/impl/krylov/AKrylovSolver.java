@@ -0,0 +1,238 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import java.util.Arrays;
+
+import mikera.matrixx.AMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.DoubleArrays;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Abstract base class for Krylov subspace iterative solvers, which find the solution to systems of the form:
+ *
+ *    A.x = b
+ *
+ * The matrix A is only accessed through transform, so any AMatrix can be used, including sparse,
+ * banded and composed matrices.
+ *
+ * Iteration stops when the residual norm ||b - A.x|| relative to ||b|| falls below the tolerance,
+ * or when the maximum number of iterations is reached. The relative residual norm at the start and
+ * after each iteration is recorded in the convergence history.
+ *
+ * An optional IPreconditioner can be set to accelerate convergence. The convergence test always
+ * uses the true (unpreconditioned) residual, so tolerances mean the same with or without one.
+ *
+ * Workspace vectors are allocated on the first solve (or by calling allocateWorkspace), and reused
+ * for later solves of the same size. A solver instance is therefore not thread safe.
+ *
+ * @author Mike
+ *
+ */
+public abstract class AKrylovSolver {
+	public static final double DEFAULT_TOLERANCE=1e-10;
+	public static final int DEFAULT_MAX_ITERATIONS=10000;
+
+	protected double tolerance=DEFAULT_TOLERANCE;
+	protected int maxIterations=DEFAULT_MAX_ITERATIONS;
+	protected IPreconditioner preconditioner=null;
+
+	private int size=-1;
+	private Vector bWork;
+	private Vector xWork;
+
+	private double[] history=new double[16];
+	private int historyLength=0;
+	private double bNorm;
+
+	protected int iterations=0;
+	protected boolean converged=false;
+
+	/**
+	 * Sets the tolerance on the residual norm relative to the norm of b
+	 */
+	public void setTolerance(double tolerance) {
+		if (!(tolerance>=0)) throw new IllegalArgumentException("Invalid tolerance: "+tolerance);
+		this.tolerance=tolerance;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		if (maxIterations<0) throw new IllegalArgumentException("Invalid maximum iterations: "+maxIterations);
+		this.maxIterations=maxIterations;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the preconditioner to use, or null for none
+	 */
+	public void setPreconditioner(IPreconditioner preconditioner) {
+		this.preconditioner=preconditioner;
+	}
+
+	public IPreconditioner getPreconditioner() {
+		return preconditioner;
+	}
+
+	/**
+	 * Allocates workspace for solving systems of the given size. Called automatically by solve if needed.
+	 */
+	public final void allocateWorkspace(int n) {
+		if (n==size) return;
+		bWork=Vector.createLength(n);
+		xWork=Vector.createLength(n);
+		allocate(n);
+		size=n;
+	}
+
+	/**
+	 * Allocates solver specific workspace for systems of the given size
+	 */
+	protected abstract void allocate(int n);
+
+	/**
+	 * Runs the iteration, updating x in place. Implementations should call record after each iteration,
+	 * and stop when it returns true or when maxIterations is reached.
+	 *
+	 * @return true if converged
+	 */
+	protected abstract boolean iterate(AMatrix A, Vector b, Vector x);
+
+	/**
+	 * Solves A.x = b starting from a zero initial guess.
+	 *
+	 * @return The solution, or null if the solver did not converge
+	 */
+	public AVector solve(AMatrix A, AVector b) {
+		Vector x=Vector.createLength(A.columnCount());
+		if (!solve(A,b,x)) return null;
+		return x;
+	}
+
+	/**
+	 * Solves A.x = b, using the initial value of x as the starting guess. x is updated with the
+	 * final iterate whether or not the solver converged.
+	 *
+	 * @return true if the solver converged to within the tolerance
+	 */
+	public boolean solve(AMatrix A, AVector b, AVector x) {
+		int n=A.checkSquare();
+		if (b.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(b));
+		if (x.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(x));
+		if ((preconditioner!=null)&&(preconditioner.size()!=n)) {
+			throw new IllegalArgumentException(ErrorMessages.incompatibleShapes(n, preconditioner.size()));
+		}
+		allocateWorkspace(n);
+
+		Vector bv;
+		if (b instanceof Vector) {
+			bv=(Vector)b;
+		} else {
+			bv=bWork;
+			bv.set(b);
+		}
+		Vector xv;
+		if ((x instanceof Vector)&&(x!=b)) {
+			xv=(Vector)x;
+		} else {
+			xv=xWork;
+			xv.set(x);
+		}
+
+		historyLength=0;
+		iterations=0;
+		bNorm=bv.magnitude();
+		if (bNorm==0.0) {
+			// the exact solution is zero
+			xv.fill(0.0);
+			record(0.0);
+			converged=true;
+		} else {
+			converged=iterate(A,bv,xv);
+		}
+		if (xv!=x) x.set(xv);
+		return converged;
+	}
+
+	/**
+	 * Records the residual norm for the current iterate.
+	 *
+	 * @return true if the relative residual is within the tolerance
+	 */
+	protected final boolean record(double residualNorm) {
+		double rel=(bNorm==0.0)?residualNorm:residualNorm/bNorm;
+		if (historyLength==history.length) history=Arrays.copyOf(history, historyLength*2);
+		history[historyLength++]=rel;
+		return rel<=tolerance;
+	}
+
+	/**
+	 * Checks if a residual norm is within the tolerance, without recording it
+	 */
+	protected final boolean isWithinTolerance(double residualNorm) {
+		double rel=(bNorm==0.0)?residualNorm:residualNorm/bNorm;
+		return rel<=tolerance;
+	}
+
+	/**
+	 * Computes the residual r = b - A.x
+	 */
+	protected static void residual(AMatrix A, Vector b, Vector x, Vector r) {
+		A.transform(x,r);
+		double[] rd=r.getArray();
+		double[] bd=b.getArray();
+		for (int i=0; i<rd.length; i++) {
+			rd[i]=bd[i]-rd[i];
+		}
+	}
+
+	protected static double dot(Vector a, Vector b) {
+		return DoubleArrays.dotProduct(a.getArray(), 0, b.getArray(), 0, a.length());
+	}
+
+	protected static double norm(Vector a) {
+		return Math.sqrt(DoubleArrays.elementSquaredSum(a.getArray()));
+	}
+
+	/**
+	 * Computes dest += factor * src
+	 */
+	protected static void addMultiple(Vector dest, Vector src, double factor) {
+		DoubleArrays.addMultiple(dest.getArray(), src.getArray(), factor);
+	}
+
+	/**
+	 * Returns the number of iterations performed by the last solve
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns true if the last solve converged to within the tolerance
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Returns the final relative residual norm of the last solve
+	 */
+	public double getResidualNorm() {
+		if (historyLength==0) return Double.NaN;
+		return history[historyLength-1];
+	}
+
+	/**
+	 * Returns the relative residual norm before the first iteration and after each iteration of the last solve
+	 */
+	public double[] getConvergenceHistory() {
+		return Arrays.copyOf(history, historyLength);
+	}
+}
@@ -0,0 +1,100 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import mikera.matrixx.AMatrix;
+import mikera.vectorz.Vector;
+
+/**
+ * Biconjugate Gradient Stabilized (BiCGSTAB) solver for general non-symmetric systems.
+ *
+ * Each iteration needs two matrix-vector products. Memory use is fixed, unlike GMRES, but
+ * convergence may be irregular and the method can break down, in which case solve returns false.
+ *
+ * A preconditioner is applied on the right, so the residual being minimised is the true residual.
+ *
+ * @author Mike
+ *
+ */
+public class BiCGStab extends AKrylovSolver {
+	private Vector r;
+	private Vector rHat;
+	private Vector p;
+	private Vector v;
+	private Vector s;
+	private Vector t;
+	private Vector pHat;
+	private Vector sHat;
+
+	@Override
+	protected void allocate(int n) {
+		r=Vector.createLength(n);
+		rHat=Vector.createLength(n);
+		p=Vector.createLength(n);
+		v=Vector.createLength(n);
+		s=Vector.createLength(n);
+		t=Vector.createLength(n);
+		pHat=Vector.createLength(n);
+		sHat=Vector.createLength(n);
+	}
+
+	@Override
+	protected boolean iterate(AMatrix A, Vector b, Vector x) {
+		double[] rd=r.getArray();
+		double[] pd=p.getArray();
+		double[] vd=v.getArray();
+		double[] sd=s.getArray();
+		double[] td=t.getArray();
+		double[] xd=x.getArray();
+		int n=rd.length;
+		// preconditioned search directions, which are p and s themselves without a preconditioner
+		Vector ph=(preconditioner==null)?p:pHat;
+		Vector sh=(preconditioner==null)?s:sHat;
+		double[] phd=ph.getArray();
+		double[] shd=sh.getArray();
+
+		residual(A,b,x,r);
+		if (record(norm(r))) return true;
+		rHat.set(r);
+		p.fill(0.0);
+		v.fill(0.0);
+		double rho=1.0;
+		double alpha=1.0;
+		double omega=1.0;
+
+		while (iterations<maxIterations) {
+			double rhoNew=dot(rHat,r);
+			if (rhoNew==0.0) return false; // breakdown
+			double beta=(rhoNew/rho)*(alpha/omega);
+			for (int i=0; i<n; i++) {
+				pd[i]=rd[i]+beta*(pd[i]-omega*vd[i]);
+			}
+			if (ph!=p) preconditioner.apply(p,ph);
+			A.transform(ph,v);
+			double rv=dot(rHat,v);
+			if (rv==0.0) return false; // breakdown
+			alpha=rhoNew/rv;
+			for (int i=0; i<n; i++) {
+				sd[i]=rd[i]-alpha*vd[i];
+			}
+			iterations++;
+			double sNorm=norm(s);
+			if (isWithinTolerance(sNorm)) {
+				// converged after the half step
+				addMultiple(x,ph,alpha);
+				return record(sNorm);
+			}
+			if (sh!=s) preconditioner.apply(s,sh);
+			A.transform(sh,t);
+			double tt=dot(t,t);
+			if (tt==0.0) return false; // breakdown
+			omega=dot(t,s)/tt;
+			for (int i=0; i<n; i++) {
+				xd[i]+=alpha*phd[i]+omega*shd[i];
+				rd[i]=sd[i]-omega*td[i];
+			}
+			if (record(norm(r))) return true;
+			if (omega==0.0) return false; // stagnation
+			rho=rhoNew;
+		}
+		return false;
+	}
+}
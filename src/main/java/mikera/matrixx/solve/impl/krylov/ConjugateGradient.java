@@ -0,0 +1,72 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import mikera.matrixx.AMatrix;
+import mikera.vectorz.Vector;
+
+/**
+ * Conjugate Gradient solver for symmetric positive definite systems.
+ *
+ * Each iteration needs one matrix-vector product and two dot products. Results are undefined
+ * if A is not symmetric positive definite: use BiCGStab or GMRES for general matrices.
+ *
+ * With a preconditioner this is the preconditioned CG method, which requires the preconditioner
+ * to be symmetric positive definite too, e.g. JacobiPreconditioner or IncompleteCholeskyPreconditioner.
+ *
+ * @author Mike
+ *
+ */
+public class ConjugateGradient extends AKrylovSolver {
+	private Vector r;
+	private Vector p;
+	private Vector q;
+	private Vector z;
+
+	@Override
+	protected void allocate(int n) {
+		r=Vector.createLength(n);
+		p=Vector.createLength(n);
+		q=Vector.createLength(n);
+		z=Vector.createLength(n);
+	}
+
+	@Override
+	protected boolean iterate(AMatrix A, Vector b, Vector x) {
+		double[] rd=r.getArray();
+		double[] pd=p.getArray();
+		double[] qd=q.getArray();
+		double[] xd=x.getArray();
+		int n=rd.length;
+		// without a preconditioner z is the residual itself
+		Vector z=(preconditioner==null)?r:this.z;
+		double[] zd=z.getArray();
+
+		residual(A,b,x,r);
+		double rr=dot(r,r);
+		if (record(Math.sqrt(rr))) return true;
+		if (z!=r) preconditioner.apply(r,z);
+		double rz=(z==r)?rr:dot(r,z);
+		System.arraycopy(zd, 0, pd, 0, n);
+
+		while (iterations<maxIterations) {
+			A.transform(p,q);
+			double pq=dot(p,q);
+			if (pq<=0.0) return false; // breakdown: A is not positive definite
+			double alpha=rz/pq;
+			for (int i=0; i<n; i++) {
+				xd[i]+=alpha*pd[i];
+				rd[i]-=alpha*qd[i];
+			}
+			iterations++;
+			rr=dot(r,r);
+			if (record(Math.sqrt(rr))) return true;
+			if (z!=r) preconditioner.apply(r,z);
+			double rzNew=(z==r)?rr:dot(r,z);
+			double beta=rzNew/rz;
+			for (int i=0; i<n; i++) {
+				pd[i]=zd[i]+beta*pd[i];
+			}
+			rz=rzNew;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,153 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import java.util.Arrays;
+
+import mikera.matrixx.AMatrix;
+import mikera.vectorz.Vector;
+
+/**
+ * Restarted GMRES(m) solver for general non-symmetric systems.
+ *
+ * Builds an orthonormal Krylov basis of up to m vectors using modified Gram-Schmidt, and minimises
+ * the residual over that subspace using Givens rotations on the Hessenberg matrix. The residual norm
+ * is therefore non-increasing. After m iterations the solution is updated and the method restarts,
+ * which bounds memory use at (m+1) vectors of length n.
+ *
+ * Each iteration counts one matrix-vector product, including iterations within restart cycles.
+ *
+ * A preconditioner is applied on the right, so the residual being minimised is the true residual.
+ *
+ * @author Mike
+ *
+ */
+public class GMRES extends AKrylovSolver {
+	public static final int DEFAULT_RESTART=30;
+
+	private final int restart;
+
+	private Vector[] basis;
+	private double[][] h;
+	private double[] cs;
+	private double[] sn;
+	private double[] g;
+	private double[] y;
+	private Vector z;
+
+	public GMRES() {
+		this(DEFAULT_RESTART);
+	}
+
+	public GMRES(int restart) {
+		if (restart<1) throw new IllegalArgumentException("Invalid restart length: "+restart);
+		this.restart=restart;
+	}
+
+	public int getRestart() {
+		return restart;
+	}
+
+	@Override
+	protected void allocate(int n) {
+		int m=restart;
+		basis=new Vector[m+1];
+		for (int i=0; i<=m; i++) {
+			basis[i]=Vector.createLength(n);
+		}
+		h=new double[m+1][m];
+		cs=new double[m];
+		sn=new double[m];
+		g=new double[m+1];
+		y=new double[m];
+		z=Vector.createLength(n);
+	}
+
+	@Override
+	protected boolean iterate(AMatrix A, Vector b, Vector x) {
+		int m=restart;
+		Vector v0=basis[0];
+		residual(A,b,x,v0);
+		double beta=norm(v0);
+		if (record(beta)) return true;
+
+		while (true) {
+			v0.multiply(1.0/beta);
+			Arrays.fill(g, 0.0);
+			g[0]=beta;
+
+			int k=0;
+			boolean done=false;
+			for (int j=0; (j<m)&&(iterations<maxIterations); j++) {
+				Vector w=basis[j+1];
+				if (preconditioner==null) {
+					A.transform(basis[j],w);
+				} else {
+					preconditioner.apply(basis[j],z);
+					A.transform(z,w);
+				}
+
+				// modified Gram-Schmidt
+				for (int i=0; i<=j; i++) {
+					double hij=dot(w,basis[i]);
+					h[i][j]=hij;
+					addMultiple(w,basis[i],-hij);
+				}
+				double hn=norm(w);
+				h[j+1][j]=hn;
+
+				// apply previous rotations to the new column
+				for (int i=0; i<j; i++) {
+					double a=h[i][j];
+					double c=h[i+1][j];
+					h[i][j]=cs[i]*a+sn[i]*c;
+					h[i+1][j]=-sn[i]*a+cs[i]*c;
+				}
+
+				// new rotation to eliminate h[j+1][j]
+				double denom=Math.hypot(h[j][j],hn);
+				if (denom==0.0) return false; // breakdown: singular Hessenberg matrix
+				cs[j]=h[j][j]/denom;
+				sn[j]=hn/denom;
+				h[j][j]=denom;
+				h[j+1][j]=0.0;
+				g[j+1]=-sn[j]*g[j];
+				g[j]=cs[j]*g[j];
+
+				iterations++;
+				k=j+1;
+				done=record(Math.abs(g[j+1]));
+				if (done||(hn==0.0)) break; // a zero norm means the exact solution lies in the subspace
+				w.multiply(1.0/hn);
+			}
+
+			// back substitution for the upper triangular system H.y = g
+			for (int i=k-1; i>=0; i--) {
+				double acc=g[i];
+				double[] hi=h[i];
+				for (int l=i+1; l<k; l++) {
+					acc-=hi[l]*y[l];
+				}
+				y[i]=acc/hi[i];
+			}
+			if (preconditioner==null) {
+				for (int i=0; i<k; i++) {
+					addMultiple(x,basis[i],y[i]);
+				}
+			} else {
+				z.fill(0.0);
+				for (int i=0; i<k; i++) {
+					addMultiple(z,basis[i],y[i]);
+				}
+				preconditioner.apply(z,z);
+				addMultiple(x,z,1.0);
+			}
+
+			if (done) return true;
+			if (iterations>=maxIterations) return false;
+
+			// restart from the true residual
+			residual(A,b,x,v0);
+			beta=norm(v0);
+			if (isWithinTolerance(beta)) return true;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import mikera.vectorz.Vector;
+
+/**
+ * Interface for preconditioners used by Krylov solvers. A preconditioner M approximates A,
+ * with M^-1 cheap to apply, so that the preconditioned system converges in fewer iterations.
+ *
+ * @author Mike
+ *
+ */
+public interface IPreconditioner {
+
+	/**
+	 * Returns the size n of the n x n system this preconditioner was built for
+	 */
+	public int size();
+
+	/**
+	 * Applies the preconditioner, computing z = M^-1 r. r and z may be the same vector.
+	 *
+	 * Implementations should not allocate, since this is called on every iteration.
+	 */
+	public void apply(Vector r, Vector z);
+}
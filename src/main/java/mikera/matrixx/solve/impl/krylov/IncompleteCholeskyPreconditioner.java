@@ -0,0 +1,133 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.solve.impl.SparseTriangularSolver;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Zero fill-in incomplete Cholesky preconditioner IC(0), with M = L.L^T where L has the same
+ * sparsity pattern as the lower triangle of A.
+ *
+ * Intended for symmetric positive definite A, used with ConjugateGradient. Only the lower triangle
+ * of A is read. The factorisation can break down with a non-positive pivot even for some positive
+ * definite matrices, in which case create throws an IllegalArgumentException: it always succeeds
+ * for M-matrices such as discretised Laplacians.
+ *
+ * @author Mike
+ *
+ */
+public class IncompleteCholeskyPreconditioner implements IPreconditioner {
+	private final int n;
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+	private final int[] diag;
+
+	private IncompleteCholeskyPreconditioner(int n, int[] rowPtr, int[] colIdx, double[] values, int[] diag) {
+		this.n=n;
+		this.rowPtr=rowPtr;
+		this.colIdx=colIdx;
+		this.values=values;
+		this.diag=diag;
+	}
+
+	/**
+	 * Creates an IC(0) preconditioner for a symmetric positive definite matrix. SparseRowMatrix and
+	 * other matrices are converted to CSR form first.
+	 */
+	public static IncompleteCholeskyPreconditioner create(AMatrix a) {
+		a.checkSquare();
+		if (a instanceof CSRMatrix) return create((CSRMatrix)a);
+		return create(CSRMatrix.create(a));
+	}
+
+	/**
+	 * Creates an IC(0) preconditioner for a symmetric positive definite matrix in CSR form
+	 */
+	public static IncompleteCholeskyPreconditioner create(CSRMatrix a) {
+		int n=a.checkSquare();
+		int[] aRowPtr=a.getRowPointers();
+		int[] aColIdx=a.getColumnIndices();
+		double[] aValues=a.getValues();
+
+		// extract the lower triangle, which ends with the diagonal in each row
+		int[] rowPtr=new int[n+1];
+		for (int i=0; i<n; i++) {
+			int count=0;
+			for (int p=aRowPtr[i]; (p<aRowPtr[i+1])&&(aColIdx[p]<=i); p++) {
+				count++;
+			}
+			rowPtr[i+1]=rowPtr[i]+count;
+		}
+		int nnz=rowPtr[n];
+		int[] colIdx=new int[nnz];
+		double[] values=new double[nnz];
+		int[] diag=new int[n];
+		for (int i=0; i<n; i++) {
+			int start=rowPtr[i];
+			int count=rowPtr[i+1]-start;
+			System.arraycopy(aColIdx, aRowPtr[i], colIdx, start, count);
+			System.arraycopy(aValues, aRowPtr[i], values, start, count);
+			int d=rowPtr[i+1]-1;
+			if ((count==0)||(colIdx[d]!=i)) throw new IllegalArgumentException("Zero diagonal element at row "+i);
+			diag[i]=d;
+		}
+
+		// row-oriented factorisation, restricted to the existing pattern
+		for (int i=0; i<n; i++) {
+			int start=rowPtr[i];
+			int d=diag[i];
+			for (int p=start; p<d; p++) {
+				int k=colIdx[p];
+				// subtract the dot product of rows i and k of L over columns less than k
+				double acc=values[p];
+				int pi=start;
+				int pk=rowPtr[k];
+				int kd=diag[k];
+				while ((pi<p)&&(pk<kd)) {
+					int ci=colIdx[pi];
+					int ck=colIdx[pk];
+					if (ci==ck) {
+						acc-=values[pi++]*values[pk++];
+					} else if (ci<ck) {
+						pi++;
+					} else {
+						pk++;
+					}
+				}
+				values[p]=acc/values[kd];
+			}
+			double pivot=values[d];
+			for (int p=start; p<d; p++) {
+				pivot-=values[p]*values[p];
+			}
+			if (!(pivot>0.0)) throw new IllegalArgumentException("Incomplete Cholesky breakdown with non-positive pivot at row "+i);
+			values[d]=Math.sqrt(pivot);
+		}
+		return new IncompleteCholeskyPreconditioner(n,rowPtr,colIdx,values,diag);
+	}
+
+	/**
+	 * Returns the incomplete Cholesky factor L as a CSRMatrix
+	 */
+	public CSRMatrix getL() {
+		return CSRMatrix.wrap(n, n, rowPtr, colIdx, values);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public void apply(Vector r, Vector z) {
+		if (r.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(r));
+		if (z.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(z));
+		double[] zd=z.getArray();
+		if (r!=z) System.arraycopy(r.getArray(), 0, zd, 0, n);
+		SparseTriangularSolver.solveLower(rowPtr, colIdx, values, diag, zd);
+		SparseTriangularSolver.solveLowerTranspose(rowPtr, colIdx, values, diag, zd);
+	}
+}
@@ -0,0 +1,113 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import java.util.Arrays;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.solve.impl.SparseTriangularSolver;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Zero fill-in incomplete LU preconditioner ILU(0), with M = L.U where L (unit lower triangular)
+ * and U (upper triangular) together have the same sparsity pattern as A.
+ *
+ * Intended for general non-symmetric A, used with BiCGStab or GMRES. Both factors are held in a
+ * single set of CSR arrays. No pivoting is performed, so A needs a non-zero diagonal: create throws
+ * an IllegalArgumentException if a zero pivot is encountered.
+ *
+ * @author Mike
+ *
+ */
+public class IncompleteLUPreconditioner implements IPreconditioner {
+	private final int n;
+	private final int[] rowPtr;
+	private final int[] colIdx;
+	private final double[] values;
+	private final int[] diag;
+
+	private IncompleteLUPreconditioner(int n, int[] rowPtr, int[] colIdx, double[] values, int[] diag) {
+		this.n=n;
+		this.rowPtr=rowPtr;
+		this.colIdx=colIdx;
+		this.values=values;
+		this.diag=diag;
+	}
+
+	/**
+	 * Creates an ILU(0) preconditioner for a square matrix. SparseRowMatrix and other matrices are
+	 * converted to CSR form first.
+	 */
+	public static IncompleteLUPreconditioner create(AMatrix a) {
+		a.checkSquare();
+		if (a instanceof CSRMatrix) return create((CSRMatrix)a);
+		return create(CSRMatrix.create(a));
+	}
+
+	/**
+	 * Creates an ILU(0) preconditioner for a square matrix in CSR form
+	 */
+	public static IncompleteLUPreconditioner create(CSRMatrix a) {
+		int n=a.checkSquare();
+		// the sparsity pattern is never modified, so index arrays can be shared
+		int[] rowPtr=a.getRowPointers();
+		int[] colIdx=a.getColumnIndices();
+		double[] values=a.getValues().clone();
+		int[] diag=new int[n];
+		for (int i=0; i<n; i++) {
+			int d=Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i+1], i);
+			if (d<0) throw new IllegalArgumentException("Zero diagonal element at row "+i);
+			diag[i]=d;
+		}
+
+		// IKJ variant of Gaussian elimination, dropping any fill-in outside the pattern
+		int[] pos=new int[n];
+		Arrays.fill(pos, -1);
+		for (int i=0; i<n; i++) {
+			int start=rowPtr[i];
+			int end=rowPtr[i+1];
+			for (int p=start; p<end; p++) {
+				pos[colIdx[p]]=p;
+			}
+			int d=diag[i];
+			for (int p=start; p<d; p++) {
+				int k=colIdx[p];
+				double lik=values[p]/values[diag[k]];
+				values[p]=lik;
+				if (lik==0.0) continue;
+				for (int q=diag[k]+1; q<rowPtr[k+1]; q++) {
+					int t=pos[colIdx[q]];
+					if (t>=0) values[t]-=lik*values[q];
+				}
+			}
+			if (values[d]==0.0) throw new IllegalArgumentException("Incomplete LU breakdown with zero pivot at row "+i);
+			for (int p=start; p<end; p++) {
+				pos[colIdx[p]]=-1;
+			}
+		}
+		return new IncompleteLUPreconditioner(n,rowPtr,colIdx,values,diag);
+	}
+
+	/**
+	 * Returns the combined factors as a CSRMatrix, with U in the upper triangle and the strict
+	 * lower triangle of L (whose diagonal is implicitly one) below it.
+	 */
+	public CSRMatrix getLU() {
+		return CSRMatrix.wrap(n, n, rowPtr, colIdx, values);
+	}
+
+	@Override
+	public int size() {
+		return n;
+	}
+
+	@Override
+	public void apply(Vector r, Vector z) {
+		if (r.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(r));
+		if (z.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(z));
+		double[] zd=z.getArray();
+		if (r!=z) System.arraycopy(r.getArray(), 0, zd, 0, n);
+		SparseTriangularSolver.solveUnitLower(rowPtr, colIdx, values, diag, zd);
+		SparseTriangularSolver.solveUpper(rowPtr, colIdx, values, diag, zd);
+	}
+}
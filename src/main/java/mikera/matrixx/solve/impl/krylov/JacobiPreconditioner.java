@@ -0,0 +1,69 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import java.util.Arrays;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.ErrorMessages;
+
+/**
+ * Jacobi (diagonal) preconditioner, with M = diag(A).
+ *
+ * Very cheap to build and apply, and effective when A is diagonally dominant with a widely
+ * varying diagonal.
+ *
+ * @author Mike
+ *
+ */
+public class JacobiPreconditioner implements IPreconditioner {
+	private final double[] inverseDiagonal;
+
+	private JacobiPreconditioner(double[] inverseDiagonal) {
+		this.inverseDiagonal=inverseDiagonal;
+	}
+
+	/**
+	 * Creates a Jacobi preconditioner from the diagonal of a square matrix
+	 */
+	public static JacobiPreconditioner create(AMatrix a) {
+		int n=a.checkSquare();
+		double[] inv=new double[n];
+		if (a instanceof CSRMatrix) {
+			CSRMatrix c=(CSRMatrix)a;
+			int[] rowPtr=c.getRowPointers();
+			int[] colIdx=c.getColumnIndices();
+			double[] values=c.getValues();
+			for (int i=0; i<n; i++) {
+				int p=Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i+1], i);
+				if (p>=0) inv[i]=values[p];
+			}
+		} else {
+			for (int i=0; i<n; i++) {
+				inv[i]=a.unsafeGet(i, i);
+			}
+		}
+		for (int i=0; i<n; i++) {
+			if (inv[i]==0.0) throw new IllegalArgumentException("Zero diagonal element at row "+i);
+			inv[i]=1.0/inv[i];
+		}
+		return new JacobiPreconditioner(inv);
+	}
+
+	@Override
+	public int size() {
+		return inverseDiagonal.length;
+	}
+
+	@Override
+	public void apply(Vector r, Vector z) {
+		int n=inverseDiagonal.length;
+		if (r.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongSourceLength(r));
+		if (z.length()!=n) throw new IllegalArgumentException(ErrorMessages.wrongDestLength(z));
+		double[] rd=r.getArray();
+		double[] zd=z.getArray();
+		for (int i=0; i<n; i++) {
+			zd[i]=rd[i]*inverseDiagonal[i];
+		}
+	}
+}
@@ -18,6 +18,9 @@ import mikera.vectorz.util.VectorzException;
 public abstract class ASparseIndexedVector extends ASparseVector {
 	private static final long serialVersionUID = -8106136233328863653L;
 	
+	// dot products gallop over the longer index if it is at least this many times longer
+	private static final int GALLOP_RATIO=16;
+	
 	public ASparseIndexedVector(int length) {
 		super(length);
 	}
@@ -114,36 +117,237 @@ public abstract class ASparseIndexedVector extends ASparseVector {
 	}
 	
 	public final double dotProduct(ASparseVector v) {
+		int[] vixs;
+		double[] vdata;
+		if (v instanceof ASparseIndexedVector) {
+			ASparseIndexedVector sv=(ASparseIndexedVector)v;
+			vixs=sv.internalIndexArray();
+			vdata=sv.internalData();
+		} else {
+			AVector vvalues=v.nonSparseValues();
+			vdata=vvalues.asDoubleArray();
+			if (vdata==null) vdata=vvalues.toDoubleArray();
+			vixs=v.nonSparseIndex().data;
+		}
+		return dotProduct(internalIndexArray(),internalData(),vixs,vdata);
+	}
+	
+	/**
+	 * Computes the dot product of two sparse vectors given as sorted index arrays and values.
+	 * 
+	 * If one index is much longer than the other, each index of the shorter one is located in the longer
+	 * one with a galloping (exponential then binary) search, rather than walking the whole of the longer index.
+	 */
+	static double dotProduct(int[] aixs, double[] adata, int[] bixs, double[] bdata) {
+		int na=adata.length;
+		int nb=bdata.length;
+		if ((na==0)||(nb==0)) return 0.0;
+		if (na>nb) {
+			int[] ti=aixs; aixs=bixs; bixs=ti;
+			double[] td=adata; adata=bdata; bdata=td;
+			int tn=na; na=nb; nb=tn;
+		}
 		double result=0.0;
-		double[] data=internalData();
-		int[] ixs=internalIndexArray();
-		AVector vvalues=v.nonSparseValues();
-		double[] vdata=vvalues.asDoubleArray();
-		if (vdata==null) vdata=vvalues.toDoubleArray();
-		int[] vixs=v.nonSparseIndex().data;
-		if (data.length==0) return 0.0;
-		if (vdata.length==0) return 0.0;
-		
-		int ti=0;
-		int vi=0;
-		while ((ti<data.length)&&(vi<vdata.length)) {
-			int tv=ixs[ti];
-			int vv=vixs[vi];
-			if (tv==vv) {
-				result+=data[ti]*vdata[vi];
-				ti++;
-				vi++;
-			} else {
-				if (tv<vv) {
-					ti++;
+		if (nb>=GALLOP_RATIO*(long)na) {
+			int pos=0;
+			for (int ai=0; ai<na; ai++) {
+				int target=aixs[ai];
+				// gallop forward until an index at least as large as the target is found
+				int lo=pos;
+				int hi=pos;
+				int step=1;
+				while ((hi<nb)&&(bixs[hi]<target)) {
+					lo=hi+1;
+					hi=lo+step;
+					step<<=1;
+				}
+				int p=Arrays.binarySearch(bixs, lo, Math.min(hi+1, nb), target);
+				if (p>=0) {
+					result+=adata[ai]*bdata[p];
+					pos=p+1;
 				} else {
-					vi++;
+					pos=-p-1;
+				}
+				if (pos>=nb) break;
+			}
+		} else {
+			int ai=0;
+			int bi=0;
+			while ((ai<na)&&(bi<nb)) {
+				int ax=aixs[ai];
+				int bx=bixs[bi];
+				if (ax==bx) {
+					result+=adata[ai]*bdata[bi];
+					ai++;
+					bi++;
+				} else if (ax<bx) {
+					ai++;
+				} else {
+					bi++;
 				}
 			}
 		}
-		
 		return result;
 	}
+	
+	/**
+	 * Counts the distinct indexes in the union of two sorted index arrays
+	 */
+	static int unionCount(int[] aixs, int[] bixs) {
+		int na=aixs.length;
+		int nb=bixs.length;
+		int ai=0;
+		int bi=0;
+		int n=0;
+		while ((ai<na)&&(bi<nb)) {
+			int ax=aixs[ai];
+			int bx=bixs[bi];
+			if (ax<=bx) ai++;
+			if (bx<=ax) bi++;
+			n++;
+		}
+		return n+(na-ai)+(nb-bi);
+	}
+	
+	/**
+	 * Counts the indexes common to two sorted index arrays
+	 */
+	static int intersectionCount(int[] aixs, int[] bixs) {
+		int na=aixs.length;
+		int nb=bixs.length;
+		int ai=0;
+		int bi=0;
+		int n=0;
+		while ((ai<na)&&(bi<nb)) {
+			int ax=aixs[ai];
+			int bx=bixs[bi];
+			if (ax==bx) n++;
+			if (ax<=bx) ai++;
+			if (bx<=ax) bi++;
+		}
+		return n;
+	}
+	
+	/**
+	 * Merges a + b*factor into result arrays, which must have length equal to the union count
+	 */
+	static void mergeAddMultiple(int[] aixs, double[] adata, int[] bixs, double[] bdata, double factor, int[] rixs, double[] rdata) {
+		int na=adata.length;
+		int nb=bdata.length;
+		int ai=0;
+		int bi=0;
+		int ri=0;
+		while ((ai<na)&&(bi<nb)) {
+			int ax=aixs[ai];
+			int bx=bixs[bi];
+			if (ax==bx) {
+				rixs[ri]=ax;
+				rdata[ri++]=adata[ai++]+bdata[bi++]*factor;
+			} else if (ax<bx) {
+				rixs[ri]=ax;
+				rdata[ri++]=adata[ai++];
+			} else {
+				rixs[ri]=bx;
+				rdata[ri++]=bdata[bi++]*factor;
+			}
+		}
+		for (; ai<na; ai++) {
+			rixs[ri]=aixs[ai];
+			rdata[ri++]=adata[ai];
+		}
+		for (; bi<nb; bi++) {
+			rixs[ri]=bixs[bi];
+			rdata[ri++]=bdata[bi]*factor;
+		}
+	}
+	
+	/**
+	 * Adds b*factor into a, where the indexes of b are a subset of the indexes of a
+	 */
+	static void addMultipleSubset(int[] aixs, double[] adata, int[] bixs, double[] bdata, double factor) {
+		int ai=0;
+		for (int bi=0; bi<bdata.length; bi++) {
+			int bx=bixs[bi];
+			while (aixs[ai]<bx) ai++;
+			adata[ai]+=bdata[bi]*factor;
+		}
+	}
+	
+	/**
+	 * Merges the elementwise product a*b into result arrays, which must have length equal to the intersection count
+	 */
+	static void mergeMultiply(int[] aixs, double[] adata, int[] bixs, double[] bdata, int[] rixs, double[] rdata) {
+		int na=adata.length;
+		int nb=bdata.length;
+		int ai=0;
+		int bi=0;
+		int ri=0;
+		while ((ai<na)&&(bi<nb)) {
+			int ax=aixs[ai];
+			int bx=bixs[bi];
+			if (ax==bx) {
+				rixs[ri]=ax;
+				rdata[ri++]=adata[ai++]*bdata[bi++];
+			} else if (ax<bx) {
+				ai++;
+			} else {
+				bi++;
+			}
+		}
+	}
+	
+	@Override
+	public AVector addCopy(AVector a) {
+		if (a instanceof ASparseIndexedVector) return addMultipleCopy((ASparseIndexedVector)a,1.0);
+		return super.addCopy(a);
+	}
+	
+	@Override
+	public AVector subCopy(AVector a) {
+		if (a instanceof ASparseIndexedVector) return addMultipleCopy((ASparseIndexedVector)a,-1.0);
+		return super.subCopy(a);
+	}
+	
+	@Override
+	public AVector addMultipleCopy(AVector a, double factor) {
+		if (a instanceof ASparseIndexedVector) return addMultipleCopy((ASparseIndexedVector)a,factor);
+		return super.addMultipleCopy(a,factor);
+	}
+	
+	@Override
+	public AVector multiplyCopy(AVector a) {
+		if (a instanceof ASparseIndexedVector) return multiplyCopy((ASparseIndexedVector)a);
+		return super.multiplyCopy(a);
+	}
+	
+	/**
+	 * Returns a new sparse vector equal to this + v*factor, indexed on the union of both indexes
+	 */
+	public SparseIndexedVector addMultipleCopy(ASparseIndexedVector v, double factor) {
+		checkSameLength(v);
+		int[] ixs=internalIndexArray();
+		int[] vixs=v.internalIndexArray();
+		int n=unionCount(ixs,vixs);
+		int[] rixs=new int[n];
+		double[] rdata=new double[n];
+		mergeAddMultiple(ixs,internalData(),vixs,v.internalData(),factor,rixs,rdata);
+		return SparseIndexedVector.wrap(length, rixs, rdata);
+	}
+	
+	/**
+	 * Returns a new sparse vector equal to the elementwise product of this and v, indexed on the
+	 * intersection of both indexes
+	 */
+	public SparseIndexedVector multiplyCopy(ASparseIndexedVector v) {
+		checkSameLength(v);
+		int[] ixs=internalIndexArray();
+		int[] vixs=v.internalIndexArray();
+		int n=intersectionCount(ixs,vixs);
+		int[] rixs=new int[n];
+		double[] rdata=new double[n];
+		mergeMultiply(ixs,internalData(),vixs,v.internalData(),rixs,rdata);
+		return SparseIndexedVector.wrap(length, rixs, rdata);
+	}
 
 	@Override
 	public int[] nonZeroIndices() {
@@ -1,15 +1,13 @@
 package mikera.vectorz.impl;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import mikera.indexz.Index;
 import mikera.matrixx.AMatrix;
 import mikera.vectorz.AVector;
 import mikera.vectorz.Vector;
 import mikera.vectorz.util.ErrorMessages;
+import mikera.vectorz.util.IntDoubleHashMap;
 import mikera.vectorz.util.VectorzException;
 
 /**
@@ -21,19 +19,24 @@ import mikera.vectorz.util.VectorzException;
  * Mutable in all elements, but performance will be reduced if density is high. In general, if density 
  * is more than about 1% then a dense Vector is likely to be better.
  * 
+ * Non-zero elements are stored in a primitive open-addressed IntDoubleHashMap, so setting elements
+ * does not allocate boxed keys or values.
+ * 
  * @author Mike
  *
  */
 public class SparseHashedVector extends ASparseVector {
 	private static final long serialVersionUID = 750093598603613879L;
 
-	private HashMap<Integer,Double> hash;
+	private static final int EMPTY=IntDoubleHashMap.EMPTY;
+
+	private IntDoubleHashMap hash;
 	
 	private SparseHashedVector(int length) {
-		this(length, new HashMap<Integer,Double>());
+		this(length, new IntDoubleHashMap());
 	}
 	
-	private SparseHashedVector(int length, HashMap<Integer, Double> hashMap) {
+	private SparseHashedVector(int length, IntDoubleHashMap hashMap) {
 		super(length);
 		if (length<=0) throw new IllegalArgumentException("Can't create SparseHashedVector of length "+length);
 		hash=hashMap;
@@ -44,7 +47,7 @@ public class SparseHashedVector extends ASparseVector {
 	 */
 	public static SparseHashedVector create(AVector v) {
 		int n=v.length();
-		HashMap<Integer,Double> hm=new HashMap<Integer,Double>();
+		IntDoubleHashMap hm=new IntDoubleHashMap();
 		for (int i=0; i<n; i++) {
 			double val=v.unsafeGet(i);
 			if (val!=0) hm.put(i,val);
@@ -58,7 +61,7 @@ public class SparseHashedVector extends ASparseVector {
 	public static SparseHashedVector create(int length, Index index, Vector values) {
 		int n=index.length();
 		if (values.length()!=n) throw new IllegalArgumentException("Mismatched values length: "+values.length());
-		HashMap<Integer,Double> hm=new HashMap<Integer,Double>();
+		IntDoubleHashMap hm=new IntDoubleHashMap(n);
 		for (int i=0; i<n; i++) {
 			double v=values.get(i);
 			if (v!=0.0) hm.put(index.get(i), v);
@@ -99,9 +102,7 @@ public class SparseHashedVector extends ASparseVector {
 	
 	@Override
 	public double unsafeGet(int i) {
-		Double d= hash.get(i);
-		if (d!=null) return d;
-		return 0.0;
+		return hash.get(i);
 	}
 	
 	@Override
@@ -126,27 +127,37 @@ public class SparseHashedVector extends ASparseVector {
 			hash.clear();
 			return;
 		}
-		for (Entry<Integer,Double> e:hash.entrySet()) {
-			double r=e.getValue()*d;
-			e.setValue(r);
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			vals[s]*=d;
 		}
 	}
 	
 	@Override
 	public double dotProduct(AVector v) {
 		v.checkLength(length);
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=0.0;
-		for (int i: hash.keySet()) {
-			result+=hash.get(i)*v.unsafeGet(i);
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
+			if (i==EMPTY) continue;
+			result+=vals[s]*v.unsafeGet(i);
 		}
 		return result;
 	}
 	
 	@Override
 	public double dotProduct(double[] data, int offset) {
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=0.0;
-		for (Integer i: hash.keySet()) {
-			result+=hash.get(i)*data[offset+i];
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
+			if (i==EMPTY) continue;
+			result+=vals[s]*data[offset+i];
 		}
 		return result;
 	}
@@ -154,28 +165,37 @@ public class SparseHashedVector extends ASparseVector {
 	@Override
 	public void addMultipleToArray(double factor,int offset, double[] array, int arrayOffset, int length) {
 		int aOffset=arrayOffset-offset;
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 
-		for (Integer i: hash.keySet()) {
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
 			if ((i<offset)||(i>=(offset+length))) continue;
-			array[aOffset+i]+=factor*hash.get(i);
+			array[aOffset+i]+=factor*vals[s];
 		}
 	}
 	
 	@Override
 	public void addToArray(int offset, double[] array, int arrayOffset, int length) {
 		int aOffset=arrayOffset-offset;
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		
-		for (int i: hash.keySet()) {
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
 			if ((i<offset)||(i>=(offset+length))) continue;
-			array[aOffset+i]+=hash.get(i);
+			array[aOffset+i]+=vals[s];
 		}
 	}
 	
 	@Override
 	public void addToArray(double[] dest, int offset, int stride) {
-		for (Entry<Integer,Double> e: hash.entrySet()) {
-			int i=e.getKey();
-			dest[offset+i*stride]+=e.getValue();
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
+			if (i==EMPTY) continue;
+			dest[offset+i*stride]+=vals[s];
 		}
 	}
 	
@@ -183,12 +203,13 @@ public class SparseHashedVector extends ASparseVector {
 	public void addProductToArray(double factor, int offset, AVector other,int otherOffset, double[] array, int arrayOffset, int length) {
 		int aOffset=arrayOffset-offset;
 		int oOffset=otherOffset-offset;
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 
-		for (Entry<Integer,Double> e: hash.entrySet()) {
-			Integer io=e.getKey();
-			int i=io;
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
 			if ((i<offset)||(i>=(offset+length))) continue;
-			array[aOffset+i]+=factor*e.getValue()*other.get(i+oOffset);
+			array[aOffset+i]+=factor*vals[s]*other.get(i+oOffset);
 		}
 	}
 	
@@ -197,13 +218,14 @@ public class SparseHashedVector extends ASparseVector {
 		int aOffset=arrayOffset-offset;
 		int oArrayOffset=other.getArrayOffset()+otherOffset-offset;
 		double[] oArray=other.getArray();
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		
-		for (Entry<Integer,Double> e: hash.entrySet()) {
-			Integer io=e.getKey();
-			int i=io;
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
 			if ((i<offset)||(i>=(offset+length))) continue;
 			double ov=oArray[i+oArrayOffset];
-			if (ov!=0.0) array[aOffset+i]+=factor*e.getValue()*ov;
+			if (ov!=0.0) array[aOffset+i]+=factor*vals[s]*ov;
 		}
 	}
 	
@@ -213,9 +235,12 @@ public class SparseHashedVector extends ASparseVector {
 	}
 	
 	public void copySparseValuesTo(double[] array, int offset) {
-		for (Entry<Integer,Double> e: hash.entrySet()) {
-			int i=e.getKey();
-			array[offset+i]=e.getValue();
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
+			if (i==EMPTY) continue;
+			array[offset+i]=vals[s];
 		}
 	}
 	
@@ -223,22 +248,22 @@ public class SparseHashedVector extends ASparseVector {
 		if (v instanceof ADenseArrayVector) {
 			ADenseArrayVector av=(ADenseArrayVector)v;
 			getElements(av.getArray(),av.getArrayOffset()+offset);
+			return;
 		}
 		v.fillRange(offset,length,0.0);
-		for (Entry<Integer,Double> e: hash.entrySet()) {
-			int i=e.getKey();
-			v.unsafeSet(offset+i,e.getValue());
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
+			if (i==EMPTY) continue;
+			v.unsafeSet(offset+i,vals[s]);
 		}
 	}
 
 	@Override
 	public void set(int i, double value) {
 		checkIndex(i);
-		if (value!=0.0) {	
-			hash.put(i, value);
-		} else {
-			hash.remove(i);
-		}
+		unsafeSet(i,value);
 	}
 	
 	@Override
@@ -249,7 +274,7 @@ public class SparseHashedVector extends ASparseVector {
 		}
 		
 		v.checkLength(length);
-		hash=new HashMap<Integer, Double>();
+		hash=new IntDoubleHashMap();
 		
 		for (int i=0; i<length; i++) {
 			double val=v.unsafeGet(i);
@@ -259,10 +284,9 @@ public class SparseHashedVector extends ASparseVector {
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	public void set(SparseHashedVector v) {
 		v.checkLength(length);
-		hash=(HashMap<Integer, Double>) v.hash.clone();
+		hash=v.hash.clone();
 	}
 	
 	@Override
@@ -274,31 +298,19 @@ public class SparseHashedVector extends ASparseVector {
 		}
 	}
 	
-	/**
-	 * Special method to allow re-use of integer instances as keys
-	 * 
-	 * @param i
-	 * @param value
-	 */
-	private void unsafeSetInteger(Integer i, double value) {
-		if (value!=0.0) {	
-			hash.put(i, value);
-		} else {
-			hash.remove(i);
-		}
-	}
-	
 	@Override
 	public void addAt(int i, double value) {
-		Integer ind=i;
-		unsafeSetInteger(ind, value+unsafeGet(ind));
+		unsafeSet(i, value+hash.get(i));
 	}
 	
 	@Override
 	public double maxAbsElement() {
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=0.0;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=Math.abs(e.getValue());
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=Math.abs(vals[s]);
 			if (d>result) {
 				result=d; 
 			}
@@ -308,9 +320,12 @@ public class SparseHashedVector extends ASparseVector {
 	
 	@Override
 	public double elementMax() {
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=-Double.MAX_VALUE;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=e.getValue();
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=vals[s];
 			if (d>result) {
 				result=d; 
 			}
@@ -324,9 +339,12 @@ public class SparseHashedVector extends ASparseVector {
 	
 	@Override
 	public double elementMin() {
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=Double.MAX_VALUE;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=e.getValue();
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=vals[s];
 			if (d<result) {
 				result=d; 
 			}
@@ -340,13 +358,16 @@ public class SparseHashedVector extends ASparseVector {
 	@Override
 	public int maxElementIndex(){
 		if (hash.size()==0) return 0;
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		int ind=0;
 		double result=-Double.MAX_VALUE;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=e.getValue();
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=vals[s];
 			if (d>result) {
 				result=d; 
-				ind=e.getKey();
+				ind=keys[s];
 			}
 		}
 		if ((result<0)&&(hash.size()<length)) {
@@ -359,13 +380,16 @@ public class SparseHashedVector extends ASparseVector {
 	@Override
 	public int maxAbsElementIndex(){
 		if (hash.size()==0) return 0;
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		int ind=0;
 		double result=unsafeGet(0);
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=Math.abs(e.getValue());
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=Math.abs(vals[s]);
 			if (d>result) {
 				result=d; 
-				ind=e.getKey();
+				ind=keys[s];
 			}
 		}
 		return ind;
@@ -374,13 +398,16 @@ public class SparseHashedVector extends ASparseVector {
 	@Override
 	public int minElementIndex(){
 		if (hash.size()==0) return 0;
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		int ind=0;
 		double result=Double.MAX_VALUE;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=e.getValue();
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=vals[s];
 			if (d<result) {
 				result=d; 
-				ind=e.getKey();
+				ind=keys[s];
 			}
 		}
 		if ((result>0)&&(hash.size()<length)) {
@@ -405,19 +432,24 @@ public class SparseHashedVector extends ASparseVector {
 	
 	@Override
 	public double elementSum() {
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=0.0;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=e.getValue();
-			result+=d;
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			result+=vals[s];
 		}
 		return result;
 	}
 	
 	@Override
 	public double magnitudeSquared() {
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
 		double result=0.0;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			double d=e.getValue();
+		for (int s=0; s<keys.length; s++) {
+			if (keys[s]==EMPTY) continue;
+			double d=vals[s];
 			result+=d*d;
 		}
 		return result;
@@ -426,37 +458,20 @@ public class SparseHashedVector extends ASparseVector {
 	@Override
 	public Vector nonSparseValues() {
 		int n=hash.size();
+		int[] ixs=new int[n];
 		double[] vs=new double[n];
-		Index index=nonSparseIndex();
-		for (int i=0; i<n; i++) {
-			vs[i]=hash.get(index.get(i));
-		}
+		hash.copySortedTo(ixs, vs);
 		return Vector.wrap(vs);
 	}
 	
 	@Override
 	public int[] nonZeroIndices() {
-		int n=hash.size();
-		int[] ret=new int[n];
-		int di=0;
-		for (Entry<Integer,Double> e: hash.entrySet()) {
-			ret[di++]=e.getKey();
-		}
-		Arrays.sort(ret);
-		return ret;
+		return hash.sortedKeys();
 	}
 	
 	@Override
 	public Index nonSparseIndex() {
-		int n=hash.size();
-		int[] in=new int[n];
-		int di=0;
-		for (Map.Entry<Integer,Double> e:hash.entrySet()) {
-			in[di++]=e.getKey();
-		}
-		Index result=Index.wrap(in);
-		result.sort();
-		return result;
+		return Index.wrap(hash.sortedKeys());
 	}
 
 	@Override
@@ -481,8 +496,7 @@ public class SparseHashedVector extends ASparseVector {
 			if (v==0.0) {
 				if (hash.containsKey(i)) return false;
 			} else {
-				Double d=hash.get(i);
-				if ((d==null)||(d!=v)) return false;
+				if (hash.get(i)!=v) return false;
 			}
 		}
 		return true;
@@ -493,25 +507,32 @@ public class SparseHashedVector extends ASparseVector {
 		return sparseClone();
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public SparseHashedVector exactClone() {
-		return new SparseHashedVector(length,(HashMap<Integer, Double>) hash.clone());
+		return new SparseHashedVector(length,hash.clone());
 	}
 	
 	@Override
 	public SparseIndexedVector sparseClone() {
 		// by default switch to SparsIndexedVector: will normally be faster
-		return SparseIndexedVector.create(this);
+		int n=hash.size();
+		int[] ixs=new int[n];
+		double[] vs=new double[n];
+		hash.copySortedTo(ixs, vs);
+		return SparseIndexedVector.wrap(length, ixs, vs);
 	}
 	
 	@Override
 	public void validate() {
 		if (length<=0) throw new VectorzException("Illegal length: "+length);
-		for (Entry<Integer, Double> e:hash.entrySet()) {
-			int i=e.getKey();
+		hash.validate();
+		int[] keys=hash.getKeyArray();
+		double[] vals=hash.getValueArray();
+		for (int s=0; s<keys.length; s++) {
+			int i=keys[s];
+			if (i==EMPTY) continue;
 			if ((i<0)||(i>=length)) throw new VectorzException(ErrorMessages.invalidIndex(this, i));
-			if (e.getValue()==0.0) throw new VectorzException("Unexpected zero at index: "+i);
+			if (vals[s]==0.0) throw new VectorzException("Unexpected zero at index: "+i);
 		}
 		super.validate();
 	}
@@ -252,6 +252,10 @@ public class SparseIndexedVector extends ASparseIndexedVector {
         if (v instanceof ZeroVector) {
             return;
         }
+		if (v instanceof ASparseIndexedVector) {
+			addMultiple((ASparseIndexedVector)v,1.0);
+			return;
+		}
 		includeIndices(v);	
 		for (int i=0; i<data.length; i++) {
 			data[i]+=v.unsafeGet(index.get(i));
@@ -263,6 +267,10 @@ public class SparseIndexedVector extends ASparseIndexedVector {
         if ((factor==0.0)||(v instanceof ZeroVector)) {
             return;
         }
+		if (v instanceof ASparseIndexedVector) {
+			addMultiple((ASparseIndexedVector)v,factor);
+			return;
+		}
 		includeIndices(v);	
 		for (int i=0; i<data.length; i++) {
 			data[i]+=v.unsafeGet(index.get(i))*factor;
@@ -285,6 +293,11 @@ public class SparseIndexedVector extends ASparseIndexedVector {
         if (v instanceof ZeroVector) {
             return;
         }
+		if (v instanceof ASparseIndexedVector) {
+			checkSameLength(v);
+			addMultiple((ASparseIndexedVector)v,-1.0);
+			return;
+		}
 		includeIndices(v);	
 		for (int i=0; i<data.length; i++) {
 			data[i]-=v.unsafeGet(index.get(i));
@@ -318,8 +331,33 @@ public class SparseIndexedVector extends ASparseIndexedVector {
 		}
 	}
 	
+	/**
+	 * Adds v*factor to this vector with a single merge of the two sorted indexes. If the index of v is
+	 * a subset of the index of this vector, values are updated in place without reallocation.
+	 */
+	public void addMultiple(ASparseIndexedVector v, double factor) {
+		checkSameLength(v);
+		int[] ixs=index.data;
+		int[] vixs=v.internalIndexArray();
+		double[] vdata=v.internalData();
+		int n=unionCount(ixs,vixs);
+		if (n==ixs.length) {
+			addMultipleSubset(ixs,data,vixs,vdata,factor);
+		} else {
+			int[] nixs=new int[n];
+			double[] ndata=new double[n];
+			mergeAddMultiple(ixs,data,vixs,vdata,factor,nixs,ndata);
+			this.data=ndata;
+			this.index=Index.wrap(nixs);
+		}
+	}
+	
 	public void multiply(ASparseVector v) {
 		checkSameLength(v);
+		if (v instanceof ASparseIndexedVector) {
+			multiply((ASparseIndexedVector)v);
+			return;
+		}
 		int[] thisIndex=index.data;
 		int[] thatIndex=v.nonSparseIndex().data;
 		int[] tix=IntArrays.intersectSorted(thatIndex, thisIndex);
@@ -337,6 +375,21 @@ public class SparseIndexedVector extends ASparseIndexedVector {
 		this.index=Index.wrap(tix);
 	}
 	
+	/**
+	 * Multiplies this vector elementwise by v. The result is indexed on the intersection of both indexes.
+	 */
+	public void multiply(ASparseIndexedVector v) {
+		checkSameLength(v);
+		int[] ixs=index.data;
+		int[] vixs=v.internalIndexArray();
+		int n=intersectionCount(ixs,vixs);
+		int[] nixs=new int[n];
+		double[] ndata=new double[n];
+		mergeMultiply(ixs,data,vixs,v.internalData(),nixs,ndata);
+		this.data=ndata;
+		this.index=Index.wrap(nixs);
+	}
+	
 	public void multiply(ADenseArrayVector v) {
 		multiply(v.getArray(),v.getArrayOffset());
 	}
@@ -83,6 +83,10 @@ public class ErrorMessages {
 	public static String wrongSourceLength(AVector source) {
 		return "Wrong source vector size: "+shape(source);
 	}
+	
+	public static String wrongDestShape(INDArray dest, int... shape) {
+		return "Wrong destination shape: "+shape(dest)+" expected: "+shape(shape);
+	}
 
 	public static String squareMatrixRequired(AMatrix m) {
 		return "Square matrix required! This matrix has shape: "+shape(m);
@@ -0,0 +1,254 @@
+package mikera.vectorz.util;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Hash map from non-negative int keys to double values, stored in primitive arrays.
+ *
+ * Uses open addressing with linear probing. Removal shifts following entries in the probe
+ * sequence backwards to fill the gap, so no tombstones are left behind and lookups never slow
+ * down after many removals.
+ *
+ * Entries can be iterated in slot order by scanning the key array for non-empty slots, which is
+ * fast but unordered, or copied out in key order with copySortedTo.
+ *
+ * @author Mike
+ */
+public final class IntDoubleHashMap implements Cloneable, Serializable {
+	private static final long serialVersionUID = -2416403846281954716L;
+
+	/**
+	 * Key value used to mark empty slots
+	 */
+	public static final int EMPTY=-1;
+
+	private static final int MIN_CAPACITY=8;
+
+	private int[] keys;
+	private double[] values;
+	private int size=0;
+	private int shift;
+	private int threshold;
+
+	public IntDoubleHashMap() {
+		this(0);
+	}
+
+	/**
+	 * Creates a map with enough capacity for the expected number of entries without resizing
+	 */
+	public IntDoubleHashMap(int expectedSize) {
+		int cap=MIN_CAPACITY;
+		while (cap*3L/4<expectedSize) cap*=2;
+		allocate(cap);
+	}
+
+	private void allocate(int cap) {
+		keys=new int[cap];
+		Arrays.fill(keys, EMPTY);
+		values=new double[cap];
+		shift=Integer.numberOfLeadingZeros(cap)+1;
+		threshold=(int)(cap*3L/4);
+	}
+
+	/**
+	 * Gets the ideal slot for a key, using the high bits of a multiplicative hash
+	 */
+	private int slot(int key) {
+		return (key*0x9E3779B9)>>>shift;
+	}
+
+	/**
+	 * Finds the slot containing the key, or -1 if not present
+	 */
+	private int find(int key) {
+		int mask=keys.length-1;
+		int i=slot(key);
+		while (true) {
+			int k=keys[i];
+			if (k==key) return i;
+			if (k==EMPTY) return -1;
+			i=(i+1)&mask;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size==0;
+	}
+
+	public void clear() {
+		if (size==0) return;
+		Arrays.fill(keys, EMPTY);
+		size=0;
+	}
+
+	/**
+	 * Gets the value for a key, or 0.0 if the key is not present
+	 */
+	public double get(int key) {
+		int i=find(key);
+		return (i<0)?0.0:values[i];
+	}
+
+	public boolean containsKey(int key) {
+		return find(key)>=0;
+	}
+
+	/**
+	 * Sets the value for a key, adding the key if not already present
+	 */
+	public void put(int key, double value) {
+		if (key<0) throw new IllegalArgumentException("Negative key: "+key);
+		int mask=keys.length-1;
+		int i=slot(key);
+		while (true) {
+			int k=keys[i];
+			if (k==key) {
+				values[i]=value;
+				return;
+			}
+			if (k==EMPTY) break;
+			i=(i+1)&mask;
+		}
+		if (size>=threshold) {
+			resize(keys.length*2);
+			put(key,value);
+			return;
+		}
+		keys[i]=key;
+		values[i]=value;
+		size++;
+	}
+
+	/**
+	 * Removes a key, returning true if it was present
+	 */
+	public boolean remove(int key) {
+		int i=find(key);
+		if (i<0) return false;
+		removeSlot(i);
+		return true;
+	}
+
+	/**
+	 * Removes the entry in slot i, shifting later entries of the probe sequence back into the gap
+	 */
+	private void removeSlot(int i) {
+		int mask=keys.length-1;
+		int j=i;
+		while (true) {
+			j=(j+1)&mask;
+			int k=keys[j];
+			if (k==EMPTY) break;
+			int ideal=slot(k);
+			// the entry at j can fill the gap at i unless its ideal slot lies cyclically in (i,j]
+			boolean stays=(i<=j)?((ideal>i)&&(ideal<=j)):((ideal>i)||(ideal<=j));
+			if (!stays) {
+				keys[i]=k;
+				values[i]=values[j];
+				i=j;
+			}
+		}
+		keys[i]=EMPTY;
+		size--;
+	}
+
+	private void resize(int newCapacity) {
+		int[] oldKeys=keys;
+		double[] oldValues=values;
+		allocate(newCapacity);
+		int mask=newCapacity-1;
+		for (int s=0; s<oldKeys.length; s++) {
+			int k=oldKeys[s];
+			if (k==EMPTY) continue;
+			int i=slot(k);
+			while (keys[i]!=EMPTY) {
+				i=(i+1)&mask;
+			}
+			keys[i]=k;
+			values[i]=oldValues[s];
+		}
+	}
+
+	/**
+	 * Gets the internal key array, with EMPTY marking unused slots. The length of this array is the capacity.
+	 *
+	 * WARNING: returns the internal array, which should not be modified
+	 */
+	public int[] getKeyArray() {
+		return keys;
+	}
+
+	/**
+	 * Gets the internal value array, indexed by slot in the same way as the key array.
+	 * Modifying values of occupied slots modifies the map.
+	 */
+	public double[] getValueArray() {
+		return values;
+	}
+
+	/**
+	 * Returns all keys in ascending order
+	 */
+	public int[] sortedKeys() {
+		int[] result=new int[size];
+		int di=0;
+		for (int s=0; s<keys.length; s++) {
+			int k=keys[s];
+			if (k!=EMPTY) result[di++]=k;
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	/**
+	 * Copies all keys in ascending order, and their corresponding values, to the given arrays
+	 */
+	public void copySortedTo(int[] destKeys, double[] destValues) {
+		// sort keys together with their slots, so values need no further lookups
+		long[] packed=new long[size];
+		int di=0;
+		for (int s=0; s<keys.length; s++) {
+			int k=keys[s];
+			if (k!=EMPTY) packed[di++]=(((long)k)<<32)|s;
+		}
+		Arrays.sort(packed);
+		for (int i=0; i<size; i++) {
+			long p=packed[i];
+			destKeys[i]=(int)(p>>>32);
+			destValues[i]=values[(int)p];
+		}
+	}
+
+	@Override
+	public IntDoubleHashMap clone() {
+		try {
+			IntDoubleHashMap m=(IntDoubleHashMap) super.clone();
+			m.keys=keys.clone();
+			m.values=values.clone();
+			return m;
+		} catch (CloneNotSupportedException e) {
+			throw new VectorzException(ErrorMessages.impossible());
+		}
+	}
+
+	/**
+	 * Checks that every key can be found from its ideal slot, and that the size is correct
+	 */
+	public void validate() {
+		int count=0;
+		for (int s=0; s<keys.length; s++) {
+			int k=keys[s];
+			if (k==EMPTY) continue;
+			if (k<0) throw new VectorzException("Invalid key: "+k);
+			if (find(k)!=s) throw new VectorzException("Key not reachable from its slot: "+k);
+			count++;
+		}
+		if (count!=size) throw new VectorzException("Size mismatch: "+size+" vs. "+count);
+	}
+}
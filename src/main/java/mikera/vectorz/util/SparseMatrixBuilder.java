@@ -0,0 +1,301 @@
+package mikera.vectorz.util;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseColumnMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.impl.SparseIndexedVector;
+
+/**
+ * Utility class for efficiently building sparse matrices from (row, column, value) triplets,
+ * also known as coordinate (COO) format.
+ *
+ * Triplets are appended to primitive arrays in any order, and may contain duplicates, which
+ * are summed. Building a matrix sorts all triplets at once: a counting sort into rows (or columns),
+ * followed by sorting and merging of duplicates within each row. This is much faster than
+ * setting elements of a SparseRowMatrix one at a time, which may reallocate a row for each element.
+ *
+ * For large numbers of triplets, the sorting and merging within rows is done in parallel.
+ *
+ * @author Mike
+ */
+public class SparseMatrixBuilder {
+	// minimum number of triplets processed by a single parallel task
+	private static final int MIN_TASK_ELEMENTS=65536;
+
+	private final int rows;
+	private final int cols;
+
+	private int[] rowIndex;
+	private int[] colIndex;
+	private double[] values;
+	private int size=0;
+
+	public SparseMatrixBuilder(int rows, int cols) {
+		this(rows,cols,16);
+	}
+
+	public SparseMatrixBuilder(int rows, int cols, int initialCapacity) {
+		if ((rows<0)||(cols<0)) throw new IllegalArgumentException(ErrorMessages.illegalSize(rows,cols));
+		this.rows=rows;
+		this.cols=cols;
+		int cap=Math.max(1, initialCapacity);
+		rowIndex=new int[cap];
+		colIndex=new int[cap];
+		values=new double[cap];
+	}
+
+	private void ensureCapacity(int newSize) {
+		if (newSize>rowIndex.length) {
+			int cap=(int)Math.min(Integer.MAX_VALUE-8, Math.max(newSize, rowIndex.length*2L));
+			rowIndex=Arrays.copyOf(rowIndex, cap);
+			colIndex=Arrays.copyOf(colIndex, cap);
+			values=Arrays.copyOf(values, cap);
+		}
+	}
+
+	/**
+	 * Adds a value at the given position. Values added at the same position are summed.
+	 */
+	public void add(int row, int col, double value) {
+		if ((row<0)||(row>=rows)||(col<0)||(col>=cols)) throw new IndexOutOfBoundsException(ErrorMessages.position(row,col));
+		ensureCapacity(size+1);
+		rowIndex[size]=row;
+		colIndex[size]=col;
+		values[size]=value;
+		size++;
+	}
+
+	/**
+	 * Adds many triplets from arrays of equal length
+	 */
+	public void add(int[] rowIndexes, int[] colIndexes, double[] vals) {
+		int n=vals.length;
+		if ((rowIndexes.length!=n)||(colIndexes.length!=n)) {
+			throw new IllegalArgumentException("Mismatched triplet array lengths: "+rowIndexes.length+", "+colIndexes.length+", "+n);
+		}
+		for (int k=0; k<n; k++) {
+			int row=rowIndexes[k];
+			int col=colIndexes[k];
+			if ((row<0)||(row>=rows)||(col<0)||(col>=cols)) throw new IndexOutOfBoundsException(ErrorMessages.position(row,col));
+		}
+		ensureCapacity(size+n);
+		System.arraycopy(rowIndexes, 0, rowIndex, size, n);
+		System.arraycopy(colIndexes, 0, colIndex, size, n);
+		System.arraycopy(vals, 0, values, size, n);
+		size+=n;
+	}
+
+	/**
+	 * Returns the number of triplets added, including duplicates
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all triplets
+	 */
+	public void clear() {
+		size=0;
+	}
+
+	public int rowCount() {
+		return rows;
+	}
+
+	public int columnCount() {
+		return cols;
+	}
+
+	/**
+	 * Builds a CSRMatrix from the triplets added so far
+	 */
+	public CSRMatrix toCSRMatrix() {
+		Compressed c=compress(rowIndex,colIndex,rows);
+		return CSRMatrix.wrap(rows, cols, c.ptr, c.index, c.values);
+	}
+
+	/**
+	 * Builds a SparseRowMatrix from the triplets added so far
+	 */
+	public SparseRowMatrix toSparseRowMatrix() {
+		Compressed c=compress(rowIndex,colIndex,rows);
+		return SparseRowMatrix.wrap(c.toVectors(cols), rows, cols);
+	}
+
+	/**
+	 * Builds a SparseColumnMatrix from the triplets added so far
+	 */
+	public SparseColumnMatrix toSparseColumnMatrix() {
+		Compressed c=compress(colIndex,rowIndex,cols);
+		return SparseColumnMatrix.wrap(c.toVectors(rows), rows, cols);
+	}
+
+	/**
+	 * Compressed storage: entries of line i are at positions ptr[i] to ptr[i+1]-1
+	 */
+	private static final class Compressed {
+		int[] ptr;
+		int[] index;
+		double[] values;
+
+		AVector[] toVectors(int length) {
+			int n=ptr.length-1;
+			AVector[] vecs=new AVector[n];
+			for (int i=0; i<n; i++) {
+				int start=ptr[i];
+				int end=ptr[i+1];
+				if (end>start) {
+					vecs[i]=SparseIndexedVector.wrap(length, Arrays.copyOfRange(index, start, end), Arrays.copyOfRange(values, start, end));
+				}
+			}
+			return vecs;
+		}
+	}
+
+	/**
+	 * Compresses the triplets into lines given by the major index, with sorted minor indexes
+	 * and duplicates summed in the order they were added
+	 */
+	private Compressed compress(int[] major, int[] minor, int lineCount) {
+		int n=size;
+
+		// counting sort into lines. Each key holds the minor index in the high bits and the
+		// triplet position in the low bits, so sorting keys within a line orders by minor
+		// index and keeps duplicates in the order they were added
+		int[] lineStart=new int[lineCount+1];
+		for (int k=0; k<n; k++) {
+			lineStart[major[k]+1]++;
+		}
+		for (int i=0; i<lineCount; i++) {
+			lineStart[i+1]+=lineStart[i];
+		}
+		long[] keys=new long[n];
+		int[] next=Arrays.copyOf(lineStart, lineCount);
+		for (int k=0; k<n; k++) {
+			keys[next[major[k]]++]=(((long)minor[k])<<32)|k;
+		}
+
+		Merge merge=new Merge(keys,lineStart,values);
+		boolean parallel=(lineCount>1)&&Parallel.shouldSplit(n,MIN_TASK_ELEMENTS);
+		int leaf=(int)Parallel.leafSize(n,MIN_TASK_ELEMENTS);
+
+		// sort within lines and count distinct entries
+		if (parallel) {
+			Parallel.getForkJoinPool().invoke(new MergeTask(merge,false,0,lineCount,leaf));
+		} else {
+			merge.compute(false,0,lineCount);
+		}
+		int[] ptr=merge.ptr;
+		for (int i=0; i<lineCount; i++) {
+			ptr[i+1]+=ptr[i];
+		}
+		merge.index=new int[ptr[lineCount]];
+		merge.result=new double[ptr[lineCount]];
+
+		// merge duplicates into output arrays
+		if (parallel) {
+			Parallel.getForkJoinPool().invoke(new MergeTask(merge,true,0,lineCount,leaf));
+		} else {
+			merge.compute(true,0,lineCount);
+		}
+
+		Compressed c=new Compressed();
+		c.ptr=ptr;
+		c.index=merge.index;
+		c.values=merge.result;
+		return c;
+	}
+
+	/**
+	 * State shared by all tasks merging a single set of triplets
+	 */
+	private static final class Merge {
+		final long[] keys;
+		final int[] lineStart;
+		final double[] values;
+		final int[] ptr;
+		int[] index;
+		double[] result;
+
+		Merge(long[] keys, int[] lineStart, double[] values) {
+			this.keys=keys;
+			this.lineStart=lineStart;
+			this.values=values;
+			this.ptr=new int[lineStart.length];
+		}
+
+		void compute(boolean fill, int start, int end) {
+			for (int i=start; i<end; i++) {
+				int ks=lineStart[i];
+				int ke=lineStart[i+1];
+				if (!fill) {
+					if (ke-ks>1) Arrays.sort(keys, ks, ke);
+					int count=0;
+					int last=-1;
+					for (int p=ks; p<ke; p++) {
+						int m=(int)(keys[p]>>>32);
+						if (m!=last) {
+							count++;
+							last=m;
+						}
+					}
+					ptr[i+1]=count;
+				} else {
+					int q=ptr[i]-1;
+					int last=-1;
+					for (int p=ks; p<ke; p++) {
+						long key=keys[p];
+						int m=(int)(key>>>32);
+						double v=values[(int)key];
+						if (m!=last) {
+							q++;
+							index[q]=m;
+							result[q]=v;
+							last=m;
+						} else {
+							result[q]+=v;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class MergeTask extends RecursiveAction {
+		private final Merge merge;
+		private final boolean fill;
+		private final int start,end;
+		private final int leaf;
+
+		MergeTask(Merge merge, boolean fill, int start, int end, int leaf) {
+			this.merge=merge;
+			this.fill=fill;
+			this.start=start;
+			this.end=end;
+			this.leaf=leaf;
+		}
+
+		@Override
+		protected void compute() {
+			int[] lineStart=merge.lineStart;
+			int elements=lineStart[end]-lineStart[start];
+			if ((elements<=leaf)||(end-start<=1)) {
+				merge.compute(fill,start,end);
+				return;
+			}
+			// split so that each half has roughly the same number of triplets
+			int split=Arrays.binarySearch(lineStart, start, end+1, lineStart[start]+elements/2);
+			if (split<0) split=-split-1;
+			split=Math.max(start+1, Math.min(end-1, split));
+			invokeAll(new MergeTask(merge,fill,start,split,leaf),
+					  new MergeTask(merge,fill,split,end,leaf));
+		}
+	}
+}
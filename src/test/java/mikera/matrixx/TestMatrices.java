@@ -11,9 +11,11 @@ import mikera.arrayz.NDArray;
 import mikera.arrayz.TestArrays;
 import mikera.indexz.Index;
 import mikera.indexz.Indexz;
+import mikera.matrixx.impl.BSRMatrix;
 import mikera.matrixx.impl.BandedMatrix;
 import mikera.matrixx.impl.BlockDiagonalMatrix;
 import mikera.matrixx.impl.BufferMatrix;
+import mikera.matrixx.impl.CSRMatrix;
 import mikera.matrixx.impl.ColumnMatrix;
 import mikera.matrixx.impl.IdentityMatrix;
 import mikera.matrixx.impl.ImmutableMatrix;
@@ -636,6 +638,19 @@ public class TestMatrices {
 		doGenericTests(SparseColumnMatrix.create(Matrixx.createRandomSquareMatrix(4)));
 	}
 	
+	@Test public void g_CSRMatrix() {	
+		doGenericTests(CSRMatrix.create(SparseRowMatrix.create(Vector.of(0,1,-Math.E),null,null,AxisVector.create(2, 3))));
+		doGenericTests(CSRMatrix.create(Matrixx.createRandomSquareMatrix(3)));
+		doGenericTests(CSRMatrix.create(Matrix.create(2, 5)));
+	}
+	
+	@Test public void g_BSRMatrix() {	
+		doGenericTests(BSRMatrix.create(Matrixx.createRandomSquareMatrix(4),2,2));
+		doGenericTests(BSRMatrix.create(SparseRowMatrix.create(Vector.of(0,1,-Math.E,0),null,null,AxisVector.create(2, 4)),2,2));
+		doGenericTests(BSRMatrix.create(BlockDiagonalMatrix.create(IdentityMatrix.create(2),Matrixx.createRandomSquareMatrix(4))));
+		doGenericTests(BSRMatrix.create(Matrix.create(2, 6),1,3));
+	}
+	
 	@Test public void g_TriangularMatrix() {	
 		doGenericTests(UpperTriangularMatrix.createFrom(Matrixx.createRandomSquareMatrix(1)));
 		doGenericTests(UpperTriangularMatrix.createFrom(Matrixx.createRandomSquareMatrix(4)));
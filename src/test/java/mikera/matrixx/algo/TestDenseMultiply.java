@@ -1,9 +1,12 @@
 package mikera.matrixx.algo;
 
 import static org.junit.Assert.*;
+import mikera.matrixx.AMatrix;
 import mikera.matrixx.Matrix;
 import mikera.matrixx.Matrixx;
 import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.impl.AStridedMatrix;
+import mikera.matrixx.impl.DenseColumnMatrix;
 
 import org.junit.Test;
 
@@ -18,6 +21,102 @@ public class TestDenseMultiply {
 		assertEquals(ip,Multiplications.naiveMultiply(m, m));
 	}
 	
+	@Test public void testParallelMul() {
+		Matrix a=(Matrix)Matrixx.createRandomMatrix(67, 131);
+		Matrix b=(Matrix)Matrixx.createRandomMatrix(131, 45);
+		Matrix ip=Multiplications.blockedMultiply(a, b);
+		assertEquals(ip,Multiplications.parallelMultiply(a, b));
+		assertEquals(ip,Multiplications.directMultiply(a, b));
+		
+		long oldThreshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			assertEquals(ip,a.innerProduct(b));
+			assertEquals(ip,Multiplications.multiply(a, b));
+		} finally {
+			Multiplications.setParallelThreshold(oldThreshold);
+		}
+	}
+	
+	@Test public void testParallelEdgeCases() {
+		Matrix a=Matrix.create(3, 0);
+		Matrix b=Matrix.create(0, 4);
+		assertEquals(Matrix.create(3, 4),Multiplications.parallelMultiply(a, b));
+		
+		Matrix m=(Matrix)Matrixx.createRandomMatrix(1, 300);
+		Matrix mt=m.toMatrixTranspose();
+		assertEquals(Multiplications.blockedMultiply(mt, m),Multiplications.parallelMultiply(mt, m));
+	}
+	
+	@Test public void testPackedMul() {
+		int[][] shapes={{1,1,1},{5,7,3},{4,4,4},{13,300,9},{130,270,2100},{97,1,33}};
+		for (int[] sh: shapes) {
+			Matrix a=Matrix.createRandom(sh[0], sh[1]);
+			Matrix b=Matrix.createRandom(sh[1], sh[2]);
+			Matrix ip=Multiplications.blockedMultiply(a, b);
+			assertEquals(ip,Multiplications.packedMultiply(a, b));
+			assertEquals(ip,Multiplications.doubleBlockedMultiply(a, b));
+		}
+	}
+	
+	@Test public void testPackedStridedMul() {
+		Matrix m=(Matrix)Matrixx.createRandomMatrix(20, 30);
+		AMatrix a=m.subMatrix(3, 10, 5, 17);
+		AMatrix b=m.getTranspose().subMatrix(2, 17, 1, 6);
+		Matrix ip=Multiplications.naiveMultiply(a, b).toMatrix();
+		assertEquals(ip,PackedMultiply.multiply(a, b));
+		assertEquals(ip,PackedMultiply.multiply(a, DenseColumnMatrix.wrap(17, 6, b.toMatrixTranspose().data)));
+	}
+	
+	@Test public void testGemm() {
+		Matrix a=Matrix.createRandom(7, 5);
+		Matrix b=Matrix.createRandom(5, 9);
+		Matrix c=Matrix.createRandom(7, 9);
+		
+		Matrix expected=Multiplications.naiveMultiply(a, b).toMatrix();
+		expected.scale(2.0);
+		expected.addMultiple(c, 0.5);
+		
+		Matrix r=c.clone();
+		Multiplications.gemm(2.0, a, false, b, false, 0.5, r);
+		assertTrue(expected.epsilonEquals(r));
+		
+		// transposed operands, read in place
+		r=c.clone();
+		Multiplications.gemm(2.0, a.toMatrixTranspose(), true, b.getTranspose(), true, 0.5, r);
+		assertTrue(expected.epsilonEquals(r));
+		
+		r=c.clone();
+		Multiplications.gemm(2.0, a.getTranspose().getTranspose(), false, b.toMatrixTranspose().getTranspose(), false, 0.5, r);
+		assertTrue(expected.epsilonEquals(r));
+	}
+	
+	@Test public void testGemmSubMatrix() {
+		Matrix a=Matrix.createRandom(6, 4);
+		Matrix b=Matrix.createRandom(4, 3);
+		Matrix big=Matrix.create(10, 10);
+		big.fill(7.0);
+		
+		AStridedMatrix dest=big.subMatrix(2, 6, 5, 3);
+		Multiplications.multiplyInto(a, b, dest);
+		assertTrue(Multiplications.naiveMultiply(a, b).epsilonEquals(dest));
+		assertEquals(7.0,big.get(1, 5),0.0);
+		assertEquals(7.0,big.get(2, 4),0.0);
+		assertEquals(7.0,big.get(8, 5),0.0);
+		
+		Multiplications.multiplyAdd(a, b, (AStridedMatrix)dest.getTransposeView().getTransposeView());
+		AMatrix twice=Multiplications.naiveMultiply(a, b);
+		twice.scale(2.0);
+		assertTrue(twice.epsilonEquals(dest));
+	}
+	
+	@Test public void testGemmAliased() {
+		Matrix a=Matrix.createRandom(5, 5);
+		AMatrix expected=Multiplications.naiveMultiply(a, a);
+		Multiplications.multiplyInto(a, a.clone(), a);
+		assertTrue(expected.epsilonEquals(a));
+	}
+	
 	@Test public void testSmallMul() {
 		Matrix m=(Matrix)Matrixx.createRandomMatrix(5, 5);
 		Matrix ip=m.innerProduct(m);
@@ -0,0 +1,56 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.AStridedMatrix;
+
+import org.junit.Test;
+
+public class TestGram {
+	
+	@Test public void testTransposeProduct() {
+		Matrix a=Matrix.createRandom(300, 150);
+		Matrix g=Gram.transposeProduct(a);
+		assertTrue(g.isSymmetric());
+		assertTrue(a.getTranspose().innerProduct(a).epsilonEquals(g));
+		assertEquals(g,Gram.transposeProduct(a,true));
+	}
+	
+	@Test public void testProductTranspose() {
+		Matrix a=Matrix.createRandom(140, 70);
+		Matrix g=Gram.productTranspose(a);
+		assertTrue(g.isSymmetric());
+		assertTrue(a.innerProduct(a.getTranspose()).epsilonEquals(g));
+		assertEquals(g,Gram.productTranspose(a,true));
+	}
+	
+	@Test public void testViews() {
+		Matrix m=Matrix.createRandom(20, 30);
+		AMatrix a=m.subMatrix(2, 15, 3, 9);
+		assertTrue(a.getTranspose().innerProduct(a).epsilonEquals(Gram.transposeProduct(a)));
+		assertTrue(a.getTranspose().innerProduct(a).epsilonEquals(Gram.productTranspose(a.getTranspose())));
+	}
+	
+	@Test public void testSyrk() {
+		Matrix a=Matrix.createRandom(6, 4);
+		Matrix c=Matrix.createRandom(4, 4);
+		c=c.innerProduct(c.getTranspose()); // symmetric
+		
+		AMatrix expected=a.getTranspose().innerProduct(a);
+		expected.scale(2.0);
+		expected.addMultiple(c, 3.0);
+		
+		Matrix big=Matrix.create(8, 8);
+		AStridedMatrix dest=big.subMatrix(1, 4, 2, 4);
+		dest.set(c);
+		Gram.syrk(2.0, a, true, 3.0, dest, false);
+		assertTrue(expected.epsilonEquals(dest));
+		assertEquals(0.0,big.get(0, 2),0.0);
+	}
+	
+	@Test public void testEmpty() {
+		assertEquals(Matrix.create(3, 3),Gram.productTranspose(Matrix.create(3, 0)));
+		assertEquals(Matrix.create(0, 0),Gram.transposeProduct(Matrix.create(3, 0)));
+	}
+}
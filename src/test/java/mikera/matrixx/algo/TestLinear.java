@@ -32,6 +32,17 @@ public class TestLinear {
         assertEquals(Vector.of(0,0.5),x);
     }
     
+    @Test 
+    public void testSolveLeastSquaresNormal() {
+        AMatrix m= Matrix.create(new double[][] {{1,2},{3,4},{5,6}});
+        
+        AVector x = Linear.solveLeastSquaresNormal(m, Vector.of(1,2,3));
+        assertTrue(Vector.of(0,0.5).epsilonEquals(x, 1e-8));
+        
+        AMatrix rankDeficient= Matrix.create(new double[][] {{1,2},{2,4},{3,6}});
+        assertNull(Linear.solveLeastSquaresNormal(rankDeficient, Vector.of(1,2,3)));
+    }
+    
     @Test 
     public void testSolveSquareVector() {
         AMatrix m= Matrix.create(new double[][] {{1,2,2},{1,4,1},{5,9,2}});
@@ -0,0 +1,101 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.MultiplyTable.Algorithm;
+
+import org.junit.Test;
+
+public class TestMultiplyTuner {
+
+	@Test public void testTable() {
+		MultiplyTable t=MultiplyTable.parse("DIRECT:100, PACKED:5000,PARALLEL", 4096);
+		assertEquals(Algorithm.DIRECT,t.getAlgorithm(0));
+		assertEquals(Algorithm.DIRECT,t.getAlgorithm(99));
+		assertEquals(Algorithm.PACKED,t.getAlgorithm(100));
+		assertEquals(Algorithm.PACKED,t.getAlgorithm(10,10,10));
+		assertEquals(Algorithm.PARALLEL,t.getAlgorithm(5000));
+		assertEquals(Algorithm.PARALLEL,t.getAlgorithm(Long.MAX_VALUE));
+		assertEquals(4096,t.getWorkingSetTarget());
+		assertEquals(3,t.getAlgorithms().size());
+		assertEquals(2,t.getBounds().length);
+
+		assertEquals("DIRECT:100,PACKED:5000,PARALLEL",t.getTableString());
+		assertEquals(t,MultiplyTable.parse(t.getTableString(), 4096));
+		assertEquals(Algorithm.BLOCKED,MultiplyTable.create(Algorithm.BLOCKED, 100).getAlgorithm(1000000));
+	}
+
+	@Test public void testInvalidTables() {
+		String[] invalid={"","FOO","DIRECT:100","DIRECT:100,PACKED:50,BLOCKED","DIRECT:x,PACKED","PACKED,DIRECT"};
+		for (String s: invalid) {
+			try {
+				MultiplyTable.parse(s, 1000);
+				fail("Parsed invalid table: "+s);
+			} catch (IllegalArgumentException e) {
+				// OK
+			}
+		}
+		try {
+			MultiplyTable.create(Algorithm.DIRECT, 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test public void testSaveLoad() throws IOException {
+		File f=File.createTempFile("vectorz-tuning", ".properties");
+		try {
+			MultiplyTable t=MultiplyTable.parse("BLOCKED:1000,DOUBLE_BLOCKED", 2048);
+			MultiplyTuner.save(t, f);
+			assertEquals(t,MultiplyTuner.load(f));
+		} finally {
+			f.delete();
+		}
+	}
+
+	@Test public void testOverride() {
+		Matrix a=Matrix.createRandom(23, 17);
+		Matrix b=Matrix.createRandom(17, 31);
+		Matrix expected=Multiplications.blockedMultiply(a, b);
+		try {
+			for (Algorithm alg: new Algorithm[] {Algorithm.DIRECT,Algorithm.DOUBLE_BLOCKED,Algorithm.PACKED,Algorithm.PARALLEL}) {
+				MultiplyTuner.setTable(MultiplyTable.create(alg, 100));
+				assertEquals(100,Multiplications.getWorkingSetTarget());
+				assertEquals(expected,a.innerProduct(b));
+			}
+		} finally {
+			MultiplyTuner.setTable(null);
+		}
+		assertEquals(Multiplications.WORKING_SET_TARGET,Multiplications.getWorkingSetTarget());
+		assertNull(MultiplyTuner.getTable());
+	}
+
+	@Test public void testTune() throws IOException {
+		File f=File.createTempFile("vectorz-tuning", ".properties");
+		f.delete();
+		MultiplyTuner.setFile(f);
+		try {
+			MultiplyTable t=MultiplyTuner.tune(16, false);
+			assertEquals(t,MultiplyTuner.getTable());
+			assertEquals(t.getWorkingSetTarget(),Multiplications.getWorkingSetTarget());
+			assertFalse(t.getAlgorithms().contains(Algorithm.STRASSEN));
+			assertTrue(f.exists());
+
+			MultiplyTuner.setTable(null);
+			MultiplyTuner.reload();
+			assertEquals(t,MultiplyTuner.getTable());
+
+			Matrix a=Matrix.createRandom(40, 40);
+			assertEquals(Multiplications.blockedMultiply(a, a),a.innerProduct(a));
+		} finally {
+			MultiplyTuner.setTable(null);
+			MultiplyTuner.setFile(null);
+			f.delete();
+		}
+	}
+}
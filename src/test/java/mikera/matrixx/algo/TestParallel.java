@@ -0,0 +1,53 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TestParallel {
+
+	@Test public void testSingleThread() {
+		ForkJoinPool pool=new ForkJoinPool(1);
+		Parallel.setForkJoinPool(pool);
+		try {
+			assertFalse(Parallel.isParallel());
+			assertFalse(Parallel.shouldSplit(Long.MAX_VALUE/4));
+			assertFalse(Parallel.canSplit(Long.MAX_VALUE/4, 1));
+		} finally {
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+
+	@Test public void testSplitting() {
+		ForkJoinPool pool=new ForkJoinPool(4);
+		Parallel.setForkJoinPool(pool);
+		long threshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			assertEquals(16,Parallel.getTaskCount());
+			assertFalse(Parallel.shouldSplit(2*Parallel.MIN_TASK_OPS-1));
+			assertTrue(Parallel.shouldSplit(2*Parallel.MIN_TASK_OPS));
+			assertTrue(Parallel.shouldSplit(200, 100));
+			assertFalse(Parallel.shouldSplit(199, 100));
+
+			// tasks are never smaller than the minimum
+			assertEquals(Parallel.MIN_TASK_OPS,Parallel.leafSize(2*Parallel.MIN_TASK_OPS));
+			assertEquals(Parallel.MIN_TASK_OPS*2,Parallel.leafSize(Parallel.MIN_TASK_OPS*32));
+			assertEquals(100,Parallel.leafSize(200, 100));
+			assertEquals(1000,Parallel.leafSize(16000, 100));
+
+			// the parallel threshold applies to shouldSplit but not canSplit
+			Multiplications.setParallelThreshold(10000);
+			assertFalse(Parallel.shouldSplit(9999, 100));
+			assertTrue(Parallel.canSplit(9999, 100));
+			assertTrue(Parallel.shouldSplit(10000, 100));
+		} finally {
+			Multiplications.setParallelThreshold(threshold);
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseColumnMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+
+import org.junit.Test;
+
+public class TestSparseMultiply {
+
+	private static Matrix sparseRandom(int rows, int cols, double density) {
+		Matrix m=Matrix.createRandom(rows, cols);
+		double[] data=m.getArray();
+		for (int i=0; i<data.length; i++) {
+			data[i]=(data[i]<density)?data[i]/density:0.0;
+		}
+		return m;
+	}
+
+	@Test public void testMultiply() {
+		int[][] shapes={{1,1,1},{5,7,3},{40,30,50},{3,0,4}};
+		for (int[] sh: shapes) {
+			Matrix a=sparseRandom(sh[0], sh[1], 0.2);
+			Matrix b=sparseRandom(sh[1], sh[2], 0.3);
+			CSRMatrix c=SparseMultiply.multiply(CSRMatrix.create(a), CSRMatrix.create(b));
+			c.validate();
+			assertTrue(a.innerProduct(b).epsilonEquals(c));
+			assertEquals(c,SparseMultiply.multiply(SparseRowMatrix.create(a), SparseColumnMatrix.create(b)));
+		}
+	}
+
+	@Test public void testHashedAccumulator() {
+		// very wide result with few multiply-adds per row uses the hashed accumulator
+		Matrix a=sparseRandom(20, 30, 0.1);
+		Matrix b=sparseRandom(30, 2000, 0.005);
+		CSRMatrix c=SparseMultiply.multiply(a, b);
+		c.validate();
+		assertTrue(a.innerProduct(b).epsilonEquals(c));
+	}
+
+	@Test public void testHashedStridedColumns() {
+		// column indices that are multiples of a large power of two must not collide in the hash table
+		int k=500;
+		int stride=1<<12;
+		int[] aPtr={0,k};
+		int[] aIdx=new int[k];
+		double[] aValues=new double[k];
+		int[] bPtr=new int[k+1];
+		int[] bIdx=new int[k];
+		double[] bValues=new double[k];
+		for (int i=0; i<k; i++) {
+			aIdx[i]=i;
+			aValues[i]=i+1;
+			bPtr[i+1]=i+1;
+			bIdx[i]=(k-1-i)*stride;
+			bValues[i]=2.0;
+		}
+		CSRMatrix a=CSRMatrix.wrap(1, k, aPtr, aIdx, aValues);
+		CSRMatrix b=CSRMatrix.wrap(k, k*stride, bPtr, bIdx, bValues);
+		CSRMatrix c=SparseMultiply.multiply(a, b);
+		c.validate();
+		assertEquals(k,c.nonZeroCount());
+		for (int i=0; i<k; i++) {
+			assertEquals(2.0*(i+1),c.get(0, (k-1-i)*stride),0.0);
+		}
+	}
+
+	@Test public void testSparseRowProducts() {
+		Matrix a=sparseRandom(30, 20, 0.2);
+		Matrix b=sparseRandom(20, 25, 0.2);
+		AMatrix expected=a.innerProduct(b);
+		SparseRowMatrix sa=SparseRowMatrix.create(a);
+		assertTrue(expected.epsilonEquals(sa.innerProduct(SparseRowMatrix.create(b))));
+		assertTrue(expected.epsilonEquals(sa.innerProduct(SparseColumnMatrix.create(b))));
+		assertTrue(expected.epsilonEquals(sa.innerProduct((AMatrix)SparseRowMatrix.create(b))));
+		assertTrue(expected.epsilonEquals(CSRMatrix.create(a).innerProduct(SparseRowMatrix.create(b))));
+	}
+
+	@Test public void testParallel() {
+		ForkJoinPool pool=new ForkJoinPool(4);
+		Parallel.setForkJoinPool(pool);
+		try {
+			Matrix a=sparseRandom(300, 200, 0.3);
+			Matrix b=sparseRandom(200, 300, 0.3);
+			CSRMatrix serial=SparseMultiply.multiply(a, b, false);
+			CSRMatrix parallel=SparseMultiply.multiply(a, b, true);
+			parallel.validate();
+			assertEquals(serial,parallel);
+			assertArrayEquals(serial.getColumnIndices(),parallel.getColumnIndices());
+			assertTrue(a.innerProduct(b).epsilonEquals(parallel));
+		} finally {
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+
+	@Test public void testIncompatibleShapes() {
+		try {
+			SparseMultiply.multiply(CSRMatrix.create(3, 4), CSRMatrix.create(3, 4));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
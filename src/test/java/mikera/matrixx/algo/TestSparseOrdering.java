@@ -0,0 +1,160 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.indexz.Index;
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.impl.BandedMatrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.PermutationMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+
+import org.junit.Test;
+
+public class TestSparseOrdering {
+
+	private static SparseRowMatrix randomSymmetricPattern(int n, int entries, Random r) {
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 1.0);
+		}
+		for (int k=0; k<entries; k++) {
+			int i=r.nextInt(n);
+			int j=r.nextInt(n);
+			m.set(i, j, 1.0);
+			m.set(j, i, 1.0);
+		}
+		return m;
+	}
+
+	@Test public void testMinimumDegreePermutation() {
+		Random r=new Random(1111);
+		for (int t=0; t<20; t++) {
+			int n=1+r.nextInt(100);
+			SparseRowMatrix m=randomSymmetricPattern(n,r.nextInt(4*n),r);
+			int[] perm=SparseOrdering.approximateMinimumDegree(m);
+			assertTrue(Index.of(perm).isPermutation());
+			int[] pinv=SparseOrdering.invert(perm);
+			for (int k=0; k<n; k++) {
+				assertEquals(k,pinv[perm[k]]);
+			}
+		}
+	}
+
+	@Test public void testArrowMatrix() {
+		// an arrow matrix with the dense row first fills in completely unless the hub is ordered last
+		// (or second to last, when it ties with the final remaining leaf)
+		int n=50;
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 1.0);
+			m.set(0, i, 1.0);
+			m.set(i, 0, 1.0);
+		}
+		int[] perm=SparseOrdering.approximateMinimumDegree(CSRMatrix.create(m));
+		assertTrue(SparseOrdering.invert(perm)[0]>=n-2);
+	}
+
+	@Test public void testLowerTriangleOnly() {
+		// only the symmetrised pattern matters
+		Random r=new Random(2222);
+		SparseRowMatrix m=randomSymmetricPattern(40,80,r);
+		SparseRowMatrix lower=SparseRowMatrix.create(40, 40);
+		for (int i=0; i<40; i++) {
+			for (int j=0; j<=i; j++) {
+				if (m.get(i, j)!=0.0) lower.set(i, j, 1.0);
+			}
+		}
+		assertArrayEquals(SparseOrdering.approximateMinimumDegree(m),SparseOrdering.approximateMinimumDegree(lower));
+	}
+
+	private static int[] shuffle(int n, Random r) {
+		int[] s=new int[n];
+		for (int i=0; i<n; i++) {
+			int j=r.nextInt(i+1);
+			s[i]=s[j];
+			s[j]=i;
+		}
+		return s;
+	}
+
+	/**
+	 * Creates the 2D Poisson matrix on a g x g grid, with rows and columns randomly shuffled
+	 */
+	private static SparseRowMatrix shuffledGrid(int g, Random r) {
+		int n=g*g;
+		int[] shuffle=shuffle(n,r);
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<g; i++) {
+			for (int j=0; j<g; j++) {
+				int k=shuffle[i*g+j];
+				m.set(k, k, 4.0);
+				if (i>0) m.set(k, shuffle[(i-1)*g+j], -1.0);
+				if (i<g-1) m.set(k, shuffle[(i+1)*g+j], -1.0);
+				if (j>0) m.set(k, shuffle[i*g+j-1], -1.0);
+				if (j<g-1) m.set(k, shuffle[i*g+j+1], -1.0);
+			}
+		}
+		return m;
+	}
+
+	@Test public void testReverseCuthillMcKeeTridiagonal() {
+		// a shuffled path graph must be restored to bandwidth 1
+		int n=30;
+		int[] shuffle=shuffle(n,new Random(4444));
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(shuffle[i], shuffle[i], 2.0);
+			if (i>0) {
+				m.set(shuffle[i], shuffle[i-1], -1.0);
+				m.set(shuffle[i-1], shuffle[i], -1.0);
+			}
+		}
+		BandedOrderingResult r=SparseOrdering.toBanded(m);
+		assertEquals(1,r.getBandwidth());
+		assertTrue(r.getOriginalBandwidth()>=1);
+		checkBanded(m,r);
+	}
+
+	@Test public void testReverseCuthillMcKeeGrid() {
+		Random r=new Random(3333);
+		int g=15;
+		SparseRowMatrix m=shuffledGrid(g,r);
+		int[] perm=SparseOrdering.reverseCuthillMcKee(m);
+		assertTrue(Index.of(perm).isPermutation());
+
+		BandedOrderingResult b=SparseOrdering.toBanded(m);
+		assertTrue(b.getBandwidth()<=g+1);
+		assertTrue(b.getBandwidth()<b.getOriginalBandwidth());
+		assertEquals(b.getOriginalBandwidth(),Math.max(m.lowerBandwidth(), m.upperBandwidth()));
+		assertEquals(b.getBandwidth(),Math.max(b.getBandedMatrix().lowerBandwidth(), b.getBandedMatrix().upperBandwidth()));
+		checkBanded(m,b);
+	}
+
+	@Test public void testReverseCuthillMcKeeComponents() {
+		// block diagonal with isolated nodes and two components
+		SparseRowMatrix m=SparseRowMatrix.create(9, 9);
+		for (int i=0; i<9; i++) {
+			m.set(i, i, 1.0);
+		}
+		m.set(0, 8, 1.0);
+		m.set(8, 0, 1.0);
+		m.set(2, 5, 1.0);
+		m.set(5, 2, 1.0);
+		m.set(5, 7, 1.0);
+		m.set(7, 5, 1.0);
+		BandedOrderingResult b=SparseOrdering.toBanded(m);
+		assertEquals(8,b.getOriginalBandwidth());
+		assertEquals(1,b.getBandwidth());
+		checkBanded(m,b);
+	}
+
+	private static void checkBanded(AMatrix m, BandedOrderingResult r) {
+		PermutationMatrix p=r.getP();
+		BandedMatrix b=r.getBandedMatrix();
+		b.validate();
+		assertTrue(b.epsilonEquals(p.innerProduct(m).innerProduct(p.getTranspose()), 0.0));
+	}
+}
@@ -0,0 +1,172 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseColumnMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vectorz;
+
+import org.junit.Test;
+
+public class TestSparseTransforms {
+
+	/**
+	 * Creates a matrix where the first few rows are dense and the rest very sparse
+	 */
+	private static Matrix skewedRandom(int rows, int cols) {
+		Matrix m=Matrix.createRandom(rows, cols);
+		double[] data=m.getArray();
+		for (int i=0; i<rows; i++) {
+			double density=(i<3)?1.0:0.02;
+			for (int j=0; j<cols; j++) {
+				if (data[i*cols+j]>density) data[i*cols+j]=0.0;
+			}
+		}
+		return m;
+	}
+
+	@Test public void testSparseRowTransform() {
+		Matrix m=skewedRandom(40, 30);
+		SparseRowMatrix s=SparseRowMatrix.create(m);
+		AVector v=Vectorz.createUniformRandomVector(30);
+		AVector expected=m.transform(v);
+		assertTrue(expected.epsilonEquals(s.transform(v)));
+
+		AVector dest=Vectorz.newVector(80).subVector(20, 40);
+		s.transform(v, dest);
+		assertTrue(expected.epsilonEquals(dest));
+
+		Vector vd=Vector.create(v);
+		Vector dd=Vector.createLength(40);
+		s.transform(vd, dd);
+		assertTrue(expected.epsilonEquals(dd));
+	}
+
+	@Test public void testSparseColumnTransforms() {
+		Matrix m=skewedRandom(30, 40);
+		SparseColumnMatrix s=SparseColumnMatrix.create(m);
+		AVector v=Vectorz.createUniformRandomVector(40);
+		AVector dest=Vector.createLength(30);
+		s.transform(v, dest);
+		assertTrue(m.transform(v).epsilonEquals(dest));
+
+		AVector u=Vectorz.createUniformRandomVector(30);
+		AVector tdest=Vectorz.newVector(50).subVector(5, 40);
+		s.transposeTransform(u, tdest);
+		assertTrue(m.getTranspose().transform(u).epsilonEquals(tdest));
+	}
+
+	@Test public void testSquareInPlace() {
+		Matrix m=skewedRandom(25, 25);
+		Vector v=Vector.create(Vectorz.createUniformRandomVector(25));
+		AVector expected=m.transform(v);
+
+		Vector w=v.clone();
+		SparseRowMatrix.create(m).transform(w, w);
+		assertTrue(expected.epsilonEquals(w));
+
+		w=v.clone();
+		SparseColumnMatrix.create(m).transform(w, w);
+		assertTrue(expected.epsilonEquals(w));
+
+		w=v.clone();
+		CSRMatrix.create(m).transform(w, w);
+		assertTrue(expected.epsilonEquals(w));
+	}
+
+	@Test public void testParallel() {
+		ForkJoinPool pool=new ForkJoinPool(4);
+		Parallel.setForkJoinPool(pool);
+		long oldThreshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			Matrix m=skewedRandom(3000, 2000);
+			AVector v=Vectorz.createUniformRandomVector(2000);
+			AVector u=Vectorz.createUniformRandomVector(3000);
+
+			SparseRowMatrix s=SparseRowMatrix.create(m);
+			Vector serial=Vector.createLength(3000);
+			Vector parallel=Vector.createLength(3000);
+			SparseTransforms.transform(s, v, serial, false);
+			SparseTransforms.transform(s, v, parallel, true);
+			assertEquals(serial,parallel);
+			assertTrue(m.transform(v).epsilonEquals(parallel));
+
+			CSRMatrix c=CSRMatrix.create(m);
+			Vector cparallel=Vector.createLength(3000);
+			SparseTransforms.transform(c, v, cparallel, true);
+			assertEquals(serial,cparallel);
+
+			SparseColumnMatrix sc=SparseColumnMatrix.create(m);
+			Vector tserial=Vector.createLength(2000);
+			Vector tparallel=Vector.createLength(2000);
+			SparseTransforms.transposeTransform(sc, u, tserial, false);
+			SparseTransforms.transposeTransform(sc, u, tparallel, true);
+			assertEquals(tserial,tparallel);
+			assertTrue(m.getTranspose().transform(u).epsilonEquals(tparallel));
+		} finally {
+			Multiplications.setParallelThreshold(oldThreshold);
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+
+	@Test public void testLineWeightCache() {
+		SparseRowMatrix s=SparseRowMatrix.create(4, 5);
+		s.set(1, 2, 1.0);
+		s.set(1, 4, 2.0);
+		long[] prefix=s.getLineWeightPrefix();
+		assertArrayEquals(new long[] {0,1,4,5,6},prefix);
+		assertSame(prefix,s.getLineWeightPrefix());
+
+		// structural changes discard the cached weights
+		s.set(3, 0, 3.0);
+		assertArrayEquals(new long[] {0,1,4,5,7},s.getLineWeightPrefix());
+		s.replaceRow(0, Vector.of(1,2,3,4,5));
+		assertEquals(12,s.getLineWeightPrefix()[4]);
+
+		ForkJoinPool pool=new ForkJoinPool(4);
+		Parallel.setForkJoinPool(pool);
+		long oldThreshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			Matrix m=skewedRandom(3000, 2000);
+			SparseRowMatrix r=SparseRowMatrix.create(m);
+			AVector v=Vectorz.createUniformRandomVector(2000);
+			Vector result=Vector.createLength(3000);
+			SparseTransforms.transform(r, v, result, true);
+			for (int i=0; i<3000; i+=7) {
+				m.set(i, i%2000, 5.0);
+				r.set(i, i%2000, 5.0);
+			}
+			SparseTransforms.transform(r, v, result, true);
+			assertTrue(m.transform(v).epsilonEquals(result));
+		} finally {
+			Multiplications.setParallelThreshold(oldThreshold);
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+
+	@Test public void testWrongLengths() {
+		SparseRowMatrix s=SparseRowMatrix.create(3, 4);
+		try {
+			s.transform(Vector.createLength(3), Vector.createLength(3));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			SparseColumnMatrix.create(3, 4).transposeTransform(Vector.createLength(3), Vector.createLength(3));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
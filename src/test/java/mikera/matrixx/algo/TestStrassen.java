@@ -0,0 +1,71 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+
+import org.junit.Test;
+
+public class TestStrassen {
+	
+	/**
+	 * Checks the Strassen-Winograd result against the conventional algorithm, using the
+	 * normwise error bound |C-C'| <= (n0^2 + 6*n0) * 18^l * eps * |A| * |B| for Winograd's variant, 
+	 * where l is the number of recursion levels and n0 the size at the crossover
+	 * (Higham, Accuracy and Stability of Numerical Algorithms, section 23.2.2)
+	 */
+	private void doErrorBoundTest(int m, int k, int n, int crossover, boolean parallel) {
+		Matrix a=Matrix.createRandom(m, k);
+		Matrix b=Matrix.createRandom(k, n);
+		a.sub(0.5);
+		
+		Matrix expected=Multiplications.blockedMultiply(a, b);
+		Matrix result=StrassenMultiply.multiply(a, b, crossover, parallel);
+		assertEquals(m,result.rowCount());
+		assertEquals(n,result.columnCount());
+		
+		int levels=0;
+		int n0=k;
+		for (int s=Math.min(m, Math.min(k, n)); s>crossover; s/=2) {
+			levels++;
+			n0=(n0+1)/2;
+		}
+		
+		AMatrix diff=result.clone();
+		diff.sub(expected);
+		double error=maxAbs(diff);
+		double bound=(n0*n0+6.0*n0)*Math.pow(18, levels)*Math.ulp(1.0)*maxAbs(a)*maxAbs(b);
+		assertTrue("Error "+error+" exceeds bound "+bound, error<=bound);
+	}
+
+	private static double maxAbs(AMatrix m) {
+		AMatrix t=m.clone();
+		t.abs();
+		return t.elementMax();
+	}
+
+	@Test public void testErrorBound() {
+		doErrorBoundTest(64,64,64,8,false);
+		doErrorBoundTest(128,128,128,16,false);
+		doErrorBoundTest(200,200,200,32,true);
+	}
+	
+	@Test public void testOddSizes() {
+		doErrorBoundTest(67,53,71,5,false);
+		doErrorBoundTest(33,65,17,4,true);
+		doErrorBoundTest(1,50,50,1,false);
+	}
+	
+	@Test public void testBelowCrossover() {
+		Matrix a=Matrix.createRandom(10, 10);
+		Matrix b=Matrix.createRandom(10, 10);
+		assertEquals(Multiplications.blockedMultiply(a, b),Multiplications.strassenMultiply(a, b));
+	}
+	
+	@Test public void testTransposedOperands() {
+		Matrix a=Matrix.createRandom(40, 30);
+		Matrix b=Matrix.createRandom(40, 30);
+		AMatrix expected=Multiplications.naiveMultiply(a.getTranspose(), b);
+		assertTrue(expected.epsilonEquals(StrassenMultiply.multiply(a.getTranspose(), b, 4, false)));
+	}
+}
@@ -0,0 +1,111 @@
+package mikera.matrixx.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import mikera.matrixx.Matrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vectorz;
+
+import org.junit.Test;
+
+public class TestTransforms {
+
+	@Test public void testBatchTransform() {
+		int[][] shapes={{1,1,1},{5,7,3},{40,30,9},{17,5000,11},{300,200,1}};
+		for (int[] sh: shapes) {
+			Matrix m=Matrix.createRandom(sh[0], sh[1]);
+			AVector[] sources=new AVector[sh[2]];
+			for (int i=0; i<sources.length; i++) {
+				sources[i]=Vectorz.createUniformRandomVector(sh[1]);
+			}
+			// include a non-dense source vector
+			sources[0]=Vectorz.createUniformRandomVector(sh[1]*2).subVector(sh[1], sh[1]);
+
+			Vector[] results=Transforms.transform(m, sources);
+			AVector[] dests=new AVector[sources.length];
+			for (int i=0; i<sources.length; i++) {
+				dests[i]=Vectorz.newVector(sh[0]);
+			}
+			m.transform(sources, dests);
+			for (int i=0; i<sources.length; i++) {
+				AVector expected=m.transform(sources[i]);
+				assertEquals(expected,results[i]);
+				assertEquals(expected,dests[i]);
+			}
+		}
+	}
+
+	@Test public void testBatchTransformEmpty() {
+		Matrix m=Matrix.createRandom(3, 4);
+		assertEquals(0,Transforms.transform(m, new AVector[0]).length);
+
+		Matrix z=Matrix.create(3, 0);
+		Vector[] r=Transforms.transform(z, new AVector[] {Vector.of()});
+		assertEquals(Vector.of(0,0,0),r[0]);
+	}
+
+	@Test public void testBatchTransformErrors() {
+		Matrix m=Matrix.createRandom(3, 4);
+		try {
+			m.transform(new AVector[] {Vector.createLength(3)}, new AVector[] {Vector.createLength(3)});
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			m.transform(new AVector[] {Vector.createLength(4)}, new AVector[0]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test public void testParallelTransform() {
+		ForkJoinPool pool=new ForkJoinPool(4);
+		Parallel.setForkJoinPool(pool);
+		try {
+			Matrix m=Matrix.createRandom(700, 400);
+			Vector v=Vector.wrap(Vectorz.createUniformRandomVector(400).toDoubleArray());
+			Vector expected=Vector.createLength(700);
+			for (int i=0; i<700; i++) {
+				expected.set(i, m.getRow(i).dotProduct(v));
+			}
+
+			Vector dest=Vector.createLength(700);
+			Transforms.parallelTransform(m, v, dest);
+			assertEquals(expected,dest);
+
+			long oldThreshold=Multiplications.getParallelThreshold();
+			try {
+				Multiplications.setParallelThreshold(0);
+				assertEquals(expected,m.transform(v));
+			} finally {
+				Multiplications.setParallelThreshold(oldThreshold);
+			}
+
+			AVector[] sources=new AVector[9];
+			AVector[] dests=new AVector[9];
+			for (int i=0; i<sources.length; i++) {
+				sources[i]=Vectorz.createUniformRandomVector(400);
+				dests[i]=Vector.createLength(700);
+			}
+			Transforms.transform(m, sources, dests, true);
+			for (int i=0; i<sources.length; i++) {
+				assertEquals(m.transform(sources[i]),dests[i]);
+			}
+
+			// in-place transform of a square matrix
+			Matrix sq=Matrix.createRandom(400, 400);
+			Vector w=v.clone();
+			Vector sqExpected=sq.transform(v);
+			Transforms.parallelTransform(sq, w, w);
+			assertEquals(sqExpected,w);
+		} finally {
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package mikera.matrixx.decompose.impl.bidiagonal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.decompose.Bidiagonal;
+import mikera.matrixx.decompose.IBidiagonalResult;
+import mikera.matrixx.decompose.ISVDResult;
+import mikera.matrixx.decompose.SVD;
+import mikera.matrixx.decompose.impl.svd.SvdImplicitQr;
+import mikera.vectorz.TestingUtils;
+
+import org.junit.Test;
+
+public class TestBlockedBidiagonal {
+
+	private static void checkDecomposition(AMatrix a, IBidiagonalResult r, boolean compact) {
+		assertNotNull(r);
+		int m=a.rowCount();
+		int n=a.columnCount();
+		int min=Math.min(m, n);
+		int w=(n>m)?min+1:min;
+		AMatrix U=r.getU();
+		AMatrix B=r.getB();
+		AMatrix V=r.getV();
+		assertEquals(m,U.rowCount());
+		assertEquals(compact?min:m,U.columnCount());
+		assertEquals(n,V.rowCount());
+		assertEquals(compact?w:n,V.columnCount());
+		assertEquals(compact?min:m,B.rowCount());
+		assertEquals(compact?w:n,B.columnCount());
+		assertTrue(B.isUpperTriangular());
+		for (int i=0; i<B.rowCount(); i++) {
+			for (int j=i+2; j<B.columnCount(); j++) {
+				assertEquals(0.0,B.unsafeGet(i, j),0.0);
+			}
+		}
+		AMatrix usv=Multiplications.multiply(Multiplications.multiply(U, B), V.getTranspose());
+		assertTrue(usv.epsilonEquals(a, 1e-9*Math.max(m, n)));
+		if (!compact) {
+			assertTrue(U.isOrthogonal(1e-8));
+			assertTrue(V.isOrthogonal(1e-8));
+		}
+	}
+
+	@Test public void testMatchesUnblocked() {
+		Random rand=new Random(1234);
+		int[][] shapes={{1,1},{1,4},{4,1},{7,3},{3,7},{100,40},{40,100},{90,90},{150,149}};
+		for (int[] shape: shapes) {
+			Matrix a=TestingUtils.createGaussianMatrix(shape[0],shape[1],rand);
+			for (boolean compact: new boolean[] {false,true}) {
+				IBidiagonalResult expected=BidiagonalRow.decompose(a,compact);
+				for (int bs: new int[] {1,5,32,200}) {
+					IBidiagonalResult r=BlockedBidiagonal.decompose(a,compact,bs,false);
+					checkDecomposition(a,r,compact);
+					assertTrue(r.getB().epsilonEquals(expected.getB(), 1e-9));
+					assertTrue(r.getU().epsilonEquals(expected.getU(), 1e-9));
+					assertTrue(r.getV().epsilonEquals(expected.getV(), 1e-9));
+				}
+			}
+		}
+	}
+
+	@Test public void testRankDeficient() {
+		Random rand=new Random(99);
+		Matrix a=TestingUtils.createGaussianMatrix(80,70,rand);
+		// zero column, zero row and duplicated column
+		for (int i=0; i<80; i++) {
+			a.unsafeSet(i, 0, 0.0);
+			a.unsafeSet(i, 45, a.unsafeGet(i, 44));
+		}
+		for (int j=0; j<70; j++) {
+			a.unsafeSet(20, j, 0.0);
+		}
+		IBidiagonalResult r=BlockedBidiagonal.decompose(a,false,8,false);
+		checkDecomposition(a,r,false);
+		assertTrue(r.getB().epsilonEquals(BidiagonalRow.decompose(a).getB(), 1e-9));
+
+		Matrix z=Matrix.create(70, 65);
+		IBidiagonalResult rz=BlockedBidiagonal.decompose(z);
+		assertTrue(rz.getB().isZero());
+		assertTrue(rz.getU().isIdentity());
+		assertTrue(rz.getV().isIdentity());
+	}
+
+	@Test public void testParallel() {
+		Matrix a=TestingUtils.createGaussianMatrix(300,200,new Random(42));
+		IBidiagonalResult serial=BlockedBidiagonal.decompose(a,false,BlockedBidiagonal.BLOCK_SIZE,false);
+		long threshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			IBidiagonalResult parallel=BlockedBidiagonal.decompose(a,false,BlockedBidiagonal.BLOCK_SIZE,true);
+			assertTrue(serial.getB().epsilonEquals(parallel.getB(), 1e-12));
+			assertTrue(serial.getU().epsilonEquals(parallel.getU(), 1e-12));
+			assertTrue(serial.getV().epsilonEquals(parallel.getV(), 1e-12));
+		} finally {
+			Multiplications.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test public void testFacade() {
+		Random rand=new Random(7);
+		Matrix a=TestingUtils.createGaussianMatrix(120,100,rand);
+		checkDecomposition(a,Bidiagonal.decompose(a),false);
+		checkDecomposition(a,Bidiagonal.decomposeCompact(a),true);
+
+		// the SVD only uses the blocked reduction if requested, for large enough matrices
+		int n=BlockedBidiagonal.BLOCK_THRESHOLD;
+		Matrix b=TestingUtils.createGaussianMatrix(n+10,n,rand);
+		ISVDResult svd=new SvdImplicitQr(true,true)._decompose(b);
+		assertNotNull(svd);
+		AMatrix usv=Multiplications.multiply(Multiplications.multiply(svd.getU(), svd.getS()), svd.getV().getTranspose());
+		assertTrue(usv.epsilonEquals(b, 1e-8));
+		ISVDResult unblocked=SVD.decompose(b,true);
+		assertTrue(svd.getSingularValues().epsilonEquals(unblocked.getSingularValues(), 1e-9));
+	}
+
+	@Test public void testBadArguments() {
+		try {
+			BlockedBidiagonal.decompose(Matrix.createRandom(3, 3),false,0,true);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
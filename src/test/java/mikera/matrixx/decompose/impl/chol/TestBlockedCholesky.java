@@ -0,0 +1,102 @@
+package mikera.matrixx.decompose.impl.chol;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Definite;
+import mikera.matrixx.algo.Gram;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.decompose.ICholeskyResult;
+import mikera.vectorz.TestingUtils;
+
+import org.junit.Test;
+
+public class TestBlockedCholesky {
+
+	/**
+	 * Creates a random symmetric positive definite matrix
+	 */
+	private static Matrix randomSPD(int n, Random r) {
+		Matrix x=TestingUtils.createGaussianMatrix(n, n, r);
+		Matrix a=Gram.transposeProduct(x);
+		for (int i=0; i<n; i++) {
+			a.addAt(i, i, 1.0);
+		}
+		return a;
+	}
+
+	private static void checkDecomposition(AMatrix a, ICholeskyResult r) {
+		assertNotNull(r);
+		AMatrix l=r.getL();
+		assertTrue(l.isLowerTriangular());
+		assertTrue(r.getU().isUpperTriangular());
+		assertTrue(l.innerProduct(r.getU()).epsilonEquals(a, 1e-9*a.rowCount()));
+	}
+
+	@Test public void testBlockSizes() {
+		Random rand=new Random(1234);
+		for (int n: new int[] {1,5,64,150,201}) {
+			Matrix a=randomSPD(n,rand);
+			ICholeskyResult expected=Cholesky.decompose(a);
+			for (int bs: new int[] {1,7,32,64,300}) {
+				ICholeskyResult r=BlockedCholesky.decompose(a,bs,false);
+				checkDecomposition(a,r);
+				assertTrue(r.getL().epsilonEquals(expected.getL(), 1e-8));
+			}
+		}
+	}
+
+	@Test public void testFacade() {
+		// large matrices use the blocked algorithm
+		Matrix a=randomSPD(300,new Random(5678));
+		ICholeskyResult r=mikera.matrixx.decompose.Cholesky.decompose(a);
+		checkDecomposition(a,r);
+		assertTrue(Definite.isPositiveDefinite(a));
+	}
+
+	@Test public void testParallel() {
+		Matrix a=randomSPD(260,new Random(42));
+		ICholeskyResult serial=BlockedCholesky.decompose(a,BlockedCholesky.BLOCK_SIZE,false);
+		long threshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			ICholeskyResult parallel=BlockedCholesky.decompose(a,BlockedCholesky.BLOCK_SIZE,true);
+			assertEquals(serial.getL(),parallel.getL());
+		} finally {
+			Multiplications.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test public void testNotPositiveDefinite() {
+		Random rand=new Random(99);
+		for (int k: new int[] {0,70,199}) {
+			// a negative eigenvalue shows up as a non-positive pivot at or before index k
+			Matrix a=randomSPD(200,rand);
+			a.set(k, k, -1.0);
+			assertNull(BlockedCholesky.decompose(a));
+			assertNull(mikera.matrixx.decompose.Cholesky.decompose(a));
+			assertFalse(Definite.isPositiveDefinite(a));
+		}
+		// singular matrix
+		Matrix z=Matrix.create(150, 150);
+		assertNull(BlockedCholesky.decompose(z));
+	}
+
+	@Test public void testBadArguments() {
+		try {
+			BlockedCholesky.decompose(Matrix.create(3, 4));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			BlockedCholesky.decompose(Matrix.createIdentity(3),0,false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
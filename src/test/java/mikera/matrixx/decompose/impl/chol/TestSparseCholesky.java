@@ -0,0 +1,229 @@
+package mikera.matrixx.decompose.impl.chol;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.decompose.Cholesky;
+import mikera.matrixx.decompose.ICholeskyResult;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.PermutationMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.util.VectorzException;
+
+import org.junit.Test;
+
+public class TestSparseCholesky {
+
+	/**
+	 * Creates the 2D Poisson matrix on a g x g grid
+	 */
+	private static SparseRowMatrix poisson2D(int g) {
+		int n=g*g;
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<g; i++) {
+			for (int j=0; j<g; j++) {
+				int r=i*g+j;
+				m.set(r, r, 4.0);
+				if (i>0) m.set(r, r-g, -1.0);
+				if (i<g-1) m.set(r, r+g, -1.0);
+				if (j>0) m.set(r, r-1, -1.0);
+				if (j<g-1) m.set(r, r+1, -1.0);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Creates a random sparse symmetric positive definite matrix by diagonal dominance
+	 */
+	private static SparseRowMatrix randomSPD(int n, int offDiagonal, Random r) {
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int k=0; k<offDiagonal; k++) {
+			int i=r.nextInt(n);
+			int j=r.nextInt(n);
+			if (i==j) continue;
+			double v=r.nextDouble()-0.5;
+			m.set(i, j, v);
+			m.set(j, i, v);
+		}
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 0.5*n+1.0);
+		}
+		return m;
+	}
+
+	private static void checkDecomposition(AMatrix a, SparseCholeskyResult r) {
+		assertNotNull(r);
+		CSRMatrix l=r.getFactorL();
+		CSRMatrix u=r.getFactorU();
+		l.validate();
+		u.validate();
+		assertTrue(l.isLowerTriangular());
+		assertTrue(u.isUpperTriangular());
+		// stored entries may include numerical zeros from cancellation
+		assertTrue(l.nonZeroCount()<=r.factorNonZeroCount());
+
+		PermutationMatrix p=r.getP();
+		AMatrix pap=p.innerProduct(a).innerProduct(p.getTranspose());
+		assertTrue(l.innerProduct(u).epsilonEquals(pap, 1e-10));
+
+		Vector b=Vector.createLength(a.rowCount());
+		Random rand=new Random(1);
+		for (int i=0; i<b.length(); i++) {
+			b.unsafeSet(i, rand.nextGaussian());
+		}
+		AVector x=r.solve(b);
+		assertTrue(a.transform(x).epsilonEquals(b, 1e-10));
+
+		// getL and getU are the factors of A itself, whatever the ordering
+		CSRMatrix nl=r.getL();
+		assertTrue(nl.isLowerTriangular());
+		assertTrue(r.getU().isUpperTriangular());
+		assertTrue(nl.innerProduct(r.getU()).epsilonEquals(a, 1e-10));
+	}
+
+	@Test public void testPoisson() {
+		SparseRowMatrix a=poisson2D(12);
+		SparseCholeskyResult r=mikera.matrixx.decompose.SparseCholesky.decompose(a);
+		checkDecomposition(a,r);
+		assertFalse(r.getP().isIdentity());
+		assertTrue(r.getL().epsilonEquals(Cholesky.decompose(a.toMatrix()).getL(), 1e-12));
+
+		// without reordering the result matches the dense Cholesky factor
+		SparseCholeskyResult natural=SparseCholesky.analyse(a,false).factor(a);
+		checkDecomposition(a,natural);
+		assertTrue(natural.getP().isIdentity());
+		ICholeskyResult dense=Cholesky.decompose(a.toMatrix());
+		assertTrue(natural.getL().epsilonEquals(dense.getL(), 1e-12));
+		assertTrue(natural.getFactorL().epsilonEquals(natural.getL(), 0.0));
+
+		// the minimum degree ordering must reduce fill-in
+		assertTrue(r.factorNonZeroCount()<natural.factorNonZeroCount());
+	}
+
+	@Test public void testRandom() {
+		Random rand=new Random(4567);
+		for (int t=0; t<10; t++) {
+			int n=1+rand.nextInt(60);
+			SparseRowMatrix a=randomSPD(n,rand.nextInt(3*n+1),rand);
+			checkDecomposition(a,mikera.matrixx.decompose.SparseCholesky.decompose(a));
+			checkDecomposition(a,SparseCholesky.analyse(a,false).factor(CSRMatrix.create(a)));
+		}
+	}
+
+	@Test public void testEliminationTree() {
+		// for a tridiagonal matrix the elimination tree is a path
+		int n=10;
+		Matrix a=Matrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			a.set(i, i, 2.0);
+			if (i>0) {
+				a.set(i, i-1, -1.0);
+				a.set(i-1, i, -1.0);
+			}
+		}
+		SparseCholesky s=SparseCholesky.analyse(a,false);
+		int[] parent=s.getEliminationTree();
+		for (int i=0; i<n; i++) {
+			assertEquals((i<n-1)?i+1:-1,parent[i]);
+		}
+		assertEquals(2*n-1,s.factorNonZeroCount());
+		checkDecomposition(a,s.factor(a));
+	}
+
+	@Test public void testRefactor() {
+		SparseRowMatrix a=poisson2D(8);
+		SparseCholesky s=SparseCholesky.analyse(a);
+		checkDecomposition(a,s.factor(a));
+
+		// same pattern, different values
+		SparseRowMatrix a2=a.exactClone();
+		for (int i=0; i<a2.rowCount(); i++) {
+			a2.set(i, i, 5.0+i*0.1);
+		}
+		checkDecomposition(a2,s.factor(a2));
+
+		// a subset of the pattern is also allowed
+		SparseRowMatrix a3=a.exactClone();
+		a3.set(0, 1, 0.0);
+		a3.set(1, 0, 0.0);
+		checkDecomposition(a3,s.factor(a3));
+		assertEquals(64,s.size());
+	}
+
+	@Test public void testWithoutSource() {
+		SparseRowMatrix a=poisson2D(6);
+		SparseCholeskyResult r=mikera.matrixx.decompose.SparseCholesky.decompose(a,false);
+		assertFalse(r.getP().isIdentity());
+		Vector b=Vector.createLength(36);
+		b.fill(1.0);
+		assertTrue(a.transform(r.solve(b)).epsilonEquals(b, 1e-10));
+		try {
+			r.getL();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+
+		// without reordering getL needs no source
+		SparseCholeskyResult natural=SparseCholesky.analyse(a,false).factor(a,false);
+		assertTrue(natural.getL().epsilonEquals(natural.getFactorL(), 0.0));
+	}
+
+	@Test public void testNaturalFactorFailure() {
+		// the result retains a CSR source without copying, so a later change can break the natural factor
+		CSRMatrix a=CSRMatrix.create(poisson2D(4));
+		SparseCholeskyResult r=mikera.matrixx.decompose.SparseCholesky.decompose(a);
+		assertFalse(r.getP().isIdentity());
+		a.getValues()[0]=-1.0;
+		try {
+			r.getL();
+			fail();
+		} catch (VectorzException e) {
+			// OK
+		}
+	}
+
+	@Test public void testNotPositiveDefinite() {
+		SparseRowMatrix a=poisson2D(4);
+		a.set(5, 5, -1.0);
+		assertNull(mikera.matrixx.decompose.SparseCholesky.decompose(a));
+	}
+
+	@Test public void testBadArguments() {
+		SparseCholesky s=SparseCholesky.analyse(poisson2D(3));
+		try {
+			s.factor(poisson2D(4));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			// a dense pattern exceeds the analysed fill
+			s.factor(denseSPD(9));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			SparseCholesky.analyse(Matrix.create(3, 4));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+	}
+
+	private static Matrix denseSPD(int n) {
+		Matrix m=Matrix.create(n, n);
+		m.fill(0.01);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 1.0);
+		}
+		return m;
+	}
+}
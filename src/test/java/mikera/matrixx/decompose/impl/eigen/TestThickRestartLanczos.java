@@ -0,0 +1,196 @@
+package mikera.matrixx.decompose.impl.eigen;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.decompose.Eigen;
+import mikera.matrixx.decompose.IEigenResult;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector2;
+
+import org.junit.Test;
+
+public class TestThickRestartLanczos {
+
+	/**
+	 * Creates the 1D Laplacian, with eigenvalues 2-2cos(pi.j/(n+1))
+	 */
+	private static SparseRowMatrix laplacian1D(int n, double shift) {
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 2.0+shift);
+			if (i>0) m.set(i, i-1, -1.0);
+			if (i<n-1) m.set(i, i+1, -1.0);
+		}
+		return m;
+	}
+
+	private static double laplacianEigenvalue(int n, int j) {
+		return 2.0-2.0*Math.cos(Math.PI*j/(n+1));
+	}
+
+	private static void checkPairs(AMatrix a, IEigenResult r, int k) {
+		assertNotNull(r);
+		Vector2[] values=r.getEigenvalues();
+		AVector[] vectors=r.getEigenVectors();
+		assertEquals(k,values.length);
+		assertEquals(k,vectors.length);
+		for (int i=0; i<k; i++) {
+			AVector x=vectors[i];
+			assertEquals(1.0,x.magnitude(),1e-8);
+			AVector ax=a.transform(x);
+			ax.addMultiple(x, -values[i].x);
+			assertEquals(0.0,ax.magnitude(),1e-7);
+			for (int j=0; j<i; j++) {
+				assertEquals(0.0,x.dotProduct(vectors[j]),1e-8);
+			}
+		}
+	}
+
+	@Test public void testLaplacianSmallest() {
+		int n=300;
+		int k=5;
+		SparseRowMatrix a=laplacian1D(n,0.0);
+		IEigenResult r=Eigen.decomposeSymmetric(a,k,false);
+		checkPairs(a,r,k);
+		for (int i=0; i<k; i++) {
+			assertEquals(laplacianEigenvalue(n,i+1),r.getEigenvalues()[i].x,1e-9);
+		}
+	}
+
+	@Test public void testLaplacianLargest() {
+		int n=300;
+		int k=4;
+		SparseRowMatrix a=laplacian1D(n,0.0);
+		IEigenResult r=Eigen.decomposeSymmetric(a,k,true);
+		checkPairs(a,r,k);
+		for (int i=0; i<k; i++) {
+			assertEquals(laplacianEigenvalue(n,n-i),r.getEigenvalues()[i].x,1e-9);
+		}
+	}
+
+	@Test public void testCompareDense() {
+		Random rand=new Random(789);
+		int n=120;
+		Matrix a=Matrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			for (int j=0; j<=i; j++) {
+				double v=rand.nextGaussian();
+				a.set(i, j, v);
+				a.set(j, i, v);
+			}
+		}
+		double[] all=new double[n];
+		Vector2[] dense=Eigen.decomposeSymmetric(a).getEigenvalues();
+		for (int i=0; i<n; i++) {
+			all[i]=dense[i].x;
+		}
+		Arrays.sort(all);
+
+		int k=3;
+		IEigenResult small=Eigen.decomposeSymmetric(a,k,false);
+		checkPairs(a,small,k);
+		IEigenResult large=Eigen.decomposeSymmetric(a,k,true);
+		checkPairs(a,large,k);
+		for (int i=0; i<k; i++) {
+			assertEquals(all[i],small.getEigenvalues()[i].x,1e-8);
+			assertEquals(all[n-1-i],large.getEigenvalues()[i].x,1e-8);
+		}
+	}
+
+	@Test public void testWarmStart() {
+		int n=400;
+		int k=3;
+		SparseRowMatrix a=laplacian1D(n,0.0);
+		ThickRestartLanczos cold=new ThickRestartLanczos(k,false);
+		IEigenResult r=cold.decompose(a);
+		checkPairs(a,r,k);
+
+		// a slightly perturbed problem, started from the previous eigenvectors
+		SparseRowMatrix a2=laplacian1D(n,1e-4);
+		ThickRestartLanczos warm=new ThickRestartLanczos(k,false);
+		warm.setInitialVectors(r.getEigenVectors());
+		IEigenResult r2=warm.decompose(a2);
+		checkPairs(a2,r2,k);
+		assertEquals(laplacianEigenvalue(n,1)+1e-4,r2.getEigenvalues()[0].x,1e-9);
+		assertTrue(warm.getMatrixVectorProducts()<cold.getMatrixVectorProducts());
+	}
+
+	@Test public void testSmallMatrix() {
+		// the subspace covers the whole matrix, so the dense algorithm is used
+		SparseRowMatrix a=laplacian1D(10,0.0);
+		IEigenResult r=Eigen.decomposeSymmetric(a,2,true);
+		checkPairs(a,r,2);
+		assertEquals(laplacianEigenvalue(10,10),r.getEigenvalues()[0].x,1e-10);
+	}
+
+	@Test public void testMultipleEigenvalues() {
+		// only three distinct eigenvalues, so the Krylov space breaks down after three steps
+		// and further copies of an eigenvalue come from the random directions added
+		int n=100;
+		SparseRowMatrix a=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			a.set(i, i, 1.0+(i%3));
+		}
+		IEigenResult r=Eigen.decomposeSymmetric(a,4,false);
+		checkPairs(a,r,4);
+		for (int i=0; i<4; i++) {
+			assertEquals(1.0,r.getEigenvalues()[i].x,1e-10);
+		}
+	}
+
+	@Test public void testDisconnectedGraph() {
+		// Laplacian of three disjoint paths, so every eigenvalue has multiplicity three
+		int parts=3;
+		int len=300;
+		int n=parts*len;
+		SparseRowMatrix a=SparseRowMatrix.create(n, n);
+		for (int p=0; p<parts; p++) {
+			for (int i=p*len; i<(p+1)*len; i++) {
+				boolean first=(i==p*len);
+				boolean last=(i==(p+1)*len-1);
+				a.set(i, i, (first||last)?1.0:2.0);
+				if (!first) a.set(i, i-1, -1.0);
+				if (!last) a.set(i, i+1, -1.0);
+			}
+		}
+		IEigenResult r=Eigen.decomposeSymmetric(a,4,false);
+		checkPairs(a,r,4);
+		for (int i=0; i<3; i++) {
+			assertEquals(0.0,r.getEigenvalues()[i].x,1e-9);
+		}
+		assertEquals(2.0-2.0*Math.cos(Math.PI/len),r.getEigenvalues()[3].x,1e-9);
+	}
+
+	@Test public void testBadArguments() {
+		try {
+			new ThickRestartLanczos(0,true);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ThickRestartLanczos(3,true).decompose(laplacian1D(2,0.0));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ThickRestartLanczos(3,true).setSubspaceSize(4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new ThickRestartLanczos(1,true).decompose(Matrix.create(3, 4));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package mikera.matrixx.decompose.impl.lu;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.decompose.ILUPResult;
+import mikera.matrixx.decompose.LUP;
+import mikera.matrixx.solve.impl.lu.LUSolver;
+import mikera.vectorz.TestingUtils;
+
+import org.junit.Test;
+
+public class TestBlockedLU {
+
+	private static void checkDecomposition(AMatrix a, ILUPResult r) {
+		AMatrix l=r.getL();
+		AMatrix u=r.getU();
+		assertTrue(l.isLowerTriangular());
+		assertTrue(u.isUpperTriangular());
+		for (int i=0; i<l.columnCount(); i++) {
+			assertEquals(1.0,l.get(i, i),0.0);
+		}
+		AMatrix plu=r.getP().innerProduct(l.innerProduct(u));
+		assertTrue(plu.epsilonEquals(a, 1e-10*Math.max(a.rowCount(),a.columnCount())));
+	}
+
+	/**
+	 * Factorises a copy of a, returning the packed result
+	 */
+	private static Matrix factor(Matrix a, int blockSize, boolean parallel, int[] pivot, int[] indx) {
+		Matrix lu=a.clone();
+		BlockedLU.factor(lu,pivot,indx,blockSize,parallel);
+		return lu;
+	}
+
+	@Test public void testBlockSizes() {
+		Random rand=new Random(1234);
+		int[][] shapes={{150,150},{173,97},{97,173},{64,64},{1,5},{5,1}};
+		for (int[] shape: shapes) {
+			int m=shape[0];
+			int n=shape[1];
+			Matrix a=TestingUtils.createGaussianMatrix(m,n,rand);
+			int[] pivot0=new int[m];
+			int[] indx0=new int[Math.max(m, n)];
+			// a single panel is the unblocked algorithm
+			Matrix unblocked=factor(a,Math.max(m, n),false,pivot0,indx0);
+			for (int bs: new int[] {1,7,32,64}) {
+				int[] pivot=new int[m];
+				int[] indx=new int[Math.max(m, n)];
+				Matrix blocked=factor(a,bs,false,pivot,indx);
+				assertArrayEquals(pivot0,pivot);
+				assertArrayEquals(indx0,indx);
+				assertTrue(blocked.epsilonEquals(unblocked, 1e-10));
+			}
+		}
+	}
+
+	@Test public void testAltLU() {
+		// above the threshold AltLU uses the blocked algorithm
+		Random rand=new Random(5678);
+		for (int[] shape: new int[][] {{300,300},{300,200},{200,300}}) {
+			Matrix a=TestingUtils.createGaussianMatrix(shape[0],shape[1],rand);
+			ILUPResult r=LUP.decompose(a);
+			checkDecomposition(a,r);
+		}
+		Matrix a=TestingUtils.createGaussianMatrix(200,200,rand);
+		checkSolve(a);
+	}
+
+	@Test public void testParallel() {
+		Random rand=new Random(42);
+		Matrix a=TestingUtils.createGaussianMatrix(260,260,rand);
+		int[] pivot=new int[260];
+		int[] indx=new int[260];
+		Matrix serial=factor(a,BlockedLU.BLOCK_SIZE,false,pivot,indx);
+		long threshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			int[] pivot2=new int[260];
+			int[] indx2=new int[260];
+			Matrix parallel=factor(a,BlockedLU.BLOCK_SIZE,true,pivot2,indx2);
+			assertEquals(serial,parallel);
+			assertArrayEquals(pivot,pivot2);
+		} finally {
+			Multiplications.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test public void testSingular() {
+		// rank deficient matrix, with some zero pivots
+		Random rand=new Random(99);
+		int n=200;
+		Matrix a=TestingUtils.createGaussianMatrix(n,100,rand).innerProduct(TestingUtils.createGaussianMatrix(100,n,rand)).toMatrix();
+		for (int i=0; i<n; i++) {
+			a.set(i, 3, 0.0);
+		}
+		ILUPResult r=LUP.decompose(a);
+		checkDecomposition(a,r);
+		assertEquals(0.0,r.computeDeterminant(),0.0);
+		assertEquals(0.0,a.determinant(),0.0);
+	}
+
+	@Test public void testDeterminant() {
+		Random rand=new Random(7);
+		Matrix a=TestingUtils.createGaussianMatrix(150,150,rand);
+		double det=a.determinant();
+		double det2=SimpleLUP.decompose(a).computeDeterminant();
+		assertEquals(det2,det,1e-10*Math.abs(det2));
+	}
+
+	@Test public void testBadArguments() {
+		try {
+			BlockedLU.factor(Matrix.create(3, 3),new int[3],new int[3],0,false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	/**
+	 * Checks that linear solves and inversion through the LU solver are correct
+	 */
+	private static void checkSolve(Matrix a) {
+		int n=a.rowCount();
+		Matrix b=TestingUtils.createGaussianMatrix(n,3,new Random(3));
+		LUSolver solver=new LUSolver();
+		solver.setA(a);
+		AMatrix x=solver.solve(b);
+		assertTrue(a.innerProduct(x).epsilonEquals(b, 1e-9));
+		AMatrix inv=solver.invert();
+		assertTrue(a.innerProduct(inv).epsilonEquals(Matrix.createIdentity(n), 1e-9));
+	}
+}
@@ -0,0 +1,142 @@
+package mikera.matrixx.decompose.impl.qr;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.decompose.IQRResult;
+import mikera.matrixx.decompose.QR;
+import mikera.vectorz.AVector;
+import mikera.vectorz.TestingUtils;
+import mikera.vectorz.Vector;
+
+import org.junit.Test;
+
+public class TestBlockedHouseholderQR extends GenericQrCheck {
+
+	@Override
+	protected QRDecomposition createQRDecomposition(boolean compact) {
+		// small block size so that the generic tests cover several blocks
+		return new BlockedHouseholderQR(compact,2);
+	}
+
+	private static void checkDecomposition(AMatrix a, BlockedQRResult r, boolean compact) {
+		int m=a.rowCount();
+		int n=a.columnCount();
+		AMatrix q=r.getQ();
+		AMatrix rr=r.getR();
+		assertEquals(m,q.rowCount());
+		assertEquals(m,q.columnCount());
+		assertEquals(compact?Math.min(m, n):m,rr.rowCount());
+		assertEquals(n,rr.columnCount());
+		assertTrue(q.isOrthogonal(1e-8));
+		assertTrue(rr.isUpperTriangular());
+		AMatrix qr=Multiplications.multiply(q.subMatrix(0, m, 0, rr.rowCount()), rr);
+		assertTrue(qr.epsilonEquals(a, 1e-9*m));
+	}
+
+	@Test public void testMatchesUnblocked() {
+		Random rand=new Random(1234);
+		int[][] shapes={{1,1},{7,3},{3,7},{100,40},{40,100},{150,150},{300,70}};
+		for (int[] shape: shapes) {
+			Matrix a=TestingUtils.createGaussianMatrix(shape[0],shape[1],rand);
+			for (boolean compact: new boolean[] {false,true}) {
+				IQRResult expected=new HouseholderQR(compact).decompose(a);
+				for (int bs: new int[] {1,5,32,200}) {
+					BlockedQRResult r=new BlockedHouseholderQR(compact,bs).decompose(a);
+					checkDecomposition(a,r,compact);
+					assertTrue(r.getR().epsilonEquals(expected.getR(), 1e-9));
+					assertTrue(r.getQ().epsilonEquals(expected.getQ(), 1e-9));
+				}
+			}
+		}
+	}
+
+	@Test public void testApplyQ() {
+		Random rand=new Random(5678);
+		Matrix a=TestingUtils.createGaussianMatrix(200,70,rand);
+		BlockedQRResult r=new BlockedHouseholderQR(true,16).decompose(a);
+
+		// Q^T.A gives R without forming Q
+		Matrix qta=r.applyQTranspose(a);
+		assertTrue(qta.subMatrix(0, 70, 0, 70).epsilonEquals(r.getR(), 1e-9));
+		assertTrue(qta.subMatrix(70, 130, 0, 70).epsilonEquals(Matrix.create(130, 70), 1e-9));
+
+		Matrix b=TestingUtils.createGaussianMatrix(200,3,rand);
+		Matrix qtb=r.applyQTranspose(b);
+		assertTrue(r.applyQ(qtb).epsilonEquals(b, 1e-9));
+
+		AVector v=Vector.createLength(200);
+		v.setElements(b.getColumn(0).toDoubleArray());
+		assertTrue(r.applyQTranspose(v).epsilonEquals(qtb.getColumn(0), 1e-12));
+		assertTrue(r.applyQ(v).epsilonEquals(r.getQ().innerProduct(v), 1e-9));
+		assertTrue(r.getQ().getTranspose().innerProduct(b).epsilonEquals(qtb, 1e-9));
+	}
+
+	@Test public void testRankDeficient() {
+		Random rand=new Random(99);
+		Matrix a=TestingUtils.createGaussianMatrix(80,60,rand);
+		// zero column and duplicated column
+		for (int i=0; i<80; i++) {
+			a.unsafeSet(i, 10, 0.0);
+			a.unsafeSet(i, 45, a.unsafeGet(i, 44));
+		}
+		BlockedQRResult r=new BlockedHouseholderQR(false,8).decompose(a);
+		checkDecomposition(a,r,false);
+		assertEquals(0.0,r.getR().unsafeGet(10, 10),0.0);
+		assertEquals(0.0,r.getR().unsafeGet(45, 45),1e-9);
+
+		BlockedQRResult z=new BlockedHouseholderQR(false).decompose(Matrix.create(70, 70));
+		assertTrue(z.getR().isZero());
+		assertTrue(z.getQ().isIdentity());
+	}
+
+	@Test public void testParallel() {
+		Matrix a=TestingUtils.createGaussianMatrix(400,150,new Random(42));
+		BlockedQRResult serial=new BlockedHouseholderQR(false).decompose(a);
+		Matrix qtSerial=serial.applyQTranspose(Matrix.createIdentity(400));
+		long threshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			BlockedQRResult parallel=new BlockedHouseholderQR(false).decompose(a);
+			assertTrue(serial.getR().epsilonEquals(parallel.getR(), 1e-12));
+			assertTrue(serial.getQ().epsilonEquals(parallel.getQ(), 1e-12));
+			assertTrue(qtSerial.epsilonEquals(parallel.applyQTranspose(Matrix.createIdentity(400)), 1e-12));
+		} finally {
+			Multiplications.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test public void testFacade() {
+		Matrix a=TestingUtils.createGaussianMatrix(150,100,new Random(7));
+		IQRResult r=QR.decomposeCompact(a);
+		assertTrue(r instanceof BlockedQRResult);
+		checkDecomposition(a,(BlockedQRResult)r,true);
+		assertFalse(QR.decompose(TestingUtils.createGaussianMatrix(10,5,new Random(8))) instanceof BlockedQRResult);
+	}
+
+	@Test public void testBadArguments() {
+		try {
+			new BlockedHouseholderQR(false,0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		BlockedQRResult r=new BlockedHouseholderQR(false).decompose(Matrix.createRandom(5, 4));
+		try {
+			r.applyQTranspose(Matrix.create(4, 4));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			r.applyQ(Vector.createLength(6));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package mikera.matrixx.decompose.impl.svd;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.decompose.ISVDResult;
+import mikera.matrixx.decompose.SVD;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.TestingUtils;
+
+import org.junit.Test;
+
+public class TestRandomizedSVD {
+
+	/**
+	 * Creates a matrix with rapidly decaying singular values 2^-i
+	 */
+	private static Matrix decaying(int m, int n, Random r) {
+		int s=Math.min(m, n);
+		Matrix u=TestingUtils.createGaussianMatrix(m,s,r);
+		Matrix v=TestingUtils.createGaussianMatrix(s,n,r);
+		RandomizedSVD.orthonormalise(u,r);
+		Matrix vt=v.getTranspose().toMatrix();
+		RandomizedSVD.orthonormalise(vt,r);
+		for (int i=0; i<m; i++) {
+			for (int j=0; j<s; j++) {
+				u.unsafeSet(i, j, u.unsafeGet(i, j)*Math.pow(2.0, -j));
+			}
+		}
+		return u.innerProduct(vt.getTranspose()).toMatrix();
+	}
+
+	private static double[] sortedSingularValues(AMatrix a) {
+		double[] sv=SVD.decompose(a).getSingularValues().toDoubleArray();
+		Arrays.sort(sv);
+		return sv;
+	}
+
+	private static void checkOrthonormalColumns(AMatrix q) {
+		AMatrix qtq=q.getTranspose().innerProduct(q);
+		assertTrue(qtq.epsilonEquals(Matrix.createIdentity(q.columnCount()), 1e-10));
+	}
+
+	private static void checkResult(AMatrix a, ISVDResult r, int k) {
+		assertNotNull(r);
+		AMatrix u=r.getU();
+		AMatrix s=r.getS();
+		AMatrix v=r.getV();
+		AVector sv=r.getSingularValues();
+		assertEquals(a.rowCount(),u.rowCount());
+		assertEquals(k,u.columnCount());
+		assertEquals(a.columnCount(),v.rowCount());
+		assertEquals(k,v.columnCount());
+		assertEquals(k,sv.length());
+		checkOrthonormalColumns(u);
+		checkOrthonormalColumns(v);
+		for (int i=0; i<k; i++) {
+			assertEquals(sv.get(i),s.get(i, i),0.0);
+			if (i>0) assertTrue(sv.get(i)<=sv.get(i-1));
+		}
+	}
+
+	@Test public void testLowRank() {
+		Random rand=new Random(123);
+		int m=200;
+		int n=80;
+		// exact rank 5, so the truncated decomposition reproduces A
+		AMatrix a=TestingUtils.createGaussianMatrix(m,5,rand).innerProduct(TestingUtils.createGaussianMatrix(5,n,rand));
+		ISVDResult r=SVD.decomposeTruncated(a,5);
+		checkResult(a,r,5);
+		AMatrix usv=r.getU().innerProduct(r.getS()).innerProduct(r.getV().getTranspose());
+		assertTrue(usv.epsilonEquals(a, 1e-8));
+
+		double[] exact=sortedSingularValues(a);
+		for (int i=0; i<5; i++) {
+			assertEquals(exact[n-1-i],r.getSingularValues().get(i),1e-8);
+		}
+	}
+
+	@Test public void testDecayingSpectrum() {
+		Random rand=new Random(456);
+		for (int t=0; t<2; t++) {
+			// both tall and wide matrices
+			Matrix a=(t==0)?decaying(150,60,rand):decaying(60,150,rand);
+			int k=8;
+			ISVDResult r=new RandomizedSVD(k).decompose(a);
+			checkResult(a,r,k);
+			for (int i=0; i<k; i++) {
+				assertEquals(Math.pow(2.0, -i),r.getSingularValues().get(i),1e-10);
+			}
+		}
+	}
+
+	@Test public void testSparse() {
+		Random rand=new Random(789);
+		int m=300;
+		int n=120;
+		// columns are scaled down geometrically, so that the singular values decay
+		SparseRowMatrix a=SparseRowMatrix.create(m, n);
+		for (int i=0; i<m; i++) {
+			int j=i%n;
+			a.set(i, j, (1.0+i%7)*Math.pow(0.8, j));
+			j=rand.nextInt(n);
+			a.set(i, j, rand.nextGaussian()*Math.pow(0.8, j));
+		}
+		RandomizedSVD svd=new RandomizedSVD(4);
+		svd.setPowerIterations(6);
+		ISVDResult r=svd.decompose(a);
+		checkResult(a,r,4);
+		ISVDResult rc=svd.decompose(CSRMatrix.create(a));
+		assertTrue(r.getSingularValues().epsilonEquals(rc.getSingularValues(), 1e-12));
+
+		double[] exact=sortedSingularValues(a.toMatrix());
+		for (int i=0; i<4; i++) {
+			assertEquals(exact[n-1-i],r.getSingularValues().get(i),1e-6*exact[n-1]);
+		}
+	}
+
+	@Test public void testParallel() {
+		Random rand=new Random(321);
+		Matrix a=TestingUtils.createGaussianMatrix(400,100,rand);
+		SparseRowMatrix sa=SparseRowMatrix.create(a);
+		ISVDResult serial=SVD.decomposeTruncated(a,6);
+		ISVDResult serialSparse=SVD.decomposeTruncated(sa,6);
+		long threshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			ISVDResult parallel=SVD.decomposeTruncated(a,6);
+			ISVDResult parallelSparse=SVD.decomposeTruncated(sa,6);
+			assertEquals(serial.getSingularValues(),parallel.getSingularValues());
+			assertEquals(serial.getU(),parallel.getU());
+			assertEquals(serialSparse.getSingularValues(),parallelSparse.getSingularValues());
+		} finally {
+			Multiplications.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test public void testFullRank() {
+		// k equal to the smaller dimension gives the exact decomposition
+		Random rand=new Random(99);
+		Matrix a=TestingUtils.createGaussianMatrix(12,7,rand);
+		ISVDResult r=SVD.decomposeTruncated(a,7);
+		checkResult(a,r,7);
+		AMatrix usv=r.getU().innerProduct(r.getS()).innerProduct(r.getV().getTranspose());
+		assertTrue(usv.epsilonEquals(a, 1e-10));
+	}
+
+	@Test public void testBadArguments() {
+		try {
+			new RandomizedSVD(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			SVD.decomposeTruncated(Matrix.create(5, 3),4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new RandomizedSVD(2).setOversampling(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
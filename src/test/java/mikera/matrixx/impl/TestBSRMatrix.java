@@ -0,0 +1,143 @@
+package mikera.matrixx.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.Matrixx;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vectorz;
+
+public class TestBSRMatrix {
+
+	/**
+	 * Creates a matrix with random dense blocks at random block positions
+	 */
+	private static Matrix blockRandom(int rowBlocks, int colBlocks, int br, int bc, double density) {
+		Matrix m=Matrix.create(rowBlocks*br, colBlocks*bc);
+		for (int bi=0; bi<rowBlocks; bi++) {
+			for (int bj=0; bj<colBlocks; bj++) {
+				if (Math.random()>density) continue;
+				for (int r=0; r<br; r++) {
+					for (int c=0; c<bc; c++) {
+						m.set(bi*br+r, bj*bc+c, Math.random()-0.5);
+					}
+				}
+			}
+		}
+		return m;
+	}
+
+	@Test public void testCreate() {
+		Matrix m=Matrix.create(new double[][] {{1,2,0,0},{3,4,0,0},{0,0,0,0},{0,5,0,6}});
+		BSRMatrix b=BSRMatrix.create(m,2,2);
+		b.validate();
+		assertEquals(m,b);
+		assertEquals(3,b.storedBlockCount());
+		assertArrayEquals(new int[] {0,1,3},b.getBlockRowPointers());
+		assertArrayEquals(new int[] {0,0,1},b.getBlockColumnIndices());
+		assertEquals(Matrix.create(new double[][] {{0,0},{0,6}}),b.getBlock(1, 1));
+		assertTrue(b.getBlock(0, 1).isZero());
+		assertEquals(6,b.nonZeroCount());
+		assertEquals(21.0,b.elementSum(),0.0);
+
+		assertEquals(b,BSRMatrix.create(SparseRowMatrix.create(m),2,2));
+		assertArrayEquals(b.getValues(),BSRMatrix.create(SparseRowMatrix.create(m),2,2).getValues(),0.0);
+		assertEquals(m,b.toCSRMatrix());
+	}
+
+	@Test public void testBlockDiagonal() {
+		BlockDiagonalMatrix d=BlockDiagonalMatrix.create(Matrixx.createRandomSquareMatrix(6),Matrixx.createRandomSquareMatrix(3),IdentityMatrix.create(3));
+		BSRMatrix b=BSRMatrix.create(d);
+		b.validate();
+		assertEquals(3,b.getBlockRows());
+		assertEquals(4+1+1,b.storedBlockCount());
+		assertEquals(d,b);
+	}
+
+	@Test public void testSet() {
+		BSRMatrix b=BSRMatrix.create(Matrix.create(new double[][] {{1,0},{0,0}}),1,1);
+		b.set(0, 0, 5);
+		assertEquals(5.0,b.get(0, 0),0.0);
+		b.set(1, 1, 0.0); // setting a structural zero to zero is OK
+		try {
+			b.set(1, 1, 1.0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		try {
+			BSRMatrix.create(4, 5, 2, 2);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test public void testTransform() {
+		Matrix m=blockRandom(20, 15, 3, 2, 0.2);
+		BSRMatrix b=BSRMatrix.create(m,3,2);
+		AVector v=Vectorz.createUniformRandomVector(30);
+		assertTrue(m.transform(v).epsilonEquals(b.transform(v)));
+		assertTrue(m.transform(v).epsilonEquals(b.innerProduct(v)));
+
+		AVector dest=Vectorz.newVector(100).subVector(10, 60);
+		b.transform(v, dest);
+		assertTrue(m.transform(v).epsilonEquals(dest));
+	}
+
+	@Test public void testInnerProduct() {
+		Matrix m=blockRandom(10, 8, 3, 3, 0.3);
+		BSRMatrix b=BSRMatrix.create(m,3,3);
+		Matrix d=Matrix.createRandom(24, 7);
+		assertTrue(m.innerProduct(d).epsilonEquals(b.innerProduct(d)));
+
+		Matrix s=blockRandom(8, 5, 3, 2, 0.3);
+		AMatrix sp=b.innerProduct(SparseRowMatrix.create(s));
+		assertTrue(m.innerProduct(s).epsilonEquals(sp));
+	}
+
+	@Test public void testTranspose() {
+		Matrix m=blockRandom(6, 4, 2, 3, 0.4);
+		BSRMatrix b=BSRMatrix.create(m,2,3);
+		BSRMatrix t=b.getTranspose();
+		t.validate();
+		assertEquals(3,t.getBlockRows());
+		assertEquals(m.getTranspose(),t);
+		assertEquals(b,t.getTranspose());
+	}
+
+	@Test public void testSparseRowConversion() {
+		Matrix m=blockRandom(12, 12, 2, 2, 0.15);
+		m.set(0, 23, 1.0);
+		SparseRowMatrix s=SparseRowMatrix.create(m);
+		BSRMatrix b=BSRMatrix.create(s,2,2);
+		b.validate();
+		assertEquals(m,b);
+		assertEquals(Vector.create(m.getRow(1)),Vector.create(b.getRow(1)));
+	}
+
+	@Test public void testCloneFullyMutable() {
+		Matrix m=blockRandom(20, 20, 2, 2, 0.1);
+		// clear the blocks containing (39,39) and (0,39) so they are structural zeros
+		for (int i=0; i<2; i++) {
+			for (int j=38; j<40; j++) {
+				m.set(i, j, 0.0);
+				m.set(38+i, j, 0.0);
+			}
+		}
+		BSRMatrix b=BSRMatrix.create(m,2,2);
+		AMatrix c=b.clone();
+		assertTrue(c.isFullyMutable());
+		assertEquals(m,c);
+		// writes outside the existing blocks must succeed on the clone
+		c.set(39, 39, 1.0);
+		c.set(0, 39, 2.0);
+		assertEquals(1.0,c.get(39, 39),0.0);
+		assertEquals(2.0,c.get(0, 39),0.0);
+		assertEquals(0.0,b.get(39, 39),0.0);
+	}
+}
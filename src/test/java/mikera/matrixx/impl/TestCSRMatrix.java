@@ -0,0 +1,162 @@
+package mikera.matrixx.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.TestVectors;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vectorz;
+import mikera.vectorz.util.VectorzException;
+
+public class TestCSRMatrix {
+
+	private static Matrix sparseRandom(int rows, int cols, double density) {
+		Matrix m=Matrix.createRandom(rows, cols);
+		double[] data=m.getArray();
+		for (int i=0; i<data.length; i++) {
+			if (data[i]>density) data[i]=0.0;
+		}
+		return m;
+	}
+
+	@Test public void testCreate() {
+		Matrix m=Matrix.create(Vector.of(1,0,2),Vector.of(0,0,0),Vector.of(0,3,0));
+		CSRMatrix c=CSRMatrix.create(m);
+		c.validate();
+		assertEquals(m,c);
+		assertEquals(3,c.storedEntryCount());
+		assertArrayEquals(new int[] {0,2,2,3},c.getRowPointers());
+		assertEquals(2.0,c.get(0, 2),0.0);
+		assertEquals(0.0,c.get(1, 1),0.0);
+		assertEquals(Vector.of(1,0,2),c.getRow(0));
+		assertEquals(Vector.of(0,0,3),c.getColumn(1));
+		assertEquals(3,c.nonZeroCount());
+		assertEquals(6.0,c.elementSum(),0.0);
+	}
+
+	@Test public void testSet() {
+		CSRMatrix c=CSRMatrix.create(Matrix.create(Vector.of(1,0),Vector.of(0,2)));
+		c.set(0, 0, 5);
+		assertEquals(5.0,c.get(0, 0),0.0);
+		c.set(0, 1, 0.0); // setting a structural zero to zero is OK
+		try {
+			c.set(0, 1, 1.0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		c.getRowView(1).set(1, 7.0);
+		assertEquals(7.0,c.get(1, 1),0.0);
+	}
+
+	@Test public void testRowView() {
+		Matrix m=sparseRandom(20, 300, 0.1);
+		m.set(3, 0, 0.0);
+		m.set(3, 299, 2.0);
+		CSRMatrix c=CSRMatrix.create(m);
+		AVector v=Vectorz.createUniformRandomVector(300);
+		for (int i=0; i<20; i++) {
+			CSRRowView r=c.getRowView(i);
+			r.validate();
+			assertEquals(c.getRowPointers()[i+1]-c.getRowPointers()[i],r.nonSparseElementCount());
+			assertEquals(m.getRow(i),r);
+			assertEquals(m.getRow(i).dotProduct(v),r.dotProduct(v),1e-12);
+			assertEquals(m.getRow(i).dotProduct(v),c.slice(i).dotProduct(v),1e-12);
+			double[] acc=new double[302];
+			r.addToArray(acc, 1);
+			assertEquals(m.getRow(i),Vector.wrap(acc).subVector(1, 300));
+		}
+
+		// writes go through to the matrix, but only for stored elements
+		CSRRowView r=c.getRowView(3);
+		r.set(299, 5.0);
+		assertEquals(5.0,c.get(3, 299),0.0);
+		r.set(0, 0.0);
+		try {
+			r.set(0, 1.0);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+		AVector clone=r.clone();
+		clone.set(0, 1.0);
+		assertEquals(0.0,c.get(3, 0),0.0);
+
+		new TestVectors().doGenericTests(c.getRowView(3));
+		new TestVectors().doGenericTests(CSRMatrix.create(Matrix.createRandom(3, 4)).getRowView(1));
+	}
+
+	@Test public void testTransform() {
+		Matrix m=sparseRandom(50, 30, 0.2);
+		CSRMatrix c=CSRMatrix.create(m);
+		AVector v=Vectorz.createUniformRandomVector(30);
+		assertTrue(m.transform(v).epsilonEquals(c.transform(v)));
+		assertTrue(m.transform(v).epsilonEquals(c.innerProduct(v)));
+
+		// strided source and destination
+		AVector sv=Vectorz.createUniformRandomVector(60).subVector(30, 30);
+		AVector dest=Vectorz.newVector(100).subVector(10, 50);
+		c.transform(sv, dest);
+		assertTrue(m.transform(sv).epsilonEquals(dest));
+	}
+
+	@Test public void testInPlaceTransform() {
+		Matrix m=sparseRandom(20, 20, 0.3);
+		CSRMatrix c=CSRMatrix.create(m);
+		Vector v=Vector.create(Vectorz.createUniformRandomVector(20));
+		AVector expected=m.transform(v);
+		c.transform(v, v);
+		assertTrue(expected.epsilonEquals(v));
+	}
+
+	@Test public void testInnerProduct() {
+		Matrix a=sparseRandom(20, 30, 0.2);
+		Matrix b=Matrix.createRandom(30, 10);
+		CSRMatrix c=CSRMatrix.create(a);
+		assertTrue(a.innerProduct(b).epsilonEquals(c.innerProduct(b)));
+
+		AMatrix sb=SparseRowMatrix.create(sparseRandom(30, 10, 0.2));
+		assertTrue(a.innerProduct(sb).epsilonEquals(c.innerProduct(sb)));
+	}
+
+	@Test public void testTranspose() {
+		Matrix m=sparseRandom(13, 29, 0.3);
+		CSRMatrix c=CSRMatrix.create(m);
+		CSRMatrix t=c.getTranspose();
+		t.validate();
+		assertEquals(m.getTranspose(),t);
+		assertEquals(c,t.getTranspose());
+	}
+
+	@Test public void testConversions() {
+		Matrix m=sparseRandom(17, 11, 0.3);
+		CSRMatrix c=CSRMatrix.create(m);
+
+		SparseRowMatrix rm=c.toSparseRowMatrix();
+		rm.validate();
+		assertEquals(m,rm);
+		assertEquals(c,rm.toCSRMatrix());
+
+		SparseColumnMatrix cm=c.toSparseColumnMatrix();
+		cm.validate();
+		assertEquals(m,cm);
+		CSRMatrix c2=cm.toCSRMatrix();
+		c2.validate();
+		assertEquals(c,c2);
+		assertArrayEquals(c.getColumnIndices(),c2.getColumnIndices());
+	}
+
+	@Test public void testValidate() {
+		CSRMatrix c=CSRMatrix.wrap(2, 2, new int[] {0,2,2}, new int[] {1,0}, new double[] {1,2});
+		try {
+			c.validate();
+			fail();
+		} catch (VectorzException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package mikera.matrixx.impl;
+
+import static org.junit.Assert.*;
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.Matrix22;
+import mikera.matrixx.Matrix33;
+import mikera.transformz.Affine34;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vector3;
+import mikera.vectorz.Vectorz;
+
+import org.junit.Test;
+
+public class TestMatrixBatch {
+	// enough matrices to span several kernel blocks
+	private static final int N=600;
+	
+	private static Matrix33 randomMatrix33() {
+		return new Matrix33(Matrix.createRandom(3, 3));
+	}
+	
+	private static Affine34 randomAffine34() {
+		return new Affine34(Matrix.createRandom(3, 3),Vectorz.createUniformRandomVector(3));
+	}
+
+	@Test public void testConversions() {
+		Matrix33 m=randomMatrix33();
+		Matrix22 m2=new Matrix22(1,2,3,4);
+		Affine34 t=randomAffine34();
+		
+		MatrixBatch b=MatrixBatch.create(m,m.getTranspose());
+		assertEquals(2,b.count());
+		assertEquals(m,b.getMatrix33(0));
+		assertEquals(m.getTranspose(),b.getMatrix(1));
+		assertEquals(m.get(1, 2),b.get(0, 1, 2),0.0);
+		
+		assertEquals(m2,MatrixBatch.create(m2).getMatrix22(0));
+		assertEquals(t,MatrixBatch.create(t).getAffine34(0));
+		
+		Matrix r=Matrix.createRandom(4, 5);
+		assertEquals(r,MatrixBatch.create(r).getMatrix(0));
+		
+		Vector3 v=Vector3.of(1,2,3);
+		assertEquals(v,MatrixBatch.createVectors(v).getVector(0));
+	}
+	
+	@Test public void testMultiply() {
+		Matrix33[] as=new Matrix33[N];
+		Matrix33[] bs=new Matrix33[N];
+		for (int i=0; i<N; i++) {
+			as[i]=randomMatrix33();
+			bs[i]=randomMatrix33();
+		}
+		MatrixBatch a=MatrixBatch.create(as);
+		MatrixBatch b=MatrixBatch.create(bs);
+		MatrixBatch c=MatrixBatch.create(N, 3, 3);
+		MatrixBatch.multiply(a, b, c);
+		for (int i=0; i<N; i++) {
+			assertTrue(as[i].innerProduct(bs[i]).epsilonEquals(c.getMatrix33(i)));
+		}
+		
+		// in place
+		MatrixBatch.multiply(a, b, a);
+		for (int i=0; i<N; i++) {
+			assertTrue(as[i].innerProduct(bs[i]).epsilonEquals(a.getMatrix33(i)));
+		}
+	}
+	
+	@Test public void testRectangularMultiply() {
+		Matrix a=Matrix.createRandom(2, 4);
+		Matrix b=Matrix.createRandom(4, 3);
+		MatrixBatch c=MatrixBatch.create(1, 2, 3);
+		MatrixBatch.multiply(MatrixBatch.create(a), MatrixBatch.create(b), c);
+		assertTrue(a.innerProduct(b).epsilonEquals(c.getMatrix(0)));
+	}
+	
+	@Test public void testTransform() {
+		Matrix33[] ms=new Matrix33[N];
+		Vector3[] vs=new Vector3[N];
+		for (int i=0; i<N; i++) {
+			ms[i]=randomMatrix33();
+			vs[i]=Vector3.of(i,1,-i);
+		}
+		MatrixBatch m=MatrixBatch.create(ms);
+		MatrixBatch v=MatrixBatch.createVectors(vs);
+		MatrixBatch.transform(m, v, v);
+		for (int i=0; i<N; i++) {
+			assertTrue(ms[i].transform(vs[i]).epsilonEquals(v.getVector(i)));
+		}
+	}
+	
+	@Test public void testAffine() {
+		Affine34[] ts=new Affine34[N];
+		Affine34[] us=new Affine34[N];
+		Vector3[] vs=new Vector3[N];
+		for (int i=0; i<N; i++) {
+			ts[i]=randomAffine34();
+			us[i]=randomAffine34();
+			vs[i]=Vector3.of(i,1,-i);
+		}
+		MatrixBatch t=MatrixBatch.create(ts);
+		MatrixBatch u=MatrixBatch.create(us);
+		MatrixBatch v=MatrixBatch.createVectors(vs);
+		MatrixBatch r=MatrixBatch.createVectors(N,3);
+		
+		MatrixBatch.transformAffine(t, v, r);
+		MatrixBatch.composeAffine(t, u, u);
+		for (int i=0; i<N; i++) {
+			assertTrue(ts[i].transform(vs[i]).epsilonEquals(r.getVector(i)));
+			
+			Affine34 c=new Affine34(ts[i].getMatrix(),ts[i].getTranslation());
+			c.composeWith(us[i]);
+			assertTrue(c.getMatrix().epsilonEquals(u.getAffine34(i).getMatrix()));
+			assertTrue(c.getTranslation().getTranslationVector().epsilonEquals(u.getAffine34(i).getTranslation().getTranslationVector()));
+		}
+	}
+	
+	@Test public void testInverse() {
+		Matrix22 m2=new Matrix22(1,2,3,5);
+		Matrix33 m3=new Matrix33(2,0,1, 1,3,0, 0,1,4);
+		AMatrix[] m3s={m3,m3.getTranspose()};
+		
+		MatrixBatch b2=MatrixBatch.create(m2);
+		MatrixBatch.invert(b2, b2);
+		assertTrue(m2.inverse().epsilonEquals(b2.getMatrix22(0)));
+		
+		MatrixBatch b3=MatrixBatch.create(m3s);
+		MatrixBatch r3=MatrixBatch.create(2, 3, 3);
+		MatrixBatch.invert(b3, r3);
+		assertTrue(m3.inverse().epsilonEquals(r3.getMatrix33(0)));
+		assertTrue(m3.getTranspose().inverse().epsilonEquals(r3.getMatrix33(1)));
+		
+		Affine34 t=new Affine34(m3,Vector3.of(1,2,3));
+		MatrixBatch bt=MatrixBatch.create(t);
+		MatrixBatch.invert(bt, bt);
+		AVector v=Vector3.of(4,-1,2);
+		AVector tv=t.transform(v);
+		MatrixBatch vb=MatrixBatch.createVectors(tv);
+		MatrixBatch.transformAffine(bt, vb, vb);
+		assertTrue(v.epsilonEquals(vb.getVector(0)));
+	}
+	
+	@Test public void testInverse44() {
+		AMatrix[] ms=new AMatrix[N];
+		for (int i=0; i<N; i++) {
+			// diagonally dominant, so well conditioned
+			AMatrix m=Matrix.createRandom(4, 4);
+			m.add(Matrix.createIdentity(4));
+			ms[i]=m;
+		}
+		MatrixBatch b=MatrixBatch.create(ms);
+		MatrixBatch r=MatrixBatch.create(N, 4, 4);
+		MatrixBatch.invert(b, r);
+		for (int i=0; i<N; i++) {
+			assertTrue(ms[i].inverse().epsilonEquals(r.getMatrix(i),1e-9));
+		}
+		
+		// in-place, on a matrix that needs pivoting
+		Matrix p=Matrix.create(new double[][] {{0,1,0,0},{0,0,0,2},{3,0,0,0},{0,0,4,1}});
+		MatrixBatch bp=MatrixBatch.create(p);
+		MatrixBatch.invert(bp, bp);
+		assertTrue(p.inverse().epsilonEquals(bp.getMatrix(0),1e-12));
+	}
+	
+	@Test public void testAffineInverse45() {
+		Matrix m=Matrix.createRandom(4, 5);
+		m.add(Matrix.createIdentity(4, 5));
+		MatrixBatch b=MatrixBatch.create(m);
+		MatrixBatch.invert(b, b);
+		Vector v=Vector.of(4,-1,2,3);
+		Vector tv=Vector.createLength(4);
+		m.subMatrix(0, 4, 0, 4).transform(v, tv);
+		tv.add(m.getColumn(4));
+		MatrixBatch vb=MatrixBatch.createVectors(tv);
+		MatrixBatch.transformAffine(b, vb, vb);
+		assertTrue(v.epsilonEquals(vb.getVector(0),1e-9));
+	}
+	
+	@Test public void testSingularInverse() {
+		MatrixBatch b=MatrixBatch.create(new Matrix22(1,2,2,4),new Matrix22(1,0,0,1));
+		MatrixBatch.invert(b, b);
+		assertTrue(Double.isInfinite(b.get(0, 0, 0))||Double.isNaN(b.get(0, 0, 0)));
+		assertEquals(new Matrix22(1,0,0,1),b.getMatrix22(1));
+	}
+	
+	@Test public void testShapeErrors() {
+		MatrixBatch a=MatrixBatch.create(3, 2, 3);
+		try {
+			MatrixBatch.multiply(a, a, a);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			MatrixBatch.invert(MatrixBatch.create(3, 5, 5), MatrixBatch.create(3, 5, 5));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// OK
+		}
+	}
+}
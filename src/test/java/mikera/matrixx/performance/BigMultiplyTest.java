@@ -24,6 +24,11 @@ public class BigMultiplyTest {
 			r=Multiplications.blockedMultiply(a, b);	
 			end=System.currentTimeMillis();		
 			System.out.println("Size: "+size +"    blocked   timing = "+(end-start)*0.001);
+
+			start=System.currentTimeMillis();
+			r=Multiplications.parallelMultiply(a, b);	
+			end=System.currentTimeMillis();		
+			System.out.println("Size: "+size +"    parallel  timing = "+(end-start)*0.001);
 			
 			System.out.println();
 		}
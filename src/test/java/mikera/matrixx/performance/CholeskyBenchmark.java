@@ -0,0 +1,70 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Gram;
+import mikera.matrixx.decompose.impl.chol.BlockedCholesky;
+import mikera.matrixx.decompose.impl.chol.Cholesky;
+import mikera.matrixx.decompose.impl.chol.CholeskyInner;
+
+/**
+ * Caliper based benchmarks comparing blocked Cholesky decomposition with the existing algorithms,
+ * on covariance-like symmetric positive definite matrices
+ *
+ * @author Mike
+ */
+
+public class CholeskyBenchmark extends SimpleBenchmark {
+	@Param({"100","500","1000","2000"})
+	private int size;
+
+	private Matrix m;
+
+	@Override
+	protected void setUp() {
+		m=Gram.transposeProduct(Matrix.createRandom(size, size));
+		for (int i=0; i<size; i++) {
+			m.addAt(i, i, 1.0);
+		}
+	}
+
+	public void timeBlockedCholesky(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedCholesky.decompose(m, BlockedCholesky.BLOCK_SIZE, false);
+		}
+	}
+
+	public void timeParallelBlockedCholesky(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedCholesky.decompose(m, BlockedCholesky.BLOCK_SIZE, true);
+		}
+	}
+
+	public void timeCholesky(int runs) {
+		for (int i=0; i<runs; i++) {
+			Cholesky.decompose(m);
+		}
+	}
+
+	public void timeCholeskyInner(int runs) {
+		for (int i=0; i<runs; i++) {
+			CholeskyInner.decompose(m);
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new CholeskyBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
@@ -0,0 +1,69 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.decompose.impl.lu.BlockedLU;
+import mikera.matrixx.decompose.impl.lu.SimpleLUP;
+
+/**
+ * Caliper based benchmarks comparing blocked LU decomposition with the unblocked algorithms
+ *
+ * @author Mike
+ */
+
+public class LUBenchmark extends SimpleBenchmark {
+	@Param({"100","500","1000","2000"})
+	private int size;
+
+	private Matrix m;
+	private int[] pivot;
+	private int[] indx;
+
+	@Override
+	protected void setUp() {
+		m=Matrix.createRandom(size, size);
+		pivot=new int[size];
+		indx=new int[size];
+	}
+
+	public void timeBlockedLU(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedLU.factor(m.clone(), pivot, indx, BlockedLU.BLOCK_SIZE, false);
+		}
+	}
+
+	public void timeParallelBlockedLU(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedLU.factor(m.clone(), pivot, indx, BlockedLU.BLOCK_SIZE, true);
+		}
+	}
+
+	public void timeUnblockedLU(int runs) {
+		for (int i=0; i<runs; i++) {
+			// a single panel covering the whole matrix
+			BlockedLU.factor(m.clone(), pivot, indx, size, false);
+		}
+	}
+
+	public void timeSimpleLUP(int runs) {
+		for (int i=0; i<runs; i++) {
+			SimpleLUP.decompose(m);
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new LUBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
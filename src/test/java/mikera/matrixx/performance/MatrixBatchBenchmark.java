@@ -0,0 +1,98 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.Matrix33;
+import mikera.matrixx.impl.MatrixBatch;
+import mikera.vectorz.Vector3;
+
+/**
+ * Caliper based benchmarks comparing batched small matrix operations against
+ * the equivalent loops over individual Matrix33 objects
+ * 
+ * @author Mike
+ */
+
+public class MatrixBatchBenchmark extends SimpleBenchmark {
+	public static final int BATCH_SIZE=100000;
+
+	private Matrix33[] as=new Matrix33[BATCH_SIZE];
+	private Matrix33[] bs=new Matrix33[BATCH_SIZE];
+	private Matrix33[] cs=new Matrix33[BATCH_SIZE];
+	private Vector3[] vs=new Vector3[BATCH_SIZE];
+	
+	private MatrixBatch a;
+	private MatrixBatch b;
+	private MatrixBatch c;
+	private MatrixBatch v;
+	
+	@Override
+	protected void setUp() {
+		for (int i=0; i<BATCH_SIZE; i++) {
+			as[i]=new Matrix33(Matrix.createRandom(3, 3));
+			bs[i]=new Matrix33(Matrix.createRandom(3, 3));
+			vs[i]=Vector3.of(i,1,2);
+		}
+		a=MatrixBatch.create(as);
+		b=MatrixBatch.create(bs);
+		c=MatrixBatch.create(BATCH_SIZE,3,3);
+		v=MatrixBatch.createVectors(vs);
+	}
+	
+	public void timeMatrix33Multiply(int runs) {
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<BATCH_SIZE; i++) {
+				cs[i]=as[i].innerProduct(bs[i]);
+			}
+		}
+	}
+	
+	public void timeBatchMultiply(int runs) {
+		for (int r=0; r<runs; r++) {
+			MatrixBatch.multiply(a, b, c);
+		}
+	}
+	
+	public void timeMatrix33TransformInPlace(int runs) {
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<BATCH_SIZE; i++) {
+				as[i].transformInPlace(vs[i]);
+			}
+		}
+	}
+	
+	public void timeBatchTransformInPlace(int runs) {
+		for (int r=0; r<runs; r++) {
+			MatrixBatch.transform(a, v, v);
+		}
+	}
+	
+	public void timeMatrix33Inverse(int runs) {
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<BATCH_SIZE; i++) {
+				cs[i]=as[i].inverse();
+			}
+		}
+	}
+	
+	public void timeBatchInverse(int runs) {
+		for (int r=0; r<runs; r++) {
+			MatrixBatch.invert(a, c);
+		}
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new MatrixBatchBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
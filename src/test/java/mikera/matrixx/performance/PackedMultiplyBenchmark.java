@@ -0,0 +1,66 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+
+/**
+ * Caliper based benchmarks comparing the packed panel multiply against
+ * the existing dense multiplication algorithms over a range of sizes
+ * 
+ * @author Mike
+ */
+
+public class PackedMultiplyBenchmark extends SimpleBenchmark {
+	@Param({"16","64","256","1024","4096"}) 
+	private int size;
+	
+	private Matrix m1;
+	private Matrix m2;
+	
+	@Override
+	protected void setUp() {
+		m1=Matrix.createRandom(size, size);
+		m2=Matrix.createRandom(size, size);
+	}
+	
+	public void timePackedMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			Multiplications.packedMultiply(m1, m2);
+		}		
+	}
+	
+	public void timeBlockedMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			Multiplications.blockedMultiply(m1, m2);
+		}		
+	}
+	
+	public void timeDoubleBlockedMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			Multiplications.doubleBlockedMultiply(m1, m2);
+		}		
+	}
+	
+	public void timeDirectMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			Multiplications.directMultiply(m1, m2);
+		}		
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new PackedMultiplyBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
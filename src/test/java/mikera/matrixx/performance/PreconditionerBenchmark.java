@@ -0,0 +1,164 @@
+package mikera.matrixx.performance;
+
+import java.util.Random;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.matrixx.solve.impl.krylov.AKrylovSolver;
+import mikera.matrixx.solve.impl.krylov.BiCGStab;
+import mikera.matrixx.solve.impl.krylov.ConjugateGradient;
+import mikera.matrixx.solve.impl.krylov.GMRES;
+import mikera.matrixx.solve.impl.krylov.IPreconditioner;
+import mikera.matrixx.solve.impl.krylov.IncompleteCholeskyPreconditioner;
+import mikera.matrixx.solve.impl.krylov.IncompleteLUPreconditioner;
+import mikera.matrixx.solve.impl.krylov.JacobiPreconditioner;
+import mikera.vectorz.Vector;
+
+/**
+ * Caliper based benchmarks for preconditioned Krylov solves, on 5-point finite difference
+ * matrices over a g x g grid with badly scaled rows and columns.
+ *
+ * Running main also prints the iteration counts for each combination.
+ *
+ * @author Mike
+ */
+
+public class PreconditionerBenchmark extends SimpleBenchmark {
+	@Param({"50","200"})
+	private int grid;
+
+	private CSRMatrix spd;
+	private CSRMatrix nonSymmetric;
+	private Vector b;
+
+	private IPreconditioner jacobi;
+	private IPreconditioner ic;
+	private IPreconditioner ilu;
+
+	@Override
+	protected void setUp() {
+		spd=create(grid,0.0);
+		nonSymmetric=create(grid,0.4);
+		int n=grid*grid;
+		Random r=new Random(1234);
+		b=Vector.createLength(n);
+		for (int i=0; i<n; i++) {
+			b.unsafeSet(i, r.nextDouble()-0.5);
+		}
+		jacobi=JacobiPreconditioner.create(spd);
+		ic=IncompleteCholeskyPreconditioner.create(spd);
+		ilu=IncompleteLUPreconditioner.create(nonSymmetric);
+	}
+
+	/**
+	 * Creates a scaled 5-point matrix, which is symmetric positive definite when convection is zero
+	 */
+	static CSRMatrix create(int g, double convection) {
+		int n=g*g;
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<g; i++) {
+			for (int j=0; j<g; j++) {
+				int r=i*g+j;
+				m.set(r, r, 4.0);
+				if (i>0) m.set(r, r-g, -1.0-convection);
+				if (i<g-1) m.set(r, r+g, -1.0+convection);
+				if (j>0) m.set(r, r-1, -1.0-convection);
+				if (j<g-1) m.set(r, r+1, -1.0+convection);
+			}
+		}
+		for (int i=0; i<n; i++) {
+			double s=1.0+(i%7)*3.0;
+			m.getRow(i).multiply(s);
+			m.getColumn(i).multiply(s);
+		}
+		return m.toCSRMatrix();
+	}
+
+	private int solve(AKrylovSolver solver, CSRMatrix a, IPreconditioner p) {
+		solver.setPreconditioner(p);
+		if (!solver.solve(a, b, Vector.createLength(b.length()))) throw new Error("Solve did not converge");
+		return solver.getIterations();
+	}
+
+	public void timeCG(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new ConjugateGradient(),spd,null);
+		}
+	}
+
+	public void timeCGJacobi(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new ConjugateGradient(),spd,jacobi);
+		}
+	}
+
+	public void timeCGIncompleteCholesky(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new ConjugateGradient(),spd,ic);
+		}
+	}
+
+	public void timeCGIncompleteCholeskyWithSetup(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new ConjugateGradient(),spd,IncompleteCholeskyPreconditioner.create(spd));
+		}
+	}
+
+	public void timeBiCGStab(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new BiCGStab(),nonSymmetric,null);
+		}
+	}
+
+	public void timeBiCGStabIncompleteLU(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new BiCGStab(),nonSymmetric,ilu);
+		}
+	}
+
+	public void timeGMRES(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new GMRES(),nonSymmetric,null);
+		}
+	}
+
+	public void timeGMRESIncompleteLU(int runs) {
+		for (int i=0; i<runs; i++) {
+			solve(new GMRES(),nonSymmetric,ilu);
+		}
+	}
+
+	private void printIterations() {
+		System.out.println("Grid "+grid+"x"+grid+" iterations:");
+		System.out.println("  CG: "+solve(new ConjugateGradient(),spd,null));
+		System.out.println("  CG + Jacobi: "+solve(new ConjugateGradient(),spd,jacobi));
+		System.out.println("  CG + IC(0): "+solve(new ConjugateGradient(),spd,ic));
+		System.out.println("  BiCGStab: "+solve(new BiCGStab(),nonSymmetric,null));
+		System.out.println("  BiCGStab + ILU(0): "+solve(new BiCGStab(),nonSymmetric,ilu));
+		System.out.println("  GMRES(30): "+solve(new GMRES(),nonSymmetric,null));
+		System.out.println("  GMRES(30) + ILU(0): "+solve(new GMRES(),nonSymmetric,ilu));
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		for (int g: new int[] {50,200}) {
+			PreconditionerBenchmark b=new PreconditionerBenchmark();
+			b.grid=g;
+			b.setUp();
+			b.printIterations();
+		}
+		new PreconditionerBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
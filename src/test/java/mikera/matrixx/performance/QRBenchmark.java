@@ -0,0 +1,79 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.decompose.impl.qr.BlockedHouseholderQR;
+import mikera.matrixx.decompose.impl.qr.BlockedQRResult;
+import mikera.matrixx.decompose.impl.qr.HouseholderColQR;
+import mikera.matrixx.decompose.impl.qr.HouseholderQR;
+
+/**
+ * Caliper based benchmarks comparing blocked compact WY QR decomposition with the unblocked
+ * Householder algorithms, on tall matrices with a fixed number of columns
+ *
+ * @author Mike
+ */
+
+public class QRBenchmark extends SimpleBenchmark {
+	@Param({"200","1000","4000"})
+	private int rows;
+
+	@Param({"100","200"})
+	private int cols;
+
+	private Matrix m;
+	private Matrix b;
+
+	@Override
+	protected void setUp() {
+		m=Matrix.createRandom(rows, cols);
+		b=Matrix.createRandom(rows, 1);
+	}
+
+	public void timeBlockedQR(int runs) {
+		for (int i=0; i<runs; i++) {
+			new BlockedHouseholderQR(true).decompose(m).getR();
+		}
+	}
+
+	public void timeBlockedQRWithQ(int runs) {
+		for (int i=0; i<runs; i++) {
+			new BlockedHouseholderQR(true).decompose(m).getQ();
+		}
+	}
+
+	public void timeBlockedQRApplyQTranspose(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedQRResult r=new BlockedHouseholderQR(true).decompose(m);
+			r.applyQTranspose(b);
+		}
+	}
+
+	public void timeHouseholderQR(int runs) {
+		for (int i=0; i<runs; i++) {
+			new HouseholderQR(true).decompose(m);
+		}
+	}
+
+	public void timeHouseholderColQR(int runs) {
+		for (int i=0; i<runs; i++) {
+			new HouseholderColQR(true).decompose(m);
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new QRBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
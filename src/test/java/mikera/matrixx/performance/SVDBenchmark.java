@@ -0,0 +1,72 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.decompose.impl.bidiagonal.BidiagonalRow;
+import mikera.matrixx.decompose.impl.bidiagonal.BlockedBidiagonal;
+import mikera.matrixx.decompose.impl.svd.SvdImplicitQr;
+
+/**
+ * Caliper based benchmarks comparing blocked bidiagonal reduction with BidiagonalRow, both on its
+ * own and as the first stage of a full SVD
+ *
+ * @author Mike
+ */
+
+public class SVDBenchmark extends SimpleBenchmark {
+	@Param({"100","500","1000","3000"})
+	private int size;
+
+	private Matrix m;
+
+	@Override
+	protected void setUp() {
+		m=Matrix.createRandom(size, size);
+	}
+
+	public void timeBlockedBidiagonal(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedBidiagonal.decompose(m, false, BlockedBidiagonal.BLOCK_SIZE, false);
+		}
+	}
+
+	public void timeParallelBlockedBidiagonal(int runs) {
+		for (int i=0; i<runs; i++) {
+			BlockedBidiagonal.decompose(m, false, BlockedBidiagonal.BLOCK_SIZE, true);
+		}
+	}
+
+	public void timeBidiagonalRow(int runs) {
+		for (int i=0; i<runs; i++) {
+			BidiagonalRow.decompose(m, false);
+		}
+	}
+
+	public void timeSVD(int runs) {
+		for (int i=0; i<runs; i++) {
+			new SvdImplicitQr(false, true)._decompose(m);
+		}
+	}
+
+	public void timeSVDUnblocked(int runs) {
+		for (int i=0; i<runs; i++) {
+			new SvdImplicitQr(false, false)._decompose(m);
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new SVDBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
@@ -0,0 +1,112 @@
+package mikera.matrixx.performance;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.algo.SparseMultiply;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.impl.SparseIndexedVector;
+
+/**
+ * Caliper based benchmarks for sparse-sparse matrix multiplication, using matrices with
+ * power-law distributed row lengths and column popularity, as found in graphs
+ *
+ * @author Mike
+ */
+
+public class SparseMultiplyBenchmark extends SimpleBenchmark {
+	@Param({"1000","5000","20000"})
+	private int size;
+
+	@Param({"8"})
+	private int averageDegree;
+
+	private SparseRowMatrix a;
+	private CSRMatrix ca;
+
+	@Override
+	protected void setUp() {
+		a=createPowerLaw(size,averageDegree,new Random(1234));
+		ca=CSRMatrix.create(a);
+	}
+
+	/**
+	 * Creates a square sparse matrix with power-law distributed row lengths and column indices
+	 */
+	static SparseRowMatrix createPowerLaw(int n, int averageDegree, Random rand) {
+		AVector[] rows=new AVector[n];
+		double harmonic=0.0;
+		for (int i=0; i<n; i++) {
+			harmonic+=1.0/(i+1);
+		}
+		int maxDegree=Math.max(1, n/16);
+		for (int i=0; i<n; i++) {
+			// Zipf-like row length, scaled to the requested average degree
+			int degree=(int)Math.min(maxDegree, Math.max(1, Math.round(averageDegree*n/(harmonic*(i+1)))));
+			TreeSet<Integer> cols=new TreeSet<Integer>();
+			while (cols.size()<degree) {
+				// column popularity follows a power law, mixed with uniform choices
+				int c=rand.nextBoolean()?(int)Math.floor(Math.pow(n, rand.nextDouble()))-1:rand.nextInt(n);
+				cols.add(Math.max(0, Math.min(n-1, c)));
+			}
+			int[] ix=new int[degree];
+			double[] values=new double[degree];
+			int k=0;
+			for (Integer c: cols) {
+				ix[k]=c;
+				values[k]=rand.nextDouble();
+				k++;
+			}
+			rows[i]=SparseIndexedVector.wrap(n, ix, values);
+		}
+		return SparseRowMatrix.wrap(rows, n, n);
+	}
+
+	public void timeRowInnerProducts(int runs) {
+		for (int i=0; i<runs; i++) {
+			AVector[] result=new AVector[size];
+			for (int r=0; r<size; r++) {
+				AVector row=a.unsafeGetVector(r);
+				if (row!=null) result[r]=row.innerProduct((AMatrix)a);
+			}
+		}
+	}
+
+	public void timeSparseRowMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			a.innerProduct(a);
+		}
+	}
+
+	public void timeCSRMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			SparseMultiply.multiply(ca, ca, false);
+		}
+	}
+
+	public void timeParallelCSRMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			SparseMultiply.multiply(ca, ca, true);
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new SparseMultiplyBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
@@ -0,0 +1,72 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.StrassenMultiply;
+
+/**
+ * Caliper based benchmarks for locating the Strassen-Winograd crossover point on a given machine.
+ * 
+ * Strassen is only worthwhile where timeStrassenMultiply beats timePackedMultiply for the same size. 
+ * The best crossover is the smallest value that does not slow down the larger sizes.
+ * 
+ * @author Mike
+ */
+
+public class StrassenBenchmark extends SimpleBenchmark {
+	@Param({"512","1024","2048","4096"}) 
+	private int size;
+	
+	@Param({"128","256","512","1024"}) 
+	private int crossover;
+	
+	private Matrix m1;
+	private Matrix m2;
+	
+	@Override
+	protected void setUp() {
+		m1=Matrix.createRandom(size, size);
+		m2=Matrix.createRandom(size, size);
+	}
+	
+	public void timeStrassenMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			StrassenMultiply.multiply(m1, m2, crossover, false);
+		}		
+	}
+	
+	public void timeParallelStrassenMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			StrassenMultiply.multiply(m1, m2, crossover, true);
+		}		
+	}
+	
+	public void timePackedMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			Multiplications.packedMultiply(m1, m2);
+		}		
+	}
+	
+	public void timeBlockedMultiply(int runs) {
+		for (int i=0; i<runs; i++) {
+			Multiplications.blockedMultiply(m1, m2);
+		}		
+	}
+	
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new StrassenBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
@@ -0,0 +1,98 @@
+package mikera.matrixx.performance;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Transforms;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+import mikera.vectorz.Vectorz;
+
+/**
+ * Caliper based benchmarks comparing batched and parallel matrix-vector transforms
+ * against transforming each vector separately
+ *
+ * @author Mike
+ */
+
+public class TransformBenchmark extends SimpleBenchmark {
+	@Param({"64","512","4096"})
+	private int size;
+
+	@Param({"32"})
+	private int count;
+
+	private Matrix m;
+	private AVector[] sources;
+	private AVector[] dests;
+	private Vector source;
+	private Vector dest;
+	private AVector genericSource;
+
+	@Override
+	protected void setUp() {
+		m=Matrix.createRandom(size, size);
+		sources=new AVector[count];
+		dests=new AVector[count];
+		for (int i=0; i<count; i++) {
+			sources[i]=Vector.create(Vectorz.createUniformRandomVector(size));
+			dests[i]=Vector.createLength(size);
+		}
+		source=(Vector)sources[0];
+		dest=Vector.createLength(size);
+		genericSource=Vectorz.createUniformRandomVector(size*2).subVector(size, size);
+	}
+
+	public void timeSeparateTransforms(int runs) {
+		for (int i=0; i<runs; i++) {
+			for (int j=0; j<count; j++) {
+				m.transform(sources[j], dests[j]);
+			}
+		}
+	}
+
+	public void timeBatchTransform(int runs) {
+		for (int i=0; i<runs; i++) {
+			m.transform(sources, dests);
+		}
+	}
+
+	public void timeParallelBatchTransform(int runs) {
+		for (int i=0; i<runs; i++) {
+			Transforms.transform(m, sources, dests, true);
+		}
+	}
+
+	public void timeSingleTransform(int runs) {
+		for (int i=0; i<runs; i++) {
+			m.transform(source, dest);
+		}
+	}
+
+	public void timeSingleGenericTransform(int runs) {
+		for (int i=0; i<runs; i++) {
+			m.transform(genericSource, dest);
+		}
+	}
+
+	public void timeParallelTransform(int runs) {
+		for (int i=0; i<runs; i++) {
+			Transforms.parallelTransform(m, source, dest);
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		new TransformBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
@@ -0,0 +1,196 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.BandedMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+
+import org.junit.Test;
+
+public class TestKrylovSolvers {
+
+	/**
+	 * Creates the 1D Poisson matrix tridiag(-1,2,-1), which is symmetric positive definite
+	 */
+	private static SparseRowMatrix poisson(int n) {
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 2.0);
+			if (i>0) m.set(i, i-1, -1.0);
+			if (i<n-1) m.set(i, i+1, -1.0);
+		}
+		return m;
+	}
+
+	/**
+	 * Creates a non-symmetric, diagonally dominant convection-diffusion style matrix
+	 */
+	private static SparseRowMatrix nonSymmetric(int n) {
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, 4.0);
+			if (i>0) m.set(i, i-1, -1.5);
+			if (i<n-1) m.set(i, i+1, -0.5);
+			if (i+5<n) m.set(i, i+5, 0.3);
+		}
+		return m;
+	}
+
+	private static Vector randomVector(int n, long seed) {
+		Random r=new Random(seed);
+		Vector v=Vector.createLength(n);
+		for (int i=0; i<n; i++) {
+			v.unsafeSet(i, r.nextDouble()-0.5);
+		}
+		return v;
+	}
+
+	private static void checkSolution(AMatrix a, AVector b, AVector x, double tolerance) {
+		AVector ax=a.transform(x);
+		ax.sub(b);
+		assertTrue("Residual too large: "+ax.magnitude(),ax.magnitude()<=tolerance*b.magnitude()*10);
+	}
+
+	private static void checkSolver(AKrylovSolver solver, AMatrix a, AVector b) {
+		AVector x=solver.solve(a, b);
+		assertNotNull(x);
+		assertTrue(solver.isConverged());
+		assertTrue(solver.getIterations()>0);
+		assertTrue(solver.getResidualNorm()<=solver.getTolerance());
+		checkSolution(a,b,x,solver.getTolerance());
+
+		double[] history=solver.getConvergenceHistory();
+		assertEquals(1.0,history[0],1e-12);
+		assertEquals(solver.getResidualNorm(),history[history.length-1],0.0);
+	}
+
+	@Test public void testConjugateGradient() {
+		int n=100;
+		SparseRowMatrix a=poisson(n);
+		Vector b=randomVector(n,1);
+		ConjugateGradient cg=new ConjugateGradient();
+		checkSolver(cg,a,b);
+		// in exact arithmetic CG converges in at most n iterations
+		assertTrue(cg.getIterations()<=n+10);
+		assertEquals(cg.getIterations()+1,cg.getConvergenceHistory().length);
+
+		checkSolver(cg,BandedMatrix.create(a),b);
+		checkSolver(cg,Matrix.create(a),b);
+	}
+
+	@Test public void testBiCGStab() {
+		int n=200;
+		SparseRowMatrix a=nonSymmetric(n);
+		Vector b=randomVector(n,2);
+		checkSolver(new BiCGStab(),a,b);
+		checkSolver(new BiCGStab(),poisson(50),randomVector(50,3));
+	}
+
+	@Test public void testGMRES() {
+		int n=200;
+		SparseRowMatrix a=nonSymmetric(n);
+		Vector b=randomVector(n,4);
+		GMRES gmres=new GMRES();
+		checkSolver(gmres,a,b);
+		assertEquals(gmres.getIterations()+1,gmres.getConvergenceHistory().length);
+
+		// small restart length forces several restart cycles
+		GMRES restarted=new GMRES(5);
+		checkSolver(restarted,a,b);
+		assertTrue(restarted.getIterations()>5);
+
+		// GMRES minimises the residual, so the history must be non-increasing
+		double[] history=restarted.getConvergenceHistory();
+		for (int i=1; i<history.length; i++) {
+			assertTrue(history[i]<=history[i-1]*(1+1e-12));
+		}
+
+		checkSolver(new GMRES(10),poisson(80),randomVector(80,5));
+	}
+
+	@Test public void testGMRESExactSubspace() {
+		// a full restart length finds the exact solution of a small system in at most n steps
+		int n=20;
+		AMatrix a=Matrix.create(nonSymmetric(n));
+		Vector b=randomVector(n,6);
+		GMRES gmres=new GMRES(n);
+		checkSolver(gmres,a,b);
+		assertTrue(gmres.getIterations()<=n);
+	}
+
+	@Test public void testWarmStart() {
+		int n=50;
+		SparseRowMatrix a=poisson(n);
+		Vector b=randomVector(n,7);
+		AKrylovSolver[] solvers=new AKrylovSolver[] {new ConjugateGradient(),new BiCGStab(),new GMRES()};
+		for (AKrylovSolver s: solvers) {
+			AVector x=s.solve(a, b);
+			assertNotNull(x);
+
+			// starting from the solution needs no further iterations
+			AVector x2=x.clone();
+			assertTrue(s.solve(a, b, x2));
+			assertEquals(0,s.getIterations());
+			assertTrue(x.epsilonEquals(x2, 0.0));
+		}
+	}
+
+	@Test public void testZeroRHS() {
+		int n=10;
+		SparseRowMatrix a=poisson(n);
+		Vector x=randomVector(n,8);
+		ConjugateGradient cg=new ConjugateGradient();
+		assertTrue(cg.solve(a, Vector.createLength(n), x));
+		assertTrue(x.isZero());
+		assertEquals(0,cg.getIterations());
+	}
+
+	@Test public void testMaxIterations() {
+		int n=200;
+		SparseRowMatrix a=poisson(n);
+		Vector b=randomVector(n,9);
+		AKrylovSolver[] solvers=new AKrylovSolver[] {new ConjugateGradient(),new BiCGStab(),new GMRES()};
+		for (AKrylovSolver s: solvers) {
+			s.setMaxIterations(3);
+			assertNull(s.solve(a, b));
+			assertFalse(s.isConverged());
+			assertEquals(3,s.getIterations());
+			assertTrue(s.getResidualNorm()>s.getTolerance());
+		}
+	}
+
+	@Test public void testBadArguments() {
+		SparseRowMatrix a=poisson(5);
+		ConjugateGradient cg=new ConjugateGradient();
+		try {
+			cg.solve(a, Vector.createLength(4));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			cg.solve(a, Vector.createLength(5), Vector.createLength(6));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			new GMRES(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			cg.setTolerance(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package mikera.matrixx.solve.impl.krylov;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import mikera.matrixx.AMatrix;
+import mikera.matrixx.Matrix;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+import mikera.vectorz.AVector;
+import mikera.vectorz.Vector;
+
+import org.junit.Test;
+
+public class TestPreconditioners {
+
+	/**
+	 * Creates a 5-point finite difference matrix on a g x g grid. With convection=0 this is the
+	 * symmetric positive definite 2D Poisson matrix, otherwise it is non-symmetric.
+	 */
+	static SparseRowMatrix grid(int g, double convection) {
+		int n=g*g;
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<g; i++) {
+			for (int j=0; j<g; j++) {
+				int r=i*g+j;
+				m.set(r, r, 4.0);
+				if (i>0) m.set(r, r-g, -1.0-convection);
+				if (i<g-1) m.set(r, r+g, -1.0+convection);
+				if (j>0) m.set(r, r-1, -1.0-convection);
+				if (j<g-1) m.set(r, r+1, -1.0+convection);
+			}
+		}
+		return m;
+	}
+
+	static SparseRowMatrix tridiagonal(int n, double lower, double diag, double upper) {
+		SparseRowMatrix m=SparseRowMatrix.create(n, n);
+		for (int i=0; i<n; i++) {
+			m.set(i, i, diag);
+			if (i>0) m.set(i, i-1, lower);
+			if (i<n-1) m.set(i, i+1, upper);
+		}
+		return m;
+	}
+
+	private static Vector randomVector(int n, long seed) {
+		Random r=new Random(seed);
+		Vector v=Vector.createLength(n);
+		for (int i=0; i<n; i++) {
+			v.unsafeSet(i, r.nextDouble()-0.5);
+		}
+		return v;
+	}
+
+	private static void checkApply(IPreconditioner m, AMatrix approx) {
+		int n=m.size();
+		Vector r=randomVector(n,1);
+		Vector z=Vector.createLength(n);
+		m.apply(r, z);
+		assertTrue(approx.transform(z).epsilonEquals(r, 1e-10));
+
+		// applying in place gives the same result
+		Vector r2=r.clone();
+		m.apply(r2, r2);
+		assertTrue(r2.epsilonEquals(z, 0.0));
+	}
+
+	@Test public void testJacobi() {
+		SparseRowMatrix a=tridiagonal(10,-1,3,-2);
+		a.set(4, 4, 7.0);
+		JacobiPreconditioner m=JacobiPreconditioner.create(a);
+		assertEquals(10,m.size());
+		AMatrix d=Matrix.create(10,10);
+		for (int i=0; i<10; i++) {
+			d.set(i, i, a.get(i, i));
+		}
+		checkApply(m,d);
+
+		JacobiPreconditioner mc=JacobiPreconditioner.create(CSRMatrix.create(a));
+		checkApply(mc,d);
+	}
+
+	@Test public void testIncompleteCholeskyExact() {
+		// IC(0) of a tridiagonal matrix has no dropped fill-in, so is the exact Cholesky factor
+		SparseRowMatrix a=tridiagonal(30,-1,2.5,-1);
+		IncompleteCholeskyPreconditioner m=IncompleteCholeskyPreconditioner.create(a);
+		CSRMatrix l=m.getL();
+		l.validate();
+		assertTrue(l.isLowerTriangular());
+		assertTrue(l.innerProduct(l.getTranspose()).epsilonEquals(a, 1e-12));
+		checkApply(m,a);
+
+		ConjugateGradient cg=new ConjugateGradient();
+		cg.setPreconditioner(m);
+		Vector b=randomVector(30,2);
+		assertNotNull(cg.solve(a, b));
+		assertEquals(1,cg.getIterations());
+	}
+
+	@Test public void testIncompleteCholeskyPattern() {
+		// L.L^T matches A on the sparsity pattern of A
+		SparseRowMatrix a=grid(8,0.0);
+		IncompleteCholeskyPreconditioner m=IncompleteCholeskyPreconditioner.create(a);
+		CSRMatrix l=m.getL();
+		assertEquals(a.nonZeroCount()/2+32,l.nonZeroCount());
+		AMatrix llt=l.innerProduct(l.getTranspose());
+		for (int i=0; i<64; i++) {
+			for (int j=0; j<64; j++) {
+				if (a.get(i, j)!=0.0) assertEquals(a.get(i, j),llt.get(i, j),1e-12);
+			}
+		}
+	}
+
+	@Test public void testIncompleteLUExact() {
+		SparseRowMatrix a=tridiagonal(30,-1.5,4,-0.5);
+		IncompleteLUPreconditioner m=IncompleteLUPreconditioner.create(a);
+		checkApply(m,a);
+		Vector b=randomVector(30,3);
+
+		AKrylovSolver[] solvers=new AKrylovSolver[] {new BiCGStab(),new GMRES()};
+		for (AKrylovSolver s: solvers) {
+			s.setPreconditioner(m);
+			assertNotNull(s.solve(a, b));
+			assertEquals(1,s.getIterations());
+		}
+	}
+
+	@Test public void testIncompleteLUPattern() {
+		SparseRowMatrix a=grid(8,0.4);
+		IncompleteLUPreconditioner m=IncompleteLUPreconditioner.create(a);
+		CSRMatrix lu=m.getLU();
+		assertEquals(a.nonZeroCount(),lu.nonZeroCount());
+		Matrix l=Matrix.create(64,64);
+		Matrix u=Matrix.create(64,64);
+		for (int i=0; i<64; i++) {
+			for (int j=0; j<64; j++) {
+				double v=lu.get(i, j);
+				if (j<i) l.set(i, j, v); else u.set(i, j, v);
+			}
+			l.set(i, i, 1.0);
+		}
+		AMatrix prod=l.innerProduct(u);
+		for (int i=0; i<64; i++) {
+			for (int j=0; j<64; j++) {
+				if (a.get(i, j)!=0.0) assertEquals(a.get(i, j),prod.get(i, j),1e-12);
+			}
+		}
+	}
+
+	@Test public void testPreconditionedCG() {
+		SparseRowMatrix a=grid(20,0.0);
+		// scale rows and columns to give a badly scaled SPD matrix
+		for (int i=0; i<400; i++) {
+			double s=1.0+(i%7)*3.0;
+			a.getRow(i).multiply(s);
+			a.getColumn(i).multiply(s);
+		}
+		Vector b=randomVector(400,4);
+
+		ConjugateGradient cg=new ConjugateGradient();
+		AVector x0=cg.solve(a, b);
+		assertNotNull(x0);
+		int plain=cg.getIterations();
+
+		cg.setPreconditioner(JacobiPreconditioner.create(a));
+		AVector x1=cg.solve(a, b);
+		assertNotNull(x1);
+		int jacobi=cg.getIterations();
+		assertTrue(jacobi<plain);
+		assertTrue(x1.epsilonEquals(x0, 1e-6));
+
+		cg.setPreconditioner(IncompleteCholeskyPreconditioner.create(a));
+		AVector x2=cg.solve(a, b);
+		assertNotNull(x2);
+		assertTrue(cg.getIterations()<jacobi);
+		assertTrue(x2.epsilonEquals(x0, 1e-6));
+	}
+
+	@Test public void testPreconditionedNonSymmetric() {
+		SparseRowMatrix a=grid(20,0.4);
+		Vector b=randomVector(400,5);
+		IncompleteLUPreconditioner ilu=IncompleteLUPreconditioner.create(a);
+
+		AKrylovSolver[] solvers=new AKrylovSolver[] {new BiCGStab(),new GMRES(20)};
+		for (AKrylovSolver s: solvers) {
+			AVector x0=s.solve(a, b);
+			assertNotNull(x0);
+			int plain=s.getIterations();
+
+			s.setPreconditioner(ilu);
+			AVector x1=s.solve(a, b);
+			assertNotNull(x1);
+			assertTrue(s.getIterations()<plain);
+			AVector r=a.transform(x1);
+			r.sub(b);
+			assertTrue(r.magnitude()<=1e-9*b.magnitude());
+		}
+	}
+
+	@Test public void testBadArguments() {
+		SparseRowMatrix a=tridiagonal(5,-1,2,-1);
+		a.set(2, 2, 0.0);
+		try {
+			JacobiPreconditioner.create(a);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			IncompleteLUPreconditioner.create(a);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		try {
+			// indefinite matrix gives a negative pivot
+			IncompleteCholeskyPreconditioner.create(tridiagonal(5,-2,1,-2));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+
+		ConjugateGradient cg=new ConjugateGradient();
+		cg.setPreconditioner(JacobiPreconditioner.create(tridiagonal(4,-1,2,-1)));
+		try {
+			cg.solve(tridiagonal(5,-1,2,-1), Vector.createLength(5));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package mikera.vectorz;
 
+import java.util.Random;
+
 import mikera.arrayz.Arrayz;
 import mikera.arrayz.INDArray;
+import mikera.matrixx.Matrix;
 
 public class TestingUtils {
 
@@ -10,4 +13,16 @@ public class TestingUtils {
 		Arrayz.fillNormal(r, seed);
 		return r;
 	}
+
+	/**
+	 * Creates a matrix of standard normal elements drawn in row-major order from the given generator
+	 */
+	public static Matrix createGaussianMatrix(int rows, int cols, Random r) {
+		Matrix a=Matrix.create(rows, cols);
+		double[] data=a.getArray();
+		for (int i=0; i<data.length; i++) {
+			data[i]=r.nextGaussian();
+		}
+		return a;
+	}
 }
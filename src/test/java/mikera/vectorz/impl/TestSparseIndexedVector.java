@@ -2,7 +2,10 @@ package mikera.vectorz.impl;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import java.util.Random;
+
 import mikera.indexz.Index;
 import mikera.vectorz.AVector;
 import mikera.vectorz.Vector;
@@ -127,4 +130,73 @@ public class TestSparseIndexedVector {
         assertEquals(Vector.of(0, 0, 0, 0.01, 0, 0, 0.1, 0, 0, 0), rsv);
     }
 
+    /**
+     * Creates a random sparse vector with roughly the given number of indexed elements
+     */
+    private static SparseIndexedVector randomSparse(Random r, int length, int count) {
+        Vector v=Vector.createLength(length);
+        for (int i=0; i<count; i++) {
+            v.set(r.nextInt(length), r.nextInt(10)-5);
+        }
+        return SparseIndexedVector.create(v);
+    }
+
+    @Test public void testMergeArithmetic() {
+        Random r=new Random(2468);
+        for (int t=0; t<20; t++) {
+            SparseIndexedVector a=randomSparse(r, 100, r.nextInt(30));
+            SparseIndexedVector b=randomSparse(r, 100, r.nextInt(30));
+            Vector da=a.toVector();
+            Vector db=b.toVector();
+
+            assertEquals(da.addCopy(db),a.addCopy(b));
+            assertEquals(da.subCopy(db),a.subCopy(b));
+            assertEquals(da.addMultipleCopy(db,2.5),a.addMultipleCopy(b,2.5));
+            assertEquals(da.multiplyCopy(db),a.multiplyCopy(b));
+            assertEquals(da.dotProduct(db),a.dotProduct(b),0.0);
+
+            SparseIndexedVector c=a.exactClone();
+            c.add(b);
+            c.validate();
+            assertEquals(da.addCopy(db),c);
+            c.sub(b);
+            assertEquals(da,c);
+            c.addMultiple(b,-3.0);
+            assertEquals(da.addMultipleCopy(db,-3.0),c);
+            c.multiply(b);
+            c.validate();
+            AVector expected=da.addMultipleCopy(db,-3.0);
+            expected.multiply(db);
+            assertEquals(expected,c);
+        }
+    }
+
+    @Test public void testInPlaceSubsetAdd() {
+        SparseIndexedVector a=SparseIndexedVector.wrap(10, new int[] {1,4,7}, new double[] {1,2,3});
+        SparseIndexedVector b=SparseIndexedVector.wrap(10, new int[] {4,7}, new double[] {10,20});
+        double[] data=a.nonSparseValues().getArray();
+        a.add(b);
+        assertSame(data,a.nonSparseValues().getArray());
+        assertEquals(Vector.of(0,1,0,0,12,0,0,23,0,0),a);
+
+        SparseIndexedVector m=a.multiplyCopy(b);
+        assertEquals(2,m.nonSparseElementCount());
+        assertEquals(Vector.of(0,0,0,0,120,0,0,460,0,0),m);
+    }
+
+    @Test public void testGallopingDotProduct() {
+        Random r=new Random(1357);
+        SparseIndexedVector big=randomSparse(r, 100000, 20000);
+        Vector dbig=big.toVector();
+        for (int t=0; t<10; t++) {
+            SparseIndexedVector small=randomSparse(r, 100000, 1+r.nextInt(20));
+            // include an index beyond the last index of the big vector
+            small.set(99999, 1.0);
+            double expected=dbig.dotProduct(small.toVector());
+            assertEquals(expected,big.dotProduct(small),0.0);
+            assertEquals(expected,small.dotProduct(big),0.0);
+            assertEquals(expected,small.dotProduct((ASparseVector)SparseHashedVector.create(dbig)),0.0);
+        }
+    }
+
 }
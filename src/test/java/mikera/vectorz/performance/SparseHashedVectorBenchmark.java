@@ -0,0 +1,171 @@
+package mikera.vectorz.performance;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.caliper.Param;
+import com.google.caliper.Runner;
+import com.google.caliper.SimpleBenchmark;
+
+import mikera.vectorz.impl.SparseHashedVector;
+
+/**
+ * Caliper based benchmarks for SparseHashedVector, compared with a boxed HashMap<Integer,Double>
+ * as previously used for storage.
+ *
+ * Running main also prints the approximate heap memory used per non-zero element.
+ *
+ * @author Mike
+ */
+
+public class SparseHashedVectorBenchmark extends SimpleBenchmark {
+	private static final int LENGTH=1000000000;
+
+	@Param({"1000","100000","1000000"})
+	private int nonZeros;
+
+	private int[] indexes;
+	private double result;
+
+	// keeps measured objects reachable
+	private static Object sink;
+
+	@Override
+	protected void setUp() {
+		Random r=new Random(1234);
+		indexes=new int[nonZeros];
+		for (int i=0; i<nonZeros; i++) {
+			indexes[i]=r.nextInt(LENGTH);
+		}
+	}
+
+	private SparseHashedVector createVector() {
+		SparseHashedVector v=SparseHashedVector.createLength(LENGTH);
+		for (int i=0; i<nonZeros; i++) {
+			v.unsafeSet(indexes[i], i+1);
+		}
+		return v;
+	}
+
+	private HashMap<Integer,Double> createHashMap() {
+		HashMap<Integer,Double> hm=new HashMap<Integer,Double>();
+		for (int i=0; i<nonZeros; i++) {
+			hm.put(indexes[i], (double)(i+1));
+		}
+		return hm;
+	}
+
+	public void timeSetVector(int runs) {
+		for (int r=0; r<runs; r++) {
+			createVector();
+		}
+	}
+
+	public void timeSetHashMap(int runs) {
+		for (int r=0; r<runs; r++) {
+			createHashMap();
+		}
+	}
+
+	public void timeGetVector(int runs) {
+		SparseHashedVector v=createVector();
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<nonZeros; i++) {
+				result+=v.unsafeGet(indexes[i]);
+			}
+		}
+	}
+
+	public void timeGetHashMap(int runs) {
+		HashMap<Integer,Double> hm=createHashMap();
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<nonZeros; i++) {
+				Double d=hm.get(indexes[i]);
+				if (d!=null) result+=d;
+			}
+		}
+	}
+
+	public void timeSetAndClearVector(int runs) {
+		SparseHashedVector v=createVector();
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<nonZeros; i++) {
+				v.unsafeSet(indexes[i], 0.0);
+			}
+			for (int i=0; i<nonZeros; i++) {
+				v.unsafeSet(indexes[i], i+1);
+			}
+		}
+	}
+
+	public void timeSetAndClearHashMap(int runs) {
+		HashMap<Integer,Double> hm=createHashMap();
+		for (int r=0; r<runs; r++) {
+			for (int i=0; i<nonZeros; i++) {
+				hm.remove(indexes[i]);
+			}
+			for (int i=0; i<nonZeros; i++) {
+				hm.put(indexes[i], (double)(i+1));
+			}
+		}
+	}
+
+	public void timeNonZeroIndicesVector(int runs) {
+		SparseHashedVector v=createVector();
+		for (int r=0; r<runs; r++) {
+			result+=v.nonZeroIndices().length;
+		}
+	}
+
+	public void timeSumVector(int runs) {
+		SparseHashedVector v=createVector();
+		for (int r=0; r<runs; r++) {
+			result+=v.elementSum();
+		}
+	}
+
+	public void timeSumHashMap(int runs) {
+		HashMap<Integer,Double> hm=createHashMap();
+		for (int r=0; r<runs; r++) {
+			double sum=0.0;
+			for (Map.Entry<Integer,Double> e: hm.entrySet()) {
+				sum+=e.getValue();
+			}
+			result+=sum;
+		}
+	}
+
+	/**
+	 * Approximate heap bytes used per non-zero element
+	 */
+	private static double bytesPerElement(boolean primitive, int nonZeros) {
+		SparseHashedVectorBenchmark b=new SparseHashedVectorBenchmark();
+		b.nonZeros=nonZeros;
+		b.setUp();
+		Runtime rt=Runtime.getRuntime();
+		sink=null;
+		System.gc();
+		long before=rt.totalMemory()-rt.freeMemory();
+		sink=primitive?b.createVector():b.createHashMap();
+		System.gc();
+		long after=rt.totalMemory()-rt.freeMemory();
+		return (after-before)/(double)nonZeros;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int n=1000000;
+		System.out.println("Bytes per non-zero, SparseHashedVector: "+bytesPerElement(true,n));
+		System.out.println("Bytes per non-zero, HashMap<Integer,Double>: "+bytesPerElement(false,n));
+		new SparseHashedVectorBenchmark().run();
+	}
+
+	private void run() {
+		Runner runner=new Runner();
+		runner.run(new String[] {this.getClass().getCanonicalName()});
+	}
+
+}
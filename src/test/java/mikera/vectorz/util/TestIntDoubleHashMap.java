@@ -0,0 +1,106 @@
+package mikera.vectorz.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class TestIntDoubleHashMap {
+
+	@Test public void testBasics() {
+		IntDoubleHashMap m=new IntDoubleHashMap();
+		assertTrue(m.isEmpty());
+		m.put(7, 1.5);
+		m.put(3, 2.5);
+		m.put(7, 3.5);
+		assertEquals(2,m.size());
+		assertEquals(3.5,m.get(7),0.0);
+		assertEquals(0.0,m.get(8),0.0);
+		assertTrue(m.containsKey(3));
+		assertFalse(m.containsKey(4));
+		assertTrue(m.remove(3));
+		assertFalse(m.remove(3));
+		assertEquals(1,m.size());
+		m.clear();
+		assertEquals(0,m.size());
+		assertFalse(m.containsKey(7));
+		m.validate();
+
+		try {
+			m.put(-1, 1.0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+	}
+
+	@Test public void testRandomOperations() {
+		Random r=new Random(4321);
+		IntDoubleHashMap m=new IntDoubleHashMap();
+		HashMap<Integer,Double> ref=new HashMap<Integer,Double>();
+		for (int k=0; k<100000; k++) {
+			// a small key range forces many collisions, removals and re-insertions
+			int key=(k%2==0)?r.nextInt(500):r.nextInt(Integer.MAX_VALUE);
+			if (r.nextInt(3)==0) {
+				assertEquals(ref.remove(key)!=null,m.remove(key));
+			} else {
+				double v=r.nextDouble();
+				m.put(key, v);
+				ref.put(key, v);
+			}
+			if (k%10000==0) m.validate();
+		}
+		m.validate();
+		assertEquals(ref.size(),m.size());
+		for (Integer key: ref.keySet()) {
+			assertEquals(ref.get(key),m.get(key),0.0);
+		}
+
+		// removal of everything should leave an empty table
+		for (Integer key: ref.keySet()) {
+			assertTrue(m.remove(key));
+		}
+		m.validate();
+		assertEquals(0,m.size());
+		for (int key: m.getKeyArray()) {
+			assertEquals(IntDoubleHashMap.EMPTY,key);
+		}
+	}
+
+	@Test public void testSortedIteration() {
+		Random r=new Random(99);
+		IntDoubleHashMap m=new IntDoubleHashMap(10);
+		TreeMap<Integer,Double> ref=new TreeMap<Integer,Double>();
+		for (int k=0; k<1000; k++) {
+			int key=r.nextInt(1000000);
+			double v=r.nextDouble();
+			m.put(key, v);
+			ref.put(key, v);
+		}
+		int n=m.size();
+		int[] keys=new int[n];
+		double[] values=new double[n];
+		m.copySortedTo(keys, values);
+		assertArrayEquals(keys,m.sortedKeys());
+		int i=0;
+		for (Integer key: ref.keySet()) {
+			assertEquals((int)key,keys[i]);
+			assertEquals(ref.get(key),values[i],0.0);
+			i++;
+		}
+	}
+
+	@Test public void testClone() {
+		IntDoubleHashMap m=new IntDoubleHashMap();
+		m.put(1, 2.0);
+		IntDoubleHashMap c=m.clone();
+		c.put(1, 3.0);
+		c.put(2, 4.0);
+		assertEquals(2.0,m.get(1),0.0);
+		assertEquals(1,m.size());
+		assertEquals(2,c.size());
+	}
+}
@@ -0,0 +1,109 @@
+package mikera.vectorz.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import mikera.matrixx.Matrix;
+import mikera.matrixx.algo.Multiplications;
+import mikera.matrixx.algo.Parallel;
+import mikera.matrixx.impl.CSRMatrix;
+import mikera.matrixx.impl.SparseColumnMatrix;
+import mikera.matrixx.impl.SparseRowMatrix;
+
+import org.junit.Test;
+
+public class TestSparseMatrixBuilder {
+
+	@Test public void testDuplicatesSummed() {
+		SparseMatrixBuilder b=new SparseMatrixBuilder(3,4);
+		b.add(2, 3, 1.0);
+		b.add(0, 1, 2.0);
+		b.add(2, 0, 3.0);
+		b.add(0, 1, 4.0);
+		b.add(2, 3, 5.0);
+		assertEquals(5,b.size());
+
+		Matrix expected=Matrix.create(new double[][] {{0,6,0,0},{0,0,0,0},{3,0,0,6}});
+		CSRMatrix c=b.toCSRMatrix();
+		c.validate();
+		assertEquals(expected,c);
+		assertEquals(3,c.storedEntryCount());
+		assertArrayEquals(new int[] {1,0,3},c.getColumnIndices());
+
+		SparseRowMatrix r=b.toSparseRowMatrix();
+		assertEquals(expected,r);
+		assertNull(r.unsafeGetVector(1));
+
+		SparseColumnMatrix sc=b.toSparseColumnMatrix();
+		assertEquals(expected,sc);
+		assertNull(sc.unsafeGetVector(2));
+	}
+
+	@Test public void testBulkAdd() {
+		SparseMatrixBuilder b=new SparseMatrixBuilder(2,2,1);
+		b.add(new int[] {1,0,1}, new int[] {1,0,1}, new double[] {1,2,3});
+		assertEquals(Matrix.create(new double[][] {{2,0},{0,4}}),b.toCSRMatrix());
+		b.clear();
+		assertEquals(0,b.size());
+		assertTrue(b.toSparseRowMatrix().isZero());
+	}
+
+	@Test public void testBadIndexes() {
+		SparseMatrixBuilder b=new SparseMatrixBuilder(2,3);
+		try {
+			b.add(2, 0, 1.0);
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// OK
+		}
+		try {
+			b.add(new int[] {0}, new int[] {3}, new double[] {1.0});
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+			// OK
+		}
+		try {
+			b.add(new int[] {0}, new int[] {0,1}, new double[] {1.0});
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		assertEquals(0,b.size());
+	}
+
+	@Test public void testParallel() {
+		int rows=300;
+		int cols=200;
+		Random r=new Random(5678);
+		SparseMatrixBuilder b=new SparseMatrixBuilder(rows,cols);
+		Matrix expected=Matrix.create(rows, cols);
+		for (int k=0; k<300000; k++) {
+			// skew towards the first few rows so that tasks split unevenly by row count
+			int i=(k%3==0)?r.nextInt(3):r.nextInt(rows);
+			int j=r.nextInt(cols);
+			double v=r.nextInt(100);
+			b.add(i, j, v);
+			expected.addAt(i, j, v);
+		}
+
+		CSRMatrix serial=b.toCSRMatrix();
+		ForkJoinPool pool=new ForkJoinPool(4);
+		Parallel.setForkJoinPool(pool);
+		long oldThreshold=Multiplications.getParallelThreshold();
+		try {
+			Multiplications.setParallelThreshold(0);
+			CSRMatrix parallel=b.toCSRMatrix();
+			parallel.validate();
+			assertArrayEquals(serial.getRowPointers(),parallel.getRowPointers());
+			assertArrayEquals(serial.getColumnIndices(),parallel.getColumnIndices());
+			assertEquals(expected,parallel);
+			assertEquals(expected,b.toSparseColumnMatrix());
+		} finally {
+			Multiplications.setParallelThreshold(oldThreshold);
+			Parallel.setForkJoinPool(null);
+			pool.shutdown();
+		}
+	}
+}